@@ -0,0 +1,152 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.elasticsearch.tools.content.testtools.TestUtils;
+
+/**
+ * Document fixtures and preprocessor configurations shared by benchmarks. Documents are issue-tracker like structures
+ * of three sizes:
+ * <ul>
+ * <li><code>small</code> - flat issue with few fields and no comments
+ * <li><code>medium</code> - issue with nested fields, 10 HTML comments and activity dates
+ * <li><code>nested</code> - issue with 50 HTML comments, each with nested author and replies, used as
+ * <code>source_bases</code> by some preprocessors
+ * </ul>
+ * Documents are generated deterministically so results are comparable between runs.
+ *
+ * @author agent (agent at local)
+ */
+public class BenchmarkDocuments {
+
+	public static final String SMALL = "small";
+	public static final String MEDIUM = "medium";
+	public static final String NESTED = "nested";
+
+	private static final String PREPROCESSORS_CONFIG = "/benchmark_preprocessors.json";
+
+	private static final String COMMENT_TEXT = "<div class=\"comment\"><p>I tried it with <b>version 1.3.2</b> and it&nbsp;fails "
+			+ "with <code>NullPointerException</code> in <a href=\"http://example.org/log\">the log</a>.</p>"
+			+ "<ul><li>step one</li><li>step two &amp; three</li></ul></div>";
+
+	/**
+	 * Create document of given size.
+	 *
+	 * @param size one of {@link #SMALL}, {@link #MEDIUM}, {@link #NESTED}
+	 * @return new document
+	 */
+	public static Map<String, Object> createDocument(String size) {
+		Map<String, Object> data = new LinkedHashMap<String, Object>();
+		data.put("id", "ORG-1234");
+		data.put("title", "Lookup fails for projects with long names");
+		data.put("updated", "2017-03-02T16:20:10.000+0100");
+		data.put("private", Boolean.FALSE);
+		data.put("author", createUser("jdoe", "John Doe"));
+		Map<String, Object> fields = new LinkedHashMap<String, Object>();
+		fields.put("project", "ORG");
+		fields.put("created", "2017-03-01T10:15:30.000+0100");
+		Map<String, Object> status = new LinkedHashMap<String, Object>();
+		status.put("id", 5);
+		status.put("name", "Resolved");
+		fields.put("status", status);
+		data.put("fields", fields);
+
+		if (SMALL.equals(size))
+			return data;
+
+		fields.put("assignee", createUser("asmith", "Anna Smith"));
+		fields.put("internal", "internal note");
+		List<Object> dates = new ArrayList<Object>();
+		for (int i = 0; i < 10; i++) {
+			dates.add("2017-03-" + (10 + i) + "T10:15:30.000+01:00");
+		}
+		data.put("activity_dates", dates);
+
+		if (MEDIUM.equals(size)) {
+			data.put("comments", createComments(10, 0));
+		} else if (NESTED.equals(size)) {
+			data.put("comments", createComments(50, 3));
+		} else {
+			throw new IllegalArgumentException("Unknown document size " + size);
+		}
+		return data;
+	}
+
+	private static List<Object> createComments(int count, int replies) {
+		List<Object> comments = new ArrayList<Object>(count);
+		for (int i = 0; i < count; i++) {
+			Map<String, Object> comment = new LinkedHashMap<String, Object>();
+			comment.put("author", createUser("user" + (i % 7), "User " + (i % 7)));
+			comment.put("created", new Long(1488359730000L + i * 3600000L));
+			comment.put("text", COMMENT_TEXT);
+			if (replies > 0) {
+				comment.put("replies", createComments(replies, 0));
+			}
+			comments.add(comment);
+		}
+		return comments;
+	}
+
+	private static Map<String, Object> createUser(String username, String name) {
+		Map<String, Object> user = new LinkedHashMap<String, Object>();
+		user.put("username", username);
+		user.put("name", name);
+		user.put("email", username + "@example.org");
+		user.put("password", "secret");
+		return user;
+	}
+
+	/**
+	 * Copy document, so benchmark may change it.
+	 *
+	 * @param document to copy
+	 * @return deep copy of document
+	 */
+	@SuppressWarnings("unchecked")
+	public static Map<String, Object> copy(Map<String, Object> document) {
+		return (Map<String, Object>) StructureUtils.getADeepStructureCopy(document);
+	}
+
+	/**
+	 * Get configurations of all benchmarked preprocessors.
+	 *
+	 * @return list of preprocessor configurations
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<Map<String, Object>> getPreprocessorConfigs() {
+		return (List<Map<String, Object>>) TestUtils.loadJSONFromClasspathFile(PREPROCESSORS_CONFIG).get(
+				"preprocessors");
+	}
+
+	/**
+	 * Create preprocessor by name from benchmark configuration.
+	 *
+	 * @param name of preprocessor configuration
+	 * @return initialized preprocessor
+	 */
+	public static StructuredContentPreprocessor createPreprocessor(String name) {
+		for (Map<String, Object> config : getPreprocessorConfigs()) {
+			if (name.equals(config.get(StructuredContentPreprocessorFactory.CFG_NAME)))
+				return StructuredContentPreprocessorFactory.createPreprocessor(config, null);
+		}
+		throw new IllegalArgumentException("No preprocessor configuration for name " + name);
+	}
+
+	/**
+	 * Create chain of all benchmarked preprocessors.
+	 *
+	 * @return chain
+	 */
+	public static PreprocessorChain createPreprocessorChain() {
+		return StructuredContentPreprocessorFactory.createPreprocessorChain(getPreprocessorConfigs(), null);
+	}
+
+}
@@ -0,0 +1,68 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of each built-in preprocessor in isolation over documents from {@link BenchmarkDocuments}. Each operation
+ * preprocesses fresh copy of the document, cost of copy is measured by {@link StructureUtilsBenchmark#deepCopy()}.
+ * Chain context is also created for each operation, so warnings do not accumulate over iterations.
+ * <p>
+ * {@link ESLookupValuePreprocessor} and {@link RESTCallPreprocessor} are not benchmarked here as their performance is
+ * given by remote system they call.
+ *
+ * @author agent (agent at local)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PreprocessorBenchmark {
+
+	@Param({ "AddValue", "AddMultipleValues", "RemoveMultipleFields", "AddCurrentTimestamp", "SimpleValueMapMapper",
+			"ValuesCollecting", "MaxTimestamp", "RequiredValidator", "TrimStringValue", "StripHtml", "LongToTimestampValue",
+			"RegExpCapturingGroup", "Scripting", "IsDateInRange" })
+	public String preprocessor;
+
+	@Param({ BenchmarkDocuments.SMALL, BenchmarkDocuments.MEDIUM, BenchmarkDocuments.NESTED })
+	public String document;
+
+	private StructuredContentPreprocessor tested;
+	private Map<String, Object> data;
+
+	@Setup
+	public void setup() {
+		tested = BenchmarkDocuments.createPreprocessor(preprocessor);
+		data = BenchmarkDocuments.createDocument(document);
+	}
+
+	@Benchmark
+	public Map<String, Object> preprocessData() {
+		return tested.preprocessData(BenchmarkDocuments.copy(data), null);
+	}
+
+	@Benchmark
+	public Map<String, Object> preprocessDataWithContext() {
+		return tested.preprocessData(BenchmarkDocuments.copy(data), new PreprocessChainContextImpl());
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of representative {@link PreprocessorChain} containing all preprocessors benchmarked by
+ * {@link PreprocessorBenchmark}, created by {@link StructuredContentPreprocessorFactory}. Throughput is given in
+ * documents per second for all benchmarks.
+ *
+ * @author agent (agent at local)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PreprocessorChainBenchmark {
+
+	public static final int BATCH_SIZE = 100;
+
+	@Param({ BenchmarkDocuments.SMALL, BenchmarkDocuments.MEDIUM, BenchmarkDocuments.NESTED })
+	public String document;
+
+	private PreprocessorChain chain;
+	private ParallelPreprocessorChain parallelChain;
+	private Map<String, Object> data;
+
+	@Setup
+	public void setup() {
+		chain = BenchmarkDocuments.createPreprocessorChain();
+		parallelChain = new ParallelPreprocessorChain(chain);
+		data = BenchmarkDocuments.createDocument(document);
+	}
+
+	@TearDown
+	public void tearDown() {
+		parallelChain.close();
+	}
+
+	private List<Map<String, Object>> createBatch() {
+		List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>(BATCH_SIZE);
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			batch.add(BenchmarkDocuments.copy(data));
+		}
+		return batch;
+	}
+
+	@Benchmark
+	public Map<String, Object> preprocessData() {
+		return chain.preprocessData(BenchmarkDocuments.copy(data), null);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public List<Map<String, Object>> preprocessBatch() {
+		return chain.preprocessBatch(createBatch());
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public List<Map<String, Object>> preprocessBatchParallel() throws InterruptedException {
+		return parallelChain.preprocessBatch(createBatch());
+	}
+
+}
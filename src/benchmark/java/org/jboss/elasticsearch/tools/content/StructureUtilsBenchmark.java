@@ -0,0 +1,89 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of {@link StructureUtils} and {@link FieldPath} operations over documents from {@link BenchmarkDocuments}.
+ *
+ * @author agent (agent at local)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StructureUtilsBenchmark {
+
+	@Param({ BenchmarkDocuments.SMALL, BenchmarkDocuments.MEDIUM, BenchmarkDocuments.NESTED })
+	public String document;
+
+	private static final String FIELD = "fields.status.name";
+	private static final String NEW_FIELD = "fields.resolution.name";
+
+	private Map<String, Object> data;
+	private FieldPath fieldPath;
+	private FieldPath newFieldPath;
+
+	@Setup
+	public void setup() {
+		data = BenchmarkDocuments.createDocument(document);
+		fieldPath = FieldPath.compile(FIELD);
+		newFieldPath = FieldPath.compile(NEW_FIELD);
+	}
+
+	@Benchmark
+	public Object deepCopy() {
+		return StructureUtils.getADeepStructureCopy(data);
+	}
+
+	@Benchmark
+	public Object copyOnWriteCopyAndPutValue() {
+		@SuppressWarnings("unchecked")
+		Map<String, Object> copy = (Map<String, Object>) StructureUtils.getACopyOnWriteStructure(data);
+		newFieldPath.putValue(copy, "Done");
+		return copy;
+	}
+
+	@Benchmark
+	public Object extractValue() {
+		return XContentMapValues.extractValue(FIELD, data);
+	}
+
+	@Benchmark
+	public Object fieldPathGetValue() {
+		return fieldPath.getValue(data);
+	}
+
+	@Benchmark
+	public Object putAndRemoveValue() {
+		StructureUtils.putValueIntoMapOfMaps(data, NEW_FIELD, "Done");
+		return StructureUtils.removeValueFromMapOfMaps(data, NEW_FIELD);
+	}
+
+	@Benchmark
+	public Object fieldPathPutAndRemoveValue() {
+		newFieldPath.putValue(data, "Done");
+		return newFieldPath.removeValue(data);
+	}
+
+}
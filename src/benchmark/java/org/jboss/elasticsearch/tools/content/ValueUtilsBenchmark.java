@@ -0,0 +1,74 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of {@link ValueUtils} and {@link CompiledTemplate} operations.
+ *
+ * @author agent (agent at local)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ValueUtilsBenchmark {
+
+	private static final String PATTERN = "Issue {id} '{title}' reported by {author.name} is {fields.status.name}, was {__original}";
+	private static final String JSON = "{\"code\":\"125\",\"name\":\"myproj\",\"leads\":[\"jdoe\",\"asmith\"],\"meta\":{\"created\":1488359730000}}";
+
+	private Map<String, Object> data;
+	private CompiledTemplate template;
+	private byte[] json;
+
+	@Setup
+	public void setup() {
+		data = BenchmarkDocuments.createDocument(BenchmarkDocuments.MEDIUM);
+		template = CompiledTemplate.compile(PATTERN);
+		json = JSON.getBytes();
+	}
+
+	@Benchmark
+	public String patternReplacement() {
+		return ValueUtils.processStringValuePatternReplacement(PATTERN, data, "Open");
+	}
+
+	@Benchmark
+	public String compiledTemplate() {
+		return template.process(data, "Open");
+	}
+
+	@Benchmark
+	public String formatISODateTime() {
+		return ValueUtils.formatISODateTime(new java.util.Date(1488359730000L));
+	}
+
+	@Benchmark
+	public StringBuilder appendISODateTime() {
+		return ValueUtils.appendISODateTime(new StringBuilder(24), 1488359730000L);
+	}
+
+	@Benchmark
+	public Map<String, Object> parseJSON() throws Exception {
+		return ValueUtils.parseJSON(json);
+	}
+
+}
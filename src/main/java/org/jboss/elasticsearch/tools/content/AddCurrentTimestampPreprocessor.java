@@ -34,11 +34,13 @@ import org.elasticsearch.common.xcontent.support.XContentMapValues;
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  */
+@ThreadSafe
 public class AddCurrentTimestampPreprocessor extends StructuredContentPreprocessorBase {
 
 	protected static final String CFG_FIELD = "field";
 
 	protected String field;
+	protected FieldPath fieldPath;
 
 	@Override
 	public void init(Map<String, Object> settings) throws SettingsException {
@@ -47,13 +49,14 @@ public class AddCurrentTimestampPreprocessor extends StructuredContentPreprocess
 		}
 		field = XContentMapValues.nodeStringValue(settings.get(CFG_FIELD), null);
 		validateConfigurationStringNotEmpty(field, CFG_FIELD);
+		fieldPath = FieldPath.compile(field);
 	}
 
 	@Override
 	public Map<String, Object> preprocessData(Map<String, Object> data, PreprocessChainContext context) {
 		if (data == null)
 			return null;
-		StructureUtils.putValueIntoMapOfMaps(data, field, ISODateTimeFormat.dateTime().print(System.currentTimeMillis()));
+		fieldPath.putValue(data, ISODateTimeFormat.dateTime().print(System.currentTimeMillis()));
 		return data;
 	}
 
@@ -39,9 +39,11 @@ import org.elasticsearch.common.settings.SettingsException;
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  */
+@ThreadSafe
 public class AddMultipleValuesPreprocessor extends StructuredContentPreprocessorBase {
 
 	protected Map<String, Object> fields;
+	protected CompiledFields compiledFields;
 
 	@Override
 	public void init(Map<String, Object> settings) throws SettingsException {
@@ -49,22 +51,47 @@ public class AddMultipleValuesPreprocessor extends StructuredContentPreprocessor
 			throw new SettingsException("'settings' section is not defined for preprocessor " + name);
 		}
 		fields = settings;
+		compiledFields = new CompiledFields(fields);
 	}
 
 	@Override
 	public Map<String, Object> preprocessData(Map<String, Object> data, PreprocessChainContext context) {
 		if (data == null)
 			return null;
-		for (String key : fields.keySet()) {
-			Object value = fields.get(key);
-			if (value != null && (value instanceof String) && ((String) value).contains("{")) {
-				value = ValueUtils.processStringValuePatternReplacement((String) value, data, null);
+		final CompiledFields cf = compiledFields;
+		for (int i = 0; i < cf.paths.length; i++) {
+			Object value = cf.values[i];
+			if (value instanceof CompiledTemplate) {
+				value = ((CompiledTemplate) value).process(data, null);
 			}
-			StructureUtils.putValueIntoMapOfMaps(data, key, value);
+			cf.paths[i].putValue(data, value);
 		}
 		return data;
 	}
 
+	/**
+	 * Field paths and values from {@link AddMultipleValuesPreprocessor#fields} compiled in the same order. String values
+	 * with keys for replacement are compiled into {@link CompiledTemplate}.
+	 */
+	protected static final class CompiledFields {
+		final FieldPath[] paths;
+		final Object[] values;
+
+		CompiledFields(Map<String, Object> fields) {
+			paths = new FieldPath[fields.size()];
+			values = new Object[paths.length];
+			int i = 0;
+			for (Map.Entry<String, Object> e : fields.entrySet()) {
+				paths[i] = FieldPath.compile(e.getKey());
+				Object value = e.getValue();
+				if (value instanceof String && ((String) value).contains("{")) {
+					value = CompiledTemplate.compile((String) value);
+				}
+				values[i++] = value;
+			}
+		}
+	}
+
 	public Map<String, Object> getFields() {
 		return fields;
 	}
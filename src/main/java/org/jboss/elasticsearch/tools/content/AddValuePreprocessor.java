@@ -41,12 +41,15 @@ import org.elasticsearch.common.xcontent.support.XContentMapValues;
  * @see StructuredContentPreprocessorFactory
  * @see ValueUtils#processStringValuePatternReplacement(String, Map, Object)
  */
+@ThreadSafe
 public class AddValuePreprocessor extends StructuredContentPreprocessorBase {
 
 	protected static final String CFG_FIELD = "field";
 	protected static final String CFG_VALUE = "value";
 
 	protected String field;
+	protected FieldPath fieldPath;
+	protected CompiledTemplate valueTemplate;
 	protected Object value = null;
 
 	@Override
@@ -56,17 +59,19 @@ public class AddValuePreprocessor extends StructuredContentPreprocessorBase {
 		}
 		field = XContentMapValues.nodeStringValue(settings.get(CFG_FIELD), null);
 		validateConfigurationStringNotEmpty(field, CFG_FIELD);
+		fieldPath = FieldPath.compile(field);
 		value = settings.get(CFG_VALUE);
+		valueTemplate = null;
+		if (value instanceof String && ((String) value).contains("{"))
+			valueTemplate = CompiledTemplate.compile((String) value);
 	}
 
 	@Override
 	public Map<String, Object> preprocessData(Map<String, Object> data, PreprocessChainContext context) {
 		if (data == null)
 			return null;
-		if (value != null && (value instanceof String) && ((String) value).contains("{")) {
-			value = ValueUtils.processStringValuePatternReplacement((String) value, data, null);
-		}
-		StructureUtils.putValueIntoMapOfMaps(data, field, value);
+		final CompiledTemplate t = valueTemplate;
+		fieldPath.putValue(data, t != null ? t.process(data, null) : value);
 		return data;
 	}
 
@@ -0,0 +1,161 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.elasticsearch.common.logging.support.LoggerMessageFormat;
+import org.jboss.elasticsearch.tools.content.PreprocessChainContextImpl.DataWarning;
+
+/**
+ * {@link PreprocessChainContext} which counts all warnings but keeps only first <code>maxWarnings</code> of them.
+ * Messages are formatted lazily when warnings are read. Context is lock free and may be shared by more threads, eg.
+ * workers of {@link ParallelPreprocessorChain}. Use one context per document to bound number of warnings per document.
+ * <p>
+ * Context created with <code>maxWarnings</code> 0 only counts warnings and allocates nothing per warning, see
+ * {@link #createCounting()}.
+ *
+ * @author agent (agent at local)
+ */
+public class BoundedPreprocessChainContext implements LazyPreprocessChainContext {
+
+	private final AtomicInteger count = new AtomicInteger();
+
+	/**
+	 * Stored warnings, <code>null</code> in counting only mode.
+	 */
+	private final AtomicReferenceArray<LazyDataWarning> warnings;
+
+	/**
+	 * Create context.
+	 *
+	 * @param maxWarnings max number of warnings kept by context, 0 to only count warnings.
+	 */
+	public BoundedPreprocessChainContext(int maxWarnings) {
+		if (maxWarnings < 0)
+			throw new IllegalArgumentException("maxWarnings can't be negative");
+		warnings = maxWarnings > 0 ? new AtomicReferenceArray<LazyDataWarning>(maxWarnings) : null;
+	}
+
+	/**
+	 * Create context which only counts warnings.
+	 *
+	 * @return context
+	 */
+	public static BoundedPreprocessChainContext createCounting() {
+		return new BoundedPreprocessChainContext(0);
+	}
+
+	@Override
+	public void addDataWarning(String preprocessorName, String warningMessage) {
+		addDataWarning(preprocessorName, warningMessage, (Object[]) null);
+	}
+
+	@Override
+	public void addDataWarning(String preprocessorName, String messageTemplate, Object... args) {
+		if (preprocessorName == null || messageTemplate == null) {
+			throw new IllegalArgumentException("preprocessorName nor warningMessage can be null");
+		}
+		int idx = count.getAndIncrement();
+		if (warnings != null && idx >= 0 && idx < warnings.length()) {
+			warnings.set(idx, new LazyDataWarning(preprocessorName, messageTemplate, args));
+		}
+	}
+
+	/**
+	 * Get number of all warnings added to this context, including not kept ones.
+	 *
+	 * @return number of warnings
+	 */
+	public int getWarningCount() {
+		int c = count.get();
+		// overflow after really huge number of warnings
+		return c >= 0 ? c : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Get number of warnings which were counted but not kept due to limit.
+	 *
+	 * @return number of dropped warnings
+	 */
+	public int getDroppedWarningCount() {
+		return Math.max(0, getWarningCount() - getMaxWarnings());
+	}
+
+	/**
+	 * @return max number of warnings kept by context
+	 */
+	public int getMaxWarnings() {
+		return warnings != null ? warnings.length() : 0;
+	}
+
+	/**
+	 * Check if some warning is available.
+	 *
+	 * @return true if there is any warning available.
+	 */
+	public boolean isWarning() {
+		return count.get() != 0;
+	}
+
+	/**
+	 * Get kept warnings with formatted messages. Warnings added concurrently with this call may be missing in returned
+	 * list.
+	 *
+	 * @return list of kept warnings in order they were added, never null
+	 */
+	public List<DataWarning> getWarnings() {
+		if (warnings == null)
+			return Collections.emptyList();
+		int size = Math.min(getWarningCount(), warnings.length());
+		List<DataWarning> ret = new ArrayList<DataWarning>(size);
+		for (int i = 0; i < size; i++) {
+			LazyDataWarning w = warnings.get(i);
+			if (w != null)
+				ret.add(w.toDataWarning());
+		}
+		return ret;
+	}
+
+	/**
+	 * Format message from template used by {@link LazyPreprocessChainContext}.
+	 *
+	 * @param messageTemplate template of message, <code>{}</code> is replaced by next argument
+	 * @param args arguments for template, can be null
+	 * @return formatted message
+	 */
+	public static String formatMessage(String messageTemplate, Object... args) {
+		if (args == null || args.length == 0)
+			return messageTemplate;
+		return LoggerMessageFormat.format(messageTemplate, args);
+	}
+
+	@Override
+	public String toString() {
+		return "BoundedPreprocessChainContext [count=" + getWarningCount() + ", warnings=" + getWarnings() + "]";
+	}
+
+	private static final class LazyDataWarning {
+		final String preprocessorName;
+		final String messageTemplate;
+		final Object[] args;
+
+		LazyDataWarning(String preprocessorName, String messageTemplate, Object[] args) {
+			this.preprocessorName = preprocessorName;
+			this.messageTemplate = messageTemplate;
+			this.args = args;
+		}
+
+		DataWarning toDataWarning() {
+			return new DataWarning(preprocessorName, formatMessage(messageTemplate, args));
+		}
+	}
+
+}
@@ -0,0 +1,167 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.XContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+
+/**
+ * Builder of Elasticsearch bulk request body from preprocessed documents. Documents are serialized directly into the
+ * body by {@link ValueUtils#writeDocument(XContentBuilder, Map)}, so batch preprocessed by
+ * {@link PreprocessorChain#preprocessBatch(List)} gives ready bulk body by
+ * {@link #addIndexBatch(List, String, String, String)}. Body may be passed to
+ * <code>BulkRequestBuilder.add(bytes, false, null, null)</code> or sent over REST. Builder is not thread safe, but may
+ * be reused after {@link #reset()}.
+ *
+ * @author agent (agent at local)
+ */
+public class BulkBodyBuilder {
+
+	protected final XContentType contentType;
+
+	protected final byte separator;
+
+	protected final BytesStreamOutput out;
+
+	protected int numberOfActions;
+
+	/**
+	 * Create builder for JSON body.
+	 */
+	public BulkBodyBuilder() {
+		this(XContentType.JSON);
+	}
+
+	/**
+	 * Create builder.
+	 *
+	 * @param contentType of body, JSON or SMILE
+	 */
+	public BulkBodyBuilder(XContentType contentType) {
+		if (contentType != XContentType.JSON && contentType != XContentType.SMILE)
+			throw new IllegalArgumentException("Only JSON and SMILE content type is supported for bulk body");
+		this.contentType = contentType;
+		XContent xContent = XContentFactory.xContent(contentType);
+		this.separator = xContent.streamSeparator();
+		this.out = new BytesStreamOutput();
+	}
+
+	/**
+	 * Add index action for document.
+	 *
+	 * @param index name of index, can be null if default index is used for bulk request
+	 * @param type of document, can be null if default type is used for bulk request
+	 * @param id of document, can be null to generate id
+	 * @param document to index
+	 * @return this builder
+	 * @throws IOException
+	 */
+	public BulkBodyBuilder addIndex(String index, String type, String id, Map<String, Object> document)
+			throws IOException {
+		if (document == null)
+			throw new IllegalArgumentException("document must be defined");
+		writeAction("index", index, type, id);
+		XContentBuilder builder = XContentFactory.contentBuilder(contentType, out);
+		ValueUtils.writeDocument(builder, document);
+		builder.close();
+		out.writeByte(separator);
+		return this;
+	}
+
+	/**
+	 * Add delete action for document.
+	 *
+	 * @param index name of index, can be null if default index is used for bulk request
+	 * @param type of document, can be null if default type is used for bulk request
+	 * @param id of document
+	 * @return this builder
+	 * @throws IOException
+	 */
+	public BulkBodyBuilder addDelete(String index, String type, String id) throws IOException {
+		if (id == null)
+			throw new IllegalArgumentException("id must be defined");
+		writeAction("delete", index, type, id);
+		return this;
+	}
+
+	/**
+	 * Add index action for each document from batch.
+	 *
+	 * @param documents batch of preprocessed documents, <code>null</code> items are skipped
+	 * @param index name of index, can be null if default index is used for bulk request
+	 * @param type of documents, can be null if default type is used for bulk request
+	 * @param idField field in document (dot notation can be used) to get id of document from, can be null to generate
+	 *          ids
+	 * @return this builder
+	 * @throws IOException
+	 */
+	public BulkBodyBuilder addIndexBatch(List<Map<String, Object>> documents, String index, String type, String idField)
+			throws IOException {
+		if (documents == null)
+			return this;
+		FieldPath idPath = idField != null ? FieldPath.compile(idField) : null;
+		for (Map<String, Object> document : documents) {
+			if (document == null)
+				continue;
+			Object id = idPath != null ? idPath.getValue(document) : null;
+			addIndex(index, type, id != null ? id.toString() : null, document);
+		}
+		return this;
+	}
+
+	private void writeAction(String action, String index, String type, String id) throws IOException {
+		XContentBuilder builder = XContentFactory.contentBuilder(contentType, out);
+		builder.startObject().startObject(action);
+		if (index != null)
+			builder.field("_index").value(index);
+		if (type != null)
+			builder.field("_type").value(type);
+		if (id != null)
+			builder.field("_id").value(id);
+		builder.endObject().endObject();
+		builder.close();
+		out.writeByte(separator);
+		numberOfActions++;
+	}
+
+	/**
+	 * @return bulk body. Valid until builder is changed.
+	 */
+	public BytesReference bytes() {
+		return out.bytes();
+	}
+
+	/**
+	 * @return number of actions in the body
+	 */
+	public int numberOfActions() {
+		return numberOfActions;
+	}
+
+	/**
+	 * @return content type of the body
+	 */
+	public XContentType getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Clear body so builder may be reused.
+	 */
+	public void reset() {
+		out.reset();
+		numberOfActions = 0;
+	}
+
+}
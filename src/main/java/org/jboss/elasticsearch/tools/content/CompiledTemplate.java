@@ -0,0 +1,243 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.jboss.elasticsearch.tools.content.ValueUtils.IValueEncoder;
+
+/**
+ * Pattern with keys for replacement with values from data structure, parsed once into literal and key segments so it
+ * can be evaluated for each processed document without scanning the pattern again. Keys in dot notation are
+ * precompiled into {@link FieldPath}. Semantics are the same as for
+ * {@link ValueUtils#processStringValuePatternReplacement(String, Map, Object, char, char, IValueEncoder)}. Instances
+ * are immutable so may be shared by more threads.
+ *
+ * @author agent (agent at local)
+ */
+public final class CompiledTemplate {
+
+	/**
+	 * Max number of templates kept in cache used by {@link #getCached(String, char, char)}.
+	 */
+	public static final int CACHE_MAX_SIZE = 1000;
+
+	private static final Cache<CacheKey, CompiledTemplate> cache = CacheBuilder.newBuilder()
+			.maximumSize(CACHE_MAX_SIZE).build();
+
+	/**
+	 * Expected length of one replaced value used to presize output buffer.
+	 */
+	private static final int EXPECTED_VALUE_LENGTH = 16;
+
+	private final String pattern;
+
+	/**
+	 * Literal parts of pattern. <code>literals[i]</code> is before <code>keys[i]</code>, last one is after last key.
+	 */
+	private final String[] literals;
+
+	/**
+	 * Keys - <code>null</code> for {@link ValueUtils#PATTERN_KEY_ORIGINAL_VALUE}, {@link FieldPath} for key in dot
+	 * notation, String for simple key.
+	 */
+	private final Object[] keys;
+
+	private final int expectedLength;
+
+	private CompiledTemplate(String pattern, String[] literals, Object[] keys) {
+		this.pattern = pattern;
+		this.literals = literals;
+		this.keys = keys;
+		int len = keys.length * EXPECTED_VALUE_LENGTH;
+		for (String l : literals) {
+			len += l.length();
+		}
+		expectedLength = len;
+	}
+
+	/**
+	 * Compile pattern with keys enclosed in curly braces.
+	 *
+	 * @param pattern to compile
+	 * @return compiled template, null if pattern is null
+	 */
+	public static CompiledTemplate compile(String pattern) {
+		return compile(pattern, '{', '}');
+	}
+
+	/**
+	 * Compile pattern with keys enclosed by defined characters.
+	 *
+	 * @param pattern to compile
+	 * @param startKeyChar start character to look for keys
+	 * @param endKeyChar end character to look for keys
+	 * @return compiled template, null if pattern is null
+	 */
+	public static CompiledTemplate compile(String pattern, char startKeyChar, char endKeyChar) {
+		if (pattern == null)
+			return null;
+		List<String> literals = new ArrayList<String>();
+		List<Object> keys = new ArrayList<Object>();
+		StringBuilder literal = new StringBuilder(pattern.length());
+		int len = pattern.length();
+		int idx = 0;
+		while (idx < len) {
+			char ch = pattern.charAt(idx);
+			if (ch == startKeyChar) {
+				int end = pattern.indexOf(endKeyChar, idx + 1);
+				if (end < 0) {
+					// not closed brace is used as literal
+					literal.append(pattern, idx, len);
+					break;
+				}
+				String key = pattern.substring(idx + 1, end);
+				if (key.length() > 0) {
+					literals.add(literal.toString());
+					literal.setLength(0);
+					if (ValueUtils.PATTERN_KEY_ORIGINAL_VALUE.equals(key)) {
+						keys.add(null);
+					} else if (key.contains(".")) {
+						keys.add(FieldPath.compile(key));
+					} else {
+						keys.add(key);
+					}
+				}
+				idx = end + 1;
+			} else {
+				literal.append(ch);
+				idx++;
+			}
+		}
+		literals.add(literal.toString());
+		return new CompiledTemplate(pattern, literals.toArray(new String[literals.size()]), keys.toArray());
+	}
+
+	/**
+	 * Get compiled template from cache shared by whole JVM, compile it and put into cache if not there yet. Cache is
+	 * bounded to {@value #CACHE_MAX_SIZE} templates.
+	 *
+	 * @param pattern to get compiled template for
+	 * @param startKeyChar start character to look for keys
+	 * @param endKeyChar end character to look for keys
+	 * @return compiled template, null if pattern is null
+	 */
+	public static CompiledTemplate getCached(String pattern, char startKeyChar, char endKeyChar) {
+		if (pattern == null)
+			return null;
+		CacheKey key = new CacheKey(pattern, startKeyChar, endKeyChar);
+		CompiledTemplate ret = cache.getIfPresent(key);
+		if (ret == null) {
+			ret = compile(pattern, startKeyChar, endKeyChar);
+			cache.put(key, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * Get pattern this template is compiled from.
+	 *
+	 * @return pattern
+	 */
+	public String getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * Check if template contains some keys for replacement.
+	 *
+	 * @return true if there is at least one key in template
+	 */
+	public boolean hasKeys() {
+		return keys.length > 0;
+	}
+
+	/**
+	 * Replace keys in template with values from passed data structure.
+	 *
+	 * @param data to get replacement values from
+	 * @param originalValue used for {@value ValueUtils#PATTERN_KEY_ORIGINAL_VALUE} key
+	 * @return value with replaced keys
+	 * @see ValueUtils#processStringValuePatternReplacement(String, Map, Object)
+	 */
+	public String process(Map<String, Object> data, Object originalValue) {
+		return process(data, originalValue, null);
+	}
+
+	/**
+	 * Replace keys in template with values from passed data structure.
+	 *
+	 * @param data to get replacement values from
+	 * @param originalValue used for {@value ValueUtils#PATTERN_KEY_ORIGINAL_VALUE} key
+	 * @param encoder which may be used to encode values before appending. Common <code>toString()</code> is used if not
+	 *          provided.
+	 * @return value with replaced keys
+	 * @see ValueUtils#processStringValuePatternReplacement(String, Map, Object, char, char, IValueEncoder)
+	 */
+	public String process(Map<String, Object> data, Object originalValue, IValueEncoder encoder) {
+		if (keys.length == 0)
+			return literals[0];
+		StringBuilder finalContent = new StringBuilder(expectedLength);
+		for (int i = 0; i < keys.length; i++) {
+			finalContent.append(literals[i]);
+			Object key = keys[i];
+			Object v = null;
+			if (key == null) {
+				v = originalValue;
+			} else if (data != null) {
+				if (key instanceof FieldPath) {
+					v = ((FieldPath) key).getValue(data);
+				} else {
+					v = data.get(key);
+				}
+			}
+			if (v != null) {
+				if (encoder != null) {
+					finalContent.append(encoder.encode(v));
+				} else {
+					finalContent.append(v.toString());
+				}
+			}
+		}
+		finalContent.append(literals[keys.length]);
+		return finalContent.toString();
+	}
+
+	@Override
+	public String toString() {
+		return pattern;
+	}
+
+	private static final class CacheKey {
+		final String pattern;
+		final char startKeyChar;
+		final char endKeyChar;
+
+		CacheKey(String pattern, char startKeyChar, char endKeyChar) {
+			this.pattern = pattern;
+			this.startKeyChar = startKeyChar;
+			this.endKeyChar = endKeyChar;
+		}
+
+		@Override
+		public int hashCode() {
+			return (pattern.hashCode() * 31 + startKeyChar) * 31 + endKeyChar;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof CacheKey))
+				return false;
+			CacheKey o = (CacheKey) obj;
+			return startKeyChar == o.startKeyChar && endKeyChar == o.endKeyChar && pattern.equals(o.pattern);
+		}
+	}
+
+}
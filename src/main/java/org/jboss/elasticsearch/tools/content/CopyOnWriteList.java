@@ -0,0 +1,132 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Copy-on-write {@link List} used for structures created by {@link StructureUtils#getACopyOnWriteStructure(Object)}.
+ * Source List is shared until this List is changed, then the list is copied into own {@link ArrayList}. Nested Lists
+ * and Maps are returned wrapped into copy-on-write instances again, so only levels on the path to the changed value are
+ * copied. Source List is never changed through this List. Source List which is not {@link RandomAccess} is copied on
+ * first read.
+ * <p>
+ * Not thread safe, same as other Lists used for documents.
+ *
+ * @author agent (agent at local)
+ * @see CopyOnWriteMap
+ */
+public class CopyOnWriteList extends AbstractList<Object> implements RandomAccess {
+
+	private final List<Object> source;
+
+	private List<Object> own;
+
+	/**
+	 * Copy-on-write wrappers of nested Lists and Maps obtained from this level before it is copied.
+	 */
+	private Object[] children;
+
+	CopyOnWriteList(List<Object> source) {
+		this.source = source;
+	}
+
+	/**
+	 * @return true if this level of structure has been copied already, false if it still shares source List.
+	 */
+	public boolean isCopied() {
+		return own != null;
+	}
+
+	/**
+	 * Copy this level of structure if not copied yet.
+	 *
+	 * @return own copy of this level
+	 */
+	protected List<Object> materialize() {
+		if (own == null) {
+			List<Object> l = new ArrayList<Object>(source.size());
+			int i = 0;
+			for (Object value : source) {
+				l.add(child(i++, value));
+			}
+			own = l;
+			children = null;
+		}
+		return own;
+	}
+
+	@Override
+	public Object get(int index) {
+		if (own != null)
+			return own.get(index);
+		if (!(source instanceof RandomAccess))
+			return materialize().get(index);
+		return child(index, source.get(index));
+	}
+
+	/**
+	 * Get value from source List to be returned from this List, nested Lists and Maps are wrapped to be copy-on-write
+	 * also.
+	 *
+	 * @param index of value
+	 * @param value from source List
+	 * @return value to be returned
+	 */
+	private Object child(int index, Object value) {
+		if (!(value instanceof Map || value instanceof List))
+			return value;
+		if (children == null)
+			children = new Object[source.size()];
+		Object child = children[index];
+		if (child == null) {
+			child = StructureUtils.getACopyOnWriteStructure(value);
+			children[index] = child;
+		}
+		return child;
+	}
+
+	@Override
+	public int size() {
+		return own != null ? own.size() : source.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return own != null ? own.isEmpty() : source.isEmpty();
+	}
+
+	@Override
+	public Object set(int index, Object element) {
+		return materialize().set(index, element);
+	}
+
+	@Override
+	public void add(int index, Object element) {
+		materialize().add(index, element);
+	}
+
+	@Override
+	public boolean add(Object element) {
+		return materialize().add(element);
+	}
+
+	@Override
+	public Object remove(int index) {
+		return materialize().remove(index);
+	}
+
+	@Override
+	public void clear() {
+		own = new ArrayList<Object>();
+		children = null;
+	}
+
+}
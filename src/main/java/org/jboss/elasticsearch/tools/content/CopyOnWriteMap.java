@@ -0,0 +1,223 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copy-on-write {@link Map} used for structures created by {@link StructureUtils#getACopyOnWriteStructure(Object)}.
+ * Source Map is shared until this Map is changed, then the level is copied into own {@link LinkedHashMap}. Nested Lists
+ * and Maps are returned wrapped into copy-on-write instances again, so only levels on the path to the changed value are
+ * copied when document is changed eg. by {@link StructureUtils#putValueIntoMapOfMaps(Map, String, Object)} or
+ * {@link StructureUtils#removeValueFromMapOfMaps(Map, String)}. Source Map is never changed through this Map.
+ * <p>
+ * Not thread safe, same as other Maps used for documents.
+ *
+ * @author agent (agent at local)
+ * @see CopyOnWriteList
+ */
+public class CopyOnWriteMap extends AbstractMap<String, Object> {
+
+	private final Map<String, Object> source;
+
+	private Map<String, Object> own;
+
+	/**
+	 * Copy-on-write wrappers of nested Lists and Maps obtained from this level before it is copied.
+	 */
+	private Map<Object, Object> children;
+
+	CopyOnWriteMap(Map<String, Object> source) {
+		this.source = source;
+	}
+
+	/**
+	 * @return true if this level of structure has been copied already, false if it still shares source Map.
+	 */
+	public boolean isCopied() {
+		return own != null;
+	}
+
+	/**
+	 * Copy this level of structure if not copied yet.
+	 *
+	 * @return own copy of this level
+	 */
+	protected Map<String, Object> materialize() {
+		if (own == null) {
+			Map<String, Object> m = new LinkedHashMap<String, Object>(StructureUtils.mapCapacity(source.size()));
+			for (Map.Entry<String, Object> entry : source.entrySet()) {
+				m.put(entry.getKey(), child(entry.getKey(), entry.getValue()));
+			}
+			own = m;
+			children = null;
+		}
+		return own;
+	}
+
+	/**
+	 * Get value from source Map to be returned from this Map, nested Lists and Maps are wrapped to be copy-on-write also.
+	 *
+	 * @param key of value
+	 * @param value from source Map
+	 * @return value to be returned
+	 */
+	private Object child(Object key, Object value) {
+		if (!(value instanceof Map || value instanceof List))
+			return value;
+		if (children == null)
+			children = new HashMap<Object, Object>();
+		Object child = children.get(key);
+		if (child == null) {
+			child = StructureUtils.getACopyOnWriteStructure(value);
+			children.put(key, child);
+		}
+		return child;
+	}
+
+	@Override
+	public Object get(Object key) {
+		if (own != null)
+			return own.get(key);
+		return child(key, source.get(key));
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return own != null ? own.containsKey(key) : source.containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		return own != null ? own.size() : source.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return own != null ? own.isEmpty() : source.isEmpty();
+	}
+
+	@Override
+	public Object put(String key, Object value) {
+		return materialize().put(key, value);
+	}
+
+	@Override
+	public Object remove(Object key) {
+		if (own == null && !source.containsKey(key))
+			return null;
+		return materialize().remove(key);
+	}
+
+	@Override
+	public void clear() {
+		own = new LinkedHashMap<String, Object>();
+		children = null;
+	}
+
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet() {
+		if (own != null)
+			return own.entrySet();
+		return new EntrySet();
+	}
+
+	/**
+	 * Entry set iterating over source Map as long as this level is not copied.
+	 */
+	private final class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+
+		@Override
+		public int size() {
+			return CopyOnWriteMap.this.size();
+		}
+
+		@Override
+		public Iterator<Map.Entry<String, Object>> iterator() {
+			if (own != null)
+				return own.entrySet().iterator();
+			final Iterator<String> keys = source.keySet().iterator();
+			return new Iterator<Map.Entry<String, Object>>() {
+
+				private String last;
+
+				@Override
+				public boolean hasNext() {
+					return keys.hasNext();
+				}
+
+				@Override
+				public Map.Entry<String, Object> next() {
+					last = keys.next();
+					return new Entry(last);
+				}
+
+				@Override
+				public void remove() {
+					if (last == null)
+						throw new IllegalStateException();
+					CopyOnWriteMap.this.remove(last);
+					last = null;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Entry reading and writing its value through the enclosing Map.
+	 */
+	private final class Entry implements Map.Entry<String, Object> {
+
+		private final String key;
+
+		Entry(String key) {
+			this.key = key;
+		}
+
+		@Override
+		public String getKey() {
+			return key;
+		}
+
+		@Override
+		public Object getValue() {
+			return get(key);
+		}
+
+		@Override
+		public Object setValue(Object value) {
+			return put(key, value);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			Object value = getValue();
+			return key.equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			Object value = getValue();
+			return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + getValue();
+		}
+	}
+
+}
@@ -0,0 +1,174 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+
+/**
+ * Default {@link PreprocessorMetricsRegistry} keeping {@link PreprocessorStatistics} in memory. Statistics may be
+ * exposed as JMX MBeans named
+ * <code>org.jboss.elasticsearch.tools.content:type=PreprocessorStatistics,registry=&lt;registry name&gt;,name=&lt;preprocessor name&gt;</code>
+ * by {@link #registerMBeans()}.
+ *
+ * @author agent (agent at local)
+ */
+public class DefaultPreprocessorMetricsRegistry implements PreprocessorMetricsRegistry {
+
+	private static final ESLogger logger = Loggers.getLogger(DefaultPreprocessorMetricsRegistry.class);
+
+	public static final String JMX_DOMAIN = "org.jboss.elasticsearch.tools.content";
+
+	protected final String name;
+
+	protected final ConcurrentMap<String, PreprocessorStatistics> statistics = new ConcurrentHashMap<String, PreprocessorStatistics>();
+
+	/**
+	 * MBean server statistics are registered into, null if not registered.
+	 */
+	protected MBeanServer mbeanServer;
+
+	/**
+	 * Create registry.
+	 *
+	 * @param name of registry used to distinguish more registries in JMX (eg. one per chain), must be defined
+	 */
+	public DefaultPreprocessorMetricsRegistry(String name) {
+		if (ValueUtils.isEmpty(name))
+			throw new IllegalArgumentException("name must be defined");
+		this.name = name;
+	}
+
+	@Override
+	public PreprocessorStatistics getMetrics(String preprocessorName) {
+		PreprocessorStatistics ret = statistics.get(preprocessorName);
+		if (ret == null) {
+			PreprocessorStatistics created = new PreprocessorStatistics(preprocessorName);
+			ret = statistics.putIfAbsent(preprocessorName, created);
+			if (ret == null) {
+				ret = created;
+				synchronized (this) {
+					if (mbeanServer != null)
+						registerMBean(mbeanServer, ret);
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Get statistics of all preprocessors from this registry.
+	 *
+	 * @return unmodifiable collection of statistics
+	 */
+	public Collection<PreprocessorStatistics> getAllMetrics() {
+		return Collections.unmodifiableCollection(statistics.values());
+	}
+
+	/**
+	 * Reset statistics of all preprocessors from this registry.
+	 */
+	public void reset() {
+		for (PreprocessorStatistics s : statistics.values()) {
+			s.reset();
+		}
+	}
+
+	/**
+	 * Register statistics of all preprocessors as MBeans into platform MBean server. Statistics created later are
+	 * registered too.
+	 *
+	 * @see #unregisterMBeans()
+	 */
+	public void registerMBeans() {
+		registerMBeans(ManagementFactory.getPlatformMBeanServer());
+	}
+
+	/**
+	 * Register statistics of all preprocessors as MBeans into given MBean server. Statistics created later are registered
+	 * too.
+	 *
+	 * @param server to register MBeans into
+	 * @see #unregisterMBeans()
+	 */
+	public synchronized void registerMBeans(MBeanServer server) {
+		if (server == null)
+			throw new IllegalArgumentException("server must be defined");
+		if (mbeanServer != null)
+			unregisterMBeans();
+		mbeanServer = server;
+		for (PreprocessorStatistics s : statistics.values()) {
+			registerMBean(server, s);
+		}
+	}
+
+	/**
+	 * Unregister MBeans registered by {@link #registerMBeans(MBeanServer)}.
+	 */
+	public synchronized void unregisterMBeans() {
+		if (mbeanServer == null)
+			return;
+		List<PreprocessorStatistics> all = new ArrayList<PreprocessorStatistics>(statistics.values());
+		for (PreprocessorStatistics s : all) {
+			try {
+				ObjectName on = getObjectName(s.getName());
+				if (mbeanServer.isRegistered(on))
+					mbeanServer.unregisterMBean(on);
+			} catch (JMException e) {
+				logger.warn("Unable to unregister MBean for preprocessor '{}': {}", s.getName(), e.getMessage());
+			}
+		}
+		mbeanServer = null;
+	}
+
+	private void registerMBean(MBeanServer server, PreprocessorStatistics s) {
+		try {
+			ObjectName on = getObjectName(s.getName());
+			if (server.isRegistered(on))
+				server.unregisterMBean(on);
+			server.registerMBean(s, on);
+		} catch (JMException e) {
+			logger.warn("Unable to register MBean for preprocessor '{}': {}", s.getName(), e.getMessage());
+		}
+	}
+
+	/**
+	 * Get JMX name of MBean for preprocessor statistics.
+	 *
+	 * @param preprocessorName name of preprocessor
+	 * @return JMX name
+	 * @throws JMException if name is not valid
+	 */
+	public ObjectName getObjectName(String preprocessorName) throws JMException {
+		return new ObjectName(JMX_DOMAIN + ":type=PreprocessorStatistics,registry=" + ObjectName.quote(name) + ",name="
+				+ ObjectName.quote(preprocessorName));
+	}
+
+	/**
+	 * @return name of registry
+	 */
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return "DefaultPreprocessorMetricsRegistry [name=" + name + ", statistics=" + statistics.values() + "]";
+	}
+
+}
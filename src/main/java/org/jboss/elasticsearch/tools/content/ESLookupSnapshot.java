@@ -0,0 +1,497 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+
+/**
+ * Read only snapshot of lookup results stored in local memory mapped file, used by {@link ESLookupValuePreprocessor}
+ * to serve lookups without requests to Elasticsearch cluster. Snapshot contains entry for each search field and value
+ * of this field found in lookup index, with number of documents containing this value and values of result fields
+ * from the first of them. Entries are found over open addressing hash table stored in the file, so only header is read
+ * into heap and lookup reads only the entry it needs.
+ * <p>
+ * File layout (all numbers big endian):
+ *
+ * <pre>
+ * int magic, int version
+ * int descriptor length, UTF strings of descriptor (index name, type, search fields and result fields)
+ * int entries count, int table capacity
+ * int[table capacity] entry offsets, 0 for free slot
+ * entries: int hash, byte search field index, int hits, int key length, key UTF-8 bytes, int values length, values
+ * </pre>
+ *
+ * Values of result fields are serialized by {@link BytesStreamOutput#writeGenericValue(Object)}, each preceded by
+ * boolean flag whether field is present in found document.
+ * <p>
+ * Use {@link Writer} to create snapshot file and {@link #open(File)} to read it. Instances are immutable and thread
+ * safe.
+ *
+ * @author agent (agent at local)
+ * @see ESLookupValuePreprocessor
+ */
+public final class ESLookupSnapshot {
+
+	private static final int MAGIC = 0x53434c53;
+	private static final int VERSION = 1;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final List<String> descriptor;
+	private final ByteBuffer buffer;
+	private final int size;
+	private final int tableStart;
+	private final int mask;
+
+	private ESLookupSnapshot(File file, List<String> descriptor, ByteBuffer buffer, int size, int tableStart,
+			int capacity) {
+		this.file = file;
+		this.descriptor = descriptor;
+		this.buffer = buffer;
+		this.size = size;
+		this.tableStart = tableStart;
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Open snapshot file. File is mapped into memory read only.
+	 *
+	 * @param file to open
+	 * @return snapshot
+	 * @throws IOException if file can't be read or is not valid snapshot
+	 */
+	public static ESLookupSnapshot open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedByteBuffer buffer;
+		try {
+			if (raf.length() > Integer.MAX_VALUE)
+				throw new IOException("Snapshot file is too big");
+			// mapping stays valid after channel is closed
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+		try {
+			if (buffer.getInt(0) != MAGIC)
+				throw new IOException("File is not lookup snapshot");
+			if (buffer.getInt(4) != VERSION)
+				throw new IOException("Unsupported lookup snapshot version " + buffer.getInt(4));
+			int descriptorLength = buffer.getInt(8);
+			byte[] d = new byte[descriptorLength];
+			ByteBuffer b = buffer.duplicate();
+			b.position(12);
+			b.get(d);
+			List<String> descriptor = new ArrayList<String>();
+			BytesStreamInput in = new BytesStreamInput(d, false);
+			int count = in.readVInt();
+			for (int i = 0; i < count; i++)
+				descriptor.add(in.readString());
+			int pos = 12 + descriptorLength;
+			int size = buffer.getInt(pos);
+			int capacity = buffer.getInt(pos + 4);
+			if (Integer.bitCount(capacity) != 1 || pos + 8 + capacity * 4L > buffer.limit())
+				throw new IOException("Invalid lookup snapshot table");
+			return new ESLookupSnapshot(file, Collections.unmodifiableList(descriptor), buffer, size, pos + 8, capacity);
+		} catch (RuntimeException e) {
+			throw new IOException("Invalid lookup snapshot file: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Get entry for value of search field.
+	 *
+	 * @param searchField index of search field in descriptor of {@link Writer} snapshot was created by
+	 * @param key value of search field
+	 * @return entry or null if value of search field is not present in snapshot
+	 * @throws IOException if values in entry can't be read
+	 */
+	public Entry get(int searchField, String key) throws IOException {
+		if (key == null)
+			return null;
+		int h = hash(searchField, key);
+		byte[] keyBytes = null;
+		for (int i = spread(h) & mask;; i = (i + 1) & mask) {
+			int offset = buffer.getInt(tableStart + i * 4);
+			if (offset == 0)
+				return null;
+			if (buffer.getInt(offset) != h || buffer.get(offset + 4) != searchField)
+				continue;
+			if (keyBytes == null)
+				keyBytes = key.getBytes(UTF_8);
+			int keyLength = buffer.getInt(offset + 9);
+			if (keyLength != keyBytes.length)
+				continue;
+			int keyStart = offset + 13;
+			boolean equal = true;
+			for (int k = 0; k < keyLength && equal; k++) {
+				equal = buffer.get(keyStart + k) == keyBytes[k];
+			}
+			if (equal)
+				return readEntry(offset, keyStart + keyLength);
+		}
+	}
+
+	private Entry readEntry(int offset, int valuesStart) throws IOException {
+		byte[] v = new byte[buffer.getInt(valuesStart)];
+		ByteBuffer b = buffer.duplicate();
+		b.position(valuesStart + 4);
+		b.get(v);
+		BytesStreamInput in = new BytesStreamInput(v, false);
+		int count = in.readVInt();
+		boolean[] present = new boolean[count];
+		Object[] values = new Object[count];
+		for (int i = 0; i < count; i++) {
+			present[i] = in.readBoolean();
+			if (present[i])
+				values[i] = in.readGenericValue();
+		}
+		return new Entry(buffer.getInt(offset + 5), present, values);
+	}
+
+	private static int hash(int searchField, String key) {
+		return 31 * key.hashCode() + searchField;
+	}
+
+	private static int spread(int h) {
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @return strings describing lookup snapshot was created for, see {@link Writer#Writer(List)}
+	 */
+	public List<String> getDescriptor() {
+		return descriptor;
+	}
+
+	/**
+	 * @return number of entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public String toString() {
+		return "ESLookupSnapshot [file=" + file + ", size=" + size + "]";
+	}
+
+	/**
+	 * Entry of snapshot for one value of search field.
+	 */
+	public static final class Entry {
+		private final int hits;
+		private final boolean[] present;
+		private final Object[] values;
+
+		Entry(int hits, boolean[] present, Object[] values) {
+			this.hits = hits;
+			this.present = present;
+			this.values = values;
+		}
+
+		/**
+		 * @return number of documents in lookup index containing value of search field
+		 */
+		public int getHits() {
+			return hits;
+		}
+
+		/**
+		 * @param resultField index of result field
+		 * @return true if result field is present in the first found document
+		 */
+		public boolean isPresent(int resultField) {
+			return present[resultField];
+		}
+
+		/**
+		 * @param resultField index of result field
+		 * @return value of result field from the first found document
+		 */
+		public Object getValue(int resultField) {
+			return values[resultField];
+		}
+	}
+
+	/**
+	 * Writer of snapshot file. Entries are streamed into temporary data file as they are added, only hash and offset of
+	 * each entry are kept in heap to find duplicates and build hash table of snapshot file by {@link #write(File)}.
+	 * Temporary data file is deleted by {@link #write(File)} or {@link #close()}, so one of them must be always called.
+	 * Not thread safe.
+	 */
+	public static final class Writer {
+
+		private final List<String> descriptor;
+		private File dataFile;
+		private RandomAccessFile data;
+		private DataOutputStream dataOut;
+		private long dataLength;
+		private long dataFlushed;
+		private int size;
+		private int[] hashes = new int[16];
+		private int[] offsets = new int[16];
+		private int[] hits = new int[16];
+		/**
+		 * Open addressing hash table over added entries, contains entry index + 1 or 0 for free slot.
+		 */
+		private int[] index = new int[32];
+		private boolean closed;
+
+		/**
+		 * @param descriptor strings describing lookup snapshot is created for, eg. index name and fields, so it can be
+		 *          checked later if snapshot is usable for lookup with actual configuration.
+		 */
+		public Writer(List<String> descriptor) {
+			this.descriptor = new ArrayList<String>(descriptor);
+		}
+
+		/**
+		 * Add entry for value of search field found in lookup index document. If entry for the value already exists then
+		 * only number of hits is increased, so values from the first document are kept.
+		 *
+		 * @param searchField index of search field
+		 * @param key value of search field
+		 * @param present flags whether result fields are present in document
+		 * @param values of result fields in document
+		 * @throws IOException if values can't be serialized or temporary data file can't be written
+		 * @throws IllegalArgumentException if searchField index is out of range 0-127
+		 */
+		public void add(int searchField, String key, boolean[] present, Object[] values) throws IOException {
+			if (searchField < 0 || searchField > Byte.MAX_VALUE)
+				throw new IllegalArgumentException("searchField index out of range: " + searchField);
+			if (closed)
+				throw new IllegalStateException("Lookup snapshot writer is closed");
+			int h = hash(searchField, key);
+			byte[] keyBytes = key.getBytes(UTF_8);
+			int mask = index.length - 1;
+			int slot = spread(h) & mask;
+			for (; index[slot] != 0; slot = (slot + 1) & mask) {
+				int e = index[slot] - 1;
+				if (hashes[e] == h && isEntryFor(offsets[e], searchField, keyBytes)) {
+					hits[e]++;
+					return;
+				}
+			}
+
+			BytesStreamOutput out = new BytesStreamOutput();
+			out.writeVInt(values.length);
+			for (int i = 0; i < values.length; i++) {
+				out.writeBoolean(present[i]);
+				if (present[i])
+					out.writeGenericValue(values[i]);
+			}
+			byte[] valueBytes = out.bytes().toBytes();
+			long length = 17L + keyBytes.length + valueBytes.length;
+			if (dataLength + length > Integer.MAX_VALUE)
+				throw new IOException("Lookup snapshot is too big");
+			if (dataOut == null)
+				openDataFile();
+			dataOut.writeInt(h);
+			dataOut.writeByte(searchField);
+			dataOut.writeInt(1); // real number of hits is patched in by write()
+			dataOut.writeInt(keyBytes.length);
+			dataOut.write(keyBytes);
+			dataOut.writeInt(valueBytes.length);
+			dataOut.write(valueBytes);
+
+			if (size == hashes.length) {
+				hashes = Arrays.copyOf(hashes, size * 2);
+				offsets = Arrays.copyOf(offsets, size * 2);
+				hits = Arrays.copyOf(hits, size * 2);
+			}
+			hashes[size] = h;
+			offsets[size] = (int) dataLength;
+			hits[size] = 1;
+			index[slot] = ++size;
+			dataLength += length;
+			if (size * 4 > index.length * 3)
+				rehash();
+		}
+
+		private void openDataFile() throws IOException {
+			dataFile = File.createTempFile("es_lookup_snapshot", ".data");
+			data = new RandomAccessFile(dataFile, "rw");
+			dataOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(data.getFD()), 65536));
+		}
+
+		/**
+		 * Check if entry already written into temporary data file is for given search field and key.
+		 */
+		private boolean isEntryFor(int offset, int searchField, byte[] keyBytes) throws IOException {
+			if (offset + 13L + keyBytes.length > dataFlushed) {
+				dataOut.flush();
+				dataFlushed = dataLength;
+			}
+			ByteBuffer header = ByteBuffer.allocate(13);
+			readFully(header, offset);
+			if (header.get(4) != searchField || header.getInt(9) != keyBytes.length)
+				return false;
+			ByteBuffer k = ByteBuffer.allocate(keyBytes.length);
+			readFully(k, offset + 13);
+			return Arrays.equals(k.array(), keyBytes);
+		}
+
+		private void readFully(ByteBuffer b, long position) throws IOException {
+			FileChannel ch = data.getChannel();
+			while (b.hasRemaining()) {
+				if (ch.read(b, position + b.position()) < 0)
+					throw new IOException("Unexpected end of lookup snapshot data file " + dataFile);
+			}
+		}
+
+		private void rehash() {
+			int[] newIndex = new int[index.length * 2];
+			int mask = newIndex.length - 1;
+			for (int e = 0; e < size; e++) {
+				int slot = spread(hashes[e]) & mask;
+				while (newIndex[slot] != 0)
+					slot = (slot + 1) & mask;
+				newIndex[slot] = e + 1;
+			}
+			index = newIndex;
+		}
+
+		/**
+		 * @return number of entries added
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Write snapshot file and delete temporary data file. File is written into temporary file in the same directory
+		 * first and then moved to the final name, so file is replaced atomically for readers.
+		 *
+		 * @param file to write
+		 * @throws IOException if file can't be written
+		 */
+		public void write(File file) throws IOException {
+			if (closed)
+				throw new IllegalStateException("Lookup snapshot writer is closed");
+			try {
+				BytesStreamOutput d = new BytesStreamOutput();
+				d.writeVInt(descriptor.size());
+				for (String s : descriptor)
+					d.writeString(s);
+				byte[] descriptorBytes = d.bytes().toBytes();
+
+				int capacity = 2;
+				while (capacity * 3L < size * 4L + 1)
+					capacity <<= 1;
+				int tableStart = 12 + descriptorBytes.length + 8;
+				long dataStart = tableStart + capacity * 4L;
+				if (dataStart + dataLength > Integer.MAX_VALUE)
+					throw new IOException("Lookup snapshot is too big");
+				int[] table = new int[capacity];
+				for (int e = 0; e < size; e++) {
+					int i = spread(hashes[e]) & (capacity - 1);
+					while (table[i] != 0)
+						i = (i + 1) & (capacity - 1);
+					table[i] = (int) (dataStart + offsets[e]);
+				}
+				if (dataOut != null)
+					dataOut.flush();
+
+				File dir = file.getAbsoluteFile().getParentFile();
+				if (dir != null && !dir.exists() && !dir.mkdirs())
+					throw new IOException("Can't create directory " + dir);
+				File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+				try {
+					FileOutputStream fos = new FileOutputStream(tmp);
+					try {
+						DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 65536));
+						out.writeInt(MAGIC);
+						out.writeInt(VERSION);
+						out.writeInt(descriptorBytes.length);
+						out.write(descriptorBytes);
+						out.writeInt(size);
+						out.writeInt(capacity);
+						for (int t : table)
+							out.writeInt(t);
+						out.flush();
+						table = null;
+						FileChannel ch = fos.getChannel();
+						if (data != null) {
+							FileChannel src = data.getChannel();
+							for (long pos = 0; pos < dataLength;) {
+								pos += src.transferTo(pos, dataLength - pos, ch);
+							}
+						}
+						ByteBuffer b = ByteBuffer.allocate(4);
+						for (int e = 0; e < size; e++) {
+							if (hits[e] > 1) {
+								b.clear();
+								b.putInt(0, hits[e]);
+								long pos = dataStart + offsets[e] + 5;
+								while (b.hasRemaining())
+									pos += ch.write(b, pos);
+							}
+						}
+					} finally {
+						fos.close();
+					}
+					try {
+						Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+								StandardCopyOption.ATOMIC_MOVE);
+					} catch (AtomicMoveNotSupportedException e) {
+						Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					}
+				} finally {
+					if (tmp.exists())
+						tmp.delete();
+				}
+			} finally {
+				close();
+			}
+		}
+
+		/**
+		 * Delete temporary data file without writing snapshot. Called by {@link #write(File)} too, so it is needed only if
+		 * snapshot creation is aborted.
+		 */
+		public void close() {
+			closed = true;
+			if (data != null) {
+				try {
+					data.close();
+				} catch (IOException e) {
+					// nothing to do, file is deleted anyway
+				}
+				data = null;
+				dataOut = null;
+			}
+			if (dataFile != null) {
+				dataFile.delete();
+				dataFile = null;
+			}
+		}
+	}
+
+}
@@ -5,16 +5,33 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.action.search.MultiSearchRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheStats;
 import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
 import org.elasticsearch.index.query.FilterBuilders;
 import org.elasticsearch.index.query.QueryBuilders;
@@ -73,7 +90,23 @@ import org.elasticsearch.search.SearchHitField;
  * <li><code>source_bases</code> - list of fields in source data which are used as bases for lookups evaluation. If
  * defined then lookup is performed for each of this fields, <code>source_field</code>, <code>target_field</code> and
  * keys in <code>value_default</code> and<code>source_value</code> are resolved relatively against this base. Base must
- * provide object or list of objects. See example later. </ul>
+ * provide object or list of objects. See example later.
+ * <li><code>cache_max_size</code> - optional max number of lookup results cached across processed documents, so same
+ * value is not looked up in ES index again for each document. Cache is not used if not set or 0.
+ * <li><code>cache_ttl</code> - optional time to live of lookup result in cache, eg. <code>10m</code>. Number means
+ * milliseconds. Results do not expire if not set or 0.
+ * <li><code>cache_negative</code> - optional flag whether cache results for values not found in index also. Default is
+ * <code>true</code>. Results of failed searches are never cached.
+ * <li><code>snapshot_file</code> - optional path to local file used to snapshot lookup index. If set then all values of
+ * <code>idx_search_field</code> fields with values of <code>result_mapping</code> fields are read from lookup index into
+ * this memory mapped file first time lookup is necessary (or existing file from previous run is used if created for
+ * same configuration and not older than <code>snapshot_refresh</code>), and lookups are served from it without any
+ * request to Elasticsearch cluster then. Values are compared exactly (as with <code>keyword</code> analyzer) in this
+ * case. Useful for lookup data which change rarely. Lookups are searched in ES as usual while snapshot is created or
+ * if it can't be created (creation is retried after {@link #SNAPSHOT_RETRY_DELAY} then). Call {@link #close()} to stop
+ * snapshot refresh and release snapshot when preprocessor is not used anymore.
+ * <li><code>snapshot_refresh</code> - optional interval of snapshot refresh, eg. <code>1d</code>. Number means
+ * milliseconds. Snapshot is refreshed only on demand by {@link #refreshSnapshot()} if not set or 0.</ul>
  * 
  * 
  * Example of configuration for this preprocessor for lookup of multiple values of same structure:
@@ -184,11 +217,17 @@ import org.elasticsearch.search.SearchHitField;
  *  }
  * </pre>
  * 
+ * All distinct values from source field containing list of values are looked up using one multi search request. If
+ * preprocessor is used in {@link PreprocessorChain#preprocessBatch(List, List)} then all distinct values from the whole
+ * batch are looked up this way.
+ * 
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  */
+@ThreadSafe
 public class ESLookupValuePreprocessor extends
-		StructuredContentPreprocessorWithSourceBasesBase<ESLookupValuePreprocessor.LookupContenxt> {
+		StructuredContentPreprocessorWithSourceBasesBase<ESLookupValuePreprocessor.LookupContenxt> implements
+		StructuredContentBatchPreprocessor, Closeable {
 
 	protected static final String CFG_index_name = "index_name";
 	protected static final String CFG_index_type = "index_type";
@@ -200,6 +239,24 @@ public class ESLookupValuePreprocessor extends
 	protected static final String CFG_ignore_multiple_results = "result_multiple_ignore";
 	protected static final String CFG_target_field = "target_field";
 	protected static final String CFG_value_default = "value_default";
+	protected static final String CFG_cache_negative = "cache_negative";
+	protected static final String CFG_snapshot_file = "snapshot_file";
+	protected static final String CFG_snapshot_refresh = "snapshot_refresh";
+
+	/**
+	 * Max number of values searched by one multi search request.
+	 */
+	protected static final int MULTI_SEARCH_MAX_VALUES = 100;
+
+	/**
+	 * Number of documents read from lookup index by one scroll request when snapshot is created.
+	 */
+	protected static final int SNAPSHOT_SCROLL_SIZE = 500;
+
+	/**
+	 * Delay in millis after failed snapshot creation before it is tried again by lookup.
+	 */
+	protected static final long SNAPSHOT_RETRY_DELAY = 60 * 1000L;
 
 	protected String indexName;
 	protected String indexType;
@@ -208,6 +265,34 @@ public class ESLookupValuePreprocessor extends
 	protected List<String> idxSearchField;
 	protected List<Map<String, String>> resultMapping;
 	protected boolean ignoreMultipleResults = false;
+	protected FieldPath sourceFieldPath;
+	protected CompiledTemplate sourceValueTemplate;
+	/**
+	 * Compiled paths of <code>target_field</code>s from {@link #resultMapping}, with target field names as keys.
+	 */
+	protected Map<String, FieldPath> targetFieldPaths;
+	/**
+	 * Compiled <code>value_default</code> for each record of {@link #resultMapping}, null if not configured.
+	 */
+	protected CompiledTemplate[] defaultValueTemplates;
+	protected Cache<Object, LookupResult> lookupCache;
+	/**
+	 * Results of multi search request for batch processed by current thread in {@link #preprocessBatch(List, List)}.
+	 */
+	private final ThreadLocal<Map<Object, LookupResult>> batchResults = new ThreadLocal<Map<Object, LookupResult>>();
+	protected boolean cacheNegative = true;
+	protected File snapshotFile;
+	protected TimeValue snapshotRefresh;
+	protected volatile ESLookupSnapshot snapshot;
+	/**
+	 * Time in millis before which snapshot creation is not tried again by lookup after it failed.
+	 */
+	private volatile long snapshotRetryAfter = 0;
+	/**
+	 * Set while snapshot is opened or created by lookup, so other lookups search ES instead of waiting for it.
+	 */
+	private final AtomicBoolean snapshotLoading = new AtomicBoolean();
+	private ScheduledThreadPoolExecutor snapshotRefresher;
 
 	@SuppressWarnings("unchecked")
 	@Override
@@ -225,6 +310,9 @@ public class ESLookupValuePreprocessor extends
 		if (ValueUtils.isEmpty(sourceField)) {
 			sourceField = null;
 			sourceValuePattern = XContentMapValues.nodeStringValue(settings.get(CFG_source_value), null);
+			sourceValueTemplate = CompiledTemplate.compile(sourceValuePattern);
+		} else {
+			sourceFieldPath = FieldPath.compile(sourceField);
 		}
 		if (ValueUtils.isEmpty(sourceField) && ValueUtils.isEmpty(sourceValuePattern)) {
 			throw new SettingsException("At least one of 'settings/" + CFG_source_field + "' or 'settings/"
@@ -232,9 +320,72 @@ public class ESLookupValuePreprocessor extends
 		}
 		resultMapping = (List<Map<String, String>>) settings.get(CFG_result_mapping);
 		validateResultMappingConfiguration(resultMapping, CFG_result_mapping);
+		Map<String, FieldPath> paths = new HashMap<String, FieldPath>();
+		CompiledTemplate[] defaults = new CompiledTemplate[resultMapping.size()];
+		for (int i = 0; i < defaults.length; i++) {
+			Map<String, String> mappingRecord = resultMapping.get(i);
+			String targetField = mappingRecord.get(CFG_target_field);
+			paths.put(targetField, FieldPath.compile(targetField));
+			defaults[i] = CompiledTemplate.compile(mappingRecord.get(CFG_value_default));
+		}
+		targetFieldPaths = paths;
+		defaultValueTemplates = defaults;
 		idxSearchField = StructureUtils.getListOfStringValues(settings, CFG_idx_search_field);
 		validateConfigurationObjectNotEmpty(idxSearchField, CFG_idx_search_field);
 		ignoreMultipleResults = XContentMapValues.nodeBooleanValue(settings.get(CFG_ignore_multiple_results), false);
+		lookupCache = createCacheFromSettings(settings);
+		cacheNegative = XContentMapValues.nodeBooleanValue(settings.get(CFG_cache_negative), true);
+		initSnapshot(settings);
+	}
+
+	private void initSnapshot(Map<String, Object> settings) throws SettingsException {
+		close();
+		String file = ValueUtils.trimToNull(XContentMapValues.nodeStringValue(settings.get(CFG_snapshot_file), null));
+		snapshotFile = file != null ? new File(file) : null;
+		try {
+			snapshotRefresh = XContentMapValues.nodeTimeValue(settings.get(CFG_snapshot_refresh), null);
+		} catch (ElasticsearchParseException e) {
+			throw new SettingsException("Invalid 'settings/" + CFG_snapshot_refresh + "' configuration value for '" + name
+					+ "' preprocessor");
+		}
+		if (snapshotRefresh != null && snapshotRefresh.millis() < 0) {
+			throw new SettingsException("Negative 'settings/" + CFG_snapshot_refresh + "' configuration value for '" + name
+					+ "' preprocessor");
+		}
+		if (snapshotRefresh != null && snapshotRefresh.millis() == 0)
+			snapshotRefresh = null;
+		if (snapshotFile != null && snapshotRefresh != null) {
+			snapshotRefresher = new ScheduledThreadPoolExecutor(1, EsExecutors.daemonThreadFactory("es_lookup_snapshot["
+					+ getName() + "]"));
+			snapshotRefresher.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						refreshSnapshot();
+					} catch (Exception e) {
+						logger.warn("Lookup snapshot refresh failed for preprocessor {}: {}", name, e.getMessage());
+					}
+				}
+			}, snapshotRefresh.millis(), snapshotRefresh.millis(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Stop periodic snapshot refresh and release snapshot of lookup index, so lookups are searched in ES or snapshot is
+	 * opened again. Called by {@link #init(Map)} also, so preprocessor can be initialized again after close, and by
+	 * {@link PreprocessorChain#close()}.
+	 */
+	@Override
+	public void close() {
+		ScheduledThreadPoolExecutor r = snapshotRefresher;
+		if (r != null) {
+			r.shutdownNow();
+			snapshotRefresher = null;
+		}
+		synchronized (this) {
+			snapshot = null;
+			snapshotRetryAfter = 0;
+		}
 	}
 
 	/**
@@ -271,17 +422,13 @@ public class ESLookupValuePreprocessor extends
 	@Override
 	protected void processOneSourceValue(Map<String, Object> data, LookupContenxt context, String base,
 			PreprocessChainContext chainContext) {
-		Object sourceValue = null;
-		if (sourceField != null) {
-			sourceValue = XContentMapValues.extractValue(sourceField, data);
-		} else {
-			sourceValue = ValueUtils.processStringValuePatternReplacement(sourceValuePattern, data, null);
-		}
+		Object sourceValue = getSourceValue(data);
 		Map<String, Object> targetValues = null;
 		if (sourceValue instanceof Collection) {
 			if (context == null)
 				context = new LookupContenxt();
 			Collection<Object> sourceCollection = (Collection<Object>) sourceValue;
+			prefetchValues(sourceCollection, context);
 			targetValues = new HashMap<String, Object>();
 			for (Object sourceObject : sourceCollection) {
 				Map<String, Object> v = lookupValue(sourceObject, data, context, chainContext);
@@ -304,11 +451,152 @@ public class ESLookupValuePreprocessor extends
 		}
 		if (targetValues != null) {
 			for (String targetField : targetValues.keySet())
-				StructureUtils.putValueIntoMapOfMaps(data, targetField, targetValues.get(targetField));
+				targetFieldPaths.get(targetField).putValue(data, targetValues.get(targetField));
+		}
+	}
+
+	/**
+	 * Preprocess batch of documents. All distinct values to be looked up in the whole batch are searched in ES using
+	 * multi search requests before documents are processed one by one.
+	 */
+	@Override
+	public List<Map<String, Object>> preprocessBatch(List<Map<String, Object>> documents,
+			List<? extends PreprocessChainContext> chainContexts) {
+		if (documents == null)
+			return null;
+		Set<Object> values = new LinkedHashSet<Object>();
+		for (Map<String, Object> data : documents) {
+			collectSourceValues(data, values);
+		}
+		Map<Object, LookupResult> results = new HashMap<Object, LookupResult>();
+		removeResolvedValues(values, null);
+		if (values.size() > 1)
+			searchValues(values, results);
+
+		Map<Object, LookupResult> previous = batchResults.get();
+		batchResults.set(results);
+		try {
+			List<Map<String, Object>> ret = new ArrayList<Map<String, Object>>(documents.size());
+			Iterator<? extends PreprocessChainContext> ctxIterator = chainContexts != null ? chainContexts.iterator()
+					: null;
+			for (Map<String, Object> data : documents) {
+				ret.add(preprocessData(data, ctxIterator != null ? ctxIterator.next() : null));
+			}
+			return ret;
+		} finally {
+			if (previous != null)
+				batchResults.set(previous);
+			else
+				batchResults.remove();
+		}
+	}
+
+	/**
+	 * Collect all values to be looked up for one document, source_bases are handled.
+	 * 
+	 * @param data document
+	 * @param values to add values into
+	 */
+	@SuppressWarnings("unchecked")
+	protected void collectSourceValues(Map<String, Object> data, Set<Object> values) {
+		if (data == null)
+			return;
+		if (sourceBasesPaths == null) {
+			collectSourceValue(getSourceValue(data), values);
+		} else {
+			for (FieldPath basePath : sourceBasesPaths) {
+				if (basePath == null)
+					continue;
+				Object obj = basePath.getValue(data);
+				if (obj instanceof Map) {
+					collectSourceValue(getSourceValue((Map<String, Object>) obj), values);
+				} else if (obj instanceof Collection) {
+					for (Object o : (Collection<Object>) obj) {
+						if (o instanceof Map)
+							collectSourceValue(getSourceValue((Map<String, Object>) o), values);
+					}
+				}
+			}
 		}
 	}
 
-	private boolean esExceptionWarned = false;
+	@SuppressWarnings("unchecked")
+	private void collectSourceValue(Object sourceValue, Set<Object> values) {
+		if (sourceValue instanceof Collection) {
+			for (Object o : (Collection<Object>) sourceValue) {
+				if (o != null)
+					values.add(o);
+			}
+		} else if (sourceValue != null) {
+			values.add(sourceValue);
+		}
+	}
+
+	/**
+	 * Search for values from collection in ES using one multi search request, if there are more values which are not
+	 * resolved yet.
+	 * 
+	 * @param sourceCollection values to be looked up
+	 * @param context to store results into
+	 */
+	protected void prefetchValues(Collection<Object> sourceCollection, LookupContenxt context) {
+		if (sourceCollection.size() < 2)
+			return;
+		Set<Object> values = new LinkedHashSet<Object>();
+		collectSourceValue(sourceCollection, values);
+		removeResolvedValues(values, context);
+		if (values.size() > 1) {
+			if (context.searchResults == null)
+				context.searchResults = new HashMap<Object, LookupResult>();
+			searchValues(values, context.searchResults);
+		}
+	}
+
+	/**
+	 * Remove values which need not to be searched in ES from set.
+	 * 
+	 * @param values to remove from
+	 * @param context of processing, can be null
+	 */
+	private void removeResolvedValues(Set<Object> values, LookupContenxt context) {
+		Cache<Object, LookupResult> cache = lookupCache;
+		for (Iterator<Object> it = values.iterator(); it.hasNext();) {
+			Object value = it.next();
+			if ((cache != null && cache.asMap().containsKey(value))
+					|| (context != null && context.lookupCache.containsKey(value))
+					|| getPrefetchedResult(value, context) != null)
+				it.remove();
+		}
+	}
+
+	/**
+	 * Get result prefetched by multi search request.
+	 * 
+	 * @param sourceValue to get result for
+	 * @param context of processing, can be null
+	 * @return result or null
+	 */
+	private LookupResult getPrefetchedResult(Object sourceValue, LookupContenxt context) {
+		LookupResult result = null;
+		if (context != null && context.searchResults != null)
+			result = context.searchResults.get(sourceValue);
+		if (result == null) {
+			Map<Object, LookupResult> br = batchResults.get();
+			if (br != null)
+				result = br.get(sourceValue);
+		}
+		return result;
+	}
+
+	protected Object getSourceValue(Map<String, Object> data) {
+		if (sourceField != null) {
+			return sourceFieldPath.getValue(data);
+		} else {
+			return sourceValueTemplate.process(data, null);
+		}
+	}
+
+	private volatile boolean esExceptionWarned = false;
 
 	/**
 	 * Perform lookup for one value in ES with default handling.
@@ -328,81 +616,47 @@ public class ESLookupValuePreprocessor extends
 			if (context != null && context.lookupCache.containsKey(sourceValue))
 				return context.lookupCache.get(sourceValue);
 
-			boolean found = false;
-			for (String idxSf : idxSearchField) {
-
-				try {
-					SearchRequestBuilder req = client.prepareSearch(indexName).setTypes(indexType)
-							.setQuery(QueryBuilders.matchAllQuery())
-							.setPostFilter(FilterBuilders.queryFilter(QueryBuilders.matchQuery(idxSf, sourceValue)));
-					for (Map<String, String> mappingRecord : resultMapping) {
-						String idx_resultField = mappingRecord.get(CFG_idx_result_field);
-						if (idx_resultField != null && !"_source".equals(idx_resultField)) {
-							req.addField(mappingRecord.get(CFG_idx_result_field));
-						}
-					}
+			LookupResult result = null;
+			// result shared by more documents (cached or prefetched for batch) must not be changed by later processing
+			boolean shared = true;
+			Cache<Object, LookupResult> cache = lookupCache;
+			if (cache != null) {
+				result = cache.getIfPresent(sourceValue);
+			}
+			if (result == null) {
+				result = getPrefetchedResult(sourceValue, context);
+				if (result != null && cache != null && (result.found || cacheNegative)) {
+					cache.put(sourceValue, result);
+				}
+			}
+			if (result != null) {
+				for (String message : result.warnings) {
+					addDataWarning(chainContext, message);
+				}
+			} else {
+				result = searchValue(sourceValue, chainContext);
+				if (cache != null && !result.failed && (result.found || cacheNegative)) {
+					cache.put(sourceValue, result);
+				} else {
+					shared = false;
+				}
+			}
 
-					SearchResponse resp = req.execute().actionGet();
-
-					if (resp.getHits().getTotalHits() > 0) {
-						if (resp.getHits().getTotalHits() > 1) {
-							String message = "More results found during lookup for value '" + sourceValue + "' using index field '"
-									+ idxSf;
-							if (ignoreMultipleResults)
-								message += "', so we ignore them.";
-							else
-								message += "', so first one is used.";
-
-							addDataWarning(chainContext, message);
-							logger.debug(message);
-							if (ignoreMultipleResults) {
-								continue;
-							}
+			if (result.found) {
+				for (int i = 0; i < defaultValueTemplates.length; i++) {
+					String targetField = resultMapping.get(i).get(CFG_target_field);
+					if (result.values.containsKey(targetField)) {
+						Object v = result.values.get(targetField);
+						if (v == null && defaultValueTemplates[i] != null) {
+							v = defaultValueTemplates[i].process(data, sourceValue);
+						} else if (shared) {
+							// copied lazily
+							v = StructureUtils.getACopyOnWriteStructure(v);
 						}
-						SearchHit hit = resp.getHits().hits()[0];
-						for (Map<String, String> mappingRecord : resultMapping) {
-							String idx_resultField = mappingRecord.get(CFG_idx_result_field);
-							Object v = null;
-							SearchHitField shf = null;
-							if ("_source".equals(idx_resultField)) {
-								v = hit.getSource();
-							} else {
-								shf = hit.field(idx_resultField);
-								if (shf != null) {
-									v = shf.getValue();
-								}
-							}
-							if (shf != null || v != null) {
-								if (v == null && mappingRecord.get(CFG_value_default) != null) {
-									v = ValueUtils.processStringValuePatternReplacement(mappingRecord.get(CFG_value_default), data,
-											sourceValue);
-								}
-								value.put(mappingRecord.get(CFG_target_field), v);
-							} else {
-								String message = "Result found during lookup for value '" + sourceValue + "' using index field '"
-										+ idxSf + ", but result field '" + mappingRecord.get(CFG_idx_result_field)
-										+ "' is not present there";
-								addDataWarning(chainContext, message);
-								logger.debug(message);
-							}
-						}
-						found = true;
-					} else {
-						addDataWarning(chainContext, "No result found during lookup for value '" + sourceValue + "'.");
-					}
-
-					esExceptionWarned = false;
-				} catch (ElasticsearchException e) {
-					if (!esExceptionWarned) {
-						esExceptionWarned = true;
-						String message = "Lookup failed due '" + e.getClass().getName() + ":" + e.getMessage()
-								+ "', so default value handling is used.";
-						addDataWarning(chainContext, message);
-						logger.warn(message);
+						value.put(targetField, v);
 					}
 				}
-			}
-			if (!found) {
+			} else {
 				processDefaultValues(sourceValue, data, value, chainContext);
 			}
 		}
@@ -413,22 +667,445 @@ public class ESLookupValuePreprocessor extends
 		return value;
 	}
 
-	private void processDefaultValues(Object sourceValue, Map<String, Object> data, Map<String, Object> value,
+	/**
+	 * Search for one value in ES. Defaults are not handled here, so result is independent on processed data and can be
+	 * cached across documents.
+	 * 
+	 * @param sourceValue to be looked up, not null
+	 * @param chainContext to write warnings into
+	 * @return result of search, never null
+	 */
+	protected LookupResult searchValue(Object sourceValue, PreprocessChainContext chainContext) {
+		ESLookupSnapshot s = getSnapshot();
+		if (s != null) {
+			LookupResult result = lookupSnapshot(s, sourceValue, chainContext);
+			if (result != null)
+				return result;
+		}
+		LookupResult result = new LookupResult();
+		for (String idxSf : idxSearchField) {
+			try {
+				SearchResponse resp = prepareSearchRequest(sourceValue, idxSf).execute().actionGet();
+				processSearchResponse(sourceValue, idxSf, resp, result, chainContext);
+				esExceptionWarned = false;
+			} catch (ElasticsearchException e) {
+				result.failed = true;
+				if (!esExceptionWarned) {
+					esExceptionWarned = true;
+					String message = "Lookup failed due '" + e.getClass().getName() + ":" + e.getMessage()
+							+ "', so default value handling is used.";
+					addDataWarning(chainContext, message);
+					logger.warn(message);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Search for more values in ES using one multi search request. Results are used later by
+	 * {@link #lookupValue(Object, Map, LookupContenxt, PreprocessChainContext)} instead of search for each value. Values
+	 * search failed for are not placed into results, so they are searched again one by one later to handle error.
+	 * 
+	 * @param sourceValues to be looked up
+	 * @param results to put results of search into, values are keys
+	 */
+	protected void searchValues(Collection<Object> sourceValues, Map<Object, LookupResult> results) {
+		// values are looked up one by one from snapshot, no request to ES necessary
+		if (getSnapshot() != null)
+			return;
+		List<Object> values = new ArrayList<Object>(MULTI_SEARCH_MAX_VALUES);
+		for (Object sourceValue : sourceValues) {
+			values.add(sourceValue);
+			if (values.size() == MULTI_SEARCH_MAX_VALUES) {
+				searchValuesChunk(values, results);
+				values.clear();
+			}
+		}
+		if (!values.isEmpty())
+			searchValuesChunk(values, results);
+	}
+
+	private void searchValuesChunk(List<Object> values, Map<Object, LookupResult> results) {
+		MultiSearchRequestBuilder req = client.prepareMultiSearch();
+		for (Object sourceValue : values) {
+			for (String idxSf : idxSearchField) {
+				req.add(prepareSearchRequest(sourceValue, idxSf));
+			}
+		}
+		MultiSearchResponse.Item[] items;
+		try {
+			items = req.execute().actionGet().getResponses();
+		} catch (ElasticsearchException e) {
+			logger.debug("Multi search lookup failed due {}, values will be looked up one by one", e.getMessage());
+			return;
+		}
+		int i = 0;
+		for (Object sourceValue : values) {
+			LookupResult result = new LookupResult();
+			for (String idxSf : idxSearchField) {
+				MultiSearchResponse.Item item = items[i++];
+				if (item.isFailure()) {
+					result.failed = true;
+				} else if (!result.failed) {
+					processSearchResponse(sourceValue, idxSf, item.getResponse(), result, null);
+				}
+			}
+			if (!result.failed)
+				results.put(sourceValue, result);
+		}
+	}
+
+	/**
+	 * Prepare search request for one value.
+	 * 
+	 * @param sourceValue to be looked up
+	 * @param idxSf index field to search value in
+	 * @return request
+	 */
+	protected SearchRequestBuilder prepareSearchRequest(Object sourceValue, String idxSf) {
+		SearchRequestBuilder req = client.prepareSearch(indexName).setTypes(indexType)
+				.setQuery(QueryBuilders.matchAllQuery())
+				.setPostFilter(FilterBuilders.queryFilter(QueryBuilders.matchQuery(idxSf, sourceValue)));
+		for (Map<String, String> mappingRecord : resultMapping) {
+			String idx_resultField = mappingRecord.get(CFG_idx_result_field);
+			if (idx_resultField != null && !"_source".equals(idx_resultField)) {
+				req.addField(mappingRecord.get(CFG_idx_result_field));
+			}
+		}
+		return req;
+	}
+
+	/**
+	 * Process response of search for one value and store values from it into result.
+	 * 
+	 * @param sourceValue looked up
+	 * @param idxSf index field value was searched in
+	 * @param resp search response
+	 * @param result to store values into
+	 * @param chainContext to write warnings into, can be null
+	 */
+	protected void processSearchResponse(Object sourceValue, String idxSf, SearchResponse resp, LookupResult result,
 			PreprocessChainContext chainContext) {
+		long hits = resp.getHits().getTotalHits();
+		boolean[] present = null;
+		Object[] values = null;
+		if (hits > 0) {
+			present = new boolean[resultMapping.size()];
+			values = new Object[present.length];
+			extractResultValues(resp.getHits().hits()[0], present, values);
+		}
+		processLookupHits(sourceValue, idxSf, hits, present, values, result, chainContext);
+	}
 
+	/**
+	 * Extract values of result fields from found document.
+	 * 
+	 * @param hit found document
+	 * @param present to store flags whether fields from {@link #resultMapping} are present in document into
+	 * @param values to store values of fields from {@link #resultMapping} into
+	 */
+	protected void extractResultValues(SearchHit hit, boolean[] present, Object[] values) {
+		int i = 0;
 		for (Map<String, String> mappingRecord : resultMapping) {
-			if (mappingRecord.get(CFG_value_default) != null) {
-				Object v = ValueUtils.processStringValuePatternReplacement(mappingRecord.get(CFG_value_default), data,
-						sourceValue);
-				value.put(mappingRecord.get(CFG_target_field), v);
+			String idx_resultField = mappingRecord.get(CFG_idx_result_field);
+			Object v = null;
+			SearchHitField shf = null;
+			if ("_source".equals(idx_resultField)) {
+				v = hit.getSource();
 			} else {
-				value.put(mappingRecord.get(CFG_target_field), null);
+				shf = hit.field(idx_resultField);
+				if (shf != null) {
+					v = shf.getValue();
+				}
+			}
+			present[i] = shf != null || v != null;
+			values[i++] = v;
+		}
+	}
+
+	/**
+	 * Store values of result fields found during lookup of one value into result.
+	 * 
+	 * @param sourceValue looked up
+	 * @param idxSf index field value was searched in
+	 * @param hits number of found documents
+	 * @param present flags whether fields from {@link #resultMapping} are present in the first found document
+	 * @param values of fields from {@link #resultMapping} in the first found document
+	 * @param result to store values into
+	 * @param chainContext to write warnings into, can be null
+	 */
+	private void processLookupHits(Object sourceValue, String idxSf, long hits, boolean[] present, Object[] values,
+			LookupResult result, PreprocessChainContext chainContext) {
+		if (hits > 0) {
+			if (hits > 1) {
+				String message = "More results found during lookup for value '" + sourceValue + "' using index field '"
+						+ idxSf;
+				if (ignoreMultipleResults)
+					message += "', so we ignore them.";
+				else
+					message += "', so first one is used.";
+
+				result.addWarning(message, chainContext);
+				logger.debug(message);
+				if (ignoreMultipleResults) {
+					return;
+				}
+			}
+			int i = 0;
+			for (Map<String, String> mappingRecord : resultMapping) {
+				if (present[i]) {
+					result.values.put(mappingRecord.get(CFG_target_field), values[i]);
+				} else {
+					String message = "Result found during lookup for value '" + sourceValue + "' using index field '" + idxSf
+							+ ", but result field '" + mappingRecord.get(CFG_idx_result_field) + "' is not present there";
+					result.addWarning(message, chainContext);
+					logger.debug(message);
+				}
+				i++;
+			}
+			result.found = true;
+		} else {
+			result.addWarning("No result found during lookup for value '" + sourceValue + "'.", chainContext);
+		}
+	}
+
+	/**
+	 * Get strings describing snapshot of lookup index for actual configuration, so it is possible to check if snapshot
+	 * file is usable.
+	 * 
+	 * @return descriptor of snapshot
+	 */
+	protected List<String> getSnapshotDescriptor() {
+		List<String> d = new ArrayList<String>();
+		d.add(indexName);
+		d.add(indexType);
+		d.add(idxSearchField.toString());
+		for (Map<String, String> mappingRecord : resultMapping) {
+			d.add(mappingRecord.get(CFG_idx_result_field));
+		}
+		return d;
+	}
+
+	/**
+	 * Get snapshot of lookup index to serve lookups from. Snapshot is opened from existing file or created first time it
+	 * is requested. Other threads don't wait for it meanwhile, they get null so ES is searched.
+	 * 
+	 * @return snapshot or null if snapshot is not configured or can't be created
+	 */
+	protected ESLookupSnapshot getSnapshot() {
+		ESLookupSnapshot s = snapshot;
+		if (s != null || snapshotFile == null || System.currentTimeMillis() < snapshotRetryAfter)
+			return s;
+		if (!snapshotLoading.compareAndSet(false, true))
+			return null;
+		try {
+			if (snapshot == null)
+				loadSnapshot();
+			return snapshot;
+		} finally {
+			snapshotLoading.set(false);
+		}
+	}
+
+	private void loadSnapshot() {
+		File file = snapshotFile;
+		if (file.exists()
+				&& (snapshotRefresh == null || System.currentTimeMillis() - file.lastModified() < snapshotRefresh.millis())) {
+			try {
+				ESLookupSnapshot s = ESLookupSnapshot.open(file);
+				if (s.getDescriptor().equals(getSnapshotDescriptor())) {
+					useSnapshot(s);
+					logger.info("Lookup snapshot {} opened for preprocessor {}", s, name);
+					return;
+				}
+			} catch (IOException e) {
+				logger.info("Lookup snapshot file {} can't be used so it will be recreated: {}", file, e.getMessage());
+			}
+		}
+		try {
+			refreshSnapshot();
+		} catch (Exception e) {
+			snapshotRetryAfter = System.currentTimeMillis() + SNAPSHOT_RETRY_DELAY;
+			logger.warn("Lookup snapshot creation failed for preprocessor {} so ES is searched, retry in {} ms: {}", name,
+					SNAPSHOT_RETRY_DELAY, e.getMessage());
+		}
+	}
+
+	private synchronized void useSnapshot(ESLookupSnapshot s) {
+		snapshot = s;
+		snapshotRetryAfter = 0;
+	}
+
+	/**
+	 * Create new snapshot of lookup index and use it for next lookups. Called on demand or periodically if
+	 * <code>snapshot_refresh</code> is configured. Lookup cache is invalidated after refresh. Lookups are served from
+	 * previous snapshot (or searched in ES) while new one is created.
+	 * 
+	 * @throws IOException if snapshot file can't be written
+	 * @throws ElasticsearchException if lookup index can't be read
+	 * @throws IllegalStateException if <code>snapshot_file</code> is not configured
+	 */
+	public void refreshSnapshot() throws IOException {
+		File file = snapshotFile;
+		if (file == null)
+			throw new IllegalStateException("'settings/" + CFG_snapshot_file + "' is not configured for preprocessor "
+					+ name);
+		long start = System.currentTimeMillis();
+		ESLookupSnapshot.Writer writer = new ESLookupSnapshot.Writer(getSnapshotDescriptor());
+		String scrollId = null;
+		try {
+			boolean fetchSource = false;
+			SearchRequestBuilder req = client.prepareSearch(indexName).setTypes(indexType).setSearchType(SearchType.SCAN)
+					.setScroll(TimeValue.timeValueMinutes(1)).setSize(SNAPSHOT_SCROLL_SIZE)
+					.setQuery(QueryBuilders.matchAllQuery());
+			for (String idxSf : idxSearchField) {
+				req.addField(idxSf);
+			}
+			for (Map<String, String> mappingRecord : resultMapping) {
+				String idx_resultField = mappingRecord.get(CFG_idx_result_field);
+				if ("_source".equals(idx_resultField)) {
+					fetchSource = true;
+				} else {
+					req.addField(idx_resultField);
+				}
+			}
+			req.setFetchSource(fetchSource);
+			SearchResponse resp = req.execute().actionGet();
+			scrollId = resp.getScrollId();
+			boolean[] present = new boolean[resultMapping.size()];
+			Object[] values = new Object[present.length];
+			while (true) {
+				resp = client.prepareSearchScroll(scrollId).setScroll(TimeValue.timeValueMinutes(1)).execute().actionGet();
+				scrollId = resp.getScrollId();
+				SearchHit[] hits = resp.getHits().getHits();
+				if (hits.length == 0)
+					break;
+				for (SearchHit hit : hits) {
+					extractResultValues(hit, present, values);
+					for (int f = 0; f < idxSearchField.size(); f++) {
+						SearchHitField shf = hit.field(idxSearchField.get(f));
+						if (shf == null || shf.getValues() == null)
+							continue;
+						for (Object key : shf.getValues()) {
+							if (key != null)
+								writer.add(f, key.toString(), present, values);
+						}
+					}
+				}
 			}
+			writer.write(file);
+		} finally {
+			writer.close();
+			clearScroll(scrollId);
+		}
+		ESLookupSnapshot s = ESLookupSnapshot.open(file);
+		useSnapshot(s);
+		invalidateLookupCache();
+		logger.info("Lookup snapshot {} created for preprocessor {} in {} ms", s, name, System.currentTimeMillis()
+				- start);
+	}
+
+	private void clearScroll(String scrollId) {
+		if (scrollId == null)
+			return;
+		try {
+			client.prepareClearScroll().addScrollId(scrollId).execute().actionGet();
+		} catch (Exception e) {
+			logger.debug("Lookup snapshot scroll can't be cleared for preprocessor {}: {}", name, e.getMessage());
+		}
+	}
+
+	/**
+	 * Lookup one value in snapshot of lookup index.
+	 * 
+	 * @param s snapshot to use
+	 * @param sourceValue to be looked up, not null
+	 * @param chainContext to write warnings into
+	 * @return result of lookup, null if snapshot can't be read so ES has to be searched
+	 */
+	protected LookupResult lookupSnapshot(ESLookupSnapshot s, Object sourceValue, PreprocessChainContext chainContext) {
+		LookupResult result = new LookupResult();
+		String key = sourceValue.toString();
+		try {
+			for (int f = 0; f < idxSearchField.size(); f++) {
+				ESLookupSnapshot.Entry e = s.get(f, key);
+				if (e == null) {
+					processLookupHits(sourceValue, idxSearchField.get(f), 0, null, null, result, chainContext);
+				} else {
+					boolean[] present = new boolean[resultMapping.size()];
+					Object[] values = new Object[present.length];
+					for (int i = 0; i < present.length; i++) {
+						present[i] = e.isPresent(i);
+						values[i] = e.getValue(i);
+					}
+					processLookupHits(sourceValue, idxSearchField.get(f), e.getHits(), present, values, result, chainContext);
+				}
+			}
+		} catch (IOException e) {
+			logger.warn("Lookup snapshot {} can't be read so ES is searched: {}", s, e.getMessage());
+			return null;
+		}
+		return result;
+	}
+
+	private void processDefaultValues(Object sourceValue, Map<String, Object> data, Map<String, Object> value,
+			PreprocessChainContext chainContext) {
+
+		for (int i = 0; i < defaultValueTemplates.length; i++) {
+			CompiledTemplate t = defaultValueTemplates[i];
+			value.put(resultMapping.get(i).get(CFG_target_field), t != null ? t.process(data, sourceValue) : null);
 		}
 	}
 
 	protected class LookupContenxt {
 		Map<Object, Map<String, Object>> lookupCache = new HashMap<Object, Map<String, Object>>();
+		/**
+		 * Results of multi search request for values from collection.
+		 */
+		Map<Object, LookupResult> searchResults;
+	}
+
+	/**
+	 * Result of search for one value in ES, defaults are not applied yet. Instances are cached across documents if
+	 * <code>cache_max_size</code> is configured, so they must not be changed after search is finished.
+	 */
+	protected class LookupResult {
+		/**
+		 * Values found in ES with target_field names as keys. <code>null</code> value means that result field is present
+		 * in found document but empty, so default value should be used.
+		 */
+		final Map<String, Object> values = new HashMap<String, Object>();
+		/**
+		 * Warnings produced during search, replayed into chain context when result is taken from cache.
+		 */
+		final List<String> warnings = new ArrayList<String>();
+		boolean found = false;
+		boolean failed = false;
+
+		void addWarning(String message, PreprocessChainContext chainContext) {
+			warnings.add(message);
+			addDataWarning(chainContext, message);
+		}
+	}
+
+	/**
+	 * Get statistics of lookup cache living across processed documents.
+	 * 
+	 * @return statistics or <code>null</code> if cache is not configured.
+	 */
+	public CacheStats getLookupCacheStats() {
+		Cache<Object, LookupResult> cache = lookupCache;
+		return cache != null ? cache.stats() : null;
+	}
+
+	/**
+	 * Remove all values from lookup cache living across processed documents. Useful if lookup index content changes.
+	 */
+	public void invalidateLookupCache() {
+		Cache<Object, LookupResult> cache = lookupCache;
+		if (cache != null)
+			cache.invalidateAll();
 	}
 
 	public List<String> getSourceBases() {
@@ -459,4 +1136,12 @@ public class ESLookupValuePreprocessor extends
 		return resultMapping;
 	}
 
+	public File getSnapshotFile() {
+		return snapshotFile;
+	}
+
+	public TimeValue getSnapshotRefresh() {
+		return snapshotRefresh;
+	}
+
 }
@@ -0,0 +1,242 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+
+/**
+ * Precompiled field path with dot notation for nesting, used to get, put and remove values in Map of Maps structure
+ * without tokenizing the path again for each processed document. Instances are immutable so may be shared by more
+ * threads. Compile path once (typically in preprocessor's <code>init</code>) using {@link #compile(String)} and reuse
+ * it then.
+ * <p>
+ * Get semantics are same as for {@link XContentMapValues#extractValue(String, Map)} (Lists in the path are traversed,
+ * keys containing dot are found too). Put and remove semantics are same as for
+ * {@link StructureUtils#putValueIntoMapOfMaps(Map, String, Object)} and
+ * {@link StructureUtils#removeValueFromMapOfMaps(Map, String)}.
+ *
+ * @author agent (agent at local)
+ */
+public final class FieldPath {
+
+	private final String path;
+
+	/**
+	 * Path elements used for put and remove - same as <code>path.split("\\.")</code>
+	 */
+	private final String[] putElements;
+
+	/**
+	 * Path elements used for get - empty elements are skipped here
+	 */
+	private final String[] getElements;
+
+	/**
+	 * Keys used for get. <code>getKeys[i][k]</code> contains <code>getElements</code> from <code>i</code> to
+	 * <code>i+k</code> joined by dot, so keys containing dot may be found in data without string concatenation.
+	 */
+	private final String[][] getKeys;
+
+	private FieldPath(String path) {
+		this.path = path;
+		if (path.indexOf('.') < 0) {
+			putElements = new String[] { path };
+			getElements = putElements;
+		} else {
+			putElements = path.split("\\.");
+			List<String> ge = new ArrayList<String>(putElements.length);
+			for (String e : putElements) {
+				if (!e.isEmpty())
+					ge.add(e);
+			}
+			getElements = ge.toArray(new String[ge.size()]);
+		}
+
+		int len = getElements.length;
+		getKeys = new String[len][];
+		for (int i = 0; i < len; i++) {
+			String[] keys = new String[len - i];
+			String key = getElements[i];
+			keys[0] = key;
+			for (int k = 1; k < keys.length; k++) {
+				key = key + "." + getElements[i + k];
+				keys[k] = key;
+			}
+			getKeys[i] = keys;
+		}
+	}
+
+	/**
+	 * Compile field path.
+	 *
+	 * @param path to compile. Dot notation can be used.
+	 * @return compiled path, never null
+	 * @throws IllegalArgumentException if path is empty
+	 */
+	public static FieldPath compile(String path) throws IllegalArgumentException {
+		if (ValueUtils.isEmpty(path)) {
+			throw new IllegalArgumentException("field argument must be defined");
+		}
+		return new FieldPath(path);
+	}
+
+	/**
+	 * Compile list of field paths.
+	 *
+	 * @param paths to compile. Dot notation can be used.
+	 * @return array with compiled paths in same order (<code>null</code> is in place of empty path), null if
+	 *         <code>paths</code> is null
+	 */
+	public static FieldPath[] compile(List<String> paths) {
+		if (paths == null)
+			return null;
+		FieldPath[] ret = new FieldPath[paths.size()];
+		int i = 0;
+		for (String p : paths) {
+			ret[i++] = ValueUtils.isEmpty(p) ? null : new FieldPath(p);
+		}
+		return ret;
+	}
+
+	/**
+	 * Get path this object is compiled for.
+	 *
+	 * @return path
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Get value from Map of Maps structure.
+	 *
+	 * @param data to get value from. Can be null.
+	 * @return value or null if not found
+	 * @see XContentMapValues#extractValue(String, Map)
+	 */
+	public Object getValue(Map<String, Object> data) {
+		if (data == null || getElements.length == 0)
+			return null;
+		if (getElements.length == 1)
+			return data.get(getElements[0]);
+		return extractValue(0, data);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Object extractValue(int index, Object currentValue) {
+		while (index < getElements.length) {
+			if (currentValue instanceof Map) {
+				Map<String, Object> map = (Map<String, Object>) currentValue;
+				String[] keys = getKeys[index];
+				int k = 0;
+				Object mapValue = map.get(keys[0]);
+				while (mapValue == null && ++k < keys.length) {
+					mapValue = map.get(keys[k]);
+				}
+				if (mapValue == null)
+					return null;
+				index += k + 1;
+				currentValue = mapValue;
+			} else if (currentValue instanceof List) {
+				List<Object> valueList = (List<Object>) currentValue;
+				List<Object> newList = new ArrayList<Object>(valueList.size());
+				for (Object o : valueList) {
+					Object listValue = extractValue(index, o);
+					if (listValue != null)
+						newList.add(listValue);
+				}
+				return newList;
+			} else {
+				return null;
+			}
+		}
+		return currentValue;
+	}
+
+	/**
+	 * Put value into Map of Maps structure. Missing Maps in the path are created.
+	 *
+	 * @param map Map to put value into. Can be null.
+	 * @param value to be added into Map
+	 * @throws IllegalArgumentException if value can't be added due something wrong in data structure
+	 */
+	@SuppressWarnings("unchecked")
+	public void putValue(Map<String, Object> map, Object value) throws IllegalArgumentException {
+		if (map == null)
+			return;
+		int last = putElements.length - 1;
+		Map<String, Object> levelData = map;
+		for (int i = 0; i < last; i++) {
+			Object o = levelData.get(putElements[i]);
+			if (o == null) {
+				Map<String, Object> lv = new LinkedHashMap<String, Object>();
+				levelData.put(putElements[i], lv);
+				levelData = lv;
+			} else if (o instanceof Map) {
+				levelData = (Map<String, Object>) o;
+			} else {
+				throw new IllegalArgumentException("Cant put value for field '" + path
+						+ "' because some element in the path is not Map");
+			}
+		}
+		if (last >= 0)
+			levelData.put(putElements[last], value);
+	}
+
+	/**
+	 * Remove value from Map of Maps structure.
+	 *
+	 * @param map Map to remove value from. Can be null.
+	 * @return object removed from structure if any
+	 * @throws IllegalArgumentException if value can't be removed due something wrong in data structure
+	 */
+	@SuppressWarnings("unchecked")
+	public Object removeValue(Map<String, Object> map) throws IllegalArgumentException {
+		if (map == null)
+			return null;
+		int last = putElements.length - 1;
+		Map<String, Object> levelData = map;
+		for (int i = 0; i < last; i++) {
+			Object o = levelData.get(putElements[i]);
+			if (o == null) {
+				return null;
+			} else if (o instanceof Map) {
+				levelData = (Map<String, Object>) o;
+			} else {
+				throw new IllegalArgumentException("Cant remove value for field '" + path
+						+ "' because some element in the path is not Map");
+			}
+		}
+		if (last >= 0)
+			return levelData.remove(putElements[last]);
+		return null;
+	}
+
+	@Override
+	public int hashCode() {
+		return path.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof FieldPath))
+			return false;
+		return path.equals(((FieldPath) obj).path);
+	}
+
+	@Override
+	public String toString() {
+		return path;
+	}
+
+}
@@ -0,0 +1,183 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prefix trie compiled from more field paths with dot notation for nesting, used to remove all of them from Map of Maps
+ * structure in one traversal. Paths sharing same parent are resolved only once for all of them. Instances are immutable
+ * so may be shared by more threads. Compile paths once (typically in preprocessor's <code>init</code>) using
+ * {@link #compile(List)} and reuse it then.
+ * <p>
+ * Remove semantics are same as for {@link FieldPath#removeValue(Map)} called for each path, except that {@link #WILDCARD}
+ * path segment matches all keys on given level (elements which are not Map are skipped there, eg.
+ * <code>fields.*.raw</code> removes <code>raw</code> from all objects in <code>fields</code>, <code>fields.*</code>
+ * removes all values from <code>fields</code> object).
+ *
+ * @author agent (agent at local)
+ * @see FieldPath
+ */
+public final class FieldPathTrie {
+
+	/**
+	 * Path segment matching all keys on given level.
+	 */
+	public static final String WILDCARD = "*";
+
+	private final List<String> paths;
+
+	private final Node root;
+
+	private FieldPathTrie(List<String> paths) {
+		this.paths = new ArrayList<String>(paths);
+		root = new Node(null);
+		for (String path : paths) {
+			if (ValueUtils.isEmpty(path)) {
+				throw new IllegalArgumentException("field argument must be defined");
+			}
+			String[] elements = path.split("\\.");
+			if (elements.length == 0)
+				continue;
+			Node node = root;
+			for (int i = 0; i < elements.length && !node.remove; i++) {
+				node = node.child(elements[i], path);
+			}
+			if (!node.remove) {
+				node.remove = true;
+				// removed whole, so nested paths are not necessary
+				node.keys = null;
+				node.nodes = null;
+				node.wildcard = null;
+			}
+		}
+	}
+
+	/**
+	 * Compile list of field paths into trie.
+	 *
+	 * @param paths to compile. Dot notation can be used, {@link #WILDCARD} path segment matches all keys on given level.
+	 * @return compiled trie, null if <code>paths</code> is null
+	 * @throws IllegalArgumentException if some path is empty
+	 */
+	public static FieldPathTrie compile(List<String> paths) throws IllegalArgumentException {
+		if (paths == null)
+			return null;
+		return new FieldPathTrie(paths);
+	}
+
+	/**
+	 * Get paths this trie is compiled for.
+	 *
+	 * @return paths
+	 */
+	public List<String> getPaths() {
+		return paths;
+	}
+
+	/**
+	 * Remove values for all paths from Map of Maps structure.
+	 *
+	 * @param map to remove values from. Can be null.
+	 * @throws IllegalArgumentException if some element in the path (other than one matched by {@link #WILDCARD}) is not
+	 *           Map
+	 */
+	public void removeValues(Map<String, Object> map) throws IllegalArgumentException {
+		if (map != null)
+			removeValues(map, root);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void removeValues(Map<String, Object> map, Node node) {
+		if (node.keys != null) {
+			for (int i = 0; i < node.keys.length; i++) {
+				Node child = node.nodes[i];
+				if (child.remove) {
+					map.remove(node.keys[i]);
+					continue;
+				}
+				Object o = map.get(node.keys[i]);
+				if (o == null) {
+					continue;
+				} else if (o instanceof Map) {
+					removeValues((Map<String, Object>) o, child);
+				} else {
+					throw new IllegalArgumentException("Cant remove value for field '" + child.path
+							+ "' because some element in the path is not Map");
+				}
+			}
+		}
+		if (node.wildcard != null) {
+			if (node.wildcard.remove) {
+				map.clear();
+			} else {
+				for (Object o : map.values()) {
+					if (o instanceof Map)
+						removeValues((Map<String, Object>) o, node.wildcard);
+				}
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return paths.toString();
+	}
+
+	/**
+	 * Node of the trie, children are kept in arrays so no iterator is necessary during traversal.
+	 */
+	private static final class Node {
+
+		/**
+		 * First path going through this node, used in error messages.
+		 */
+		final String path;
+
+		String[] keys;
+		Node[] nodes;
+		Node wildcard;
+
+		/**
+		 * Value for this node is removed.
+		 */
+		boolean remove;
+
+		Node(String path) {
+			this.path = path;
+		}
+
+		Node child(String key, String path) {
+			if (WILDCARD.equals(key)) {
+				if (wildcard == null)
+					wildcard = new Node(path);
+				return wildcard;
+			}
+			if (keys != null) {
+				for (int i = 0; i < keys.length; i++) {
+					if (keys[i].equals(key))
+						return nodes[i];
+				}
+			}
+			Node child = new Node(path);
+			int len = keys != null ? keys.length : 0;
+			String[] k = new String[len + 1];
+			Node[] n = new Node[len + 1];
+			if (len > 0) {
+				System.arraycopy(keys, 0, k, 0, len);
+				System.arraycopy(nodes, 0, n, 0, len);
+			}
+			k[len] = key;
+			n[len] = child;
+			keys = k;
+			nodes = n;
+			return child;
+		}
+	}
+
+}
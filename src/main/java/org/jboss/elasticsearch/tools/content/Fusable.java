@@ -0,0 +1,33 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marker annotation for {@link StructuredContentPreprocessorWithSourceBasesBase} implementations which do not override
+ * {@link StructuredContentPreprocessorWithSourceBasesBase#preprocessData(java.util.Map, PreprocessChainContext)} and
+ * whose
+ * {@link StructuredContentPreprocessorWithSourceBasesBase#processOneSourceValue(java.util.Map, Object, String, PreprocessChainContext)}
+ * reads and changes only the passed base element, and whose context doesn't depend on data. Consecutive fusable
+ * preprocessors with the same "source_bases" are fused by {@link PreprocessorChain}, so each base element is visited
+ * once and all fused preprocessors are applied to it, in the order they are defined in the chain.
+ * <p>
+ * Annotation is not inherited, so subclass of fusable preprocessor must be annotated again if it is fusable too.
+ *
+ * @author agent (agent at local)
+ * @see PreprocessorChain#isFusable(StructuredContentPreprocessor)
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Fusable {
+
+}
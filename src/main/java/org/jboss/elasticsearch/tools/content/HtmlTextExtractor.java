@@ -0,0 +1,609 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jsoup.parser.Parser;
+
+/**
+ * Streaming extractor of whitespace normalized text from HTML. Text is extracted in one pass over HTML markup without
+ * building DOM, with results same as {@link StripHtmlPreprocessor} produces using jsoup (
+ * <code>Whitelist.relaxed()</code> cleaning and DOM traversal) - text between tags allowed by relaxed whitelist is
+ * trimmed and joined by one space, text split by other tags or comments is joined directly, script and style content is
+ * skipped, html entities are unescaped.
+ * <p>
+ * Constructs where jsoup tree builder moves or treats text specially (text or other elements directly inside table
+ * outside of cells, misnested or implicitly closed formatting elements reconstructed by jsoup, <code>title</code>,
+ * <code>textarea</code>, <code>select</code> etc.) are not handled, extractor returns <code>null</code> for them and
+ * jsoup has to be used then.
+ * <p>
+ * Thread safe.
+ *
+ * @author agent (agent at local)
+ */
+public final class HtmlTextExtractor {
+
+	/**
+	 * Tags allowed by jsoup <code>Whitelist.relaxed()</code>, only they split text.
+	 */
+	private static final Set<String> BOUNDARY_TAGS = set("a", "b", "blockquote", "br", "caption", "cite", "code", "col",
+			"colgroup", "dd", "div", "dl", "dt", "em", "h1", "h2", "h3", "h4", "h5", "h6", "i", "img", "li", "ol", "p", "pre",
+			"q", "small", "strike", "strong", "sub", "sup", "table", "tbody", "td", "tfoot", "th", "thead", "tr", "u", "ul");
+
+	/**
+	 * Elements without content, not pushed to the stack of open elements.
+	 */
+	private static final Set<String> VOID_TAGS = set("area", "base", "basefont", "bgsound", "br", "col", "embed", "hr",
+			"img", "input", "keygen", "link", "meta", "param", "source", "track", "wbr");
+
+	/**
+	 * Tags ignored by jsoup in body.
+	 */
+	private static final Set<String> IGNORED_TAGS = set("html", "head", "body");
+
+	/**
+	 * Formatting elements reconstructed by jsoup when closed implicitly or misnested, extraction is not supported then.
+	 */
+	private static final Set<String> FORMATTING_TAGS = set("a", "b", "big", "code", "em", "font", "i", "nobr", "s",
+			"small", "strike", "strong", "tt", "u");
+
+	/**
+	 * Special elements, end tag of other element is ignored if one of them is opened inside of it.
+	 */
+	private static final Set<String> SPECIAL_TAGS = set("address", "applet", "area", "article", "aside", "base",
+			"basefont", "bgsound", "blockquote", "body", "br", "button", "caption", "center", "col", "colgroup", "command",
+			"dd", "details", "dir", "div", "dl", "dt", "embed", "fieldset", "figcaption", "figure", "footer", "form", "frame",
+			"frameset", "h1", "h2", "h3", "h4", "h5", "h6", "head", "header", "hgroup", "hr", "html", "iframe", "img",
+			"input", "isindex", "li", "link", "listing", "marquee", "menu", "meta", "nav", "noembed", "noframes", "noscript",
+			"object", "ol", "p", "param", "plaintext", "pre", "script", "section", "select", "style", "summary", "table",
+			"tbody", "td", "textarea", "tfoot", "th", "thead", "title", "tr", "ul", "wbr", "xmp");
+
+	/**
+	 * Start tags which close opened <code>p</code> element.
+	 */
+	private static final Set<String> CLOSING_P_TAGS = set("address", "article", "aside", "blockquote", "center",
+			"details", "dir", "div", "dl", "fieldset", "figcaption", "figure", "footer", "header", "hgroup", "menu", "nav",
+			"ol", "p", "section", "summary", "ul", "h1", "h2", "h3", "h4", "h5", "h6", "pre", "listing", "form", "li", "dd",
+			"dt", "table", "hr");
+
+	private static final Set<String> HEADING_TAGS = set("h1", "h2", "h3", "h4", "h5", "h6");
+
+	/**
+	 * Elements delimiting scope when searching for opened element.
+	 */
+	private static final Set<String> SCOPE_TAGS = set("applet", "caption", "html", "table", "td", "th", "marquee",
+			"object");
+
+	private static final Set<String> TABLE_TAGS = set("table", "tbody", "thead", "tfoot", "tr", "td", "th", "caption",
+			"col", "colgroup");
+
+	/**
+	 * Table elements where text and other elements are moved before table by jsoup, extraction is not supported then.
+	 */
+	private static final Set<String> FOSTER_PARENTING_TAGS = set("table", "tbody", "thead", "tfoot", "tr", "colgroup");
+
+	/**
+	 * Tags whose content is not HTML markup and is not part of extracted text.
+	 */
+	private static final Set<String> SKIPPED_CONTENT_TAGS = set("script", "style");
+
+	/**
+	 * Tags handled specially by jsoup, extraction is not supported for them.
+	 */
+	private static final Set<String> UNSUPPORTED_TAGS = set("title", "textarea", "xmp", "iframe", "noembed",
+			"noframes", "plaintext", "select", "frameset", "frame", "template", "isindex", "button", "applet", "marquee",
+			"object", "math", "svg");
+
+	private static Set<String> set(String... values) {
+		return new HashSet<String>(Arrays.asList(values));
+	}
+
+	private HtmlTextExtractor() {
+	}
+
+	/**
+	 * Extract text from HTML.
+	 *
+	 * @param html to extract text from
+	 * @return extracted text, <code>null</code> if HTML contains constructs not supported by this extractor.
+	 */
+	public static String extractText(String html) {
+		if (html == null)
+			return null;
+		return new Extraction(html).run();
+	}
+
+	/**
+	 * State of one extraction.
+	 */
+	private static final class Extraction {
+
+		private final String html;
+		private final int len;
+		private final StringBuilder out;
+		private final StringBuilder segment = new StringBuilder();
+
+		/**
+		 * Stack of open elements, innermost last
+		 */
+		private final List<String> stack = new ArrayList<String>();
+
+		Extraction(String html) {
+			this.html = html;
+			this.len = html.length();
+			this.out = new StringBuilder(len);
+		}
+
+		String run() {
+			int i = 0;
+			int textStart = 0;
+			while (i < len) {
+				if (html.charAt(i) != '<' || i + 1 >= len) {
+					i++;
+					continue;
+				}
+				char n = html.charAt(i + 1);
+				int end;
+				if (isAsciiLetter(n)) {
+					if (!text(textStart, i))
+						return null;
+					end = startTag(i + 1);
+				} else if (n == '/') {
+					if (i + 2 >= len) {
+						// "</" at the end of input is text
+						i = len;
+						break;
+					}
+					char n2 = html.charAt(i + 2);
+					if (n2 == '>') {
+						if (!text(textStart, i))
+							return null;
+						end = i + 3;
+					} else if (isAsciiLetter(n2)) {
+						if (!text(textStart, i))
+							return null;
+						end = endTag(i + 2);
+					} else {
+						if (!text(textStart, i))
+							return null;
+						end = skipTo(i + 2, '>');
+					}
+				} else if (n == '!') {
+					if (!text(textStart, i))
+						return null;
+					end = markupDeclaration(i + 2);
+				} else if (n == '?') {
+					if (!text(textStart, i))
+						return null;
+					end = skipTo(i + 2, '>');
+				} else {
+					// '<' which is not start of markup is text
+					i++;
+					continue;
+				}
+				if (end == UNSUPPORTED)
+					return null;
+				if (end >= len) {
+					// markup not closed till the end of input, rest is dropped
+					textStart = i = len;
+					break;
+				}
+				textStart = i = end;
+			}
+			if (!text(textStart, len))
+				return null;
+			boundary();
+			return out.toString();
+		}
+
+		private static final int UNSUPPORTED = -1;
+
+		/**
+		 * Handle start tag.
+		 *
+		 * @param nameStart index of tag name
+		 * @return index after the tag, {@link #UNSUPPORTED} or value >= len if tag is not finished
+		 */
+		private int startTag(int nameStart) {
+			int nameEnd = tagNameEnd(nameStart);
+			int end = tagEnd(nameEnd);
+			if (end >= len)
+				return len;
+			String name = html.substring(nameStart, nameEnd).toLowerCase();
+			if ("image".equals(name))
+				name = "img";
+			if (UNSUPPORTED_TAGS.contains(name))
+				return UNSUPPORTED;
+			if (SKIPPED_CONTENT_TAGS.contains(name))
+				return skipContent(end, name);
+			if (IGNORED_TAGS.contains(name))
+				return end;
+			if (TABLE_TAGS.contains(name))
+				return tableStartTag(name) ? end : UNSUPPORTED;
+			if (isFosterParentingContext())
+				return UNSUPPORTED;
+			boolean selfClosing = html.charAt(end - 2) == '/';
+			if (!VOID_TAGS.contains(name)) {
+				if (selfClosing && !name.contains(":")) {
+					// ignored by jsoup for known tags, we do not know all of them
+					return UNSUPPORTED;
+				}
+				if (!implicitlyClose(name))
+					return UNSUPPORTED;
+			}
+			if (BOUNDARY_TAGS.contains(name))
+				boundary();
+			if (!VOID_TAGS.contains(name) && !selfClosing)
+				stack.add(name);
+			return end;
+		}
+
+		/**
+		 * Close elements closed implicitly by start tag of element.
+		 *
+		 * @param name of started element
+		 * @return false if not supported
+		 */
+		private boolean implicitlyClose(String name) {
+			if ("li".equals(name)) {
+				if (!closeListItem("li"))
+					return false;
+			} else if ("dd".equals(name) || "dt".equals(name)) {
+				if (!closeListItem("dd") || !closeListItem("dt"))
+					return false;
+			}
+			if (CLOSING_P_TAGS.contains(name)) {
+				int p = indexInScope("p");
+				if (p >= 0 && !popTo(p))
+					return false;
+			}
+			if (HEADING_TAGS.contains(name) && !stack.isEmpty() && HEADING_TAGS.contains(top())) {
+				pop();
+			}
+			if (("a".equals(name) || "nobr".equals(name)) && stack.contains(name)) {
+				// adoption agency
+				return false;
+			}
+			return true;
+		}
+
+		private boolean closeListItem(String name) {
+			for (int i = stack.size() - 1; i >= 0; i--) {
+				String e = stack.get(i);
+				if (e.equals(name))
+					return popTo(i);
+				if (SPECIAL_TAGS.contains(e) && !"address".equals(e) && !"div".equals(e) && !"p".equals(e))
+					return true;
+			}
+			return true;
+		}
+
+		/**
+		 * Handle end tag.
+		 *
+		 * @param nameStart index of tag name
+		 * @return index after the tag, {@link #UNSUPPORTED} or value >= len if tag is not finished
+		 */
+		private int endTag(int nameStart) {
+			int nameEnd = tagNameEnd(nameStart);
+			int end = tagEnd(nameEnd);
+			if (end >= len)
+				return len;
+			String name = html.substring(nameStart, nameEnd).toLowerCase();
+			if (IGNORED_TAGS.contains(name) || SKIPPED_CONTENT_TAGS.contains(name))
+				return end;
+			if (TABLE_TAGS.contains(name)) {
+				int idx = indexInScope(name);
+				if (idx >= 0 || ("table".equals(name) && (idx = stack.lastIndexOf(name)) >= 0)) {
+					popCell(idx);
+					boundary();
+				}
+				return end;
+			}
+			if ("br".equals(name)) {
+				// jsoup creates element for this end tag
+				boundary();
+				return end;
+			}
+			int idx;
+			if (HEADING_TAGS.contains(name)) {
+				idx = -1;
+				for (String h : HEADING_TAGS) {
+					idx = Math.max(idx, indexInScope(h));
+				}
+			} else {
+				idx = indexInScope(name);
+			}
+			if (idx < 0) {
+				if ("p".equals(name)) {
+					// jsoup creates element for this end tag even if not opened
+					boundary();
+				}
+				return end;
+			}
+			if (FORMATTING_TAGS.contains(name)) {
+				if (idx != stack.size() - 1)
+					return UNSUPPORTED; // adoption agency
+			} else if (!SPECIAL_TAGS.contains(name)) {
+				for (int i = idx + 1; i < stack.size(); i++) {
+					if (SPECIAL_TAGS.contains(stack.get(i)))
+						return end; // end tag ignored
+				}
+			}
+			if (!popTo(idx))
+				return UNSUPPORTED;
+			if (BOUNDARY_TAGS.contains(name))
+				boundary();
+			return end;
+		}
+
+		/**
+		 * Handle start tag of table related element.
+		 *
+		 * @param name of tag
+		 * @return false if not supported
+		 */
+		private boolean tableStartTag(String name) {
+			if ("table".equals(name)) {
+				if (isFosterParentingContext())
+					return false;
+				int p = indexInScope("p");
+				if (p >= 0 && !popTo(p))
+					return false;
+				stack.add(name);
+				boundary();
+				return true;
+			}
+			int table = stack.lastIndexOf("table");
+			if (table < 0) {
+				// ignored by jsoup outside of table
+				return true;
+			}
+			if ("col".equals(name)) {
+				boundary();
+				return true;
+			}
+			String[] parents;
+			if ("td".equals(name) || "th".equals(name)) {
+				parents = new String[] { "tr", "tbody", "thead", "tfoot" };
+			} else if ("tr".equals(name)) {
+				parents = new String[] { "tbody", "thead", "tfoot" };
+			} else {
+				parents = new String[0];
+			}
+			int parent = table;
+			for (int i = stack.size() - 1; i > table; i--) {
+				if (Arrays.asList(parents).contains(stack.get(i))) {
+					parent = i;
+					break;
+				}
+			}
+			popCell(parent + 1);
+			stack.add(name);
+			boundary();
+			return true;
+		}
+
+		/**
+		 * Pop elements from the stack up to given index, formatting elements in table cells are not reconstructed by jsoup.
+		 */
+		private void popCell(int idx) {
+			while (stack.size() > idx)
+				pop();
+		}
+
+		/**
+		 * Pop elements from the stack up to given index.
+		 *
+		 * @param idx of element to pop with all elements above it
+		 * @return false if formatting element should be popped implicitly, so it would be reconstructed by jsoup
+		 */
+		private boolean popTo(int idx) {
+			for (int i = idx + 1; i < stack.size(); i++) {
+				if (FORMATTING_TAGS.contains(stack.get(i)))
+					return false;
+			}
+			while (stack.size() > idx)
+				pop();
+			return true;
+		}
+
+		/**
+		 * Pop innermost open element, text is split if it is kept by relaxed whitelist.
+		 */
+		private void pop() {
+			if (BOUNDARY_TAGS.contains(stack.remove(stack.size() - 1)))
+				boundary();
+		}
+
+		/**
+		 * Find element in scope.
+		 *
+		 * @param name of element
+		 * @return index in stack, -1 if not in scope
+		 */
+		private int indexInScope(String name) {
+			for (int i = stack.size() - 1; i >= 0; i--) {
+				String e = stack.get(i);
+				if (e.equals(name))
+					return i;
+				if (SCOPE_TAGS.contains(e))
+					return -1;
+			}
+			return -1;
+		}
+
+		private String top() {
+			return stack.get(stack.size() - 1);
+		}
+
+		/**
+		 * @return true if current position is directly inside table outside of cell, where jsoup moves text and elements
+		 *         before the table.
+		 */
+		private boolean isFosterParentingContext() {
+			return !stack.isEmpty() && FOSTER_PARENTING_TAGS.contains(top());
+		}
+
+		/**
+		 * Skip content of element which is not HTML markup.
+		 *
+		 * @param start index after start tag
+		 * @param name of element
+		 * @return index of end tag of element, or len if not found
+		 */
+		private int skipContent(int start, String name) {
+			int i = start;
+			while ((i = html.indexOf("</", i)) >= 0) {
+				int nameEnd = i + 2 + name.length();
+				if (html.regionMatches(true, i + 2, name, 0, name.length()) && nameEnd < len) {
+					char c = html.charAt(nameEnd);
+					if (isWhitespace(c) || c == '/' || c == '>')
+						return i;
+				}
+				i += 2;
+			}
+			return len;
+		}
+
+		/**
+		 * Handle markup starting with <code>&lt;!</code>, all are skipped.
+		 *
+		 * @param start index after <code>&lt;!</code>
+		 * @return index after the markup or len
+		 */
+		private int markupDeclaration(int start) {
+			if (html.startsWith("--", start)) {
+				int c = start + 2;
+				if (html.startsWith(">", c))
+					return c + 1;
+				if (html.startsWith("->", c))
+					return c + 2;
+				int end = html.indexOf("-->", c);
+				return end < 0 ? len : end + 3;
+			}
+			return skipTo(start, '>');
+		}
+
+		private int skipTo(int start, char c) {
+			int end = html.indexOf(c, start);
+			return end < 0 ? len : end + 1;
+		}
+
+		private int tagNameEnd(int i) {
+			while (i < len) {
+				char c = html.charAt(i);
+				if (isWhitespace(c) || c == '/' || c == '>')
+					break;
+				i++;
+			}
+			return i;
+		}
+
+		/**
+		 * Find end of tag, quoted attribute values are skipped.
+		 *
+		 * @param i index after tag name
+		 * @return index after the tag, or len if not finished
+		 */
+		private int tagEnd(int i) {
+			while (i < len) {
+				char c = html.charAt(i);
+				if (c == '>')
+					return i + 1;
+				i++;
+				if (c == '=') {
+					while (i < len && isWhitespace(html.charAt(i)))
+						i++;
+					if (i < len && (html.charAt(i) == '"' || html.charAt(i) == '\'')) {
+						int q = html.indexOf(html.charAt(i), i + 1);
+						if (q < 0)
+							return len;
+						i = q + 1;
+					}
+				}
+			}
+			return len;
+		}
+
+		/**
+		 * Add text from HTML into current segment.
+		 *
+		 * @param start of text in HTML
+		 * @param end of text in HTML
+		 * @return false if text is not supported
+		 */
+		private boolean text(int start, int end) {
+			if (start >= end)
+				return true;
+			if (isFosterParentingContext()) {
+				for (int i = start; i < end; i++) {
+					if (!isWhitespace(html.charAt(i)))
+						return false;
+				}
+			}
+			int amp = html.indexOf('&', start);
+			if (amp >= 0 && amp < end) {
+				segment.append(Parser.unescapeEntities(html.substring(start, end), false));
+			} else {
+				segment.append(html, start, end);
+			}
+			return true;
+		}
+
+		/**
+		 * Finish current text segment - normalize whitespaces, trim and append it to output.
+		 */
+		private void boundary() {
+			if (segment.length() == 0)
+				return;
+			int start = out.length();
+			if (start > 0)
+				out.append(' ');
+			int mark = out.length();
+			boolean lastWhite = false;
+			for (int i = 0; i < segment.length(); i++) {
+				char c = segment.charAt(i);
+				if (isWhitespace(c)) {
+					if (!lastWhite)
+						out.append(' ');
+					lastWhite = true;
+				} else {
+					out.append(c == '\u00A0' ? ' ' : c); // non breaking space
+					lastWhite = false;
+				}
+			}
+			segment.setLength(0);
+			int end = out.length();
+			while (end > mark && out.charAt(end - 1) <= ' ')
+				end--;
+			int first = mark;
+			while (first < end && out.charAt(first) <= ' ')
+				first++;
+			if (first == end) {
+				out.setLength(start);
+			} else {
+				out.setLength(end);
+				if (first > mark)
+					out.delete(mark, first);
+			}
+		}
+
+		private static boolean isWhitespace(char c) {
+			return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+		}
+
+		private static boolean isAsciiLetter(char c) {
+			return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+		}
+	}
+
+}
@@ -5,12 +5,14 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
+import org.elasticsearch.common.joda.time.MutableDateTime;
+import org.elasticsearch.common.joda.time.format.DateTimeFormat;
+import org.elasticsearch.common.joda.time.format.DateTimeFormatter;
 import org.elasticsearch.common.settings.SettingsException;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
 
@@ -58,10 +60,16 @@ import org.elasticsearch.common.xcontent.support.XContentMapValues;
  * comparison is done for each of this fields. <code>left_date</code>, <code>right_date</code> and
  * <code>target_field</code> are resolved relatively against this base. Base must provide object or list of objects.
  * </ul>
+ * Date formats use {@link SimpleDateFormat} pattern syntax, but dates are parsed by immutable and thread safe Joda-Time
+ * parsers created during {@link #init(Map)} (see {@link #createDateFormatter(String)}). Pattern letters <code>z</code>
+ * (time zone name), <code>L</code>, <code>F</code> and <code>W</code> are not supported, use <code>Z</code> or
+ * <code>X</code> for time zone and <code>M</code> for month. As with {@link SimpleDateFormat}, beginning of the value
+ * must match the format and the rest of it is ignored (see {@link #parseDate(DateTimeFormatter, String)}).
  * 
  * @author Ryszard Kozmik (rkozmik at redhat dot com)
  * 
  */
+@ThreadSafe
 public class IsDateInRangePreprocessor extends StructuredContentPreprocessorWithSourceBasesBase<Map<String, Object>> {
 
 	protected static final String CFG_LEFT_DATE = "left_date";
@@ -74,7 +82,10 @@ public class IsDateInRangePreprocessor extends StructuredContentPreprocessorWith
 	protected static final String CFG_RESULT_FIELD = "result_field";
 	protected static final String CFG_DEFAULT_DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSXX";
 
-	protected SimpleDateFormat dateFormatter = new SimpleDateFormat();
+	/**
+	 * {@link SimpleDateFormat} pattern letters with the same meaning in Joda-Time, translated ones are handled separately.
+	 */
+	private static final String SUPPORTED_PATTERN_LETTERS = "GyMwDdEaHkKhmsSZ";
 
 	protected String leftDateField;
 	protected String rightDateField;
@@ -83,7 +94,14 @@ public class IsDateInRangePreprocessor extends StructuredContentPreprocessorWith
 	protected String leftDateFormat;
 	protected String rightDateFormat;
 	protected String checkedDateFormat;
+	protected DateTimeFormatter leftDateFormatter;
+	protected DateTimeFormatter rightDateFormatter;
+	protected DateTimeFormatter checkedDateFormatter;
 	protected boolean checkedDateRelative;
+	protected FieldPath leftDatePath;
+	protected FieldPath rightDatePath;
+	protected FieldPath checkedDatePath;
+	protected FieldPath resultFieldPath;
 
 	@Override
 	public void init(Map<String, Object> settings) throws SettingsException {
@@ -113,6 +131,81 @@ public class IsDateInRangePreprocessor extends StructuredContentPreprocessorWith
 			throw new SettingsException("At least one of dates defining range, settings/" + CFG_LEFT_DATE + " or settings/"
 					+ CFG_RIGHT_DATE + " need to be provided.");
 		}
+
+		leftDatePath = leftDateField != null ? FieldPath.compile(leftDateField) : null;
+		rightDatePath = rightDateField != null ? FieldPath.compile(rightDateField) : null;
+		checkedDatePath = FieldPath.compile(checkedDateField);
+		resultFieldPath = FieldPath.compile(resultField);
+
+		leftDateFormatter = createDateFormatter(leftDateFormat, CFG_LEFT_DATE_FORMAT);
+		rightDateFormatter = createDateFormatter(rightDateFormat, CFG_RIGHT_DATE_FORMAT);
+		checkedDateFormatter = createDateFormatter(checkedDateFormat, CFG_CHECKED_DATE_FORMAT);
+	}
+
+	private DateTimeFormatter createDateFormatter(String dateFormat, String configFieldName) throws SettingsException {
+		try {
+			return createDateFormatter(dateFormat);
+		} catch (IllegalArgumentException e) {
+			throw new SettingsException("Invalid 'settings/" + configFieldName + "' configuration value for '" + name
+					+ "' preprocessor: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Create immutable and thread safe parser for date format. Format uses {@link SimpleDateFormat} pattern syntax, letters
+	 * with different meaning in Joda-Time are translated (<code>X</code> for ISO 8601 time zone, <code>u</code> for day
+	 * number of week, <code>Y</code> for week year).
+	 * 
+	 * @param dateFormat {@link SimpleDateFormat} pattern
+	 * @return date parser
+	 * @throws IllegalArgumentException if pattern is invalid or contains letter which can't be translated
+	 */
+	protected static DateTimeFormatter createDateFormatter(String dateFormat) throws IllegalArgumentException {
+		StringBuilder sb = new StringBuilder(dateFormat.length());
+		boolean quoted = false;
+		for (int i = 0; i < dateFormat.length(); i++) {
+			char c = dateFormat.charAt(i);
+			if (c == '\'') {
+				quoted = !quoted;
+			} else if (!quoted) {
+				if (c == 'X') {
+					int len = 1;
+					while (i + 1 < dateFormat.length() && dateFormat.charAt(i + 1) == 'X') {
+						i++;
+						len++;
+					}
+					// Joda parses offsets with or without colon, and 'Z' for zero offset
+					sb.append(len > 2 ? "ZZ" : "Z");
+					continue;
+				} else if (c == 'u') {
+					c = 'e';
+				} else if (c == 'Y') {
+					c = 'x';
+				} else if (((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))
+						&& SUPPORTED_PATTERN_LETTERS.indexOf(c) < 0) {
+					throw new IllegalArgumentException("Pattern letter '" + c + "' is not supported");
+				}
+			}
+			sb.append(c);
+		}
+		return DateTimeFormat.forPattern(sb.toString());
+	}
+
+	/**
+	 * Parse date the same way as {@link SimpleDateFormat#parse(String)} does - beginning of the value must match the
+	 * format and the rest of it is ignored, fields missing in format are taken from
+	 * <code>1970-01-01T00:00:00.000</code> in default time zone.
+	 * 
+	 * @param dateFormatter to parse with, see {@link #createDateFormatter(String)}
+	 * @param value to parse
+	 * @return parsed date
+	 * @throws IllegalArgumentException if value can't be parsed
+	 */
+	protected static Date parseDate(DateTimeFormatter dateFormatter, String value) throws IllegalArgumentException {
+		MutableDateTime dt = new MutableDateTime(1970, 1, 1, 0, 0, 0, 0);
+		if (dateFormatter.parseInto(dt, value, 0) < 0)
+			throw new IllegalArgumentException("Invalid format: \"" + value + "\"");
+		return dt.toDate();
 	}
 
 	@Override
@@ -133,15 +226,17 @@ public class IsDateInRangePreprocessor extends StructuredContentPreprocessorWith
 		Date checkedDate = null;
 
 		try {
-			leftDate = handleDateExtractionAndParsing(leftDateField, leftDateFormat, data, base, chainContext);
-			rightDate = handleDateExtractionAndParsing(rightDateField, rightDateFormat, data, base, chainContext);
+			leftDate = handleDateExtractionAndParsing(leftDateField, leftDatePath, leftDateFormat, leftDateFormatter, data,
+					base, chainContext);
+			rightDate = handleDateExtractionAndParsing(rightDateField, rightDatePath, rightDateFormat, rightDateFormatter,
+					data, base, chainContext);
 			
 			if(checkedDateRelative) {
-			    checkedDate = handleDateExtractionAndParsing(checkedDateField, checkedDateFormat,
-	                    data, base, chainContext);
+			    checkedDate = handleDateExtractionAndParsing(checkedDateField, checkedDatePath, checkedDateFormat,
+	                    checkedDateFormatter, data, base, chainContext);
 			} else {
-			    checkedDate = handleDateExtractionAndParsing(checkedDateField, checkedDateFormat,
-					(base != null ? context : data), null, chainContext);
+			    checkedDate = handleDateExtractionAndParsing(checkedDateField, checkedDatePath, checkedDateFormat,
+					checkedDateFormatter, (base != null ? context : data), null, chainContext);
 			}
 			
 		} catch (DataProblemException e) {
@@ -165,7 +260,7 @@ public class IsDateInRangePreprocessor extends StructuredContentPreprocessorWith
 			result = false;
 		}
 
-		StructureUtils.putValueIntoMapOfMaps(data, resultField, result);
+		resultFieldPath.putValue(data, result);
 	}
 
 	@Override
@@ -176,25 +271,22 @@ public class IsDateInRangePreprocessor extends StructuredContentPreprocessorWith
 	/**
 	 * An util method to extract date value out from the field and parse it using the given date format.
 	 * 
-	 * @param settings
-	 * @param cfgDateLocation
-	 * @param cfgDateFormat
+	 * @param dateField name of field to extract date from, used for warning message
+	 * @param datePath compiled path of <code>dateField</code>
+	 * @param dateFormat used for warning message
+	 * @param dateFormatter to parse date with, see {@link #createDateFormatter(String)}
 	 * @return parsed date object
 	 */
-	protected Date handleDateExtractionAndParsing(String dateField, String dateFormat, Map<String, Object> data,
-			String base, PreprocessChainContext chainContext) throws DataProblemException {
+	protected Date handleDateExtractionAndParsing(String dateField, FieldPath datePath, String dateFormat,
+			DateTimeFormatter dateFormatter, Map<String, Object> data, String base, PreprocessChainContext chainContext)
+			throws DataProblemException {
 
 		if (dateField == null)
 			return null;
 
 		Date resultDate = null;
 
-		Object dateFieldData = null;
-		if (dateField.contains(".")) {
-			dateFieldData = XContentMapValues.extractValue(dateField, data);
-		} else {
-			dateFieldData = data.get(dateField);
-		}
+		Object dateFieldData = datePath.getValue(data);
 
 		if (dateFieldData != null) {
 			if (!(dateFieldData instanceof String)) {
@@ -204,17 +296,14 @@ public class IsDateInRangePreprocessor extends StructuredContentPreprocessorWith
 			} else {
 				String dateStr = dateFieldData.toString();
 				if (dateStr != null && !dateStr.isEmpty()) {
-				    synchronized(dateFormatter) {
-    					dateFormatter.applyPattern(dateFormat);
-    					try {
-    						resultDate = dateFormatter.parse(dateStr);
-    					} catch (ParseException e) {
-    						String msg = dateField + " parameter value of " + dateStr + " could not be parsed using " + dateFormat
-    								+ " format.";
-    						addDataWarning(chainContext, msg);
-    						throw new DataProblemException();
-    					}
-				    }
+					try {
+						resultDate = parseDate(dateFormatter, dateStr);
+					} catch (IllegalArgumentException e) {
+						String msg = dateField + " parameter value of " + dateStr + " could not be parsed using " + dateFormat
+								+ " format.";
+						addDataWarning(chainContext, msg);
+						throw new DataProblemException();
+					}
 				}
 			}
 		}
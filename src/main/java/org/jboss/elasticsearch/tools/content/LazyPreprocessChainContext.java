@@ -0,0 +1,32 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+/**
+ * {@link PreprocessChainContext} accepting warning messages as template with arguments, so message may be formatted
+ * only when it is really read, or never if only warnings count is interesting. Used by
+ * {@link StructuredContentPreprocessorBase#addDataWarning(PreprocessChainContext, String, Object...)}.
+ *
+ * @author agent (agent at local)
+ * @see BoundedPreprocessChainContext
+ */
+public interface LazyPreprocessChainContext extends PreprocessChainContext {
+
+	/**
+	 * Add warning message about problem in data, so it may be consumed by calling application.
+	 *
+	 * @param preprocessorName name of preprocessor producing warning
+	 * @param messageTemplate template of message with warning description, <code>{}</code> is replaced by next argument
+	 *          (same format as used for logging). It is a good idea to write name of data field with problem in this
+	 *          message.
+	 * @param args arguments for message template
+	 * @throws IllegalArgumentException if preprocessorName or messageTemplate is null
+	 * @see BoundedPreprocessChainContext#formatMessage(String, Object...)
+	 */
+	public void addDataWarning(String preprocessorName, String messageTemplate, Object... args)
+			throws IllegalArgumentException;
+
+}
@@ -5,7 +5,6 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
-import java.util.Date;
 import java.util.Map;
 
 import org.elasticsearch.common.settings.SettingsException;
@@ -41,6 +40,8 @@ import org.elasticsearch.common.xcontent.support.XContentMapValues;
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  */
+@ThreadSafe
+@Fusable
 public class LongToTimestampValuePreprocessor extends StructuredContentPreprocessorWithSourceBasesBase<Object> {
 
 	protected static final String CFG_SOURCE_FIELD = "source_field";
@@ -48,48 +49,45 @@ public class LongToTimestampValuePreprocessor extends StructuredContentPreproces
 
 	protected String fieldSource;
 	protected String fieldTarget;
+	protected FieldPath fieldSourcePath;
+	protected FieldPath fieldTargetPath;
 
 	@Override
 	public void init(Map<String, Object> settings) throws SettingsException {
 		super.init(settings);
 		fieldSource = XContentMapValues.nodeStringValue(settings.get(CFG_SOURCE_FIELD), null);
 		validateConfigurationStringNotEmpty(fieldSource, CFG_SOURCE_FIELD);
+		fieldSourcePath = FieldPath.compile(fieldSource);
 		fieldTarget = XContentMapValues.nodeStringValue(settings.get(CFG_TARGET_FIELD), null);
 		validateConfigurationStringNotEmpty(fieldTarget, CFG_TARGET_FIELD);
+		fieldTargetPath = FieldPath.compile(fieldTarget);
 	}
 
 	@Override
 	protected void processOneSourceValue(Map<String, Object> data, Object context, String base,
 			PreprocessChainContext chainContext) {
-		Object v = null;
-		if (fieldSource.contains(".")) {
-			v = XContentMapValues.extractValue(fieldSource, data);
-		} else {
-			v = data.get(fieldSource);
-		}
+		Object v = fieldSourcePath.getValue(data);
 
 		if (v != null) {
 			if (v instanceof Integer) {
-				putTargetValue(data, ValueUtils.formatISODateTime(new Date(((Integer) v).longValue())));
+				putTargetValue(data, ValueUtils.formatISODateTime(((Integer) v).longValue()));
 			} else if (v instanceof Long) {
-				putTargetValue(data, ValueUtils.formatISODateTime(new Date((Long) v)));
+				putTargetValue(data, ValueUtils.formatISODateTime(((Long) v).longValue()));
 			} else if (v instanceof String) {
 				String vs = ValueUtils.trimToNull((String) v);
 				if (vs != null) {
 					try {
-						putTargetValue(data, ValueUtils.formatISODateTime(new Date(new Long(vs))));
+						putTargetValue(data, ValueUtils.formatISODateTime(Long.parseLong(vs)));
 					} catch (NumberFormatException e) {
-						String warningMessage = "value '" + vs + "' for field '" + fieldSource
-								+ "' is not number, so can't be converted to timestamp";
-						addDataWarning(chainContext, warningMessage);
-						logger.debug(warningMessage);
+						String warningMessage = "value '{}' for field '{}' is not number, so can't be converted to timestamp";
+						addDataWarning(chainContext, warningMessage, vs, fieldSource);
+						logger.debug(warningMessage, vs, fieldSource);
 					}
 				}
 			} else {
-				String warningMessage = "value for field '" + fieldSource + "' is not Long but is " + v.getClass().getName()
-						+ ", so can't be processed";
-				addDataWarning(chainContext, warningMessage);
-				logger.debug(warningMessage);
+				String warningMessage = "value for field '{}' is not Long but is {}, so can't be processed";
+				addDataWarning(chainContext, warningMessage, fieldSource, v.getClass().getName());
+				logger.debug(warningMessage, fieldSource, v.getClass().getName());
 			}
 		}
 	}
@@ -100,7 +98,7 @@ public class LongToTimestampValuePreprocessor extends StructuredContentPreproces
 	}
 
 	protected void putTargetValue(Map<String, Object> data, Object value) {
-		StructureUtils.putValueIntoMapOfMaps(data, fieldTarget, value);
+		fieldTargetPath.putValue(data, value);
 	}
 
 	public String getFieldSource() {
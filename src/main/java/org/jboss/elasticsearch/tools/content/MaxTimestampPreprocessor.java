@@ -40,6 +40,7 @@ import org.elasticsearch.common.xcontent.support.XContentMapValues;
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  */
+@ThreadSafe
 public class MaxTimestampPreprocessor extends StructuredContentPreprocessorBase {
 
 	protected static final String CFG_TARGET_FIELD = "target_field";
@@ -47,6 +48,8 @@ public class MaxTimestampPreprocessor extends StructuredContentPreprocessorBase
 
 	protected String fieldTarget;
 	protected String fieldSource;
+	protected FieldPath fieldTargetPath;
+	protected FieldPath fieldSourcePath;
 
 	@Override
 	public void init(Map<String, Object> settings) throws SettingsException {
@@ -57,6 +60,8 @@ public class MaxTimestampPreprocessor extends StructuredContentPreprocessorBase
 		fieldSource = XContentMapValues.nodeStringValue(settings.get(CFG_SOURCE_FIELD), null);
 		validateConfigurationStringNotEmpty(fieldSource, CFG_SOURCE_FIELD);
 		validateConfigurationStringNotEmpty(fieldTarget, CFG_TARGET_FIELD);
+		fieldSourcePath = FieldPath.compile(fieldSource);
+		fieldTargetPath = FieldPath.compile(fieldTarget);
 	}
 
 	@Override
@@ -67,7 +72,7 @@ public class MaxTimestampPreprocessor extends StructuredContentPreprocessorBase
 		String maxTimestamp = null;
 		long maxTimestampParsed = 0;
 
-		Object sourceData = XContentMapValues.extractValue(fieldSource, data);
+		Object sourceData = fieldSourcePath.getValue(data);
 		if (sourceData != null) {
 			DateTimeFormatter dateParser = ISODateTimeFormat.dateTimeParser();
 			if (sourceData instanceof Iterable) {
@@ -83,15 +88,14 @@ public class MaxTimestampPreprocessor extends StructuredContentPreprocessorBase
 								}
 							}
 						} catch (Exception e) {
-							String msg = "Value '" + o + "' in filed '" + fieldSource + "'is not valid timestamp";
-							addDataWarning(chainContext, msg);
-							logger.debug(msg);
+							String msg = "Value '{}' in filed '{}'is not valid timestamp";
+							addDataWarning(chainContext, msg, o, fieldSource);
+							logger.debug(msg, o, fieldSource);
 						}
 					} else {
-						String msg = "Value for field '" + fieldSource + "' is not String but is "
-								+ sourceData.getClass().getName();
-						addDataWarning(chainContext, msg);
-						logger.debug(msg);
+						String msg = "Value for field '{}' is not String but is {}";
+						addDataWarning(chainContext, msg, fieldSource, sourceData.getClass().getName());
+						logger.debug(msg, fieldSource, sourceData.getClass().getName());
 					}
 				}
 			} else if (sourceData instanceof String) {
@@ -104,15 +108,14 @@ public class MaxTimestampPreprocessor extends StructuredContentPreprocessorBase
 						maxTimestamp = timestamp;
 					}
 				} catch (Exception e) {
-					String msg = "Value '" + sourceData + "' in filed '" + fieldSource + "'is not valid timestamp";
-					addDataWarning(chainContext, msg);
-					logger.debug(msg);
+					String msg = "Value '{}' in filed '{}'is not valid timestamp";
+					addDataWarning(chainContext, msg, sourceData, fieldSource);
+					logger.debug(msg, sourceData, fieldSource);
 				}
 			} else {
-				String msg = "Value for field '" + fieldSource + "' is not Iterable nor String but is "
-						+ sourceData.getClass().getName();
-				addDataWarning(chainContext, msg);
-				logger.debug(msg);
+				String msg = "Value for field '{}' is not Iterable nor String but is {}";
+				addDataWarning(chainContext, msg, fieldSource, sourceData.getClass().getName());
+				logger.debug(msg, fieldSource, sourceData.getClass().getName());
 			}
 		} else {
 			logger.debug("Value for field {} not found in data", fieldSource);
@@ -120,7 +123,7 @@ public class MaxTimestampPreprocessor extends StructuredContentPreprocessorBase
 
 		logger.debug("Max timestamp found in {} is {}", fieldSource, maxTimestamp);
 
-		StructureUtils.putValueIntoMapOfMaps(data, fieldTarget, maxTimestamp);
+		fieldTargetPath.putValue(data, maxTimestamp);
 		return data;
 	}
 
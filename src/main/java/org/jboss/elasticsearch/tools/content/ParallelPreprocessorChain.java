@@ -0,0 +1,286 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+
+/**
+ * Runner of {@link PreprocessorChain} which splits batch of documents into slices and preprocesses them in parallel
+ * using more threads. Order of documents is preserved in the result.
+ * <p>
+ * Preprocessors annotated by {@link ThreadSafe} are shared by all workers, other preprocessors are instantiated for each
+ * worker separately (see {@link PreprocessorChain#createWorkerCopy()}). Each document is preprocessed by one thread
+ * only, so {@link PreprocessChainContext} instances passed for documents need not to be thread safe.
+ * <p>
+ * Instance of this class is thread safe. Call {@link #close()} when runner is not necessary anymore to stop threads
+ * created by it and release preprocessors instantiated for workers. Chain passed into constructor is not closed by
+ * runner, call {@link PreprocessorChain#close()} for it.
+ *
+ * @author agent (agent at local)
+ * @see PreprocessorChain
+ */
+public class ParallelPreprocessorChain {
+
+	protected static final ESLogger logger = Loggers.getLogger(ParallelPreprocessorChain.class);
+
+	/**
+	 * Minimal number of documents in one slice processed by one worker, smaller batches are split to less slices.
+	 */
+	public static final int MIN_SLICE_SIZE = 8;
+
+	protected final PreprocessorChain chain;
+	protected final ExecutorService executor;
+	protected final boolean executorOwned;
+	protected final int parallelism;
+
+	/**
+	 * Chains used by workers which are not in use now.
+	 */
+	protected final ConcurrentLinkedQueue<PreprocessorChain> idleWorkerChains = new ConcurrentLinkedQueue<PreprocessorChain>();
+
+	/**
+	 * Create runner with own thread pool with one thread for each available processor.
+	 *
+	 * @param chain to run
+	 */
+	public ParallelPreprocessorChain(PreprocessorChain chain) {
+		this(chain, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create runner with own thread pool.
+	 *
+	 * @param chain to run
+	 * @param parallelism maximal number of threads preprocessing one batch, including thread calling
+	 *          {@link #preprocessBatch(List, List)}.
+	 */
+	public ParallelPreprocessorChain(PreprocessorChain chain, int parallelism) {
+		this(chain, parallelism > 1 ? Executors.newFixedThreadPool(parallelism - 1,
+				EsExecutors.daemonThreadFactory("preprocessor_chain")) : null, parallelism, true);
+	}
+
+	/**
+	 * Create runner using given executor. Executor is not shut down by {@link #close()}.
+	 *
+	 * @param chain to run
+	 * @param executor to run slices of batch in. Thread calling {@link #preprocessBatch(List, List)} preprocesses one
+	 *          slice too.
+	 * @param parallelism maximal number of slices one batch is split into
+	 */
+	public ParallelPreprocessorChain(PreprocessorChain chain, ExecutorService executor, int parallelism) {
+		this(chain, executor, parallelism, false);
+		if (executor == null)
+			throw new IllegalArgumentException("executor must be provided");
+	}
+
+	private ParallelPreprocessorChain(PreprocessorChain chain, ExecutorService executor, int parallelism,
+			boolean executorOwned) {
+		if (chain == null)
+			throw new IllegalArgumentException("chain must be provided");
+		if (parallelism < 1)
+			throw new IllegalArgumentException("parallelism must be positive number");
+		this.chain = chain;
+		this.executor = executor;
+		this.parallelism = parallelism;
+		this.executorOwned = executorOwned;
+	}
+
+	/**
+	 * Preprocess batch of documents in parallel. Warnings are not collected.
+	 *
+	 * @param documents batch of documents to be preprocessed - documents may be changed during call!
+	 * @return list of preprocessed documents in the same order as in <code>documents</code>.
+	 * @throws InterruptedException if calling thread is interrupted while waiting for workers
+	 * @see #preprocessBatch(List, List)
+	 */
+	public List<Map<String, Object>> preprocessBatch(List<Map<String, Object>> documents) throws InterruptedException {
+		return preprocessBatch(documents, null);
+	}
+
+	/**
+	 * Preprocess batch of documents in parallel. If preprocessing of any document fails with exception, then this
+	 * exception is rethrown by this method once all slices are finished.
+	 *
+	 * @param documents batch of documents to be preprocessed - documents may be changed during call!
+	 * @param chainContexts contexts for each document in the batch, in the same order as documents. Can be
+	 *          <code>null</code> if caller is not interested in warnings, but if defined then must have same size as
+	 *          <code>documents</code>. Items can be <code>null</code>.
+	 * @return list of preprocessed documents in the same order as in <code>documents</code>.
+	 * @throws InterruptedException if calling thread is interrupted while waiting for workers
+	 * @see PreprocessorChain#preprocessBatch(List, List)
+	 */
+	public List<Map<String, Object>> preprocessBatch(List<Map<String, Object>> documents,
+			List<? extends PreprocessChainContext> chainContexts) throws InterruptedException {
+		if (documents == null)
+			return null;
+		final int size = documents.size();
+		if (chainContexts != null && chainContexts.size() != size)
+			throw new IllegalArgumentException("chainContexts must have same size as documents");
+
+		int slices = Math.min(parallelism, (size + MIN_SLICE_SIZE - 1) / MIN_SLICE_SIZE);
+		if (slices <= 1 || executor == null) {
+			PreprocessorChain workerChain = borrowWorkerChain();
+			try {
+				return workerChain.preprocessBatch(documents, chainContexts);
+			} finally {
+				idleWorkerChains.offer(workerChain);
+			}
+		}
+
+		if (logger.isDebugEnabled())
+			logger.debug("Going to preprocess batch of {} documents in {} slices", size, slices);
+
+		// slices access items by index
+		if (!(documents instanceof RandomAccess))
+			documents = new ArrayList<Map<String, Object>>(documents);
+		if (chainContexts != null && !(chainContexts instanceof RandomAccess))
+			chainContexts = new ArrayList<PreprocessChainContext>(chainContexts);
+
+		final List<Map<String, Object>> results = new ArrayList<Map<String, Object>>(
+				Collections.<Map<String, Object>> nCopies(size, null));
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(slices - 1);
+		int sliceSize = (size + slices - 1) / slices;
+		try {
+			for (int from = sliceSize; from < size; from += sliceSize) {
+				futures.add(executor.submit(new SliceTask(documents, chainContexts, results, from, Math.min(size, from
+						+ sliceSize))));
+			}
+			// first slice is processed by calling thread
+			Throwable failure = null;
+			try {
+				new SliceTask(documents, chainContexts, results, 0, Math.min(size, sliceSize)).call();
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+			for (Future<Void> f : futures) {
+				try {
+					f.get();
+				} catch (ExecutionException e) {
+					if (failure == null)
+						failure = e.getCause();
+				}
+			}
+			if (failure != null) {
+				if (failure instanceof RuntimeException)
+					throw (RuntimeException) failure;
+				if (failure instanceof Error)
+					throw (Error) failure;
+				throw new RuntimeException(failure.getMessage(), failure);
+			}
+		} catch (InterruptedException e) {
+			for (Future<Void> f : futures) {
+				f.cancel(true);
+			}
+			throw e;
+		}
+		return results;
+	}
+
+	/**
+	 * Get chain for exclusive use by one worker. Return it back into {@link #idleWorkerChains} after use.
+	 *
+	 * @return chain
+	 */
+	protected PreprocessorChain borrowWorkerChain() {
+		PreprocessorChain ret = idleWorkerChains.poll();
+		if (ret == null) {
+			ret = chain.createWorkerCopy();
+		}
+		return ret;
+	}
+
+	/**
+	 * Task preprocessing one slice of batch.
+	 */
+	protected class SliceTask implements Callable<Void> {
+
+		private final List<Map<String, Object>> documents;
+		private final List<? extends PreprocessChainContext> chainContexts;
+		private final List<Map<String, Object>> results;
+		private final int from;
+		private final int to;
+
+		protected SliceTask(List<Map<String, Object>> documents, List<? extends PreprocessChainContext> chainContexts,
+				List<Map<String, Object>> results, int from, int to) {
+			this.documents = documents;
+			this.chainContexts = chainContexts;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Void call() {
+			PreprocessorChain workerChain = borrowWorkerChain();
+			try {
+				List<Map<String, Object>> slice = workerChain.preprocessBatch(documents.subList(from, to),
+						chainContexts != null ? chainContexts.subList(from, to) : null);
+				for (int i = from; i < to; i++) {
+					results.set(i, slice.get(i - from));
+				}
+			} finally {
+				idleWorkerChains.offer(workerChain);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * @return chain run by this runner
+	 */
+	public PreprocessorChain getChain() {
+		return chain;
+	}
+
+	/**
+	 * @return maximal number of slices one batch is split into
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Stop threads created by this runner and close preprocessors instantiated for workers (see
+	 * {@link PreprocessorChain#close()}). Executor and chain passed into constructor are not closed, so preprocessors
+	 * shared by workers with the chain are not closed too.
+	 */
+	public void close() {
+		if (executorOwned && executor != null) {
+			executor.shutdown();
+		}
+		List<StructuredContentPreprocessor> shared = chain.getPreprocessors();
+		PreprocessorChain workerChain;
+		while ((workerChain = idleWorkerChains.poll()) != null) {
+			for (StructuredContentPreprocessor preproc : workerChain.preprocessors) {
+				if (!containsInstance(shared, preproc))
+					PreprocessorChain.closePreprocessor(preproc);
+			}
+		}
+	}
+
+	private static boolean containsInstance(List<StructuredContentPreprocessor> list, Object o) {
+		for (Object item : list) {
+			if (item == o)
+				return true;
+		}
+		return false;
+	}
+
+}
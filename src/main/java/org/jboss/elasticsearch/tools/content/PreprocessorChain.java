@@ -0,0 +1,768 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+
+/**
+ * Chain of {@link StructuredContentPreprocessor}s which is able to preprocess one document or whole batch of documents.
+ * Preprocessors are run in the order they are defined in the chain. Chain is immutable and may be reused for any number
+ * of documents/batches. Instances are typically created by
+ * {@link StructuredContentPreprocessorFactory#createPreprocessorChain(List, Client)}.
+ * <p>
+ * Batch methods should be preferred over calling {@link #preprocessData(Map, PreprocessChainContext)} in loop by the
+ * calling application, because all per-document bookkeeping of the chain is done once per batch only.
+ * <p>
+ * Call {@link #close()} when chain is not necessary anymore to release resources held by preprocessors (eg. threads or
+ * http clients).
+ *
+ * @author agent (agent at local)
+ * @see StructuredContentPreprocessorFactory
+ */
+public class PreprocessorChain {
+
+	protected static final ESLogger logger = Loggers.getLogger(PreprocessorChain.class);
+
+	protected final StructuredContentPreprocessor[] preprocessors;
+
+	/**
+	 * Steps really run by the chain - one for each of {@link #preprocessors}, but with consecutive fusable preprocessors
+	 * replaced by one {@link FusedPreprocessor}.
+	 *
+	 * @see Fusable
+	 */
+	protected final Step[] steps;
+
+	/**
+	 * Configurations preprocessors were created from, in the same order. <code>null</code> if chain was not created from
+	 * configuration.
+	 */
+	protected final List<Map<String, Object>> preprocessorConfigs;
+
+	protected final Client client;
+
+	/**
+	 * Metrics for each preprocessor, in the same order. <code>null</code> if chain is not instrumented.
+	 *
+	 * @see #withMetrics(PreprocessorMetricsRegistry)
+	 */
+	protected final PreprocessorMetrics[] metrics;
+
+	/**
+	 * Create chain from already initialized preprocessors.
+	 *
+	 * @param preprocessors to be run in the chain, in given order. Can be <code>null</code> or empty.
+	 */
+	public PreprocessorChain(List<StructuredContentPreprocessor> preprocessors) {
+		this(preprocessors != null ? preprocessors.toArray(new StructuredContentPreprocessor[preprocessors.size()])
+				: new StructuredContentPreprocessor[0], null, null);
+	}
+
+	/**
+	 * Create chain.
+	 *
+	 * @param preprocessors to be run in the chain, in given order. Must not be <code>null</code>.
+	 * @param preprocessorConfigs configurations preprocessors were created from, in same order. Can be <code>null</code>.
+	 * @param client ES client preprocessors were created with. Can be <code>null</code>.
+	 */
+	protected PreprocessorChain(StructuredContentPreprocessor[] preprocessors,
+			List<Map<String, Object>> preprocessorConfigs, Client client) {
+		this(preprocessors, preprocessorConfigs, client, null);
+	}
+
+	/**
+	 * Create chain.
+	 *
+	 * @param preprocessors to be run in the chain, in given order. Must not be <code>null</code>.
+	 * @param preprocessorConfigs configurations preprocessors were created from, in same order. Can be <code>null</code>.
+	 * @param client ES client preprocessors were created with. Can be <code>null</code>.
+	 * @param metrics for preprocessors, in same order. Can be <code>null</code> if chain is not instrumented.
+	 *          Preprocessors of instrumented chain are not fused, so metrics of each of them are recorded separately.
+	 */
+	protected PreprocessorChain(StructuredContentPreprocessor[] preprocessors,
+			List<Map<String, Object>> preprocessorConfigs, Client client, PreprocessorMetrics[] metrics) {
+		for (StructuredContentPreprocessor preproc : preprocessors) {
+			if (preproc == null)
+				throw new IllegalArgumentException("preprocessor in the chain can't be null");
+		}
+		if (preprocessorConfigs != null && preprocessorConfigs.size() != preprocessors.length)
+			throw new IllegalArgumentException("preprocessorConfigs must have same size as preprocessors");
+		if (metrics != null && metrics.length != preprocessors.length)
+			throw new IllegalArgumentException("metrics must have same size as preprocessors");
+		this.preprocessors = preprocessors;
+		this.preprocessorConfigs = preprocessorConfigs;
+		this.client = client;
+		this.metrics = metrics;
+		this.steps = createSteps(preprocessors, metrics == null);
+	}
+
+	/**
+	 * Create steps run by the chain. Each sequence of consecutive fusable preprocessors with the same source bases is
+	 * replaced by one {@link FusedPreprocessor} if <code>fuse</code> is true.
+	 *
+	 * @param preprocessors to create steps for
+	 * @param fuse true to fuse preprocessors
+	 * @return steps
+	 * @see #isFusable(StructuredContentPreprocessor)
+	 */
+	protected static Step[] createSteps(StructuredContentPreprocessor[] preprocessors, boolean fuse) {
+		List<Step> ret = new ArrayList<Step>(preprocessors.length);
+		int i = 0;
+		while (i < preprocessors.length) {
+			int end = i + 1;
+			if (fuse && isFusable(preprocessors[i])) {
+				List<String> sourceBases = ((StructuredContentPreprocessorWithSourceBasesBase<?>) preprocessors[i])
+						.getSourceBases();
+				while (end < preprocessors.length && isFusable(preprocessors[end])
+						&& sourceBases.equals(((StructuredContentPreprocessorWithSourceBasesBase<?>) preprocessors[end])
+								.getSourceBases()))
+					end++;
+			}
+			if (end - i > 1) {
+				ret.add(new FusedPreprocessor(Arrays.asList(preprocessors).subList(i, end)));
+				if (logger.isDebugEnabled())
+					logger.debug("Preprocessors {} fused as they have same source_bases", ret.get(ret.size() - 1).getName());
+			} else {
+				ret.add(new PreprocessorStep(preprocessors[i]));
+			}
+			i = end;
+		}
+		return ret.toArray(new Step[ret.size()]);
+	}
+
+	/**
+	 * Check if preprocessor may be fused with neighbouring preprocessors with the same source bases.
+	 *
+	 * @param preprocessor to check
+	 * @return true if preprocessor is fusable and has source bases configured
+	 * @see Fusable
+	 */
+	public static boolean isFusable(StructuredContentPreprocessor preprocessor) {
+		return preprocessor instanceof StructuredContentPreprocessorWithSourceBasesBase
+				&& !(preprocessor instanceof StructuredContentBatchPreprocessor)
+				&& preprocessor.getClass().isAnnotationPresent(Fusable.class)
+				&& ((StructuredContentPreprocessorWithSourceBasesBase<?>) preprocessor).getSourceBases() != null;
+	}
+
+	/**
+	 * Create copy of this chain which records duration, number of processed documents, warnings and errors of each
+	 * preprocessor call into metrics obtained from <code>registry</code> by preprocessor name. Preprocessors are shared
+	 * with this chain. Warnings are counted even if chain is called without context.
+	 * <p>
+	 * Note that preprocessors of instrumented chain are not fused (see {@link Fusable}), so metrics of each of them are
+	 * recorded separately, but instrumented chain may be slower than this one if it contains fusable preprocessors.
+	 *
+	 * @param registry to get metrics from
+	 * @return instrumented copy of this chain
+	 */
+	public PreprocessorChain withMetrics(PreprocessorMetricsRegistry registry) {
+		if (registry == null)
+			throw new IllegalArgumentException("registry must be defined");
+		PreprocessorMetrics[] m = new PreprocessorMetrics[preprocessors.length];
+		for (int i = 0; i < preprocessors.length; i++) {
+			String name = preprocessors[i].getName();
+			m[i] = registry.getMetrics(name != null ? name : preprocessors[i].getClass().getSimpleName());
+		}
+		return new PreprocessorChain(preprocessors, preprocessorConfigs, client, m);
+	}
+
+	/**
+	 * Run all preprocessors from the chain over one document.
+	 *
+	 * @param data to be preprocessed - may be changed during call!
+	 * @param chainContext context of data preprocessing. May be null!
+	 * @return preprocessed data - typically same object as <code>data</code> parameter, but with changed structure.
+	 */
+	public Map<String, Object> preprocessData(Map<String, Object> data, PreprocessChainContext chainContext) {
+		final Step[] p = steps;
+		if (metrics != null) {
+			WarningCountingContext countingContext = new WarningCountingContext();
+			for (int i = 0; i < p.length; i++) {
+				data = preprocessDataInstrumented(i, data, chainContext, countingContext);
+			}
+			return data;
+		}
+		for (int i = 0; i < p.length; i++) {
+			data = p[i].preprocessData(data, chainContext);
+		}
+		return data;
+	}
+
+	/**
+	 * Run all preprocessors from the chain over copy-on-write view of one document, so it is possible to run more chains
+	 * over the same source document without copying it whole for each chain. Only levels of document changed by the
+	 * preprocessors are copied, see {@link StructureUtils#getACopyOnWriteStructure(Object)}.
+	 *
+	 * @param data to be preprocessed - it is not changed during call, and it must not be changed as long as returned
+	 *          document is used
+	 * @param chainContext context of data preprocessing. May be null!
+	 * @return preprocessed data - typically {@link CopyOnWriteMap} sharing unchanged parts of structure with
+	 *         <code>data</code> parameter.
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<String, Object> preprocessDataCopyOnWrite(Map<String, Object> data, PreprocessChainContext chainContext) {
+		if (data == null)
+			return preprocessData(null, chainContext);
+		return preprocessData((Map<String, Object>) StructureUtils.getACopyOnWriteStructure(data), chainContext);
+	}
+
+	/**
+	 * Run one preprocessor from the chain over one document and record call into its metrics.
+	 *
+	 * @param index of preprocessor to run in {@link #steps}
+	 * @param data to be preprocessed
+	 * @param chainContext context of data preprocessing. May be null!
+	 * @param countingContext used to count warnings of the call, reused for all calls of one chain run
+	 * @return preprocessed data
+	 */
+	protected Map<String, Object> preprocessDataInstrumented(int index, Map<String, Object> data,
+			PreprocessChainContext chainContext, WarningCountingContext countingContext) {
+		countingContext.reset(chainContext);
+		boolean failed = true;
+		long start = System.nanoTime();
+		try {
+			data = steps[index].preprocessData(data, countingContext);
+			failed = false;
+			return data;
+		} finally {
+			metrics[index].record(1, System.nanoTime() - start, countingContext.getCount(), failed);
+		}
+	}
+
+	/**
+	 * Run one batch preprocessor from the chain over the batch and record call into its metrics if chain is
+	 * instrumented.
+	 *
+	 * @param index of preprocessor to run in {@link #steps}
+	 * @param documents batch of documents to be preprocessed
+	 * @param chainContexts contexts for each document in the batch, can be <code>null</code>
+	 * @param countingContexts used to count warnings for each document in the batch if chain is instrumented, reused
+	 *          for all batch preprocessors of one chain run. Filled by this method if empty.
+	 * @return list of preprocessed documents
+	 */
+	protected List<Map<String, Object>> preprocessBatchInstrumented(int index, List<Map<String, Object>> documents,
+			List<? extends PreprocessChainContext> chainContexts, List<WarningCountingContext> countingContexts) {
+		StructuredContentBatchPreprocessor preproc = steps[index].getBatchPreprocessor();
+		if (metrics == null)
+			return preproc.preprocessBatch(documents, chainContexts);
+		final int size = documents.size();
+		while (countingContexts.size() < size) {
+			countingContexts.add(new WarningCountingContext());
+		}
+		Iterator<? extends PreprocessChainContext> ctxIterator = chainContexts != null ? chainContexts.iterator() : null;
+		for (int i = 0; i < size; i++) {
+			countingContexts.get(i).reset(ctxIterator != null ? ctxIterator.next() : null);
+		}
+		boolean failed = true;
+		long start = System.nanoTime();
+		try {
+			List<Map<String, Object>> ret = preproc.preprocessBatch(documents, countingContexts.subList(0, size));
+			failed = false;
+			return ret;
+		} finally {
+			int warnings = 0;
+			for (int i = 0; i < size; i++) {
+				warnings += countingContexts.get(i).getCount();
+			}
+			metrics[index].record(size, System.nanoTime() - start, warnings, failed);
+		}
+	}
+
+	/**
+	 * Run all preprocessors from the chain over each document from the batch. Warnings are not collected.
+	 *
+	 * @param documents batch of documents to be preprocessed - documents may be changed during call!
+	 * @return list of preprocessed documents in the same order as in <code>documents</code>.
+	 * @see #preprocessBatch(List, List)
+	 */
+	public List<Map<String, Object>> preprocessBatch(List<Map<String, Object>> documents) {
+		return preprocessBatch(documents, null);
+	}
+
+	/**
+	 * Run all preprocessors from the chain over each document from the batch. {@link StructuredContentBatchPreprocessor}s
+	 * from the chain get whole batch at once, after all previous preprocessors processed all documents from the batch.
+	 *
+	 * @param documents batch of documents to be preprocessed - documents may be changed during call!
+	 * @param chainContexts contexts for each document in the batch, in the same order as documents. Can be
+	 *          <code>null</code> if caller is not interested in warnings, but if defined then must have same size as
+	 *          <code>documents</code>. Items can be <code>null</code>.
+	 * @return list of preprocessed documents in the same order as in <code>documents</code>.
+	 * @throws IllegalArgumentException if <code>chainContexts</code> size doesn't match
+	 */
+	public List<Map<String, Object>> preprocessBatch(List<Map<String, Object>> documents,
+			List<? extends PreprocessChainContext> chainContexts) {
+		if (documents == null)
+			return null;
+		final int size = documents.size();
+		if (chainContexts != null && chainContexts.size() != size)
+			throw new IllegalArgumentException("chainContexts must have same size as documents");
+		if (logger.isDebugEnabled())
+			logger.debug("Going to preprocess batch of {} documents by chain of {} preprocessors", size,
+					preprocessors.length);
+
+		final Step[] p = steps;
+		List<WarningCountingContext> countingContexts = metrics != null ? new ArrayList<WarningCountingContext>() : null;
+		List<Map<String, Object>> ret = null;
+		int segmentStart = 0;
+		for (int i = 0; i < p.length; i++) {
+			if (p[i].getBatchPreprocessor() != null) {
+				if (i > segmentStart)
+					ret = preprocessSegment(ret != null ? ret : documents, chainContexts, segmentStart, i);
+				ret = preprocessBatchInstrumented(i, ret != null ? ret : documents, chainContexts, countingContexts);
+				segmentStart = i + 1;
+			}
+		}
+		if (ret == null || segmentStart < p.length)
+			ret = preprocessSegment(ret != null ? ret : documents, chainContexts, segmentStart, p.length);
+		return ret;
+	}
+
+	/**
+	 * Run segment of preprocessors from the chain over each document from the batch, document after document. Indexes
+	 * are into {@link #steps}.
+	 *
+	 * @param documents batch of documents to be preprocessed
+	 * @param chainContexts contexts for each document in the batch, can be <code>null</code>
+	 * @param from index of first preprocessor to run
+	 * @param to index after last preprocessor to run
+	 * @return new list of preprocessed documents in the same order as in <code>documents</code>.
+	 */
+	protected List<Map<String, Object>> preprocessSegment(List<Map<String, Object>> documents,
+			List<? extends PreprocessChainContext> chainContexts, int from, int to) {
+		final Step[] p = steps;
+		List<Map<String, Object>> ret = new ArrayList<Map<String, Object>>(documents.size());
+		WarningCountingContext countingContext = metrics != null ? new WarningCountingContext() : null;
+		Iterator<? extends PreprocessChainContext> ctxIterator = chainContexts != null ? chainContexts.iterator() : null;
+		for (Map<String, Object> data : documents) {
+			PreprocessChainContext chainContext = ctxIterator != null ? ctxIterator.next() : null;
+			if (countingContext != null) {
+				for (int i = from; i < to; i++) {
+					data = preprocessDataInstrumented(i, data, chainContext, countingContext);
+				}
+			} else {
+				for (int i = from; i < to; i++) {
+					data = p[i].preprocessData(data, chainContext);
+				}
+			}
+			ret.add(data);
+		}
+		return ret;
+	}
+
+	/**
+	 * Create iterator which lazily runs all preprocessors from the chain over each document provided by
+	 * <code>documents</code> iterator. Useful for batches which are too big to be kept in memory.
+	 *
+	 * @param documents iterator over documents to be preprocessed - documents may be changed during iteration!
+	 * @param chainContext context used to collect warnings for all documents. May be null!
+	 * @return iterator over preprocessed documents. {@link Iterator#remove()} is delegated to <code>documents</code>.
+	 */
+	public Iterator<Map<String, Object>> preprocessingIterator(final Iterator<Map<String, Object>> documents,
+			final PreprocessChainContext chainContext) {
+		if (documents == null)
+			throw new IllegalArgumentException("documents iterator must be provided");
+		return new Iterator<Map<String, Object>>() {
+
+			@Override
+			public boolean hasNext() {
+				return documents.hasNext();
+			}
+
+			@Override
+			public Map<String, Object> next() {
+				if (!documents.hasNext())
+					throw new NoSuchElementException();
+				return preprocessData(documents.next(), chainContext);
+			}
+
+			@Override
+			public void remove() {
+				documents.remove();
+			}
+		};
+	}
+
+	/**
+	 * Check if preprocessor instance may be used by more threads at the same time.
+	 *
+	 * @param preprocessor to check
+	 * @return true if preprocessor is thread safe
+	 * @see ThreadSafe
+	 */
+	public static boolean isThreadSafe(StructuredContentPreprocessor preprocessor) {
+		return preprocessor instanceof SynchronizedPreprocessor
+				|| preprocessor.getClass().isAnnotationPresent(ThreadSafe.class);
+	}
+
+	/**
+	 * Check if all preprocessors in this chain are thread safe, so chain may be used by more threads at the same time.
+	 *
+	 * @return true if chain is thread safe
+	 * @see #isThreadSafe(StructuredContentPreprocessor)
+	 */
+	public boolean isThreadSafe() {
+		for (StructuredContentPreprocessor preproc : preprocessors) {
+			if (!isThreadSafe(preproc))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Create copy of this chain which may be used by another thread concurrently with this chain. Thread safe
+	 * preprocessors are shared with this chain. Other preprocessors are created again from configuration if available,
+	 * or access to them is synchronized if chain was not created from configuration.
+	 *
+	 * @return copy of the chain, or this chain if it is thread safe already.
+	 * @throws IllegalArgumentException if preprocessor can't be created from configuration
+	 * @see ThreadSafe
+	 */
+	public PreprocessorChain createWorkerCopy() {
+		if (isThreadSafe())
+			return this;
+		StructuredContentPreprocessor[] copy = new StructuredContentPreprocessor[preprocessors.length];
+		for (int i = 0; i < preprocessors.length; i++) {
+			StructuredContentPreprocessor preproc = preprocessors[i];
+			if (isThreadSafe(preproc)) {
+				copy[i] = preproc;
+			} else if (preprocessorConfigs != null) {
+				copy[i] = StructuredContentPreprocessorFactory.createPreprocessor(preprocessorConfigs.get(i), client);
+			} else {
+				copy[i] = new SynchronizedPreprocessor(preproc);
+			}
+		}
+		return new PreprocessorChain(copy, preprocessorConfigs, client, metrics);
+	}
+
+	/**
+	 * Close all preprocessors of the chain which implement {@link Closeable}, eg. to stop threads and release http
+	 * clients held by them. Chain must not be used after close. Chains created by
+	 * {@link #withMetrics(PreprocessorMetricsRegistry)} and {@link #createWorkerCopy()} share preprocessors with this
+	 * chain, so only one of them has to be closed (closing more of them is harmless for preprocessors from this
+	 * framework).
+	 */
+	public void close() {
+		for (StructuredContentPreprocessor preproc : preprocessors) {
+			closePreprocessor(preproc);
+		}
+	}
+
+	/**
+	 * Close preprocessor if it implements {@link Closeable}. Failure is logged only.
+	 *
+	 * @param preprocessor to close
+	 */
+	protected static void closePreprocessor(StructuredContentPreprocessor preprocessor) {
+		if (preprocessor instanceof Closeable) {
+			try {
+				((Closeable) preprocessor).close();
+			} catch (IOException e) {
+				logger.warn("Preprocessor {} close failed: {}", preprocessor.getName(), e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Step of the chain run over each document. Steps are internal to the chain, so they are not
+	 * {@link StructuredContentPreprocessor}s and can't be initialized.
+	 */
+	protected static abstract class Step {
+
+		/**
+		 * @return name of step used in log messages
+		 */
+		public abstract String getName();
+
+		/**
+		 * Run step over one document.
+		 *
+		 * @param data to be preprocessed
+		 * @param chainContext context of data preprocessing. May be null!
+		 * @return preprocessed data
+		 */
+		public abstract Map<String, Object> preprocessData(Map<String, Object> data, PreprocessChainContext chainContext);
+
+		/**
+		 * @return batch preprocessor run by this step, or null if step processes documents one by one
+		 */
+		public StructuredContentBatchPreprocessor getBatchPreprocessor() {
+			return null;
+		}
+	}
+
+	/**
+	 * Step running one preprocessor.
+	 */
+	protected static final class PreprocessorStep extends Step {
+
+		protected final StructuredContentPreprocessor preprocessor;
+
+		private final StructuredContentBatchPreprocessor batchPreprocessor;
+
+		protected PreprocessorStep(StructuredContentPreprocessor preprocessor) {
+			this.preprocessor = preprocessor;
+			this.batchPreprocessor = preprocessor instanceof StructuredContentBatchPreprocessor
+					? (StructuredContentBatchPreprocessor) preprocessor : null;
+		}
+
+		@Override
+		public String getName() {
+			return preprocessor.getName();
+		}
+
+		@Override
+		public Map<String, Object> preprocessData(Map<String, Object> data, PreprocessChainContext chainContext) {
+			return preprocessor.preprocessData(data, chainContext);
+		}
+
+		@Override
+		public StructuredContentBatchPreprocessor getBatchPreprocessor() {
+			return batchPreprocessor;
+		}
+	}
+
+	/**
+	 * Step running more fusable preprocessors with the same source bases in one pass over base elements, each base
+	 * element is visited once and all fused preprocessors are applied to it in the order they are defined in the chain.
+	 * Source bases are compiled when preprocessors are fused.
+	 *
+	 * @see Fusable
+	 */
+	protected static final class FusedPreprocessor extends Step {
+
+		protected final List<StructuredContentPreprocessorWithSourceBasesBase<Object>> fused;
+
+		protected final FieldPath[] sourceBasesPaths;
+
+		protected final String name;
+
+		@SuppressWarnings("unchecked")
+		protected FusedPreprocessor(List<StructuredContentPreprocessor> preprocessors) {
+			List<StructuredContentPreprocessorWithSourceBasesBase<Object>> f = new ArrayList<StructuredContentPreprocessorWithSourceBasesBase<Object>>(
+					preprocessors.size());
+			StringBuilder sb = new StringBuilder();
+			for (StructuredContentPreprocessor p : preprocessors) {
+				f.add((StructuredContentPreprocessorWithSourceBasesBase<Object>) p);
+				if (sb.length() > 0)
+					sb.append("+");
+				sb.append(p.getName());
+			}
+			fused = f;
+			sourceBasesPaths = FieldPath.compile(f.get(0).getSourceBases());
+			name = sb.toString();
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public Map<String, Object> preprocessData(Map<String, Object> data, PreprocessChainContext chainContext) {
+			if (data == null)
+				return null;
+			final List<StructuredContentPreprocessorWithSourceBasesBase<Object>> f = fused;
+			Object[] contexts = new Object[f.size()];
+			for (int i = 0; i < contexts.length; i++) {
+				contexts[i] = f.get(i).createContext(data);
+			}
+			for (FieldPath basePath : sourceBasesPaths) {
+				if (basePath == null)
+					continue;
+				String base = basePath.getPath();
+				Object obj = basePath.getValue(data);
+				if (obj != null) {
+					if (obj instanceof Map) {
+						processOneSourceValue((Map<String, Object>) obj, contexts, base, chainContext);
+					} else if (obj instanceof Collection) {
+						for (Object o : (Collection<Object>) obj) {
+							if (o instanceof Map) {
+								processOneSourceValue((Map<String, Object>) o, contexts, base, chainContext);
+							} else {
+								addDataWarning(chainContext, "Collection in field '" + base
+										+ "' contains value which is not Map, which can't be processed as source_base, so is skipped");
+							}
+						}
+					} else {
+						addDataWarning(chainContext, "Field '" + base
+								+ "' contains invalid value which can't be processed as source_base, so is skipped");
+					}
+				}
+			}
+			return data;
+		}
+
+		private void processOneSourceValue(Map<String, Object> element, Object[] contexts, String base,
+				PreprocessChainContext chainContext) {
+			final List<StructuredContentPreprocessorWithSourceBasesBase<Object>> f = fused;
+			for (int i = 0; i < contexts.length; i++) {
+				f.get(i).processOneSourceValue(element, contexts[i], base, chainContext);
+			}
+		}
+
+		/**
+		 * Add warning on behalf of each fused preprocessor, as they would do when not fused.
+		 */
+		private void addDataWarning(PreprocessChainContext chainContext, String msg) {
+			for (StructuredContentPreprocessorWithSourceBasesBase<Object> p : fused) {
+				p.addDataWarning(chainContext, msg);
+			}
+			logger.debug(msg);
+		}
+
+		/**
+		 * @return unmodifiable list of fused preprocessors
+		 */
+		public List<StructuredContentPreprocessor> getFusedPreprocessors() {
+			return Collections.<StructuredContentPreprocessor> unmodifiableList(fused);
+		}
+	}
+
+	/**
+	 * Context counting warnings added by one preprocessor call and passing them to the context given to the chain, if
+	 * any. Used by instrumented chain, one instance is reused by {@link #reset(PreprocessChainContext)} for all calls
+	 * of one chain run, so it is not thread safe. Preprocessors adding warnings from other threads synchronize on the
+	 * context, see {@link RESTCallPreprocessor}.
+	 */
+	protected static final class WarningCountingContext implements LazyPreprocessChainContext {
+
+		private PreprocessChainContext delegate;
+
+		private int count;
+
+		/**
+		 * Prepare context for next preprocessor call.
+		 *
+		 * @param delegate context to pass warnings to, can be <code>null</code>
+		 */
+		protected void reset(PreprocessChainContext delegate) {
+			this.delegate = delegate;
+			this.count = 0;
+		}
+
+		@Override
+		public void addDataWarning(String preprocessorName, String warningMessage) throws IllegalArgumentException {
+			if (delegate != null)
+				delegate.addDataWarning(preprocessorName, warningMessage);
+			count++;
+		}
+
+		@Override
+		public void addDataWarning(String preprocessorName, String messageTemplate, Object... args)
+				throws IllegalArgumentException {
+			if (delegate instanceof LazyPreprocessChainContext) {
+				((LazyPreprocessChainContext) delegate).addDataWarning(preprocessorName, messageTemplate, args);
+			} else if (delegate != null) {
+				delegate.addDataWarning(preprocessorName, BoundedPreprocessChainContext.formatMessage(messageTemplate, args));
+			}
+			count++;
+		}
+
+		protected int getCount() {
+			return count;
+		}
+	}
+
+	/**
+	 * Wrapper synchronizing access to preprocessor which is not thread safe. Monitor of wrapped preprocessor is used, so
+	 * more wrappers of the same preprocessor may exist.
+	 */
+	protected static final class SynchronizedPreprocessor implements StructuredContentPreprocessor {
+
+		protected final StructuredContentPreprocessor delegate;
+
+		protected SynchronizedPreprocessor(StructuredContentPreprocessor delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void init(String name, Client client, Map<String, Object> settings) {
+			synchronized (delegate) {
+				delegate.init(name, client, settings);
+			}
+		}
+
+		@Override
+		public String getName() {
+			return delegate.getName();
+		}
+
+		@Override
+		public Map<String, Object> preprocessData(Map<String, Object> data) {
+			return preprocessData(data, null);
+		}
+
+		@Override
+		public Map<String, Object> preprocessData(Map<String, Object> data, PreprocessChainContext chainContext) {
+			synchronized (delegate) {
+				return delegate.preprocessData(data, chainContext);
+			}
+		}
+	}
+
+	/**
+	 * Get preprocessors in this chain.
+	 *
+	 * @return unmodifiable list of preprocessors, never null
+	 */
+	public List<StructuredContentPreprocessor> getPreprocessors() {
+		return Collections.unmodifiableList(Arrays.asList(preprocessors));
+	}
+
+	/**
+	 * Get configurations preprocessors in this chain were created from.
+	 *
+	 * @return unmodifiable list of configurations or <code>null</code> if chain was not created from configuration.
+	 */
+	public List<Map<String, Object>> getPreprocessorConfigs() {
+		return preprocessorConfigs != null ? Collections.unmodifiableList(preprocessorConfigs) : null;
+	}
+
+	/**
+	 * Get metrics of preprocessors in this chain.
+	 *
+	 * @return unmodifiable list of metrics in the same order as preprocessors, <code>null</code> if chain is not
+	 *         instrumented
+	 * @see #withMetrics(PreprocessorMetricsRegistry)
+	 */
+	public List<PreprocessorMetrics> getMetrics() {
+		return metrics != null ? Collections.unmodifiableList(Arrays.asList(metrics)) : null;
+	}
+
+	/**
+	 * @return number of preprocessors in the chain
+	 */
+	public int size() {
+		return preprocessors.length;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("PreprocessorChain [");
+		for (int i = 0; i < preprocessors.length; i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(preprocessors[i].getName());
+		}
+		return sb.append("]").toString();
+	}
+
+}
@@ -0,0 +1,30 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+/**
+ * Metrics of one preprocessor, obtained from {@link PreprocessorMetricsRegistry}. {@link PreprocessorChain} records
+ * here each call of preprocessor it runs. Implementations must be thread safe and cheap as they are called for each
+ * preprocessed document.
+ *
+ * @author agent (agent at local)
+ * @see PreprocessorChain#withMetrics(PreprocessorMetricsRegistry)
+ */
+public interface PreprocessorMetrics {
+
+	/**
+	 * Record one call of preprocessor.
+	 *
+	 * @param documents number of documents processed by the call - 1 for
+	 *          {@link StructuredContentPreprocessor#preprocessData(java.util.Map, PreprocessChainContext)}, size of the
+	 *          batch for {@link StructuredContentBatchPreprocessor#preprocessBatch(java.util.List, java.util.List)}
+	 * @param durationNanos duration of the call in nanoseconds
+	 * @param warnings number of data warnings added by preprocessor during call
+	 * @param failed true if call failed with exception
+	 */
+	void record(int documents, long durationNanos, int warnings, boolean failed);
+
+}
@@ -0,0 +1,27 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+/**
+ * Registry of {@link PreprocessorMetrics} keyed by preprocessor name. Implement it to publish preprocessor metrics into
+ * metrics system used by your application, or use {@link DefaultPreprocessorMetricsRegistry} which keeps them in memory
+ * and exposes them over JMX.
+ *
+ * @author agent (agent at local)
+ * @see PreprocessorChain#withMetrics(PreprocessorMetricsRegistry)
+ */
+public interface PreprocessorMetricsRegistry {
+
+	/**
+	 * Get metrics for preprocessor. Called once per preprocessor when instrumented chain is created, so may be expensive.
+	 * Preprocessors with same name share metrics.
+	 *
+	 * @param preprocessorName name of preprocessor, see {@link StructuredContentPreprocessor#getName()}
+	 * @return metrics for preprocessor, never null
+	 */
+	PreprocessorMetrics getMetrics(String preprocessorName);
+
+}
@@ -0,0 +1,203 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In memory {@link PreprocessorMetrics} used by {@link DefaultPreprocessorMetricsRegistry}. Keeps counters and
+ * histogram of call durations. Histogram uses log-linear buckets (16 linear sub-buckets for each power of two, as
+ * HdrHistogram does), so it has fixed size and percentiles are precise to about 6%. Recording is lock free.
+ *
+ * @author agent (agent at local)
+ */
+public class PreprocessorStatistics implements PreprocessorMetrics, PreprocessorStatisticsMBean {
+
+	/**
+	 * Number of bits used for linear sub-buckets in each power of two.
+	 */
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+	private final String name;
+
+	private final AtomicLong invocationCount = new AtomicLong();
+	private final AtomicLong documentCount = new AtomicLong();
+	private final AtomicLong warningCount = new AtomicLong();
+	private final AtomicLong errorCount = new AtomicLong();
+	private final AtomicLong totalTimeNanos = new AtomicLong();
+	private final AtomicLong maxTimeNanos = new AtomicLong();
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_COUNT);
+
+	/**
+	 * @param name of preprocessor
+	 */
+	public PreprocessorStatistics(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public void record(int documents, long durationNanos, int warnings, boolean failed) {
+		if (durationNanos < 0)
+			durationNanos = 0;
+		invocationCount.incrementAndGet();
+		documentCount.addAndGet(documents);
+		if (warnings > 0)
+			warningCount.addAndGet(warnings);
+		if (failed)
+			errorCount.incrementAndGet();
+		totalTimeNanos.addAndGet(durationNanos);
+		long max = maxTimeNanos.get();
+		while (durationNanos > max && !maxTimeNanos.compareAndSet(max, durationNanos)) {
+			max = maxTimeNanos.get();
+		}
+		histogram.incrementAndGet(bucketIndex(durationNanos));
+	}
+
+	/**
+	 * Get index of histogram bucket for value.
+	 *
+	 * @param value to get bucket for, not negative
+	 * @return index of bucket
+	 */
+	protected static int bucketIndex(long value) {
+		if (value < SUB_BUCKET_COUNT)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	/**
+	 * Get highest value which falls into histogram bucket.
+	 *
+	 * @param index of bucket
+	 * @return highest value in bucket
+	 */
+	protected static long bucketHighestValue(int index) {
+		if (index < SUB_BUCKET_COUNT)
+			return index;
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long lowest = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/**
+	 * Get duration of preprocessor call at given percentile.
+	 *
+	 * @param percentile from 0 to 100
+	 * @return duration in nanoseconds, 0 if nothing is recorded yet
+	 */
+	public long getPercentileTimeNanos(double percentile) {
+		if (percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("percentile must be from 0 to 100");
+		long total = 0;
+		long[] counts = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] = histogram.get(i);
+			total += counts[i];
+		}
+		if (total == 0)
+			return 0;
+		long target = Math.max(1, (long) Math.ceil(total * percentile / 100d));
+		long cumulative = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			cumulative += counts[i];
+			if (cumulative >= target)
+				return Math.min(bucketHighestValue(i), maxTimeNanos.get());
+		}
+		return maxTimeNanos.get();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getInvocationCount() {
+		return invocationCount.get();
+	}
+
+	@Override
+	public long getDocumentCount() {
+		return documentCount.get();
+	}
+
+	@Override
+	public long getWarningCount() {
+		return warningCount.get();
+	}
+
+	@Override
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+
+	@Override
+	public long getTotalTimeMicros() {
+		return toMicros(totalTimeNanos.get());
+	}
+
+	@Override
+	public long getMeanTimeMicros() {
+		long count = invocationCount.get();
+		return count > 0 ? toMicros(totalTimeNanos.get() / count) : 0;
+	}
+
+	@Override
+	public long getMaxTimeMicros() {
+		return toMicros(maxTimeNanos.get());
+	}
+
+	@Override
+	public long getMedianTimeMicros() {
+		return getPercentileTimeMicros(50);
+	}
+
+	@Override
+	public long get95thPercentileTimeMicros() {
+		return getPercentileTimeMicros(95);
+	}
+
+	@Override
+	public long get99thPercentileTimeMicros() {
+		return getPercentileTimeMicros(99);
+	}
+
+	@Override
+	public long getPercentileTimeMicros(double percentile) {
+		return toMicros(getPercentileTimeNanos(percentile));
+	}
+
+	private static long toMicros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+
+	@Override
+	public void reset() {
+		invocationCount.set(0);
+		documentCount.set(0);
+		warningCount.set(0);
+		errorCount.set(0);
+		totalTimeNanos.set(0);
+		maxTimeNanos.set(0);
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			histogram.set(i, 0);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "PreprocessorStatistics [name=" + name + ", invocations=" + getInvocationCount() + ", documents="
+				+ getDocumentCount() + ", warnings=" + getWarningCount() + ", errors=" + getErrorCount() + ", meanMicros="
+				+ getMeanTimeMicros() + ", 99thPercentileMicros=" + get99thPercentileTimeMicros() + "]";
+	}
+
+}
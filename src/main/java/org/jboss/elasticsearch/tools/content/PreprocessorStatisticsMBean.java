@@ -0,0 +1,50 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+/**
+ * JMX management interface of {@link PreprocessorStatistics}. Times are in microseconds.
+ *
+ * @author agent (agent at local)
+ */
+public interface PreprocessorStatisticsMBean {
+
+	String getName();
+
+	long getInvocationCount();
+
+	long getDocumentCount();
+
+	long getWarningCount();
+
+	long getErrorCount();
+
+	long getTotalTimeMicros();
+
+	long getMeanTimeMicros();
+
+	long getMaxTimeMicros();
+
+	long getMedianTimeMicros();
+
+	long get95thPercentileTimeMicros();
+
+	long get99thPercentileTimeMicros();
+
+	/**
+	 * Get time of preprocessor call at given percentile.
+	 *
+	 * @param percentile from 0 to 100
+	 * @return time in microseconds
+	 */
+	long getPercentileTimeMicros(double percentile);
+
+	/**
+	 * Reset all statistics to zero.
+	 */
+	void reset();
+
+}
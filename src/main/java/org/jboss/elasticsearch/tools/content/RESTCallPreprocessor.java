@@ -5,11 +5,21 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.Consts;
 import org.apache.http.Header;
@@ -29,8 +39,12 @@ import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheStats;
 import org.elasticsearch.common.jackson.core.io.JsonStringEncoder;
 import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
 import org.jboss.elasticsearch.tools.content.ValueUtils.IValueEncoder;
 
@@ -65,6 +79,10 @@ import org.jboss.elasticsearch.tools.content.ValueUtils.IValueEncoder;
  * <code>10000</code>.
  * <li><code>request_max_parallel</code> - optional field defining how much of REST request may be performed in
  * parallel. Default value is <code>10</code>.
+ * <li><code>request_async</code> - optional field, if <code>true</code> then REST requests for documents from batch
+ * processed by {@link PreprocessorChain#preprocessBatch(List, List)} are performed asynchronously by pool of
+ * <code>request_max_parallel</code> threads, and retry attempts are scheduled without blocking any thread. Default value
+ * is <code>false</code> so requests are performed one by one in the calling thread.
  * <li><code>request_user_agent_header</code> - optional field with value for <code>User-Agent</code> header used in
  * REST request. Default value is <code>SearchiskoContenPreprocessor (preprocessor name)</code>.
  * <li><code>request_accept_header</code> - optional field with value for <code>Accept</code> header used in REST
@@ -79,6 +97,12 @@ import org.jboss.elasticsearch.tools.content.ValueUtils.IValueEncoder;
  * value is <code>1</code> so no retry is performed.
  * <li><code>retry_delay</code> - delay of REST call retry attempts in case of error in milliseconds. Default value is
  * <code>10000</code>.
+ * <li><code>cache_max_size</code> - optional max number of parsed REST responses cached in memory, so same request
+ * (same method, url and content) is not performed again for other documents. Cache is not used if not set or 0.
+ * <li><code>cache_ttl</code> - optional time to live of response in cache, eg. <code>10m</code>. Number means
+ * milliseconds. Responses do not expire if not set or 0.
+ * <li><code>cache_negative</code> - optional flag whether cache <code>404 Not Found</code> responses also. Request is
+ * not retried for cached <code>404</code> response. Default is <code>true</code>. Other errors are never cached.
  * <li>
  * <code>response_mapping<code> - array of mappings from REST call result to the data. Each mapping definition may contain these fields:
  * <ul>
@@ -114,12 +138,16 @@ import org.jboss.elasticsearch.tools.content.ValueUtils.IValueEncoder;
  * @see StructuredContentPreprocessorFactory
  * @see ValueUtils#processStringValuePatternReplacement(String, Map, Object)
  */
-public class RESTCallPreprocessor extends StructuredContentPreprocessorBase {
+@ThreadSafe
+public class RESTCallPreprocessor extends StructuredContentPreprocessorBase implements StructuredContentBatchPreprocessor,
+        Closeable {
 
     protected static final String CFG_REQUEST_METHOD = "request_method";
     protected static final String CFG_REQUEST_URL = "request_url";
     protected static final String CFG_REQUEST_TIMEOUT = "request_timeout";
     protected static final String CFG_REQUEST_MAX_PARALLEL = "request_max_parallel";
+    protected static final String CFG_REQUEST_ASYNC = "request_async";
+    protected static final String CFG_CACHE_NEGATIVE = "cache_negative";
     protected static final String CFG_REQUEST_ACCEPT_HEADER = "request_accept_header";
     protected static final String CFG_REQUEST_USER_AGENT_HEADER = "request_user_agent_header";
     protected static final String CFG_REQUEST_CONTENT_TYPE_HEADER = "request_content_type_header";
@@ -134,13 +162,41 @@ public class RESTCallPreprocessor extends StructuredContentPreprocessorBase {
     protected HttpMethodType request_method;
     protected String request_url;
     protected String request_content_template;
+    protected CompiledTemplate requestUrlTemplate;
+    protected CompiledTemplate requestContentTemplate;
     protected Map<String, String> headers = new HashMap<>();
     protected List<Map<String, String>> responseMapping;
+    /**
+     * Compiled paths of <code>rest_response_field</code> for each record of {@link #responseMapping}, null for
+     * <code>_source</code>.
+     */
+    protected FieldPath[] responseFieldPaths;
+    /**
+     * Compiled paths of <code>target_field</code> for each record of {@link #responseMapping}.
+     */
+    protected FieldPath[] targetFieldPaths;
+    /**
+     * Compiled <code>value_default</code> for each record of {@link #responseMapping}, null if not configured.
+     */
+    protected CompiledTemplate[] defaultValueTemplates;
     protected long retry_max_num_of_attempts;
     protected long retry_delay;
+    protected int request_max_parallel;
+    protected boolean request_async;
 
     protected CloseableHttpClient httpclient;
 
+    /**
+     * Cache of parsed responses, null if not used.
+     */
+    protected Cache<ResponseCacheKey, CachedResponse> responseCache;
+    protected boolean cacheNegative = true;
+
+    /**
+     * Executor used to perform REST requests in <code>request_async</code> mode, null if not used.
+     */
+    protected ScheduledExecutorService asyncExecutor;
+
     @SuppressWarnings("unchecked")
     @Override
     public void init(Map<String, Object> settings) throws SettingsException {
@@ -153,11 +209,23 @@ public class RESTCallPreprocessor extends StructuredContentPreprocessorBase {
 
         request_url = XContentMapValues.nodeStringValue(settings.get(CFG_REQUEST_URL), null);
         validateConfigurationStringNotEmpty(request_url, CFG_REQUEST_URL);
+        requestUrlTemplate = CompiledTemplate.compile(request_url);
 
         responseMapping = (List<Map<String, String>>) settings.get(CFG_RESPONSE_MAPPING);
         validateResultMappingConfiguration(responseMapping, CFG_RESPONSE_MAPPING);
+        responseFieldPaths = new FieldPath[responseMapping.size()];
+        targetFieldPaths = new FieldPath[responseMapping.size()];
+        defaultValueTemplates = new CompiledTemplate[responseMapping.size()];
+        for (int i = 0; i < responseFieldPaths.length; i++) {
+            Map<String, String> mappingRecord = responseMapping.get(i);
+            String restResponseField = mappingRecord.get(CFG_rest_response_field);
+            responseFieldPaths[i] = "_source".equals(restResponseField) ? null : FieldPath.compile(restResponseField);
+            targetFieldPaths[i] = FieldPath.compile(mappingRecord.get(CFG_target_field));
+            defaultValueTemplates[i] = CompiledTemplate.compile(mappingRecord.get(CFG_value_default));
+        }
 
         request_content_template = XContentMapValues.nodeStringValue(settings.get(CFG_REQUEST_CONTENT), null);
+        requestContentTemplate = CompiledTemplate.compile(request_content_template, '$', '$');
 
         retry_max_num_of_attempts = XContentMapValues.nodeLongValue(settings.get(CFG_RETRY_MAX_NUM_OF_ATTEMPTS), 1);
         if (retry_max_num_of_attempts < 1)
@@ -170,7 +238,16 @@ public class RESTCallPreprocessor extends StructuredContentPreprocessorBase {
         headers.put("Content-Type", XContentMapValues.nodeStringValue(settings.get(CFG_REQUEST_CONTENT_TYPE_HEADER), "application/json"));
         headers.put("User-Agent", XContentMapValues.nodeStringValue(settings.get(CFG_REQUEST_USER_AGENT_HEADER), "SearchiskoContenPreprocessor (" + getName() + ")"));
 
+        close();
         initHttpClient(settings);
+
+        responseCache = createCacheFromSettings(settings);
+        cacheNegative = XContentMapValues.nodeBooleanValue(settings.get(CFG_CACHE_NEGATIVE), true);
+
+        request_async = XContentMapValues.nodeBooleanValue(settings.get(CFG_REQUEST_ASYNC), false);
+        if (request_async) {
+            asyncExecutor = new ScheduledThreadPoolExecutor(request_max_parallel, EsExecutors.daemonThreadFactory("rest_call_preprocessor[" + getName() + "]"));
+        }
     }
 
     /**
@@ -207,21 +284,22 @@ public class RESTCallPreprocessor extends StructuredContentPreprocessorBase {
         while (attempt < retry_max_num_of_attempts) {
             attempt++;
             try {
-                HttpResponseContent resp = performHttpCall(url, content, headers, request_method);
+                Map<String, Object> resp = performRequest(url, content);
 
-                processResponse(data, resp);
+                processResponseData(data, resp);
 
                 return data;
 
             } catch (Exception e) {
-                if (logger.isWarnEnabled())
-                    logger.warn("REST request attempt " + attempt + "/" + retry_max_num_of_attempts + " failed: {}", e, e.getMessage());
-                if (context != null)
-                    context.addDataWarning(getName(), "REST request attempt " + attempt + "/" + retry_max_num_of_attempts + " failed due to: " + e.getMessage());
+                handleAttemptFailure(attempt, e, context);
+                if (isCachedNotFound(e))
+                    return data;
             }
             try {
                 Thread.sleep(retry_delay);
             } catch (InterruptedException e) {
+                // no more retries, interrupt is left for the caller
+                Thread.currentThread().interrupt();
                 return data;
             }
         }
@@ -230,39 +308,239 @@ public class RESTCallPreprocessor extends StructuredContentPreprocessorBase {
     }
 
     /**
-     * @param data we are working with
-     * @param response to process
-     * @throws Exception
+     * Preprocess batch of documents. If <code>request_async</code> mode is used then up to
+     * <code>request_max_parallel</code> REST requests are performed in parallel, otherwise documents are processed one
+     * by one in the calling thread. Calling thread waits until all documents are processed in both cases.
+     * <p>
+     * If calling thread is interrupted then pending requests and retries are cancelled, running requests are waited
+     * for, and {@link ElasticsearchException} is thrown with interrupted status of the thread set.
      */
-    protected void processResponse(Map<String, Object> data, HttpResponseContent response) throws Exception {
+    @Override
+    public List<Map<String, Object>> preprocessBatch(List<Map<String, Object>> documents, List<? extends PreprocessChainContext> chainContexts) {
+        if (documents == null)
+            return null;
+        Iterator<? extends PreprocessChainContext> ctxIterator = chainContexts != null ? chainContexts.iterator() : null;
+        if (asyncExecutor == null) {
+            List<Map<String, Object>> ret = new ArrayList<>(documents.size());
+            for (Map<String, Object> data : documents) {
+                ret.add(preprocessData(data, ctxIterator != null ? ctxIterator.next() : null));
+            }
+            return ret;
+        }
+
+        CountDownLatch latch = new CountDownLatch(documents.size());
+        List<AsyncCall> calls = new ArrayList<>(documents.size());
+        for (Map<String, Object> data : documents) {
+            PreprocessChainContext context = ctxIterator != null ? ctxIterator.next() : null;
+            if (data == null) {
+                latch.countDown();
+                continue;
+            }
+            AsyncCall call = new AsyncCall(data, prepareUrl(data), prepareContent(data), context, latch);
+            calls.add(call);
+            call.start();
+        }
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            // documents must not be returned while they can be still changed by running calls
+            for (AsyncCall call : calls) {
+                call.cancel();
+            }
+            Thread.currentThread().interrupt();
+            throw new ElasticsearchException("REST requests interrupted in preprocessor " + name, e);
+        }
+        return new ArrayList<>(documents);
+    }
+
+    /**
+     * REST call for one document performed in <code>request_async</code> mode. Each attempt is run by
+     * {@link RESTCallPreprocessor#asyncExecutor}, failed attempt schedules next one after <code>retry_delay</code>.
+     * Attempt runs with monitor of the call held, so {@link #cancel()} waits for running attempt to finish.
+     */
+    protected class AsyncCall implements Runnable {
+
+        private final Map<String, Object> data;
+        private final String url;
+        private final String content;
+        private final PreprocessChainContext context;
+        private final CountDownLatch latch;
+        private long attempt = 0;
+        private ScheduledFuture<?> future;
+        private boolean cancelled = false;
+
+        protected AsyncCall(Map<String, Object> data, String url, String content, PreprocessChainContext context, CountDownLatch latch) {
+            this.data = data;
+            this.url = url;
+            this.content = content;
+            this.context = context;
+            this.latch = latch;
+        }
+
+        protected synchronized void start() {
+            schedule(0);
+        }
+
+        /**
+         * Cancel pending attempt and all next retries. Waits for running attempt to finish.
+         */
+        protected synchronized void cancel() {
+            cancelled = true;
+            if (future != null)
+                future.cancel(false);
+        }
+
+        private void schedule(long delay) {
+            try {
+                future = asyncExecutor.schedule(this, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                logger.warn("REST request can't be performed because preprocessor is closed");
+                latch.countDown();
+            }
+        }
+
+        @Override
+        public synchronized void run() {
+            if (cancelled)
+                return;
+            attempt++;
+            try {
+                Map<String, Object> resp = performRequest(url, content);
+                processResponseData(data, resp);
+                latch.countDown();
+            } catch (Exception e) {
+                if (context != null) {
+                    // same context may be shared by more documents processed in parallel
+                    synchronized (context) {
+                        handleAttemptFailure(attempt, e, context);
+                    }
+                } else {
+                    handleAttemptFailure(attempt, e, null);
+                }
+                if (attempt < retry_max_num_of_attempts && !isCachedNotFound(e))
+                    schedule(retry_delay);
+                else
+                    latch.countDown();
+            }
+        }
+    }
+
+    /**
+     * Log failure of REST request attempt and write warning about it into chain context.
+     * 
+     * @param attempt number
+     * @param e failure
+     * @param context to write warning into, can be null
+     */
+    protected void handleAttemptFailure(long attempt, Exception e, PreprocessChainContext context) {
+        if (logger.isWarnEnabled())
+            logger.warn("REST request attempt " + attempt + "/" + retry_max_num_of_attempts + " failed: {}", e, e.getMessage());
+        if (context != null)
+            context.addDataWarning(getName(), "REST request attempt " + attempt + "/" + retry_max_num_of_attempts + " failed due to: " + e.getMessage());
+    }
+
+    /**
+     * Perform REST request and parse response. Parsed response is taken from {@link #responseCache} if available there.
+     * 
+     * @param url to perform request for
+     * @param content used in case of POST
+     * @return parsed response
+     * @throws HttpCallException in case of failed http call (response other than 200)
+     * @throws Exception in case of unsuccessful call
+     */
+    protected Map<String, Object> performRequest(String url, String content) throws Exception {
+        Cache<ResponseCacheKey, CachedResponse> cache = responseCache;
+        if (cache == null)
+            return parseResponse(performHttpCall(url, content, headers, request_method));
+
+        ResponseCacheKey key = new ResponseCacheKey(request_method, url, content);
+        CachedResponse cached = cache.getIfPresent(key);
+        if (cached == null) {
+            try {
+                cached = new CachedResponse(parseResponse(performHttpCall(url, content, headers, request_method)), null);
+            } catch (HttpCallException e) {
+                if (!cacheNegative || e.getStatusCode() != HttpStatus.SC_NOT_FOUND)
+                    throw e;
+                cached = new CachedResponse(null, e);
+            }
+            cache.put(key, cached);
+        }
+        if (cached.notFound != null)
+            throw cached.notFound;
+        return cached.response;
+    }
+
+    /**
+     * Check if exception is caused by <code>404</code> response which is cached, so retry makes no sense.
+     * 
+     * @param e to check
+     * @return true if exception is cached <code>404</code> response
+     */
+    protected boolean isCachedNotFound(Exception e) {
+        return responseCache != null && cacheNegative && e instanceof HttpCallException
+                && ((HttpCallException) e).getStatusCode() == HttpStatus.SC_NOT_FOUND;
+    }
 
+    /**
+     * Get statistics of response cache.
+     * 
+     * @return statistics or <code>null</code> if cache is not configured.
+     */
+    public CacheStats getResponseCacheStats() {
+        Cache<ResponseCacheKey, CachedResponse> cache = responseCache;
+        return cache != null ? cache.stats() : null;
+    }
+
+    /**
+     * @param response to parse
+     * @return parsed response
+     * @throws Exception
+     */
+    protected Map<String, Object> parseResponse(HttpResponseContent response) throws Exception {
         if (logger.isDebugEnabled())
             logger.debug("ResponseData: {}", response);
 
         Map<String, Object> responseParsed = ValueUtils.parseJSON(response.content);
         if (logger.isDebugEnabled())
             logger.debug("Parsed ResponseData: {}", responseParsed);
+        return responseParsed;
+    }
+
+    /**
+     * @param data we are working with
+     * @param response to process
+     * @throws Exception
+     */
+    protected void processResponse(Map<String, Object> data, HttpResponseContent response) throws Exception {
+        processResponseData(data, parseResponse(response));
+    }
+
+    /**
+     * @param data we are working with
+     * @param responseParsed parsed response to process
+     */
+    protected void processResponseData(Map<String, Object> data, Map<String, Object> responseParsed) {
 
         if (logger.isDebugEnabled())
             logger.debug("Data before processing: {}", data);
 
-        for (Map<String, String> mappingRecord : responseMapping) {
-            String restResponseField = mappingRecord.get(CFG_rest_response_field);
+        for (int i = 0; i < targetFieldPaths.length; i++) {
+            FieldPath responseFieldPath = responseFieldPaths[i];
             Object v = null;
-            if ("_source".equals(restResponseField)) {
+            if (responseFieldPath == null) {
                 v = responseParsed;
             } else {
-                if (restResponseField.contains(".")) {
-                    v = XContentMapValues.extractValue(restResponseField, responseParsed);
-                } else {
-                    v = responseParsed.get(restResponseField);
-                }
+                v = responseFieldPath.getValue(responseParsed);
+            }
+            if (responseCache != null && v != null) {
+                // cached response is shared by more documents so must not be changed by later processing, copied lazily
+                v = StructureUtils.getACopyOnWriteStructure(v);
             }
 
-            if (v == null && mappingRecord.get(CFG_value_default) != null) {
-                v = ValueUtils.processStringValuePatternReplacement(mappingRecord.get(CFG_value_default), data, null);
+            if (v == null && defaultValueTemplates[i] != null) {
+                v = defaultValueTemplates[i].process(data, null);
             }
-            StructureUtils.putValueIntoMapOfMaps(data, mappingRecord.get(CFG_target_field), v);
+            targetFieldPaths[i].putValue(data, v);
         }
 
         if (logger.isDebugEnabled())
@@ -294,8 +572,8 @@ public class RESTCallPreprocessor extends StructuredContentPreprocessorBase {
      * @see #request_content_template
      */
     protected String prepareContent(Map<String, Object> data) {
-        if (HttpMethodType.POST.equals(request_method) && request_content_template != null) {
-            return ValueUtils.processStringValuePatternReplacement(request_content_template, data, null, '$', '$', jsonValueEncoder);
+        if (HttpMethodType.POST.equals(request_method) && requestContentTemplate != null) {
+            return requestContentTemplate.process(data, null, jsonValueEncoder);
         }
         return null;
     }
@@ -324,7 +602,9 @@ public class RESTCallPreprocessor extends StructuredContentPreprocessorBase {
      * @see #request_url
      */
     protected String prepareUrl(Map<String, Object> data) {
-        return ValueUtils.processStringValuePatternReplacement(request_url, data, null, urlValueEncoder);
+        if (request_url == null || request_url.isEmpty())
+            return request_url;
+        return requestUrlTemplate.process(data, null, urlValueEncoder);
     }
 
     /**
@@ -391,6 +671,9 @@ public class RESTCallPreprocessor extends StructuredContentPreprocessorBase {
     protected void initHttpClient(Map<String, Object> settings) {
 
         int maxParallel = XContentMapValues.nodeIntegerValue(settings.get(CFG_REQUEST_MAX_PARALLEL), 10);
+        if (maxParallel < 1)
+            maxParallel = 1;
+        request_max_parallel = maxParallel;
 
         PoolingHttpClientConnectionManager connManager = new PoolingHttpClientConnectionManager();
         connManager.setDefaultMaxPerRoute(maxParallel);
@@ -411,13 +694,70 @@ public class RESTCallPreprocessor extends StructuredContentPreprocessorBase {
         logger.info("http client initialized");
     }
 
+    /**
+     * Stop threads used in <code>request_async</code> mode and release http client. Already scheduled retries are
+     * still performed but next ones are not. Called from {@link #init(Map)} to release resources of previous
+     * configuration, and by {@link PreprocessorChain#close()}.
+     */
     @Override
-    protected void finalize() throws Throwable {
-        if (httpclient != null)
-            httpclient.close();
+    public void close() {
+        if (asyncExecutor != null)
+            asyncExecutor.shutdown();
+        asyncExecutor = null;
+        if (httpclient != null) {
+            try {
+                httpclient.close();
+            } catch (IOException e) {
+                logger.warn("http client close failed: {}", e.getMessage());
+            }
+        }
         httpclient = null;
     }
 
+    /**
+     * Key of {@link RESTCallPreprocessor#responseCache}.
+     */
+    protected static final class ResponseCacheKey {
+        private final HttpMethodType method;
+        private final String url;
+        private final String content;
+        private final int hash;
+
+        protected ResponseCacheKey(HttpMethodType method, String url, String content) {
+            this.method = method;
+            this.url = url;
+            this.content = content;
+            this.hash = (method.hashCode() * 31 + (url != null ? url.hashCode() : 0)) * 31 + (content != null ? content.hashCode() : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ResponseCacheKey))
+                return false;
+            ResponseCacheKey o = (ResponseCacheKey) obj;
+            return hash == o.hash && method == o.method && (url != null ? url.equals(o.url) : o.url == null)
+                    && (content != null ? content.equals(o.content) : o.content == null);
+        }
+    }
+
+    /**
+     * Value of {@link RESTCallPreprocessor#responseCache}, contains either parsed response or <code>404</code> error.
+     */
+    protected static final class CachedResponse {
+        private final Map<String, Object> response;
+        private final HttpCallException notFound;
+
+        protected CachedResponse(Map<String, Object> response, HttpCallException notFound) {
+            this.response = response;
+            this.notFound = notFound;
+        }
+    }
+
     /**
      * Enum with supported REST http call methods.
      */
@@ -5,6 +5,7 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -44,23 +45,65 @@ import org.elasticsearch.common.xcontent.support.XContentMapValues;
  * <li><code>source_bases</code> - list of fields in source data which are used as bases for extraction. If defined then
  * extraction is performed for each of this fields, <code>source_field</code> and <code>target_field_xx</code> are
  * resolved relatively against this base. Base must provide object or list of objects.
+ * <li><code>patterns</code> - optional list of objects with <code>pattern</code> and <code>result_mapping</code> used
+ * instead of top level <code>pattern</code> and <code>result_mapping</code>, so more formats of value can be handled
+ * by one preprocessor. Patterns are evaluated in the defined order and only <code>result_mapping</code> of the first
+ * matching pattern is applied. Pattern whose literal prefix is not present in the value is skipped without running
+ * regular expression.
+ * <li><code>find</code> - optional, default <code>false</code>. If <code>true</code> then pattern has to be found
+ * anywhere in the value (see {@link Matcher#find()}) instead of matching whole value.
  * </ul>
  * 
+ * Example with more patterns:
+ * 
+ * <pre>
+ * { 
+ *     "name"     : "Version extractor",
+ *     "class"    : "org.jboss.elasticsearch.tools.content.RegExpCapturingGroupPreprocessor",
+ *     "settings" : {
+ *         "source_field"  : "log",
+ *         "find"          : true,
+ *         "patterns"      : [
+ *           { "pattern" : "Version: (\\S+)", "result_mapping" : { 1 : "version" } },
+ *           { "pattern" : "Component (\\S+) (\\S+)", "result_mapping" : { 1 : "component", 2 : "version" } }
+ *         ]
+ *     } 
+ * }
+ * </pre>
+ * 
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  * @see Pattern
  * @see Matcher#matches()
+ * @see Matcher#find()
  * @see Matcher#group(int)
  */
+@ThreadSafe
+@Fusable
 public class RegExpCapturingGroupPreprocessor extends StructuredContentPreprocessorWithSourceBasesBase<Object> {
 
 	protected static final String CFG_SOURCE_FIELD = "source_field";
 	protected static final String CFG_PATTERN = "pattern";
 	protected static final String CFG_RESULT_MAPPING = "result_mapping";
+	protected static final String CFG_PATTERNS = "patterns";
+	protected static final String CFG_FIND = "find";
 
 	protected String fieldSource;
 	protected Pattern patternCompiled;
 	protected Map<Object, String> resultMapping;
+	protected FieldPath fieldSourcePath;
+	protected boolean find = false;
+
+	/**
+	 * Patterns values are matched against, in order. Configured by <code>patterns</code> setting, or one pattern built
+	 * from top level <code>pattern</code> and <code>result_mapping</code>.
+	 */
+	protected CompiledPattern[] compiledPatterns;
+
+	/**
+	 * Matchers reused by each thread for all processed values, one for each pattern.
+	 */
+	private final ThreadLocal<Matcher[]> matchers = new ThreadLocal<Matcher[]>();
 
 	@SuppressWarnings("unchecked")
 	@Override
@@ -68,19 +111,63 @@ public class RegExpCapturingGroupPreprocessor extends StructuredContentPreproces
 		super.init(settings);
 		fieldSource = XContentMapValues.nodeStringValue(settings.get(CFG_SOURCE_FIELD), null);
 		validateConfigurationStringNotEmpty(fieldSource, CFG_SOURCE_FIELD);
+		fieldSourcePath = FieldPath.compile(fieldSource);
+		find = XContentMapValues.nodeBooleanValue(settings.get(CFG_FIND), false);
+		if (settings.get(CFG_PATTERNS) != null) {
+			List<Object> patterns;
+			try {
+				patterns = (List<Object>) settings.get(CFG_PATTERNS);
+			} catch (ClassCastException e) {
+				throw new SettingsException("'settings/" + CFG_PATTERNS + "' configuration value for '" + name
+						+ "' preprocessor is invalid");
+			}
+			if (patterns.isEmpty()) {
+				throw new SettingsException("Missing or empty 'settings/" + CFG_PATTERNS + "' configuration value for '"
+						+ name + "' preprocessor");
+			}
+			CompiledPattern[] cps = new CompiledPattern[patterns.size()];
+			for (int i = 0; i < cps.length; i++) {
+				String prefix = CFG_PATTERNS + "[" + i + "]/";
+				try {
+					Map<String, Object> ps = (Map<String, Object>) patterns.get(i);
+					Pattern pc = compilePattern(ps, prefix);
+					Map<Object, String> rm = readResultMapping(ps, prefix);
+					cps[i] = new CompiledPattern(pc, new CompiledResultMapping(rm));
+				} catch (ClassCastException e) {
+					throw new SettingsException("'settings/" + prefix.substring(0, prefix.length() - 1)
+							+ "' configuration value for '" + name + "' preprocessor is invalid");
+				}
+			}
+			compiledPatterns = cps;
+			patternCompiled = null;
+			resultMapping = null;
+		} else {
+			patternCompiled = compilePattern(settings, "");
+			resultMapping = readResultMapping(settings, "");
+			compiledPatterns = new CompiledPattern[] { new CompiledPattern(patternCompiled, new CompiledResultMapping(
+					resultMapping)) };
+		}
+	}
+
+	private Pattern compilePattern(Map<String, Object> settings, String prefix) throws SettingsException {
 		String pattern = XContentMapValues.nodeStringValue(settings.get(CFG_PATTERN), null);
-		validateConfigurationStringNotEmpty(pattern, CFG_PATTERN);
+		validateConfigurationStringNotEmpty(pattern, prefix + CFG_PATTERN);
 		try {
-			patternCompiled = Pattern.compile(pattern);
+			return Pattern.compile(pattern);
 		} catch (PatternSyntaxException e) {
-			throw new SettingsException("'settings/" + CFG_PATTERN + "' configuration value for '" + name
+			throw new SettingsException("'settings/" + prefix + CFG_PATTERN + "' configuration value for '" + name
 					+ "' preprocessor is invalid: " + e.getMessage());
 		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<Object, String> readResultMapping(Map<String, Object> settings, String prefix) throws SettingsException {
 		try {
-			resultMapping = (Map<Object, String>) settings.get(CFG_RESULT_MAPPING);
-			validateResultMappingConfiguration(resultMapping, CFG_RESULT_MAPPING);
+			Map<Object, String> rm = (Map<Object, String>) settings.get(CFG_RESULT_MAPPING);
+			validateResultMappingConfiguration(rm, prefix + CFG_RESULT_MAPPING);
+			return rm;
 		} catch (ClassCastException e) {
-			throw new SettingsException("'settings/" + CFG_RESULT_MAPPING + "' configuration value for '" + name
+			throw new SettingsException("'settings/" + prefix + CFG_RESULT_MAPPING + "' configuration value for '" + name
 					+ "' preprocessor is invalid");
 		}
 	}
@@ -134,47 +221,135 @@ public class RegExpCapturingGroupPreprocessor extends StructuredContentPreproces
 	@Override
 	protected void processOneSourceValue(Map<String, Object> data, Object context, String base,
 			PreprocessChainContext chainContext) {
-		Object v = null;
-		if (fieldSource.contains(".")) {
-			v = XContentMapValues.extractValue(fieldSource, data);
-		} else {
-			v = data.get(fieldSource);
-		}
+		Object v = fieldSourcePath.getValue(data);
 
 		if (v != null) {
 			if (v instanceof String) {
 				String vs = (String) v;
-				Matcher m = patternCompiled.matcher(vs);
-				if (m.matches()) {
-					for (Object index : resultMapping.keySet()) {
-						int i = -1;
-						if (index instanceof Number) {
-							i = ((Number) index).intValue();
-						} else {
-							i = Integer.parseInt(index.toString());
-						}
-						if (i >= 0 && i <= m.groupCount()) {
-							try {
-								StructureUtils.putValueIntoMapOfMaps(data, resultMapping.get(index), m.group(i));
-							} catch (IllegalStateException e) {
-								String warningMessage = "No match found for Capturing group " + i + " in value '" + vs
-										+ "' from field '" + fieldSource + "'";
-								addDataWarning(chainContext, warningMessage);
-								logger.debug(warningMessage);
-							}
-						}
+				CompiledPattern[] cps = compiledPatterns;
+				Matcher[] ms = matchers.get();
+				if (ms == null || ms.length != cps.length) {
+					ms = new Matcher[cps.length];
+					matchers.set(ms);
+				}
+				boolean matched = false;
+				for (int p = 0; p < cps.length && !matched; p++) {
+					CompiledPattern cp = cps[p];
+					if (!cp.isPrefixPresent(vs, find))
+						continue;
+					Matcher m = ms[p];
+					if (m == null || m.pattern() != cp.pattern) {
+						ms[p] = m = cp.pattern.matcher(vs);
+					} else {
+						m.reset(vs);
 					}
-				} else {
-					String warningMessage = "value '" + vs + "' for field '" + fieldSource
-							+ "' do not match pattern, so can't be processed";
-					addDataWarning(chainContext, warningMessage);
-					logger.debug(warningMessage);
+					if (find ? m.find() : m.matches()) {
+						matched = true;
+						putGroups(data, m, cp.resultMapping, vs, chainContext);
+					}
+					// do not keep reference to processed value
+					m.reset("");
+				}
+				if (!matched) {
+					String warningMessage = "value '{}' for field '{}' do not match pattern, so can't be processed";
+					addDataWarning(chainContext, warningMessage, vs, fieldSource);
+					logger.debug(warningMessage, vs, fieldSource);
 				}
 			} else {
-				String warningMessage = "value for field '" + fieldSource + "' is not String but is " + v.getClass().getName()
-						+ ", so can't be processed";
-				addDataWarning(chainContext, warningMessage);
-				logger.debug(warningMessage);
+				String warningMessage = "value for field '{}' is not String but is {}, so can't be processed";
+				addDataWarning(chainContext, warningMessage, fieldSource, v.getClass().getName());
+				logger.debug(warningMessage, fieldSource, v.getClass().getName());
+			}
+		}
+	}
+
+	private void putGroups(Map<String, Object> data, Matcher m, CompiledResultMapping crm, String vs,
+			PreprocessChainContext chainContext) {
+		for (int j = 0; j < crm.groups.length; j++) {
+			int i = crm.groups[j];
+			if (i >= 0 && i <= m.groupCount()) {
+				try {
+					crm.targets[j].putValue(data, m.group(i));
+				} catch (IllegalStateException e) {
+					String warningMessage = "No match found for Capturing group {} in value '{}' from field '{}'";
+					addDataWarning(chainContext, warningMessage, i, vs, fieldSource);
+					logger.debug(warningMessage, i, vs, fieldSource);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Pattern with its result mapping and literal prefix used to skip values which can't match it.
+	 */
+	protected static final class CompiledPattern {
+		final Pattern pattern;
+		final CompiledResultMapping resultMapping;
+		final String literalPrefix;
+
+		CompiledPattern(Pattern pattern, CompiledResultMapping resultMapping) {
+			this.pattern = pattern;
+			this.resultMapping = resultMapping;
+			this.literalPrefix = pattern.flags() == 0 ? getLiteralPrefix(pattern.pattern()) : "";
+		}
+
+		/**
+		 * @param value to check
+		 * @param find mode used
+		 * @return false if value can't match pattern because its literal prefix is not present
+		 */
+		boolean isPrefixPresent(String value, boolean find) {
+			if (literalPrefix.isEmpty())
+				return true;
+			return find ? value.contains(literalPrefix) : value.startsWith(literalPrefix);
+		}
+	}
+
+	/**
+	 * Get literal text every match of regular expression has to start with.
+	 * 
+	 * @param regex regular expression to get prefix for
+	 * @return literal prefix, empty string if there is none or can't be determined simply
+	 */
+	protected static String getLiteralPrefix(String regex) {
+		if (regex.indexOf('|') >= 0)
+			return "";
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if ("\\[](){}.*+?^$".indexOf(c) >= 0) {
+				// previous character is optional
+				if ((c == '?' || c == '*' || c == '{') && sb.length() > 0)
+					sb.setLength(sb.length() - 1);
+				break;
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Capturing group indexes and target field paths from {@link RegExpCapturingGroupPreprocessor#resultMapping}
+	 * compiled together, so they can be replaced at once.
+	 */
+	protected static final class CompiledResultMapping {
+		final Map<Object, String> resultMapping;
+		final int[] groups;
+		final FieldPath[] targets;
+
+		CompiledResultMapping(Map<Object, String> resultMapping) {
+			this.resultMapping = resultMapping;
+			groups = new int[resultMapping.size()];
+			targets = new FieldPath[groups.length];
+			int j = 0;
+			for (Map.Entry<Object, String> e : resultMapping.entrySet()) {
+				Object index = e.getKey();
+				if (index instanceof Number) {
+					groups[j] = ((Number) index).intValue();
+				} else {
+					groups[j] = Integer.parseInt(index.toString());
+				}
+				targets[j++] = FieldPath.compile(e.getValue());
 			}
 		}
 	}
@@ -196,4 +371,8 @@ public class RegExpCapturingGroupPreprocessor extends StructuredContentPreproces
 		return patternCompiled != null ? patternCompiled.pattern() : null;
 	}
 
+	public boolean isFind() {
+		return find;
+	}
+
 }
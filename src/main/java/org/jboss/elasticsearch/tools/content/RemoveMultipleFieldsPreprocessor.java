@@ -27,7 +27,9 @@ import org.elasticsearch.common.settings.SettingsException;
  * 
  * Settings contains map with definition of fields to be added:
  * <ul>
- * <li><code>fields</code> - Array with names of fields to remove. Dot notation can be used here for structure nesting.
+ * <li><code>fields</code> - Array with names of fields to remove. Dot notation can be used here for structure nesting,
+ * <code>*</code> matches all fields on given level (eg. <code>fields.*.raw</code>). All fields are removed in one pass
+ * over data structure, see {@link FieldPathTrie}.
  * <li><code>source_bases</code> - list of fields in source data which are used as bases for removing. If defined then
  * removing is performed for each of this fields, <code>fields</code> are resolved relatively against this base. Base
  * must provide object or list of objects.
@@ -36,11 +38,14 @@ import org.elasticsearch.common.settings.SettingsException;
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  */
+@ThreadSafe
+@Fusable
 public class RemoveMultipleFieldsPreprocessor extends StructuredContentPreprocessorWithSourceBasesBase<Object> {
 
 	protected static final String CFG_FIELDS = "fields";
 
 	protected List<String> fields;
+	protected FieldPathTrie fieldsTrie;
 
 	@SuppressWarnings("unchecked")
 	@Override
@@ -60,14 +65,18 @@ public class RemoveMultipleFieldsPreprocessor extends StructuredContentPreproces
 			throw new SettingsException("Missing, empty or bad 'settings/" + CFG_FIELDS + "' configuration value for '"
 					+ name + "' preprocessor");
 		}
+		try {
+			fieldsTrie = FieldPathTrie.compile(fields);
+		} catch (IllegalArgumentException e) {
+			throw new SettingsException("Missing, empty or bad 'settings/" + CFG_FIELDS + "' configuration value for '"
+					+ name + "' preprocessor");
+		}
 	}
 
 	@Override
 	protected void processOneSourceValue(Map<String, Object> data, Object context, String base,
 			PreprocessChainContext chainContext) {
-		for (String key : fields) {
-			StructureUtils.removeValueFromMapOfMaps(data, key);
-		}
+		fieldsTrie.removeValues(data);
 	}
 
 	@Override
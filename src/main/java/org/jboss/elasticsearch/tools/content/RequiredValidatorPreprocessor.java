@@ -40,11 +40,13 @@ import org.elasticsearch.common.xcontent.support.XContentMapValues;
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  */
+@ThreadSafe
 public class RequiredValidatorPreprocessor extends StructuredContentPreprocessorBase {
 
 	protected static final String CFG_FIELD = "field";
 
 	protected String field;
+	protected FieldPath fieldPath;
 
 	@Override
 	public void init(Map<String, Object> settings) throws SettingsException {
@@ -53,13 +55,14 @@ public class RequiredValidatorPreprocessor extends StructuredContentPreprocessor
 		}
 		field = XContentMapValues.nodeStringValue(settings.get(CFG_FIELD), null);
 		validateConfigurationStringNotEmpty(field, CFG_FIELD);
+		fieldPath = FieldPath.compile(field);
 	}
 
 	@Override
 	public Map<String, Object> preprocessData(Map<String, Object> data, PreprocessChainContext chainContext) {
 		if (data == null)
 			return null;
-		Object sourceData = XContentMapValues.extractValue(field, data);
+		Object sourceData = fieldPath.getValue(data);
 		if (sourceData == null) {
 			throw new InvalidDataException("Field " + field + " is required");
 		} else if (sourceData instanceof String) {
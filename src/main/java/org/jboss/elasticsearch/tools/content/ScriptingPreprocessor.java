@@ -6,8 +6,12 @@
 package org.jboss.elasticsearch.tools.content;
 
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
@@ -40,12 +44,17 @@ import org.elasticsearch.common.xcontent.support.XContentMapValues;
  * called <code>data</code> to manipulate processed data.
  * </ul>
  * <p>
+ * Script is compiled only once if scripting engine supports {@link Compilable}. Engine instance is shared by all
+ * threads only if it declares it is thread safe, pool of engine instances is used otherwise, so more threads may run
+ * script at the same time.
+ * <p>
  * <b>Note</b> that performance of this preprocessor depends on performance of scripting engine. It is always better to
  * use other existing specialized preprocessors for simple tasks like constant values setting, simple value copy etc.
  * 
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  */
+@ThreadSafe
 public class ScriptingPreprocessor extends StructuredContentPreprocessorBase {
 
 	protected static final String CFG_SCRIPT_ENGINE_NAME_FIELD = "script_engine_name";
@@ -56,6 +65,22 @@ public class ScriptingPreprocessor extends StructuredContentPreprocessorBase {
 	protected String script;
 	protected ScriptEngine engine;
 
+	/**
+	 * True if {@link #engine} may be used by more threads at the same time.
+	 */
+	protected boolean engineThreadSafe;
+
+	/**
+	 * Runners which are not used by any thread now. Used only if engine is not thread safe. New queue is created by
+	 * {@link #init(Map)}, so runners for previous script are not reused.
+	 */
+	protected volatile Queue<ScriptRunner> idleRunners;
+
+	/**
+	 * Runner for {@link #engine}, shared by all threads if engine is thread safe.
+	 */
+	protected volatile ScriptRunner sharedRunner;
+
 	@Override
 	public void init(Map<String, Object> settings) throws SettingsException {
 		if (settings == null) {
@@ -70,6 +95,13 @@ public class ScriptingPreprocessor extends StructuredContentPreprocessorBase {
 			throw new SettingsException("No scripting engine is available for name " + scriptEngineName
 					+ " for preprocessor " + name);
 		}
+		engineThreadSafe = engine.getFactory().getParameter("THREADING") != null;
+		ScriptRunner runner = new ScriptRunner(engine, script);
+		Queue<ScriptRunner> runners = new ConcurrentLinkedQueue<ScriptRunner>();
+		if (!engineThreadSafe)
+			runners.offer(runner);
+		sharedRunner = runner;
+		idleRunners = runners;
 	}
 
 	@Override
@@ -79,18 +111,67 @@ public class ScriptingPreprocessor extends StructuredContentPreprocessorBase {
 		Bindings engineScope = newContext.getBindings(ScriptContext.ENGINE_SCOPE);
 		engineScope.put("data", data);
 
+		final Queue<ScriptRunner> runners = idleRunners;
+		ScriptRunner runner = borrowRunner(runners);
 		try {
-			synchronized (engine) {
-				engine.eval(script, newContext);
-			}
+			runner.eval(newContext);
 		} catch (ScriptException e) {
-			String warningMessage = "Script execution failed: " + e.getMessage();
-			addDataWarning(chainContext, warningMessage);
-			logger.debug(warningMessage);
+			String warningMessage = "Script execution failed: {}";
+			addDataWarning(chainContext, warningMessage, e.getMessage());
+			logger.debug(warningMessage, e.getMessage());
+		} finally {
+			if (!engineThreadSafe)
+				runners.offer(runner);
 		}
 		return data;
 	}
 
+	/**
+	 * Get runner for exclusive use by calling thread if engine is not thread safe, shared runner otherwise. Return
+	 * runner into <code>runners</code> after use if engine is not thread safe.
+	 * 
+	 * @param runners idle runners to take runner from, see {@link #idleRunners}
+	 * @return runner for configured script
+	 */
+	protected ScriptRunner borrowRunner(Queue<ScriptRunner> runners) {
+		if (engineThreadSafe)
+			return sharedRunner;
+		ScriptRunner runner = runners.poll();
+		if (runner != null)
+			return runner;
+		return new ScriptRunner(factory.getEngineByName(scriptEngineName), script);
+	}
+
+	/**
+	 * Script engine with script compiled for it if engine supports compilation.
+	 */
+	protected static final class ScriptRunner {
+
+		protected final ScriptEngine engine;
+		protected final String script;
+		protected final CompiledScript compiledScript;
+
+		protected ScriptRunner(ScriptEngine engine, String script) {
+			this.engine = engine;
+			this.script = script;
+			CompiledScript cs = null;
+			if (engine instanceof Compilable) {
+				try {
+					cs = ((Compilable) engine).compile(script);
+				} catch (ScriptException e) {
+					// script is evaluated for each document, so error is reported as warning there
+				}
+			}
+			this.compiledScript = cs;
+		}
+
+		protected Object eval(ScriptContext context) throws ScriptException {
+			if (compiledScript != null)
+				return compiledScript.eval(context);
+			return engine.eval(script, context);
+		}
+	}
+
 	public String getScriptEngineName() {
 		return scriptEngineName;
 	}
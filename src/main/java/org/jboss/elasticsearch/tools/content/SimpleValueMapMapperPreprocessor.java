@@ -5,6 +5,8 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Map;
 
@@ -47,23 +49,46 @@ import org.elasticsearch.common.xcontent.support.XContentMapValues;
  * '.
  * <li><code>value_mapping</code> - Map structure for value mapping. Key is value from <code>source_field</code>, Value
  * is value for for <code>target_field</code>.
+ * <li><code>value_mapping_file</code> - optional path to local file with value mapping, useful for big mappings which
+ * are impractical to define in settings. File with <code>.json</code> extension has to contain JSON object with same
+ * structure as <code>value_mapping</code>, other files are read as UTF-8 CSV with key in the first column and value in
+ * the second one. If <code>value_mapping</code> is defined too then it is used to complete or override mapping from
+ * file. Mapping is kept in compact {@link StringDictionary} in this case.
+ * <li><code>value_mapping_case_insensitive</code> - optional, default <code>false</code>. If <code>true</code> then keys
+ * from mapping are compared with value from <code>source_field</code> case insensitive.
+ * <li><code>value_mapping_trim</code> - optional, default <code>false</code>. If <code>true</code> then whitespaces at
+ * the beginning and end of keys and value from <code>source_field</code> are ignored when compared.
  * </ul>
  * 
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  * @see ValueUtils#processStringValuePatternReplacement(String, Map, Object)
  */
+@ThreadSafe
 public class SimpleValueMapMapperPreprocessor extends StructuredContentPreprocessorBase {
 
 	protected static final String CFG_SOURCE_FIELD = "source_field";
 	protected static final String CFG_TARGET_FIELD = "target_field";
 	protected static final String CFG_VALUE_DEFAULT = "value_default";
 	protected static final String CFG_VALUE_MAPPING = "value_mapping";
+	protected static final String CFG_VALUE_MAPPING_FILE = "value_mapping_file";
+	protected static final String CFG_VALUE_MAPPING_CASE_INSENSITIVE = "value_mapping_case_insensitive";
+	protected static final String CFG_VALUE_MAPPING_TRIM = "value_mapping_trim";
 
 	protected String fieldSource;
 	protected String fieldTarget;
+	protected FieldPath fieldSourcePath;
+	protected FieldPath fieldTargetPath;
 	protected String defaultValue = null;
+	protected CompiledTemplate defaultValueTemplate;
 	protected Map<String, String> valueMap = null;
+	protected String valueMappingFile = null;
+
+	/**
+	 * Compact mapping used instead of {@link #valueMap} if mapping file or case insensitive or trimmed keys are
+	 * configured.
+	 */
+	protected StringDictionary valueDictionary = null;
 
 	@SuppressWarnings("unchecked")
 	@Override
@@ -73,11 +98,32 @@ public class SimpleValueMapMapperPreprocessor extends StructuredContentPreproces
 		}
 		fieldSource = XContentMapValues.nodeStringValue(settings.get(CFG_SOURCE_FIELD), null);
 		validateConfigurationStringNotEmpty(fieldSource, CFG_SOURCE_FIELD);
+		fieldSourcePath = FieldPath.compile(fieldSource);
 		fieldTarget = XContentMapValues.nodeStringValue(settings.get(CFG_TARGET_FIELD), null);
 		validateConfigurationStringNotEmpty(fieldTarget, CFG_TARGET_FIELD);
+		fieldTargetPath = FieldPath.compile(fieldTarget);
 		defaultValue = ValueUtils.trimToNull(XContentMapValues.nodeStringValue(settings.get(CFG_VALUE_DEFAULT), null));
+		defaultValueTemplate = CompiledTemplate.compile(defaultValue);
 		valueMap = (Map<String, String>) settings.get(CFG_VALUE_MAPPING);
-		if (valueMap == null || valueMap.isEmpty()) {
+		valueMappingFile = ValueUtils.trimToNull(XContentMapValues.nodeStringValue(settings.get(CFG_VALUE_MAPPING_FILE),
+				null));
+		boolean caseInsensitive = XContentMapValues.nodeBooleanValue(settings.get(CFG_VALUE_MAPPING_CASE_INSENSITIVE),
+				false);
+		boolean trim = XContentMapValues.nodeBooleanValue(settings.get(CFG_VALUE_MAPPING_TRIM), false);
+		valueDictionary = null;
+		if (valueMappingFile != null || caseInsensitive || trim) {
+			StringDictionary.Builder builder = new StringDictionary.Builder(caseInsensitive, trim);
+			if (valueMappingFile != null) {
+				try {
+					builder.load(new File(valueMappingFile));
+				} catch (IOException e) {
+					throw new SettingsException("'settings/" + CFG_VALUE_MAPPING_FILE + "' configuration value for '" + name
+							+ "' preprocessor is invalid: " + e.getMessage());
+				}
+			}
+			valueDictionary = builder.putAll(valueMap).build();
+		}
+		if ((valueMap == null || valueMap.isEmpty()) && (valueDictionary == null || valueDictionary.size() == 0)) {
 			logger.warn("'settings/" + CFG_VALUE_MAPPING + "' is not defined for preprocessor '{}'", name);
 		}
 	}
@@ -87,25 +133,24 @@ public class SimpleValueMapMapperPreprocessor extends StructuredContentPreproces
 		if (data == null)
 			return null;
 
-		Object v = null;
-		if (fieldSource.contains(".")) {
-			v = XContentMapValues.extractValue(fieldSource, data);
-		} else {
-			v = data.get(fieldSource);
-		}
+		Object v = fieldSourcePath.getValue(data);
 
 		if (v == null) {
 			putDefaultValue(data, null);
 		} else if (v instanceof Map || v instanceof Collection || v.getClass().isArray()) {
-			String msg = "Value for field '" + fieldSource
-					+ "' is not simple value (but is List or Array or Map), so can't be processed";
-			addDataWarning(chainContext, msg);
-			logger.debug(msg);
+			String msg = "Value for field '{}' is not simple value (but is List or Array or Map), so can't be processed";
+			addDataWarning(chainContext, msg, fieldSource);
+			logger.debug(msg, fieldSource);
 		} else {
 			String origValue = v.toString();
 			String newVal = null;
-			if (valueMap != null && !ValueUtils.isEmpty(origValue))
-				newVal = valueMap.get(origValue);
+			if (!ValueUtils.isEmpty(origValue)) {
+				StringDictionary d = valueDictionary;
+				if (d != null)
+					newVal = d.get(origValue);
+				else if (valueMap != null)
+					newVal = valueMap.get(origValue);
+			}
 			if (newVal != null) {
 				putTargetValue(data, newVal);
 			} else {
@@ -116,13 +161,14 @@ public class SimpleValueMapMapperPreprocessor extends StructuredContentPreproces
 	}
 
 	private void putDefaultValue(Map<String, Object> data, String originalValue) {
-		if (defaultValue != null) {
-			putTargetValue(data, ValueUtils.processStringValuePatternReplacement(defaultValue, data, originalValue));
+		final CompiledTemplate t = defaultValueTemplate;
+		if (t != null) {
+			putTargetValue(data, t.process(data, originalValue));
 		}
 	}
 
 	protected void putTargetValue(Map<String, Object> data, String value) {
-		StructureUtils.putValueIntoMapOfMaps(data, fieldTarget, value);
+		fieldTargetPath.putValue(data, value);
 	}
 
 	public String getFieldSource() {
@@ -141,4 +187,12 @@ public class SimpleValueMapMapperPreprocessor extends StructuredContentPreproces
 		return valueMap;
 	}
 
+	public String getValueMappingFile() {
+		return valueMappingFile;
+	}
+
+	public StringDictionary getValueDictionary() {
+		return valueDictionary;
+	}
+
 }
@@ -0,0 +1,554 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+
+/**
+ * Processor running {@link PreprocessorChain} over documents streamed from newline delimited JSON (NDJSON) or
+ * Elasticsearch bulk format file/stream, and writing preprocessed documents into output stream in the same format and
+ * order. Processing is pipelined - calling thread reads lines and groups them into batches, workers parse, preprocess
+ * and serialize batches, and writer thread writes them to the output. Number of batches in the pipeline is bounded, so
+ * memory consumption doesn't depend on the size of the input, it is about
+ * <code>(queueCapacity + parallelism + 1) * batchSize</code> documents.
+ * <p>
+ * Empty lines are skipped, lines with invalid JSON are skipped and logged. Document is not written to the output if
+ * chain returns <code>null</code> for it. In bulk format only sources of <code>index</code> and <code>create</code>
+ * actions are preprocessed, <code>update</code> and <code>delete</code> actions are written unchanged. Invalid or unknown
+ * action is skipped together with the line following it, as it can't be decided if it is source of the action.
+ *
+ * @author agent (agent at local)
+ */
+public class StreamingChainProcessor {
+
+	private static final ESLogger logger = Loggers.getLogger(StreamingChainProcessor.class);
+
+	/**
+	 * Format of processed stream.
+	 */
+	public static enum Format {
+		/**
+		 * One JSON document per line.
+		 */
+		NDJSON,
+		/**
+		 * Elasticsearch bulk format - action line, followed by source line for all actions except <code>delete</code>.
+		 */
+		BULK
+	}
+
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	private static final byte NEW_LINE = '\n';
+
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	private static final Set<String> BULK_ACTIONS = new HashSet<String>(Arrays.asList("index", "create", "update",
+			"delete"));
+
+	protected final PreprocessorChain chain;
+	protected final Format format;
+	protected final int batchSize;
+	protected final int parallelism;
+	protected final int queueCapacity;
+
+	/**
+	 * Create processor with default settings - batches of {@value #DEFAULT_BATCH_SIZE} documents, one worker thread per CPU
+	 * and queue for two batches per worker.
+	 *
+	 * @param chain to run over documents
+	 * @param format of input and output
+	 */
+	public StreamingChainProcessor(PreprocessorChain chain, Format format) {
+		this(chain, format, DEFAULT_BATCH_SIZE, Runtime.getRuntime().availableProcessors(), 2 * Runtime.getRuntime()
+				.availableProcessors());
+	}
+
+	/**
+	 * Create processor.
+	 *
+	 * @param chain to run over documents
+	 * @param format of input and output
+	 * @param batchSize max number of documents passed to the chain at once
+	 * @param parallelism number of worker threads running the chain
+	 * @param queueCapacity max number of batches waiting for worker or writer
+	 */
+	public StreamingChainProcessor(PreprocessorChain chain, Format format, int batchSize, int parallelism,
+			int queueCapacity) {
+		if (chain == null)
+			throw new IllegalArgumentException("chain must be defined");
+		if (format == null)
+			throw new IllegalArgumentException("format must be defined");
+		if (batchSize < 1 || parallelism < 1 || queueCapacity < 1)
+			throw new IllegalArgumentException("batchSize, parallelism and queueCapacity must be positive");
+		this.chain = chain;
+		this.format = format;
+		this.batchSize = batchSize;
+		this.parallelism = parallelism;
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Process file.
+	 *
+	 * @param input file to read documents from
+	 * @param output file to write preprocessed documents into. Overwritten if exists.
+	 * @return result of processing
+	 * @throws IOException if file can't be read or written
+	 * @throws InterruptedException if interrupted
+	 */
+	public Result process(File input, File output) throws IOException, InterruptedException {
+		InputStream in = new FileInputStream(input);
+		try {
+			OutputStream out = new FileOutputStream(output);
+			try {
+				return process(in, out);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Process stream. Streams are not closed.
+	 *
+	 * @param input stream to read documents from
+	 * @param output stream to write preprocessed documents into
+	 * @return result of processing
+	 * @throws IOException if stream can't be read or written
+	 * @throws InterruptedException if interrupted
+	 */
+	public Result process(InputStream input, OutputStream output) throws IOException, InterruptedException {
+		final Result result = new Result();
+		final BlockingQueue<Future<Batch>> writeQueue = new ArrayBlockingQueue<Future<Batch>>(queueCapacity);
+		final ExecutorService workers = Executors.newFixedThreadPool(parallelism,
+				EsExecutors.daemonThreadFactory("streaming_chain_worker"));
+		final ExecutorService writerExecutor = Executors.newSingleThreadExecutor(EsExecutors
+				.daemonThreadFactory("streaming_chain_writer"));
+		final ThreadLocal<PreprocessorChain> workerChain = new ThreadLocal<PreprocessorChain>() {
+			@Override
+			protected PreprocessorChain initialValue() {
+				return chain.createWorkerCopy();
+			}
+		};
+		try {
+			final OutputStream out = new BufferedOutputStream(output);
+			Future<Void> writer = writerExecutor.submit(new Writer(writeQueue, out));
+			LineReader in = new LineReader(input);
+			Batch batch = new Batch(batchSize);
+			byte[] line;
+			long lineNumber = 0;
+			while ((line = in.readLine()) != null && !writer.isDone()) {
+				lineNumber++;
+				if (line.length == 0)
+					continue;
+				Record record;
+				if (format == Format.BULK) {
+					record = new Record(line, null);
+					String action = getBulkAction(line);
+					if (!"delete".equals(action)) {
+						long actionLineNumber = lineNumber;
+						byte[] source;
+						do {
+							source = in.readLine();
+							lineNumber++;
+						} while (source != null && source.length == 0);
+						if (action == null) {
+							logger.warn("Invalid bulk action on line {} skipped together with next line", actionLineNumber);
+							result.invalidCount.incrementAndGet();
+							if (source == null)
+								break;
+							continue;
+						}
+						if (source == null) {
+							logger.warn("Missing source for bulk action on line {}", lineNumber - 1);
+							result.invalidCount.incrementAndGet();
+							break;
+						}
+						record.source = source;
+						record.preprocess = "index".equals(action) || "create".equals(action);
+					}
+				} else {
+					record = new Record(null, line);
+					record.preprocess = true;
+				}
+				record.lineNumber = lineNumber;
+				batch.records.add(record);
+				if (batch.records.size() >= batchSize) {
+					if (!enqueue(writeQueue, workers.submit(new Worker(batch, workerChain, result)), writer))
+						break;
+					batch = new Batch(batchSize);
+				}
+			}
+			if (!batch.records.isEmpty())
+				enqueue(writeQueue, workers.submit(new Worker(batch, workerChain, result)), writer);
+			enqueue(writeQueue, Writer.END, writer);
+			try {
+				writer.get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException)
+					throw (IOException) cause;
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw new IOException(cause);
+			}
+			out.flush();
+		} finally {
+			workers.shutdownNow();
+			writerExecutor.shutdownNow();
+		}
+		return result;
+	}
+
+	/**
+	 * Get name of bulk action from action line.
+	 *
+	 * @param actionLine to parse
+	 * @return name of action or null if line is not valid action, or action is not one of <code>index</code>,
+	 *         <code>create</code>, <code>update</code>, <code>delete</code>
+	 */
+	protected static String getBulkAction(byte[] actionLine) {
+		XContentParser parser = null;
+		try {
+			parser = XContentFactory.xContent(XContentType.JSON).createParser(actionLine);
+			if (parser.nextToken() == XContentParser.Token.START_OBJECT
+					&& parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+				String action = parser.currentName();
+				return BULK_ACTIONS.contains(action) ? action : null;
+			}
+			return null;
+		} catch (Exception e) {
+			return null;
+		} finally {
+			if (parser != null)
+				parser.close();
+		}
+	}
+
+	/**
+	 * Put batch into writer queue, waiting for free space as long as writer runs.
+	 *
+	 * @return false if writer is finished (failed) so batch is not enqueued
+	 */
+	private static boolean enqueue(BlockingQueue<Future<Batch>> writeQueue, Future<Batch> batch, Future<Void> writer)
+			throws InterruptedException {
+		while (!writeQueue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+			if (writer.isDone())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Parse document from JSON.
+	 *
+	 * @param source JSON to parse
+	 * @return parsed document
+	 * @throws IOException if JSON is not valid
+	 */
+	protected Map<String, Object> parseDocument(byte[] source) throws IOException {
+		XContentParser parser = null;
+		try {
+			parser = XContentFactory.xContent(XContentType.JSON).createParser(source);
+			return parser.mapOrdered();
+		} finally {
+			if (parser != null)
+				parser.close();
+		}
+	}
+
+	/**
+	 * Serialize preprocessed document into JSON.
+	 *
+	 * @param document to serialize
+	 * @return JSON bytes
+	 * @throws IOException
+	 */
+	protected byte[] serializeDocument(Map<String, Object> document) throws IOException {
+		return ValueUtils.serializeDocument(document, XContentType.JSON);
+	}
+
+	/**
+	 * Reads lines from stream. Bytes are read into buffer in chunks, and buffer is scanned for end of line, so there is no
+	 * per byte call as with {@link InputStream#read()}.
+	 */
+	protected static final class LineReader {
+
+		private final InputStream in;
+		private final byte[] buffer;
+		private int position;
+		private int limit;
+
+		/**
+		 * Used for lines longer than rest of the buffer.
+		 */
+		private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream();
+
+		protected LineReader(InputStream in) {
+			this(in, READ_BUFFER_SIZE);
+		}
+
+		protected LineReader(InputStream in, int bufferSize) {
+			this.in = in;
+			this.buffer = new byte[bufferSize];
+		}
+
+		/**
+		 * Read one line.
+		 *
+		 * @return line without end of line characters, null at the end of stream
+		 * @throws IOException
+		 */
+		protected byte[] readLine() throws IOException {
+			lineBuffer.reset();
+			boolean read = false;
+			while (true) {
+				if (position >= limit) {
+					limit = in.read(buffer);
+					position = 0;
+					if (limit <= 0) {
+						limit = 0;
+						if (!read)
+							return null;
+						break;
+					}
+				}
+				read = true;
+				int start = position;
+				int end = start;
+				while (end < limit && buffer[end] != NEW_LINE)
+					end++;
+				position = end < limit ? end + 1 : end;
+				if (end < limit && lineBuffer.size() == 0)
+					return trimCarriageReturn(Arrays.copyOfRange(buffer, start, end));
+				lineBuffer.write(buffer, start, end - start);
+				if (end < limit)
+					break;
+			}
+			return trimCarriageReturn(lineBuffer.toByteArray());
+		}
+
+		private static byte[] trimCarriageReturn(byte[] line) {
+			if (line.length > 0 && line[line.length - 1] == '\r')
+				return Arrays.copyOf(line, line.length - 1);
+			return line;
+		}
+	}
+
+	/**
+	 * One line (NDJSON) or action with source (bulk) from the input.
+	 */
+	protected static final class Record {
+		/**
+		 * Bulk action line, null for NDJSON.
+		 */
+		final byte[] action;
+		/**
+		 * Source line as read, replaced by serialized preprocessed document. Null if document is removed by the chain.
+		 */
+		byte[] source;
+		boolean preprocess;
+		long lineNumber;
+
+		Record(byte[] action, byte[] source) {
+			this.action = action;
+			this.source = source;
+		}
+	}
+
+	protected static final class Batch {
+		final List<Record> records;
+
+		Batch(int size) {
+			records = new ArrayList<Record>(size);
+		}
+	}
+
+	/**
+	 * Parses, preprocesses and serializes one batch.
+	 */
+	protected final class Worker implements Callable<Batch> {
+
+		private final Batch batch;
+		private final ThreadLocal<PreprocessorChain> workerChain;
+		private final Result result;
+
+		Worker(Batch batch, ThreadLocal<PreprocessorChain> workerChain, Result result) {
+			this.batch = batch;
+			this.workerChain = workerChain;
+			this.result = result;
+		}
+
+		@Override
+		public Batch call() throws IOException {
+			List<Record> records = new ArrayList<Record>(batch.records.size());
+			List<Map<String, Object>> documents = new ArrayList<Map<String, Object>>(batch.records.size());
+			for (Record record : batch.records) {
+				if (!record.preprocess)
+					continue;
+				try {
+					documents.add(parseDocument(record.source));
+					records.add(record);
+				} catch (Exception e) {
+					logger.warn("Invalid JSON document on line {} skipped: {}", record.lineNumber, e.getMessage());
+					result.invalidCount.incrementAndGet();
+					record.source = null;
+				}
+			}
+			if (!documents.isEmpty()) {
+				BoundedPreprocessChainContext context = BoundedPreprocessChainContext.createCounting();
+				List<BoundedPreprocessChainContext> contexts = new ArrayList<BoundedPreprocessChainContext>(documents.size());
+				for (int i = 0; i < documents.size(); i++)
+					contexts.add(context);
+				documents = workerChain.get().preprocessBatch(documents, contexts);
+				result.warningCount.addAndGet(context.getWarningCount());
+				for (int i = 0; i < records.size(); i++) {
+					Map<String, Object> document = documents.get(i);
+					Record record = records.get(i);
+					if (document != null) {
+						record.source = serializeDocument(document);
+						result.documentCount.incrementAndGet();
+					} else {
+						record.source = null;
+						result.removedCount.incrementAndGet();
+					}
+				}
+			}
+			return batch;
+		}
+	}
+
+	/**
+	 * Writes batches to the output in the order they were read.
+	 */
+	protected static final class Writer implements Callable<Void> {
+
+		static final Future<Batch> END = new FutureTask<Batch>(new Callable<Batch>() {
+			@Override
+			public Batch call() {
+				return null;
+			}
+		});
+
+		private final BlockingQueue<Future<Batch>> queue;
+		private final OutputStream out;
+
+		Writer(BlockingQueue<Future<Batch>> queue, OutputStream out) {
+			this.queue = queue;
+			this.out = out;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			Future<Batch> f;
+			while ((f = queue.take()) != END) {
+				Batch batch;
+				try {
+					batch = f.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception)
+						throw (Exception) e.getCause();
+					throw e;
+				}
+				for (Record record : batch.records) {
+					if (record.action != null) {
+						if (record.source == null && record.preprocess)
+							continue;
+						out.write(record.action);
+						out.write(NEW_LINE);
+					}
+					if (record.source != null) {
+						out.write(record.source);
+						out.write(NEW_LINE);
+					}
+				}
+			}
+			out.flush();
+			return null;
+		}
+	}
+
+	/**
+	 * Result of processing.
+	 */
+	public static final class Result {
+
+		private final AtomicLong documentCount = new AtomicLong();
+		private final AtomicLong removedCount = new AtomicLong();
+		private final AtomicLong invalidCount = new AtomicLong();
+		private final AtomicLong warningCount = new AtomicLong();
+
+		/**
+		 * @return number of preprocessed documents written to the output
+		 */
+		public long getDocumentCount() {
+			return documentCount.get();
+		}
+
+		/**
+		 * @return number of documents removed by the chain (chain returned <code>null</code> for them)
+		 */
+		public long getRemovedCount() {
+			return removedCount.get();
+		}
+
+		/**
+		 * @return number of skipped invalid lines
+		 */
+		public long getInvalidCount() {
+			return invalidCount.get();
+		}
+
+		/**
+		 * @return number of warnings produced by preprocessors
+		 */
+		public long getWarningCount() {
+			return warningCount.get();
+		}
+
+		@Override
+		public String toString() {
+			return "Result [documents=" + getDocumentCount() + ", removed=" + getRemovedCount() + ", invalid="
+					+ getInvalidCount() + ", warnings=" + getWarningCount() + "]";
+		}
+	}
+
+}
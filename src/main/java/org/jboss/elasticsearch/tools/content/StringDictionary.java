@@ -0,0 +1,362 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+
+/**
+ * Immutable String to String dictionary with compact memory representation, suitable for big mappings (hundreds of
+ * thousands of entries) loaded from file. Characters of all keys are stored in one array, entries are found over open
+ * addressing hash table of ints and equal values are stored only once. {@link #get(String)} allocates nothing, so it is
+ * cheap even with case insensitive or trimmed keys.
+ * <p>
+ * Use {@link Builder} to create instance. Thread safe.
+ *
+ * @author agent (agent at local)
+ * @see SimpleValueMapMapperPreprocessor
+ */
+public final class StringDictionary {
+
+	private final boolean caseInsensitive;
+	private final boolean trim;
+
+	/**
+	 * Characters of all keys, already trimmed and case folded if configured.
+	 */
+	private final char[] keyChars;
+
+	/**
+	 * Start of key for each entry in {@link #keyChars}, last element is end of last key.
+	 */
+	private final int[] keyOffsets;
+	private final int[] keyHashes;
+	private final String[] values;
+
+	/**
+	 * Open addressing hash table with linear probing, contains entry index + 1, 0 for free slot.
+	 */
+	private final int[] table;
+	private final int mask;
+
+	private StringDictionary(Builder builder) {
+		this.caseInsensitive = builder.caseInsensitive;
+		this.trim = builder.trim;
+		int size = builder.entries.size();
+		int charsLength = 0;
+		for (String key : builder.entries.keySet()) {
+			charsLength += key.length();
+		}
+		keyChars = new char[charsLength];
+		keyOffsets = new int[size + 1];
+		keyHashes = new int[size];
+		values = new String[size];
+		int capacity = 2;
+		while (capacity * 3 < size * 4 + 1)
+			capacity <<= 1;
+		table = new int[capacity];
+		mask = capacity - 1;
+		int e = 0;
+		int offset = 0;
+		for (Map.Entry<String, String> entry : builder.entries.entrySet()) {
+			String key = entry.getKey();
+			key.getChars(0, key.length(), keyChars, offset);
+			keyOffsets[e] = offset;
+			offset += key.length();
+			int h = hash(key, 0, key.length(), false);
+			keyHashes[e] = h;
+			values[e] = entry.getValue();
+			int i = spread(h) & mask;
+			while (table[i] != 0)
+				i = (i + 1) & mask;
+			table[i] = ++e;
+		}
+		keyOffsets[size] = offset;
+	}
+
+	/**
+	 * Get value for key.
+	 *
+	 * @param key to get value for, trimmed and compared case insensitive if dictionary is configured so.
+	 * @return value or null if not found
+	 */
+	public String get(String key) {
+		if (key == null)
+			return null;
+		int start = 0;
+		int end = key.length();
+		if (trim) {
+			while (start < end && key.charAt(start) <= ' ')
+				start++;
+			while (end > start && key.charAt(end - 1) <= ' ')
+				end--;
+		}
+		int h = hash(key, start, end, caseInsensitive);
+		for (int i = spread(h) & mask;; i = (i + 1) & mask) {
+			int e = table[i] - 1;
+			if (e < 0)
+				return null;
+			if (keyHashes[e] == h && keyEquals(e, key, start, end))
+				return values[e];
+		}
+	}
+
+	private boolean keyEquals(int e, String key, int start, int end) {
+		int offset = keyOffsets[e];
+		if (keyOffsets[e + 1] - offset != end - start)
+			return false;
+		for (int i = start; i < end; i++) {
+			char c = key.charAt(i);
+			if (caseInsensitive)
+				c = fold(c);
+			if (keyChars[offset++] != c)
+				return false;
+		}
+		return true;
+	}
+
+	private static int hash(String key, int start, int end, boolean fold) {
+		int h = 0;
+		for (int i = start; i < end; i++) {
+			char c = key.charAt(i);
+			h = 31 * h + (fold ? fold(c) : c);
+		}
+		return h;
+	}
+
+	private static int spread(int h) {
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Fold character for case insensitive comparison, same way as {@link String#equalsIgnoreCase(String)} does.
+	 */
+	private static char fold(char c) {
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+	/**
+	 * @return number of entries
+	 */
+	public int size() {
+		return values.length;
+	}
+
+	public boolean isCaseInsensitive() {
+		return caseInsensitive;
+	}
+
+	public boolean isTrim() {
+		return trim;
+	}
+
+	@Override
+	public String toString() {
+		return "StringDictionary [size=" + size() + ", caseInsensitive=" + caseInsensitive + ", trim=" + trim + "]";
+	}
+
+	/**
+	 * Builder of {@link StringDictionary}. Later put value for same key replaces previous one. Not thread safe.
+	 */
+	public static final class Builder {
+
+		private final boolean caseInsensitive;
+		private final boolean trim;
+		private final Map<String, String> entries = new LinkedHashMap<String, String>();
+
+		/**
+		 * Equal values shared by more entries.
+		 */
+		private final Map<String, String> valuesPool = new HashMap<String, String>();
+
+		/**
+		 * @param caseInsensitive true if keys are compared case insensitive
+		 * @param trim true if whitespaces at the beginning and end of keys are ignored
+		 */
+		public Builder(boolean caseInsensitive, boolean trim) {
+			this.caseInsensitive = caseInsensitive;
+			this.trim = trim;
+		}
+
+		/**
+		 * Put entry into dictionary.
+		 *
+		 * @param key of entry, ignored if null
+		 * @param value of entry, ignored if null
+		 * @return this builder
+		 */
+		public Builder put(String key, String value) {
+			if (key == null || value == null)
+				return this;
+			if (trim)
+				key = key.trim();
+			if (caseInsensitive) {
+				char[] chars = key.toCharArray();
+				for (int i = 0; i < chars.length; i++)
+					chars[i] = fold(chars[i]);
+				key = new String(chars);
+			}
+			String pooled = valuesPool.get(value);
+			if (pooled == null) {
+				valuesPool.put(value, value);
+				pooled = value;
+			}
+			entries.put(key, pooled);
+			return this;
+		}
+
+		/**
+		 * Put all entries from map into dictionary.
+		 *
+		 * @param map to put entries from, can be null. Values which are not String are converted by
+		 *          <code>toString()</code>.
+		 * @return this builder
+		 */
+		public Builder putAll(Map<String, ?> map) {
+			if (map != null) {
+				for (Map.Entry<String, ?> e : map.entrySet()) {
+					Object value = e.getValue();
+					put(e.getKey(), value != null ? value.toString() : null);
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * Load entries from UTF-8 encoded file. File with <code>.json</code> extension has to contain JSON object with
+		 * keys and simple values. Other files are read as CSV with key in the first column and value in the second one,
+		 * values can be quoted by <code>"</code> as usual in CSV. Empty lines are skipped.
+		 *
+		 * @param file to load
+		 * @return this builder
+		 * @throws IOException if file can't be read or is not valid
+		 */
+		public Builder load(File file) throws IOException {
+			InputStream in = new FileInputStream(file);
+			try {
+				if (file.getName().toLowerCase().endsWith(".json")) {
+					loadJSON(in);
+				} else {
+					loadCSV(in);
+				}
+			} finally {
+				in.close();
+			}
+			return this;
+		}
+
+		private void loadJSON(InputStream in) throws IOException {
+			XContentParser parser = null;
+			try {
+				parser = XContentFactory.xContent(XContentType.JSON).createParser(in);
+				if (parser.nextToken() != XContentParser.Token.START_OBJECT)
+					throw new IOException("JSON object expected");
+				XContentParser.Token token;
+				while ((token = parser.nextToken()) == XContentParser.Token.FIELD_NAME) {
+					String key = parser.currentName();
+					token = parser.nextToken();
+					if (token == XContentParser.Token.VALUE_NULL)
+						continue;
+					if (token == null || !token.isValue())
+						throw new IOException("Value for key '" + key + "' is not simple value");
+					put(key, parser.text());
+				}
+				if (token != XContentParser.Token.END_OBJECT)
+					throw new IOException("Unexpected JSON token " + token);
+			} finally {
+				if (parser != null)
+					parser.close();
+			}
+		}
+
+		private void loadCSV(InputStream in) throws IOException {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+			String line;
+			int lineNumber = 0;
+			List<String> columns = new ArrayList<String>(2);
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (lineNumber == 1 && line.startsWith("\uFEFF"))
+					line = line.substring(1);
+				if (line.trim().isEmpty())
+					continue;
+				if (!parseCSVLine(line, columns) || columns.size() != 2)
+					throw new IOException("Invalid CSV line " + lineNumber + ", two columns expected: " + line);
+				put(columns.get(0), columns.get(1));
+			}
+		}
+
+		/**
+		 * Parse one CSV line.
+		 *
+		 * @param line to parse
+		 * @param columns list to put parsed columns into
+		 * @return false if line is not valid
+		 */
+		static boolean parseCSVLine(String line, List<String> columns) {
+			columns.clear();
+			StringBuilder sb = new StringBuilder();
+			int i = 0;
+			int len = line.length();
+			while (true) {
+				sb.setLength(0);
+				if (i < len && line.charAt(i) == '"') {
+					i++;
+					while (true) {
+						if (i >= len)
+							return false;
+						char c = line.charAt(i++);
+						if (c == '"') {
+							if (i < len && line.charAt(i) == '"') {
+								sb.append('"');
+								i++;
+							} else {
+								break;
+							}
+						} else {
+							sb.append(c);
+						}
+					}
+					if (i < len && line.charAt(i) != ',')
+						return false;
+				} else {
+					int end = line.indexOf(',', i);
+					if (end < 0)
+						end = len;
+					sb.append(line, i, end);
+					i = end;
+				}
+				columns.add(sb.toString());
+				if (i >= len)
+					return true;
+				// skip comma
+				i++;
+			}
+		}
+
+		/**
+		 * @return dictionary with all entries put into this builder
+		 */
+		public StringDictionary build() {
+			return new StringDictionary(this);
+		}
+	}
+
+}
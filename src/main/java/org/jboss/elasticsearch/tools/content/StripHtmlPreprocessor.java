@@ -8,6 +8,9 @@ package org.jboss.elasticsearch.tools.content;
 import java.util.List;
 import java.util.Map;
 
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheStats;
+import org.elasticsearch.common.cache.Weigher;
 import org.elasticsearch.common.settings.SettingsException;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
 import org.jsoup.Jsoup;
@@ -44,26 +47,75 @@ import org.jsoup.select.NodeVisitor;
  * <li><code>source_bases</code> - list of fields in source data which are used as bases for stripping. If defined then
  * stripping is performed for each of this fields, <code>source_field</code> and <code>target_field</code> are resolved
  * relatively against this base. Base must provide object or list of objects.
+ * <li><code>streaming</code> - optional, default <code>true</code>. If true then text is extracted by
+ * {@link HtmlTextExtractor} in one pass without building DOM, jsoup is used only for HTML constructs not supported by
+ * it. If false then jsoup is always used.
+ * <li><code>cache_max_size</code> - optional max number of stripped values cached across processed documents, so same
+ * HTML (eg. templated descriptions or signatures repeated in many documents) is not stripped again. Least recently used
+ * values are evicted. Value is counted once for each started 1024 characters of source and stripped text, so memory
+ * used by cache is bounded even for long values. Cache is not used if not set or 0.
+ * <li><code>cache_ttl</code> - optional time to live of stripped value in cache, eg. <code>10m</code>. Number means
+ * milliseconds. Values do not expire if not set or 0.
+ * <li><code>cache_min_length</code> - optional min length of source value to be cached, shorter values are always
+ * stripped as it is cheap for them. Default is <code>256</code>.
  * </ul>
  * 
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  */
+@ThreadSafe
+@Fusable
 public class StripHtmlPreprocessor extends StructuredContentPreprocessorWithSourceBasesBase<Object> {
 
 	protected static final String CFG_SOURCE_FIELD = "source_field";
 	protected static final String CFG_TARGET_FIELD = "target_field";
+	protected static final String CFG_STREAMING = "streaming";
+	protected static final String CFG_cache_min_length = "cache_min_length";
+
+	protected static final int DEFAULT_CACHE_MIN_LENGTH = 256;
+
+	/**
+	 * Number of characters of cached source and stripped text counted as one value in <code>cache_max_size</code>.
+	 */
+	protected static final int CACHE_WEIGHT_UNIT = 1024;
+
+	/**
+	 * Weight of cache entry by length of source and stripped text, see {@link #CACHE_WEIGHT_UNIT}.
+	 */
+	protected static final Weigher<String, String> CACHE_WEIGHER = new Weigher<String, String>() {
+		@Override
+		public int weigh(String key, String value) {
+			return (key.length() + value.length()) / CACHE_WEIGHT_UNIT + 1;
+		}
+	};
 
 	protected String fieldSource;
 	protected String fieldTarget;
+	protected FieldPath fieldSourcePath;
+	protected FieldPath fieldTargetPath;
+	protected boolean streaming = true;
+	protected Cache<String, String> strippedCache;
+	protected int cacheMinLength = DEFAULT_CACHE_MIN_LENGTH;
 
 	@Override
 	public void init(Map<String, Object> settings) throws SettingsException {
 		super.init(settings);
 		fieldSource = XContentMapValues.nodeStringValue(settings.get(CFG_SOURCE_FIELD), null);
 		validateConfigurationStringNotEmpty(fieldSource, CFG_SOURCE_FIELD);
+		fieldSourcePath = FieldPath.compile(fieldSource);
 		fieldTarget = XContentMapValues.nodeStringValue(settings.get(CFG_TARGET_FIELD), null);
 		validateConfigurationStringNotEmpty(fieldTarget, CFG_TARGET_FIELD);
+		fieldTargetPath = FieldPath.compile(fieldTarget);
+		streaming = XContentMapValues.nodeBooleanValue(settings.get(CFG_STREAMING), true);
+		strippedCache = createCacheFromSettings(settings, CACHE_WEIGHER);
+		cacheMinLength = DEFAULT_CACHE_MIN_LENGTH;
+		if (settings.get(CFG_cache_min_length) != null) {
+			cacheMinLength = readMandatoryIntegerConfigValue(settings, CFG_cache_min_length);
+			if (cacheMinLength < 0) {
+				throw new SettingsException("Negative 'settings/" + CFG_cache_min_length + "' configuration value for '"
+						+ name + "' preprocessor");
+			}
+		}
 	}
 
 	@Override
@@ -74,22 +126,17 @@ public class StripHtmlPreprocessor extends StructuredContentPreprocessorWithSour
 	@Override
 	protected void processOneSourceValue(Map<String, Object> data, Object context, String base,
 			PreprocessChainContext chainContext) {
-		Object v = null;
-		if (fieldSource.contains(".")) {
-			v = XContentMapValues.extractValue(fieldSource, data);
-		} else {
-			v = data.get(fieldSource);
-		}
+		Object v = fieldSourcePath.getValue(data);
 
 		if (v != null) {
 			if (!(v instanceof String)) {
-				String msg = "Value for field '" + getFullFieldName(base, fieldSource)
-						+ "' is not String, so can't be processed";
-				addDataWarning(chainContext, msg);
-				logger.debug(msg);
+				String msg = "Value for field '{}' is not String, so can't be processed";
+				addFieldDataWarning(chainContext, msg, base, fieldSource);
+				if (logger.isDebugEnabled())
+					logger.debug(msg, getFullFieldName(base, fieldSource));
 			} else {
 				String value = stripHtml(v.toString());
-				StructureUtils.putValueIntoMapOfMaps(data, fieldTarget, value);
+				fieldTargetPath.putValue(data, value);
 			}
 		}
 	}
@@ -97,6 +144,24 @@ public class StripHtmlPreprocessor extends StructuredContentPreprocessorWithSour
 	protected String stripHtml(String value) {
 		if (value == null || value.trim().isEmpty())
 			return value;
+		Cache<String, String> cache = strippedCache;
+		if (cache == null || value.length() < cacheMinLength)
+			return stripHtmlNoCache(value);
+		// keyed by source value itself so hash collision can't return text of other value
+		String text = cache.getIfPresent(value);
+		if (text == null) {
+			text = stripHtmlNoCache(value);
+			cache.put(value, text);
+		}
+		return text;
+	}
+
+	private String stripHtmlNoCache(String value) {
+		if (streaming) {
+			String text = HtmlTextExtractor.extractText(value);
+			if (text != null)
+				return text;
+		}
 		Document doc = Jsoup.parse(Jsoup.clean(value, Whitelist.relaxed()));
 		return convertNodeToText(doc.body());
 	}
@@ -139,6 +204,33 @@ public class StripHtmlPreprocessor extends StructuredContentPreprocessorWithSour
 		return fieldTarget;
 	}
 
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	public int getCacheMinLength() {
+		return cacheMinLength;
+	}
+
+	/**
+	 * Get statistics of cache of stripped values living across processed documents.
+	 *
+	 * @return statistics or <code>null</code> if cache is not configured.
+	 */
+	public CacheStats getStrippedCacheStats() {
+		Cache<String, String> cache = strippedCache;
+		return cache != null ? cache.stats() : null;
+	}
+
+	/**
+	 * Remove all values from cache of stripped values living across processed documents.
+	 */
+	public void invalidateStrippedCache() {
+		Cache<String, String> cache = strippedCache;
+		if (cache != null)
+			cache.invalidateAll();
+	}
+
 	public List<String> getSourceBases() {
 		return sourceBases;
 	}
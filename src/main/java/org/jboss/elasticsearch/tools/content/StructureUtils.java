@@ -10,7 +10,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -186,31 +185,29 @@ public class StructureUtils {
 		if (ValueUtils.isEmpty(field)) {
 			throw new IllegalArgumentException("field argument must be defined");
 		}
-		if (field.contains(".")) {
-			String[] tokens = field.split("\\.");
-			int tokensCount = tokens.length;
-			Map<String, Object> levelData = map;
-			for (String tok : tokens) {
-				if (tokensCount == 1) {
-					levelData.put(tok, value);
-				} else {
-					Object o = levelData.get(tok);
-					if (o == null) {
-						Map<String, Object> lv = new LinkedHashMap<String, Object>();
-						levelData.put(tok, lv);
-						levelData = lv;
-					} else if (o instanceof Map) {
-						levelData = (Map<String, Object>) o;
-					} else {
-						throw new IllegalArgumentException("Cant put value for field '" + field
-								+ "' because some element in the path is not Map");
-					}
-				}
-				tokensCount--;
+		int end = field.length();
+		while (end > 0 && field.charAt(end - 1) == '.')
+			end--;
+		Map<String, Object> levelData = map;
+		int start = 0;
+		int dot;
+		while ((dot = field.indexOf('.', start)) >= 0 && dot < end) {
+			String tok = field.substring(start, dot);
+			Object o = levelData.get(tok);
+			if (o == null) {
+				Map<String, Object> lv = new LinkedHashMap<String, Object>();
+				levelData.put(tok, lv);
+				levelData = lv;
+			} else if (o instanceof Map) {
+				levelData = (Map<String, Object>) o;
+			} else {
+				throw new IllegalArgumentException("Cant put value for field '" + field
+						+ "' because some element in the path is not Map");
 			}
-		} else {
-			map.put(field, value);
+			start = dot + 1;
 		}
+		if (end > 0)
+			levelData.put(start == 0 && end == field.length() ? field : field.substring(start, end), value);
 	}
 
 	/**
@@ -228,75 +225,111 @@ public class StructureUtils {
 		if (ValueUtils.isEmpty(field)) {
 			throw new IllegalArgumentException("field argument must be defined");
 		}
-		if (field.contains(".")) {
-			String[] tokens = field.split("\\.");
-			int tokensCount = tokens.length;
-			Map<String, Object> levelData = map;
-			for (String tok : tokens) {
-				if (tokensCount == 1) {
-					return levelData.remove(tok);
-				} else {
-					Object o = levelData.get(tok);
-					if (o == null) {
-						return null;
-					} else if (o instanceof Map) {
-						levelData = (Map<String, Object>) o;
-					} else {
-						throw new IllegalArgumentException("Cant remove value for field '" + field
-								+ "' because some element in the path is not Map");
-					}
-				}
-				tokensCount--;
+		int end = field.length();
+		while (end > 0 && field.charAt(end - 1) == '.')
+			end--;
+		Map<String, Object> levelData = map;
+		int start = 0;
+		int dot;
+		while ((dot = field.indexOf('.', start)) >= 0 && dot < end) {
+			Object o = levelData.get(field.substring(start, dot));
+			if (o == null) {
+				return null;
+			} else if (o instanceof Map) {
+				levelData = (Map<String, Object>) o;
+			} else {
+				throw new IllegalArgumentException("Cant remove value for field '" + field
+						+ "' because some element in the path is not Map");
 			}
-		} else {
-			return map.remove(field);
+			start = dot + 1;
 		}
+		if (end > 0)
+			return levelData.remove(start == 0 && end == field.length() ? field : field.substring(start, end));
 		return null;
 	}
-	
+
 	/**
 	 * A recursive method which creates a complete and deep copy of the whole structure.
-	 * Immutable elements stay as they are but all Lists and Maps are replaced with new instances.
+	 * Immutable elements stay as they are but all Lists and Maps are replaced with new instances
+	 * (presized {@link ArrayList} and {@link LinkedHashMap}). <code>null</code> values are not copied.
 	 * 
 	 * @param root with the structure to copy
 	 * @return deep copy of the given structure
+	 * @see #getACopyOnWriteStructure(Object)
+	 */
+	@SuppressWarnings("unchecked")
+	public static Object getADeepStructureCopy(Object root) {
+		if (root instanceof Map) {
+			return copyMap((Map<String, Object>) root);
+		} else if (root instanceof List) {
+			return copyList((List<Object>) root);
+		} else {
+			// Since it's neither a List nor a Map, it has to be an immutable value which we can copy by reference.
+			return root;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> copyMap(Map<String, Object> rootMap) {
+		Map<String, Object> copy = new LinkedHashMap<String, Object>(mapCapacity(rootMap.size()));
+		for (Map.Entry<String, Object> entry : rootMap.entrySet()) {
+			Object value = entry.getValue();
+			if (value == null)
+				continue;
+			if (value instanceof Map)
+				value = copyMap((Map<String, Object>) value);
+			else if (value instanceof List)
+				value = copyList((List<Object>) value);
+			copy.put(entry.getKey(), value);
+		}
+		return copy;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Object> copyList(List<Object> rootList) {
+		List<Object> copy = new ArrayList<Object>(rootList.size());
+		for (Object value : rootList) {
+			if (value == null)
+				continue;
+			if (value instanceof Map)
+				value = copyMap((Map<String, Object>) value);
+			else if (value instanceof List)
+				value = copyList((List<Object>) value);
+			copy.add(value);
+		}
+		return copy;
+	}
+
+	/**
+	 * Get initial capacity of {@link HashMap} to hold given number of entries without rehashing.
+	 * 
+	 * @param size expected number of entries
+	 * @return initial capacity
+	 */
+	protected static int mapCapacity(int size) {
+		return size < 3 ? size + 1 : (int) (size / 0.75f) + 1;
+	}
+
+	/**
+	 * Create copy-on-write copy of the structure. Returned structure shares all Lists and Maps with the given one, each
+	 * level is copied (shallowly, nested Lists and Maps are wrapped again) only when it is changed, so only levels on the
+	 * path to the changed values are copied. Given structure is never changed through the copy, but it must not be
+	 * changed by anybody else as long as the copy is used, so it is intended for structures which are not changed
+	 * anymore, eg. cached ones or source document preprocessed by more chains.
+	 * 
+	 * @param root with the structure to copy
+	 * @return copy-on-write copy of the given structure, same object if it is neither a List nor a Map
+	 * @see #getADeepStructureCopy(Object)
 	 */
 	@SuppressWarnings("unchecked")
-	public static Object getADeepStructureCopy( Object root ) {
-	    
-	    if ( root==null ) {
-	        
-	        return null;
-	        
-	    } else if ( root instanceof List ) {
-	        
-	        List<Object> rootList = (List<Object>)root;
-	        List<Object> copy = new LinkedList<Object>();
-	        
-	        for ( Object elem : rootList ) {
-	            Object copiedElem = getADeepStructureCopy(elem);
-	            if ( copiedElem==null ) continue;
-	            copy.add(copiedElem);   
-	        }
-	        return copy;
-            
-	    } else if ( root instanceof Map ) {
-	        
-	        Map<String,Object> rootMap = (Map<String,Object>)root;
-	        Map<String,Object> copy = new LinkedHashMap<String,Object>(rootMap.size());
-	        
-	        for ( String key : rootMap.keySet() ) {
-	            Object copiedElem = getADeepStructureCopy( rootMap.get(key) );
-	            if ( copiedElem==null ) continue;
-	            copy.put( key, copiedElem );
-	        }
-	        return copy;
-	        
-	    } else {
-	        
-	        // Since it's neither a List nor a Map, it has to be an immutable value which we can copy by reference.
-	        return root;
-	    }
+	public static Object getACopyOnWriteStructure(Object root) {
+		if (root instanceof Map) {
+			return new CopyOnWriteMap((Map<String, Object>) root);
+		} else if (root instanceof List) {
+			return new CopyOnWriteList((List<Object>) root);
+		} else {
+			return root;
+		}
 	}
 
 }
@@ -0,0 +1,35 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interface for preprocessors which are able to preprocess whole batch of documents more effectively than one document
+ * after another, eg. by sending one request to remote system for all documents. Batch method is called by
+ * {@link PreprocessorChain#preprocessBatch(List, List)} once all previous preprocessors from the chain processed all
+ * documents from the batch.
+ *
+ * @author agent (agent at local)
+ */
+public interface StructuredContentBatchPreprocessor extends StructuredContentPreprocessor {
+
+	/**
+	 * Preprocess batch of documents. Result must be same as if
+	 * {@link #preprocessData(Map, PreprocessChainContext)} is called for each document from the batch in the given
+	 * order.
+	 *
+	 * @param documents batch of documents to be preprocessed - documents may be changed during call!
+	 * @param chainContexts contexts for each document in the batch, in the same order as documents. Can be
+	 *          <code>null</code>, but if defined then has same size as <code>documents</code>. Items can be
+	 *          <code>null</code>.
+	 * @return list of preprocessed documents in the same order as in <code>documents</code>.
+	 */
+	List<Map<String, Object>> preprocessBatch(List<Map<String, Object>> documents,
+			List<? extends PreprocessChainContext> chainContexts);
+
+}
@@ -13,7 +13,11 @@ import org.elasticsearch.common.settings.SettingsException;
 /**
  * Interface for components used to preprocess structured data before other action, eg. indexed document is created from
  * them. Instances may be created from configuration using {@link StructuredContentPreprocessorFactory}.
- * 
+ * <p>
+ * Implementations which may be used by more threads at the same time after {@link #init(String, Client, Map)} must be
+ * annotated by {@link ThreadSafe}. Other implementations are never called concurrently by {@link PreprocessorChain}
+ * and {@link ParallelPreprocessorChain}.
+ *
  * @author Vlastimil Elias (velias at redhat dot com)
  */
 public interface StructuredContentPreprocessor {
@@ -7,11 +7,18 @@ package org.jboss.elasticsearch.tools.content;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import org.elasticsearch.ElasticsearchParseException;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.cache.Weigher;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
 
 /**
  * Abstract base class for {@link StructuredContentPreprocessor} implementations.
@@ -20,6 +27,9 @@ import org.elasticsearch.common.settings.SettingsException;
  */
 public abstract class StructuredContentPreprocessorBase implements StructuredContentPreprocessor {
 
+	protected static final String CFG_cache_max_size = "cache_max_size";
+	protected static final String CFG_cache_ttl = "cache_ttl";
+
 	protected ESLogger logger = null;
 
 	protected String name;
@@ -66,6 +76,29 @@ public abstract class StructuredContentPreprocessorBase implements StructuredCon
 		}
 	}
 
+	/**
+	 * Write warning message into processing chain context if available. Message is formatted lazily if context is
+	 * {@link LazyPreprocessChainContext}, so prefer this method over string concatenation in frequently produced
+	 * warnings.
+	 * 
+	 * @param chainContext to write warning into. Can be <code>null</code>.
+	 * @param messageTemplate template of message with warning description, <code>{}</code> is replaced by next argument
+	 *          (same format as used for logging). It is a good idea to write name of data field with problem in this
+	 *          message to be clear where problem is.
+	 * @param args arguments for message template. Should not be changed later as they may be formatted later.
+	 * @see LazyPreprocessChainContext#addDataWarning(String, String, Object...)
+	 */
+	protected void addDataWarning(PreprocessChainContext chainContext, String messageTemplate, Object... args) {
+		if (messageTemplate == null) {
+			throw new IllegalArgumentException("warningMessage must be provided");
+		}
+		if (chainContext instanceof LazyPreprocessChainContext) {
+			((LazyPreprocessChainContext) chainContext).addDataWarning(name, messageTemplate, args);
+		} else if (chainContext != null) {
+			addDataWarning(chainContext, BoundedPreprocessChainContext.formatMessage(messageTemplate, args));
+		}
+	}
+
 	/**
 	 * Validate configuration string is not null or empty. Useful for your {@link #init(Map)} implementation.
 	 * 
@@ -118,6 +151,62 @@ public abstract class StructuredContentPreprocessorBase implements StructuredCon
 		}
 	}
 
+	/**
+	 * Create cache living across processed documents as configured by <code>cache_max_size</code> and
+	 * <code>cache_ttl</code> settings. Cache is thread safe and records hit/miss statistics. Useful for your
+	 * {@link #init(Map)} implementation.
+	 * 
+	 * @param settings to read cache configuration from
+	 * @return cache or <code>null</code> if <code>cache_max_size</code> is not configured or is 0
+	 * @throws SettingsException thrown if configuration is not valid
+	 */
+	protected <K, V> Cache<K, V> createCacheFromSettings(Map<String, Object> settings) throws SettingsException {
+		return createCacheFromSettings(settings, null);
+	}
+
+	/**
+	 * Create cache living across processed documents as configured by <code>cache_max_size</code> and
+	 * <code>cache_ttl</code> settings, bounded by total weight of entries instead of their count if <code>weigher</code>
+	 * is given. Useful for caches of values with very different size.
+	 * 
+	 * @param settings to read cache configuration from
+	 * @param weigher to compute weight of cache entry, <code>cache_max_size</code> is then max total weight of entries.
+	 *          Can be <code>null</code> to bound number of entries.
+	 * @return cache or <code>null</code> if <code>cache_max_size</code> is not configured or is 0
+	 * @throws SettingsException thrown if configuration is not valid
+	 * @see #createCacheFromSettings(Map)
+	 */
+	protected <K, V> Cache<K, V> createCacheFromSettings(Map<String, Object> settings, Weigher<K, V> weigher)
+			throws SettingsException {
+		if (settings == null || settings.get(CFG_cache_max_size) == null)
+			return null;
+		int maxSize = readMandatoryIntegerConfigValue(settings, CFG_cache_max_size);
+		if (maxSize < 0) {
+			throw new SettingsException("Negative 'settings/" + CFG_cache_max_size + "' configuration value for '" + name
+					+ "' preprocessor");
+		}
+		if (maxSize == 0)
+			return null;
+		TimeValue ttl = null;
+		try {
+			ttl = XContentMapValues.nodeTimeValue(settings.get(CFG_cache_ttl), null);
+		} catch (ElasticsearchParseException e) {
+			throw new SettingsException("Invalid 'settings/" + CFG_cache_ttl + "' configuration value for '" + name
+					+ "' preprocessor");
+		}
+		if (ttl != null && ttl.millis() < 0) {
+			throw new SettingsException("Negative 'settings/" + CFG_cache_ttl + "' configuration value for '" + name
+					+ "' preprocessor");
+		}
+		CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+		if (ttl != null && ttl.millis() > 0) {
+			builder.expireAfterWrite(ttl.millis(), TimeUnit.MILLISECONDS);
+		}
+		if (weigher != null)
+			return builder.maximumWeight(maxSize).weigher(weigher).build();
+		return builder.maximumSize(maxSize).build();
+	}
+
 	@Override
 	public String getName() {
 		return name;
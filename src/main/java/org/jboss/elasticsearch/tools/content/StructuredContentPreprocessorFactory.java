@@ -98,4 +98,23 @@ public class StructuredContentPreprocessorFactory {
     return ret;
   }
 
+  /**
+   * Create chain of preprocessors from array of configurations described in this class's javadoc.
+   *
+   * @param preprocessorConfig List of configuration structure in Map of Maps
+   * @param client ES client to be passed to the preprocessors.
+   * @return chain of created preprocessors, never null
+   * @throws IllegalArgumentException if something is wrong and preprocessor can't be instantiated.
+   * @see PreprocessorChain
+   */
+  public static PreprocessorChain createPreprocessorChain(List<Map<String, Object>> preprocessorConfig, Client client)
+      throws IllegalArgumentException {
+    List<StructuredContentPreprocessor> preprocs = createPreprocessors(preprocessorConfig, client);
+    List<Map<String, Object>> configs = new ArrayList<Map<String, Object>>();
+    if (preprocessorConfig != null) {
+      configs.addAll(preprocessorConfig);
+    }
+    return new PreprocessorChain(preprocs.toArray(new StructuredContentPreprocessor[preprocs.size()]), configs, client);
+  }
+
 }
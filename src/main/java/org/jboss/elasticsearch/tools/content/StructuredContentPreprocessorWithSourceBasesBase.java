@@ -10,7 +10,6 @@ import java.util.List;
 import java.util.Map;
 
 import org.elasticsearch.common.settings.SettingsException;
-import org.elasticsearch.common.xcontent.support.XContentMapValues;
 
 /**
  * Abstract base class for preprocessors supporting concept of "source_bases". Do not forgot to call parent
@@ -23,6 +22,7 @@ public abstract class StructuredContentPreprocessorWithSourceBasesBase<T> extend
 	protected static final String CFG_source_bases = "source_bases";
 
 	protected List<String> sourceBases;
+	protected FieldPath[] sourceBasesPaths;
 
 	@SuppressWarnings("unchecked")
 	@Override
@@ -31,6 +31,7 @@ public abstract class StructuredContentPreprocessorWithSourceBasesBase<T> extend
 			throw new SettingsException("'settings' section is not defined for preprocessor " + name);
 		}
 		sourceBases = (List<String>) settings.get(CFG_source_bases);
+		sourceBasesPaths = FieldPath.compile(sourceBases);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -39,12 +40,15 @@ public abstract class StructuredContentPreprocessorWithSourceBasesBase<T> extend
 		if (data == null)
 			return null;
 
-		if (sourceBases == null) {
+		if (sourceBasesPaths == null) {
 			processOneSourceValue(data, null, null, chainContext);
 		} else {
 			T context = createContext(data);
-			for (String base : sourceBases) {
-				Object obj = XContentMapValues.extractValue(base, data);
+			for (FieldPath basePath : sourceBasesPaths) {
+				if (basePath == null)
+					continue;
+				String base = basePath.getPath();
+				Object obj = basePath.getValue(data);
 				if (obj != null) {
 					if (obj instanceof Map) {
 						processOneSourceValue((Map<String, Object>) obj, context, base, chainContext);
@@ -108,6 +112,43 @@ public abstract class StructuredContentPreprocessorWithSourceBasesBase<T> extend
 		}
 	}
 
+	/**
+	 * Write warning about field into processing chain context if available. Full name of field is built from
+	 * <code>base</code> and <code>field</code> only when message is formatted, and nothing is done if context is
+	 * <code>null</code>, so this method is cheap even for frequently produced warnings.
+	 * 
+	 * @param chainContext to write warning into. Can be <code>null</code>.
+	 * @param messageTemplate template of message with warning description, <code>{}</code> is replaced by full name of
+	 *          field
+	 * @param base field is for, can be null
+	 * @param field warning is about
+	 * @see #getFullFieldName(String, String)
+	 */
+	protected void addFieldDataWarning(PreprocessChainContext chainContext, String messageTemplate, String base,
+			String field) {
+		if (chainContext == null)
+			return;
+		addDataWarning(chainContext, messageTemplate, base != null ? new FullFieldName(base, field) : field);
+	}
+
+	/**
+	 * Full name of field formatted lazily by {@link #toString()}.
+	 */
+	private static final class FullFieldName {
+		private final String base;
+		private final String field;
+
+		FullFieldName(String base, String field) {
+			this.base = base;
+			this.field = field;
+		}
+
+		@Override
+		public String toString() {
+			return getFullFieldName(base, field);
+		}
+	}
+
 	/**
 	 * Get configured source bases
 	 * 
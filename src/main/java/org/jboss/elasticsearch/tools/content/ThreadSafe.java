@@ -0,0 +1,31 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marker annotation for {@link StructuredContentPreprocessor} implementations which may be used by more threads at the
+ * same time once initialized, so one instance may be shared by all workers of {@link ParallelPreprocessorChain}.
+ * Preprocessors without this annotation are instantiated for each worker separately (or synchronized if it is not
+ * possible).
+ * <p>
+ * Annotation is not inherited, so subclass of thread safe preprocessor must be annotated again if it is thread safe
+ * too.
+ *
+ * @author agent (agent at local)
+ * @see PreprocessorChain#isThreadSafe(StructuredContentPreprocessor)
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ThreadSafe {
+
+}
@@ -42,6 +42,8 @@ import org.elasticsearch.common.xcontent.support.XContentMapValues;
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  */
+@ThreadSafe
+@Fusable
 public class TrimStringValuePreprocessor extends StructuredContentPreprocessorWithSourceBasesBase<Object> {
 
 	protected static final String CFG_SOURCE_FIELD = "source_field";
@@ -50,6 +52,8 @@ public class TrimStringValuePreprocessor extends StructuredContentPreprocessorWi
 
 	protected String fieldSource;
 	protected String fieldTarget;
+	protected FieldPath fieldSourcePath;
+	protected FieldPath fieldTargetPath;
 	protected int maxSize;
 
 	@Override
@@ -57,27 +61,24 @@ public class TrimStringValuePreprocessor extends StructuredContentPreprocessorWi
 		super.init(settings);
 		fieldSource = XContentMapValues.nodeStringValue(settings.get(CFG_SOURCE_FIELD), null);
 		validateConfigurationStringNotEmpty(fieldSource, CFG_SOURCE_FIELD);
+		fieldSourcePath = FieldPath.compile(fieldSource);
 		fieldTarget = XContentMapValues.nodeStringValue(settings.get(CFG_TARGET_FIELD), null);
 		validateConfigurationStringNotEmpty(fieldTarget, CFG_TARGET_FIELD);
+		fieldTargetPath = FieldPath.compile(fieldTarget);
 		maxSize = readMandatoryIntegerConfigValue(settings, CFG_MAX_SIZE);
 	}
 
 	@Override
 	protected void processOneSourceValue(Map<String, Object> data, Object context, String base,
 			PreprocessChainContext chainContext) {
-		Object v = null;
-		if (fieldSource.contains(".")) {
-			v = XContentMapValues.extractValue(fieldSource, data);
-		} else {
-			v = data.get(fieldSource);
-		}
+		Object v = fieldSourcePath.getValue(data);
 
 		if (v != null) {
 			if (!(v instanceof String)) {
-				String msg = "Value for field '" + getFullFieldName(base, fieldSource)
-						+ "' is not String, so can't be processed";
-				addDataWarning(chainContext, msg);
-				logger.debug(msg);
+				String msg = "Value for field '{}' is not String, so can't be processed";
+				addFieldDataWarning(chainContext, msg, base, fieldSource);
+				if (logger.isDebugEnabled())
+					logger.debug(msg, getFullFieldName(base, fieldSource));
 			} else {
 				String origValue = v.toString().trim();
 				if (origValue.length() > maxSize) {
@@ -93,7 +94,7 @@ public class TrimStringValuePreprocessor extends StructuredContentPreprocessorWi
 	}
 
 	protected void putTargetValue(Map<String, Object> data, String value) {
-		StructureUtils.putValueIntoMapOfMaps(data, fieldTarget, value);
+		fieldTargetPath.putValue(data, value);
 	}
 
 	@Override
@@ -13,12 +13,14 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 import java.util.TimeZone;
 
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.common.xcontent.XContentType;
-import org.elasticsearch.common.xcontent.support.XContentMapValues;
 
 /**
  * Utility functions for values manipulation.
@@ -173,52 +175,12 @@ public class ValueUtils {
      * @param endKeyChar end character to look for keys
      * @param encoder which may be used to encode values before appending to the pattern. Common <code>toString()</code> is used if not provided.
      * @return value with replaced keys
+     * @see CompiledTemplate
      */
     public static String processStringValuePatternReplacement(String patternValue, Map<String, Object> data, Object originalValue, char startKeyChar, char endKeyChar, IValueEncoder encoder) {
         if (patternValue == null || patternValue.length() == 0)
             return patternValue;
-        StringBuilder finalContent = new StringBuilder();
-
-        boolean inBraces = false;
-        StringBuilder bracesContent = null;
-        for (int idx = 0; idx < patternValue.length(); idx++) {
-            char ch = patternValue.charAt(idx);
-            if (!inBraces && ch == startKeyChar) {
-                inBraces = true;
-                bracesContent = new StringBuilder();
-            } else if (inBraces && ch == endKeyChar) {
-                inBraces = false;
-                String key = bracesContent.toString();
-                if (key.length() > 0) {
-                    Object v = null;
-                    if (PATTERN_KEY_ORIGINAL_VALUE.equals(key)) {
-                        v = originalValue;
-                    } else if (data != null) {
-                        if (key.contains(".")) {
-                            v = XContentMapValues.extractValue(key, data);
-                        } else {
-                            v = data.get(key);
-                        }
-                    }
-                    if (v != null) {
-                        if (encoder != null) {
-                            finalContent.append(encoder.encode(v));
-                        } else {
-                            finalContent.append(v.toString());
-                        }
-                    }
-                }
-            } else if (inBraces) {
-                bracesContent.append(ch);
-            } else {
-                finalContent.append(ch);
-            }
-        }
-        // handle not closed brace
-        if (inBraces) {
-            finalContent.append(startKeyChar).append(bracesContent);
-        }
-        return finalContent.toString();
+        return CompiledTemplate.getCached(patternValue, startKeyChar, endKeyChar).process(data, originalValue, encoder);
     }
 
     protected static final SimpleDateFormat ISO_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXX");
@@ -226,6 +188,18 @@ public class ValueUtils {
         ISO_DATE_FORMAT.setTimeZone(TimeZone.getTimeZone("UTC"));
     }
 
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * Gregorian calendar cutover (1582-10-15T00:00:00Z), {@link #ISO_DATE_FORMAT} uses Julian calendar before it.
+     */
+    private static final long GREGORIAN_CUTOVER_MILLIS = -12219292800000L;
+
+    /**
+     * 10000-01-01T00:00:00Z, longer years are formatted by {@link #ISO_DATE_FORMAT}.
+     */
+    private static final long YEAR_10000_MILLIS = 253402300800000L;
+
     /**
      * Format Date into ISO 8601 full datetime string.
      * 
@@ -235,9 +209,93 @@ public class ValueUtils {
     public static final String formatISODateTime(Date date) {
         if (date == null)
             return null;
-        synchronized (ISO_DATE_FORMAT) {
-            return ISO_DATE_FORMAT.format(date);
+        return formatISODateTime(date.getTime());
+    }
+
+    /**
+     * Format timestamp into ISO 8601 full datetime string in UTC, eg. <code>2012-08-14T12:00:00.000Z</code>. Lock free.
+     * 
+     * @param millis timestamp in milliseconds from epoch
+     * @return formatted string
+     */
+    public static final String formatISODateTime(long millis) {
+        return appendISODateTime(new StringBuilder(24), millis).toString();
+    }
+
+    /**
+     * Format timestamps into ISO 8601 full datetime strings in UTC.
+     * 
+     * @param millis timestamps in milliseconds from epoch
+     * @return array of formatted strings, same length as <code>millis</code>, <code>null</code> for <code>null</code>
+     *         input
+     * @see #formatISODateTime(long)
+     */
+    public static final String[] formatISODateTimes(long[] millis) {
+        if (millis == null)
+            return null;
+        String[] ret = new String[millis.length];
+        StringBuilder sb = new StringBuilder(24);
+        for (int i = 0; i < millis.length; i++) {
+            sb.setLength(0);
+            ret[i] = appendISODateTime(sb, millis[i]).toString();
         }
+        return ret;
+    }
+
+    /**
+     * Append timestamp formatted as ISO 8601 full datetime string in UTC into the builder, no temporary objects are
+     * created for common dates. Lock free.
+     * 
+     * @param sb to append formatted timestamp into
+     * @param millis timestamp in milliseconds from epoch
+     * @return <code>sb</code> for chaining
+     * @see #formatISODateTime(long)
+     */
+    public static final StringBuilder appendISODateTime(StringBuilder sb, long millis) {
+        if (millis < GREGORIAN_CUTOVER_MILLIS || millis >= YEAR_10000_MILLIS) {
+            synchronized (ISO_DATE_FORMAT) {
+                return sb.append(ISO_DATE_FORMAT.format(new Date(millis)));
+            }
+        }
+        long days = millis / MILLIS_PER_DAY;
+        int millisOfDay = (int) (millis % MILLIS_PER_DAY);
+        if (millisOfDay < 0) {
+            days--;
+            millisOfDay += MILLIS_PER_DAY;
+        }
+
+        // civil date from days since epoch in proleptic Gregorian calendar, all values are positive after cutover
+        long z = days + 719468;
+        long era = z / 146097;
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+
+        append2(sb, year / 100);
+        append2(sb, year % 100);
+        sb.append('-');
+        append2(sb, month);
+        sb.append('-');
+        append2(sb, day);
+        sb.append('T');
+        append2(sb, millisOfDay / 3600000);
+        sb.append(':');
+        append2(sb, millisOfDay / 60000 % 60);
+        sb.append(':');
+        append2(sb, millisOfDay / 1000 % 60);
+        sb.append('.');
+        int ms = millisOfDay % 1000;
+        sb.append((char) ('0' + ms / 100));
+        append2(sb, ms % 100);
+        return sb.append('Z');
+    }
+
+    private static void append2(StringBuilder sb, int value) {
+        sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
     }
 
     /**
@@ -258,4 +316,107 @@ public class ValueUtils {
                 parser.close();
         }
     }
+
+    /**
+     * Max size of serialization buffer kept for reuse by thread, bigger buffers are released after use.
+     */
+    private static final int SERIALIZATION_BUFFER_MAX_POOLED_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<BytesStreamOutput> SERIALIZATION_BUFFER = new ThreadLocal<BytesStreamOutput>() {
+        @Override
+        protected BytesStreamOutput initialValue() {
+            return new BytesStreamOutput();
+        }
+    };
+
+    /**
+     * Serialize structured document (Map of Maps) into bytes. Buffer used for serialization is reused by calling
+     * thread.
+     * 
+     * @param document to serialize
+     * @param contentType format of output, eg. JSON or SMILE
+     * @return serialized document
+     * @throws IOException
+     * @see #writeDocument(XContentBuilder, Map)
+     */
+    public static byte[] serializeDocument(Map<String, Object> document, XContentType contentType) throws IOException {
+        BytesStreamOutput buffer = SERIALIZATION_BUFFER.get();
+        buffer.reset();
+        try {
+            XContentBuilder builder = XContentFactory.contentBuilder(contentType, buffer);
+            writeDocument(builder, document);
+            builder.close();
+            return buffer.bytes().toBytes();
+        } finally {
+            if (buffer.size() > SERIALIZATION_BUFFER_MAX_POOLED_SIZE)
+                SERIALIZATION_BUFFER.remove();
+        }
+    }
+
+    /**
+     * Write structured document (Map of Maps) as object directly into builder. Common types of values from
+     * preprocessed documents are written by fast paths, other values are passed to
+     * {@link XContentBuilder#value(Object)}.
+     * 
+     * @param builder to write document into
+     * @param document to write
+     * @throws IOException
+     */
+    public static void writeDocument(XContentBuilder builder, Map<String, Object> document) throws IOException {
+        if (document == null) {
+            builder.nullValue();
+            return;
+        }
+        builder.startObject();
+        writeMapContent(builder, document);
+        builder.endObject();
+    }
+
+    private static void writeMapContent(XContentBuilder builder, Map<?, ?> map) throws IOException {
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            builder.field(String.valueOf(entry.getKey()));
+            writeValue(builder, entry.getValue());
+        }
+    }
+
+    /**
+     * Write value from structured document directly into builder.
+     * 
+     * @param builder to write value into
+     * @param value to write, can be null
+     * @throws IOException
+     * @see #writeDocument(XContentBuilder, Map)
+     */
+    public static void writeValue(XContentBuilder builder, Object value) throws IOException {
+        if (value == null) {
+            builder.nullValue();
+        } else if (value instanceof String) {
+            builder.value((String) value);
+        } else if (value instanceof Map) {
+            builder.startObject();
+            writeMapContent(builder, (Map<?, ?>) value);
+            builder.endObject();
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            builder.startArray();
+            if (list instanceof RandomAccess) {
+                for (int i = 0; i < list.size(); i++)
+                    writeValue(builder, list.get(i));
+            } else {
+                for (Object o : list)
+                    writeValue(builder, o);
+            }
+            builder.endArray();
+        } else if (value instanceof Integer) {
+            builder.value(((Integer) value).intValue());
+        } else if (value instanceof Long) {
+            builder.value(((Long) value).longValue());
+        } else if (value instanceof Boolean) {
+            builder.value(((Boolean) value).booleanValue());
+        } else if (value instanceof Double) {
+            builder.value(((Double) value).doubleValue());
+        } else {
+            builder.value(value);
+        }
+    }
 }
@@ -47,6 +47,7 @@ import org.elasticsearch.common.xcontent.support.XContentMapValues;
  * @author Ryszard Kozmik (rkozmik at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  */
+@ThreadSafe
 public class ValuesCollectingPreprocessor extends StructuredContentPreprocessorBase {
 
 	protected static final String CFG_SOURCE_FIELDS = "source_fields";
@@ -56,6 +57,8 @@ public class ValuesCollectingPreprocessor extends StructuredContentPreprocessorB
 	protected String fieldTarget;
 	protected List<String> fieldsSource;
 	protected boolean fieldDeepCopy;
+	protected FieldPath fieldTargetPath;
+	protected FieldPath[] fieldsSourcePaths;
 
 	@SuppressWarnings("unchecked")
 	@Override
@@ -67,6 +70,8 @@ public class ValuesCollectingPreprocessor extends StructuredContentPreprocessorB
 		validateConfigurationObjectNotEmpty(fieldsSource, CFG_SOURCE_FIELDS);
 		fieldTarget = XContentMapValues.nodeStringValue(settings.get(CFG_TARGET_FIELD), null);
 		validateConfigurationStringNotEmpty(fieldTarget, CFG_TARGET_FIELD);
+		fieldsSourcePaths = FieldPath.compile(fieldsSource);
+		fieldTargetPath = FieldPath.compile(fieldTarget);
 		String fieldDeepCopyStr = XContentMapValues.nodeStringValue(settings.get(CFG_DEEP_COPY), "false" );
 		fieldDeepCopy = fieldDeepCopyStr.compareTo("true")==0 ? true : false;
 	}
@@ -77,16 +82,16 @@ public class ValuesCollectingPreprocessor extends StructuredContentPreprocessorB
 			return null;
 		Set<Object> vals = new HashSet<Object>();
 
-		for (String sourceField : fieldsSource) {
-			if (ValueUtils.isEmpty(sourceField))
+		for (FieldPath sourceField : fieldsSourcePaths) {
+			if (sourceField == null)
 				continue;
-			Object v = XContentMapValues.extractValue(sourceField, data);
+			Object v = sourceField.getValue(data);
 			collectValue(vals, v);
 		}
 		if (vals != null && !vals.isEmpty()) {
-			StructureUtils.putValueIntoMapOfMaps(data, fieldTarget, new ArrayList<Object>(vals));
+			fieldTargetPath.putValue(data, new ArrayList<Object>(vals));
 		} else {
-			StructureUtils.putValueIntoMapOfMaps(data, fieldTarget, null);
+			fieldTargetPath.putValue(data, null);
 		}
 		return data;
 	}
@@ -81,7 +81,9 @@ public class AddCurrentTimestampPreprocessorTest {
 	@Test
 	public void preprocessData() {
 		AddCurrentTimestampPreprocessor tested = new AddCurrentTimestampPreprocessor();
-		tested.field = "my_field";
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(AddCurrentTimestampPreprocessor.CFG_FIELD, "my_field");
+		tested.init("mypreproc", null, settings);
 
 		// case - not NPE
 		tested.preprocessData(null, null);
@@ -122,8 +122,7 @@ public class AddValuePreprocessorTest {
 	@Test
 	public void preprocessData() {
 
-		AddValuePreprocessor tested = new AddValuePreprocessor();
-		tested.field = "my_field";
+		AddValuePreprocessor tested = createTested("my_field", null);
 
 		// case - not NPE
 		tested.preprocessData(null, null);
@@ -146,7 +145,7 @@ public class AddValuePreprocessorTest {
 		// case - fill String value over null
 		{
 			Map<String, Object> values = new HashMap<String, Object>();
-			tested.value = "Value";
+			tested = createTested(tested.field, "Value");
 			tested.preprocessData(values, null);
 			Assert.assertEquals("Value", values.get(tested.field));
 		}
@@ -155,7 +154,7 @@ public class AddValuePreprocessorTest {
 		{
 			Map<String, Object> values = new HashMap<String, Object>();
 			values.put(tested.field, "value old");
-			tested.value = "Value";
+			tested = createTested(tested.field, "Value");
 			tested.preprocessData(values, null);
 			Assert.assertEquals("Value", values.get(tested.field));
 		}
@@ -163,7 +162,7 @@ public class AddValuePreprocessorTest {
 		// case - fill Integer value over null
 		{
 			Map<String, Object> values = new HashMap<String, Object>();
-			tested.value = new Integer(10);
+			tested = createTested(tested.field, new Integer(10));
 			tested.preprocessData(values, null);
 			Assert.assertEquals(new Integer(10), values.get(tested.field));
 		}
@@ -172,18 +171,41 @@ public class AddValuePreprocessorTest {
 		{
 			Map<String, Object> values = new HashMap<String, Object>();
 			values.put(tested.field, "value old");
-			tested.value = new Integer(10);
+			tested = createTested(tested.field, new Integer(10));
 			tested.preprocessData(values, null);
 			Assert.assertEquals(new Integer(10), values.get(tested.field));
 		}
 
 		// case - fill String value over null - dot notation
-		tested.field = "my_field.level1.level2";
+		tested = createTested("my_field.level1.level2", "Value");
 		{
 			Map<String, Object> values = new HashMap<String, Object>();
-			tested.value = "Value";
 			tested.preprocessData(values, null);
 			Assert.assertEquals("Value", XContentMapValues.extractValue(tested.field, values));
 		}
+
+		// case - pattern is evaluated for each document again
+		tested = createTested("my_field", "Name {name}");
+		{
+			Map<String, Object> values = new HashMap<String, Object>();
+			values.put("name", "joe");
+			tested.preprocessData(values, null);
+			Assert.assertEquals("Name joe", values.get(tested.field));
+
+			values = new HashMap<String, Object>();
+			values.put("name", "dan");
+			tested.preprocessData(values, null);
+			Assert.assertEquals("Name dan", values.get(tested.field));
+			Assert.assertEquals("Name {name}", tested.getValue());
+		}
+	}
+
+	private static AddValuePreprocessor createTested(String field, Object value) {
+		AddValuePreprocessor tested = new AddValuePreprocessor();
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(AddValuePreprocessor.CFG_FIELD, field);
+		settings.put(AddValuePreprocessor.CFG_VALUE, value);
+		tested.init("mypreproc", null, settings);
+		return tested;
 	}
 }
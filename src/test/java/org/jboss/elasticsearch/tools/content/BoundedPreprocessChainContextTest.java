@@ -0,0 +1,118 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.elasticsearch.tools.content.PreprocessChainContextImpl.DataWarning;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link BoundedPreprocessChainContext}.
+ *
+ * @author agent (agent at local)
+ */
+public class BoundedPreprocessChainContextTest {
+
+	@Test
+	public void constructor() {
+		try {
+			new BoundedPreprocessChainContext(-1);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		Assert.assertEquals(10, new BoundedPreprocessChainContext(10).getMaxWarnings());
+		Assert.assertEquals(0, BoundedPreprocessChainContext.createCounting().getMaxWarnings());
+	}
+
+	@Test
+	public void addDataWarning() {
+		BoundedPreprocessChainContext tested = new BoundedPreprocessChainContext(2);
+		Assert.assertFalse(tested.isWarning());
+		Assert.assertTrue(tested.getWarnings().isEmpty());
+
+		try {
+			tested.addDataWarning(null, "msg");
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			tested.addDataWarning("name", null, "arg");
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+
+		Map<String, Object> value = new HashMap<String, Object>();
+		tested.addDataWarning("p1", "message 1");
+		tested.addDataWarning("p2", "value '{}' for field '{}'", value, "field");
+		// lazy formatting
+		value.put("a", "b");
+		tested.addDataWarning("p3", "message 3");
+
+		Assert.assertTrue(tested.isWarning());
+		Assert.assertEquals(3, tested.getWarningCount());
+		Assert.assertEquals(1, tested.getDroppedWarningCount());
+		List<DataWarning> warnings = tested.getWarnings();
+		Assert.assertEquals(2, warnings.size());
+		Assert.assertEquals("p1", warnings.get(0).getPreprocessorName());
+		Assert.assertEquals("message 1", warnings.get(0).getWarningMessage());
+		Assert.assertEquals("p2", warnings.get(1).getPreprocessorName());
+		Assert.assertEquals("value '{a=b}' for field 'field'", warnings.get(1).getWarningMessage());
+	}
+
+	@Test
+	public void addDataWarning_counting() {
+		BoundedPreprocessChainContext tested = BoundedPreprocessChainContext.createCounting();
+		tested.addDataWarning("p1", "message 1");
+		tested.addDataWarning("p1", "message {}", 2);
+		Assert.assertTrue(tested.isWarning());
+		Assert.assertEquals(2, tested.getWarningCount());
+		Assert.assertEquals(2, tested.getDroppedWarningCount());
+		Assert.assertTrue(tested.getWarnings().isEmpty());
+	}
+
+	@Test
+	public void addDataWarning_moreThreads() throws InterruptedException {
+		final BoundedPreprocessChainContext tested = new BoundedPreprocessChainContext(500);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			final String name = "p" + t;
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 1000; i++) {
+						tested.addDataWarning(name, "message {}", i);
+					}
+				}
+			});
+		}
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+		Assert.assertEquals(4000, tested.getWarningCount());
+		List<DataWarning> warnings = tested.getWarnings();
+		Assert.assertEquals(500, warnings.size());
+		for (DataWarning w : warnings) {
+			Assert.assertNotNull(w);
+		}
+	}
+
+	@Test
+	public void formatMessage() {
+		Assert.assertEquals("msg {}", BoundedPreprocessChainContext.formatMessage("msg {}"));
+		Assert.assertEquals("msg {}", BoundedPreprocessChainContext.formatMessage("msg {}", (Object[]) null));
+		Assert.assertEquals("msg 1 and 'b'", BoundedPreprocessChainContext.formatMessage("msg {} and '{}'", 1, "b"));
+	}
+
+}
@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link BulkBodyBuilder}.
+ *
+ * @author agent (agent at local)
+ */
+public class BulkBodyBuilderTest {
+
+	@Test
+	public void constructor() {
+		Assert.assertEquals(XContentType.JSON, new BulkBodyBuilder().getContentType());
+		Assert.assertEquals(XContentType.SMILE, new BulkBodyBuilder(XContentType.SMILE).getContentType());
+		try {
+			new BulkBodyBuilder(XContentType.YAML);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void build_json() throws Exception {
+		BulkBodyBuilder tested = new BulkBodyBuilder();
+		tested.addIndex("idx", "issue", "1", createDocument("1", "Opened"));
+		tested.addDelete(null, null, "2");
+		Assert.assertEquals(2, tested.numberOfActions());
+		Assert.assertEquals("{\"index\":{\"_index\":\"idx\",\"_type\":\"issue\",\"_id\":\"1\"}}\n"
+				+ "{\"fields\":{\"id\":\"1\"},\"status\":\"Opened\"}\n{\"delete\":{\"_id\":\"2\"}}\n", tested.bytes().toUtf8());
+
+		tested.reset();
+		Assert.assertEquals(0, tested.numberOfActions());
+		Assert.assertEquals(0, tested.bytes().length());
+
+		try {
+			tested.addIndex("idx", "issue", "1", null);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			tested.addDelete("idx", "issue", null);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void addIndexBatch() throws Exception {
+		for (XContentType contentType : new XContentType[] { XContentType.JSON, XContentType.SMILE }) {
+			List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+			batch.add(createDocument("1", "Opened"));
+			batch.add(null);
+			batch.add(createDocument(null, "Closed"));
+			batch = PreprocessorChainTest.createTestedChain(null).preprocessBatch(batch);
+
+			BulkBodyBuilder tested = new BulkBodyBuilder(contentType);
+			tested.addIndexBatch(null, "idx", "issue", "fields.id");
+			tested.addIndexBatch(batch, "idx", "issue", "fields.id");
+			tested.addDelete("idx", "issue", "3");
+			Assert.assertEquals(3, tested.numberOfActions());
+
+			BulkRequest request = new BulkRequest();
+			request.add(tested.bytes(), false, null, null);
+			List<ActionRequest> requests = request.requests();
+			Assert.assertEquals(3, requests.size());
+			IndexRequest ir = (IndexRequest) requests.get(0);
+			Assert.assertEquals("idx", ir.index());
+			Assert.assertEquals("issue", ir.type());
+			Assert.assertEquals("1", ir.id());
+			Assert.assertEquals("Open", ir.sourceAsMap().get("status"));
+			Assert.assertEquals("Joe Doe the Great", ir.sourceAsMap().get("full_name"));
+			ir = (IndexRequest) requests.get(1);
+			Assert.assertNull(ir.id());
+			Assert.assertEquals("Clos", ir.sourceAsMap().get("status"));
+			Assert.assertEquals("3", ((DeleteRequest) requests.get(2)).id());
+		}
+	}
+
+	private static Map<String, Object> createDocument(String id, String status) {
+		Map<String, Object> data = new HashMap<String, Object>();
+		if (id != null) {
+			Map<String, Object> fields = new HashMap<String, Object>();
+			fields.put("id", id);
+			data.put("fields", fields);
+		}
+		data.put("status", status);
+		return data;
+	}
+
+}
@@ -0,0 +1,84 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.elasticsearch.tools.content.ValueUtils.IValueEncoder;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link CompiledTemplate}.
+ *
+ * @author agent (agent at local)
+ */
+public class CompiledTemplateTest {
+
+	@Test
+	public void compile() {
+		Assert.assertNull(CompiledTemplate.compile(null));
+		Assert.assertEquals("", CompiledTemplate.compile("").getPattern());
+		Assert.assertFalse(CompiledTemplate.compile("").hasKeys());
+		Assert.assertFalse(CompiledTemplate.compile("constant").hasKeys());
+		Assert.assertFalse(CompiledTemplate.compile("constant {} and {not closed").hasKeys());
+		Assert.assertTrue(CompiledTemplate.compile("{key}").hasKeys());
+		Assert.assertFalse(CompiledTemplate.compile("{key}", '$', '$').hasKeys());
+	}
+
+	@Test
+	public void getCached() {
+		Assert.assertNull(CompiledTemplate.getCached(null, '{', '}'));
+		CompiledTemplate t = CompiledTemplate.getCached("Name {name}", '{', '}');
+		Assert.assertSame(t, CompiledTemplate.getCached(new String("Name {name}"), '{', '}'));
+		Assert.assertNotSame(t, CompiledTemplate.getCached("Name {name}", '$', '$'));
+	}
+
+	@Test
+	public void process() {
+		Map<String, Object> data = new HashMap<String, Object>();
+		data.put("name", "Joe");
+		data.put("age", new Integer(20));
+		data.put(" ", "space");
+		Map<String, Object> user = new HashMap<String, Object>();
+		user.put("surname", "Doe");
+		data.put("user", user);
+
+		// case - constant
+		Assert.assertEquals("", CompiledTemplate.compile("").process(data, null));
+		Assert.assertEquals("constant", CompiledTemplate.compile("constant").process(data, null));
+		Assert.assertEquals("constant", CompiledTemplate.compile("constant").process(null, null));
+
+		// case - keys
+		CompiledTemplate tested = CompiledTemplate.compile("I'm {name} {user.surname}, {age} years, {__original}{unknown}.");
+		Assert.assertEquals("I'm Joe Doe, 20 years, orig.", tested.process(data, "orig"));
+		Assert.assertEquals("I'm Joe Doe, 20 years, .", tested.process(data, null));
+		Assert.assertEquals("I'm  ,  years, orig.", tested.process(null, "orig"));
+		Assert.assertEquals("Joespace", CompiledTemplate.compile("{name}{ }").process(data, null));
+
+		// case - empty key and not closed brace
+		Assert.assertEquals("a b", CompiledTemplate.compile("a{} b").process(data, null));
+		Assert.assertEquals("Joe {user.surname", CompiledTemplate.compile("{name} {user.surname").process(data, null));
+
+		// case - other key characters and encoder
+		IValueEncoder encoder = new IValueEncoder() {
+			@Override
+			public String encode(Object value) {
+				return "[" + value + "]";
+			}
+		};
+		Assert.assertEquals("{name} is [Joe] [Doe]",
+				CompiledTemplate.compile("{name} is $name$ $user.surname$", '$', '$').process(data, null, encoder));
+
+		// case - braces in unusual positions
+		Assert.assertEquals("aJoeb{", CompiledTemplate.compile("a{name}b{").process(data, null));
+		Assert.assertEquals("", CompiledTemplate.compile("{{name}").process(data, null));
+		Assert.assertEquals("Joe}", CompiledTemplate.compile("{name}}").process(data, null));
+		Assert.assertEquals("}Joe{", CompiledTemplate.compile("}{name}{").process(data, null));
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link DefaultPreprocessorMetricsRegistry}.
+ *
+ * @author agent (agent at local)
+ */
+public class DefaultPreprocessorMetricsRegistryTest {
+
+	@Test
+	public void getMetrics() {
+		try {
+			new DefaultPreprocessorMetricsRegistry(" ");
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+
+		DefaultPreprocessorMetricsRegistry tested = new DefaultPreprocessorMetricsRegistry("test");
+		PreprocessorStatistics m = tested.getMetrics("a");
+		Assert.assertEquals("a", m.getName());
+		Assert.assertSame(m, tested.getMetrics("a"));
+		Assert.assertNotSame(m, tested.getMetrics("b"));
+		Assert.assertEquals(2, tested.getAllMetrics().size());
+
+		m.record(1, 1000, 0, false);
+		tested.reset();
+		Assert.assertEquals(0, m.getInvocationCount());
+	}
+
+	@Test
+	public void registerMBeans() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		DefaultPreprocessorMetricsRegistry tested = new DefaultPreprocessorMetricsRegistry("test chain");
+		tested.getMetrics("a").record(2, 1000, 0, false);
+
+		ObjectName onA = tested.getObjectName("a");
+		ObjectName onB = tested.getObjectName("b,c=d");
+		Assert.assertEquals(DefaultPreprocessorMetricsRegistry.JMX_DOMAIN, onA.getDomain());
+		try {
+			tested.registerMBeans();
+			Assert.assertTrue(server.isRegistered(onA));
+			Assert.assertEquals(2L, server.getAttribute(onA, "DocumentCount"));
+
+			// metrics created later are registered too
+			Assert.assertFalse(server.isRegistered(onB));
+			tested.getMetrics("b,c=d");
+			Assert.assertTrue(server.isRegistered(onB));
+
+			server.invoke(onA, "reset", null, null);
+			Assert.assertEquals(0L, server.getAttribute(onA, "DocumentCount"));
+		} finally {
+			tested.unregisterMBeans();
+		}
+		Assert.assertFalse(server.isRegistered(onA));
+		Assert.assertFalse(server.isRegistered(onB));
+	}
+
+}
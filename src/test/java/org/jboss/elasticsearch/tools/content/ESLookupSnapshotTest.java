@@ -0,0 +1,136 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ESLookupSnapshot}.
+ *
+ * @author agent (agent at local)
+ */
+public class ESLookupSnapshotTest {
+
+	@Test
+	public void writeAndGet() throws Exception {
+		List<String> descriptor = Arrays.asList("index", "type", "[f1, f2]", "name", "_source");
+		ESLookupSnapshot.Writer writer = new ESLookupSnapshot.Writer(descriptor);
+		Map<String, Object> source = new HashMap<String, Object>();
+		source.put("name", "Joe");
+		source.put("tags", Arrays.asList("a", "b"));
+		writer.add(0, "joe", new boolean[] { true, true }, new Object[] { "Joe", source });
+		writer.add(1, "joe", new boolean[] { true, false }, new Object[] { null, null });
+		writer.add(0, "\u017elu\u0165ou\u010dk\u00fd k\u016f\u0148", new boolean[] { true, true }, new Object[] { 10, null });
+		writer.add(0, "joe", new boolean[] { false, false }, new Object[] { null, null });
+		for (int i = 0; i < 1000; i++) {
+			writer.add(1, "key" + i, new boolean[] { true, false }, new Object[] { "v" + i, null });
+		}
+		// duplicates are found in data written into temporary file already
+		writer.add(1, "key5", new boolean[] { true, false }, new Object[] { "other", null });
+		writer.add(1, "key999", new boolean[] { true, false }, new Object[] { "other", null });
+		Assert.assertEquals(1003, writer.size());
+
+		File file = File.createTempFile("lookup", ".snapshot");
+		try {
+			writer.write(file);
+			ESLookupSnapshot tested = ESLookupSnapshot.open(file);
+			Assert.assertEquals(descriptor, tested.getDescriptor());
+			Assert.assertEquals(1003, tested.size());
+			Assert.assertEquals(file, tested.getFile());
+
+			// case - values of the first document are kept, hits are counted
+			ESLookupSnapshot.Entry e = tested.get(0, "joe");
+			Assert.assertEquals(2, e.getHits());
+			Assert.assertTrue(e.isPresent(0));
+			Assert.assertEquals("Joe", e.getValue(0));
+			Assert.assertEquals(source, e.getValue(1));
+
+			// case - present field with null value
+			e = tested.get(1, "joe");
+			Assert.assertEquals(1, e.getHits());
+			Assert.assertTrue(e.isPresent(0));
+			Assert.assertNull(e.getValue(0));
+			Assert.assertFalse(e.isPresent(1));
+
+			e = tested.get(0, "\u017elu\u0165ou\u010dk\u00fd k\u016f\u0148");
+			Assert.assertEquals(10, e.getValue(0));
+
+			for (int i = 0; i < 1000; i++) {
+				Assert.assertEquals("v" + i, tested.get(1, "key" + i).getValue(0));
+				Assert.assertEquals(i == 5 || i == 999 ? 2 : 1, tested.get(1, "key" + i).getHits());
+				Assert.assertNull(tested.get(0, "key" + i));
+			}
+			Assert.assertNull(tested.get(0, "unknown"));
+			Assert.assertNull(tested.get(0, "Joe"));
+			Assert.assertNull(tested.get(0, null));
+
+			// case - writer is closed by write
+			try {
+				writer.add(0, "other", new boolean[] { false, false }, new Object[] { null, null });
+				Assert.fail("IllegalStateException must be thrown");
+			} catch (IllegalStateException ex) {
+				// OK
+			}
+
+			// case - file replaced by new snapshot, opened one is still readable
+			new ESLookupSnapshot.Writer(descriptor).write(file);
+			Assert.assertEquals("Joe", tested.get(0, "joe").getValue(0));
+			Assert.assertEquals(0, ESLookupSnapshot.open(file).size());
+			Assert.assertNull(ESLookupSnapshot.open(file).get(0, "joe"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void open_invalid() throws Exception {
+		File file = File.createTempFile("lookup", ".snapshot");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write("not a snapshot".getBytes("UTF-8"));
+			out.close();
+			try {
+				ESLookupSnapshot.open(file);
+				Assert.fail("IOException must be thrown");
+			} catch (IOException e) {
+				// OK
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void close() throws Exception {
+		ESLookupSnapshot.Writer writer = new ESLookupSnapshot.Writer(Arrays.asList("index"));
+		writer.add(0, "a", new boolean[0], new Object[0]);
+		writer.close();
+		writer.close();
+		File file = File.createTempFile("lookup", ".snapshot");
+		file.delete();
+		try {
+			writer.write(file);
+			Assert.fail("IllegalStateException must be thrown");
+		} catch (IllegalStateException e) {
+			Assert.assertFalse(file.exists());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void add_invalidSearchField() throws Exception {
+		new ESLookupSnapshot.Writer(Arrays.asList("index")).add(128, "a", new boolean[0], new Object[0]);
+	}
+
+}
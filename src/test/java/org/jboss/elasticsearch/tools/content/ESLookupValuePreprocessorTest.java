@@ -5,7 +5,9 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -172,8 +174,8 @@ public class ESLookupValuePreprocessorTest extends ESRealClientTestBase {
 			Client client = prepareESClientForUnitTest();
 
 			ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor();
-			tested.init("Test mapper", client,
-					TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json"));
+			Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
+			tested.init("Test mapper", client, settings);
 
 			// case - lookup index is missing so default value is used
 			{
@@ -286,6 +288,7 @@ public class ESLookupValuePreprocessorTest extends ESRealClientTestBase {
 				Map<String, Object> values = new HashMap<String, Object>();
 				tested.resultMapping.get(0)
 						.put(ESLookupValuePreprocessor.CFG_value_default, "unknown {field} for {__original}");
+				tested.init("Test mapper", client, settings);
 				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "BBB");
 				StructureUtils.putValueIntoMapOfMaps(values, "field", "jj");
 				tested.preprocessData(values, null);
@@ -295,6 +298,7 @@ public class ESLookupValuePreprocessorTest extends ESRealClientTestBase {
 			// case - test handling when source field contains list of values
 			{
 				tested.resultMapping.get(0).put(ESLookupValuePreprocessor.CFG_value_default, "unknown");
+				tested.init("Test mapper", client, settings);
 				Map<String, Object> values = new HashMap<String, Object>();
 				List<Object> obj = new ArrayList<Object>();
 				obj.add("ORG");
@@ -324,10 +328,10 @@ public class ESLookupValuePreprocessorTest extends ESRealClientTestBase {
 			Client client = prepareESClientForUnitTest();
 
 			ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor();
-			tested.init("Test mapper", client,
-					TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases-2.json"));
-			tested.sourceField = "sf";
-			tested.sourceValuePattern = null;
+			Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases-2.json");
+			settings.remove(ESLookupValuePreprocessor.CFG_source_value);
+			settings.put(ESLookupValuePreprocessor.CFG_source_field, "sf");
+			tested.init("Test mapper", client, settings);
 			// assert we have correct configuration for the test
 			Assert.assertEquals(2, tested.idxSearchField.size());
 			Assert.assertEquals("jbossorg_jira_project_2", tested.idxSearchField.get(0));
@@ -463,6 +467,7 @@ public class ESLookupValuePreprocessorTest extends ESRealClientTestBase {
 				Map<String, Object> values = new HashMap<String, Object>();
 				tested.resultMapping.get(0)
 						.put(ESLookupValuePreprocessor.CFG_value_default, "unknown {field} for {__original}");
+				tested.init("Test mapper", client, settings);
 				StructureUtils.putValueIntoMapOfMaps(values, testInputField, "BBB");
 				StructureUtils.putValueIntoMapOfMaps(values, "field", "jj");
 				tested.preprocessData(values, null);
@@ -519,6 +524,352 @@ public class ESLookupValuePreprocessorTest extends ESRealClientTestBase {
 		}
 	}
 
+	@Test
+	public void init_cache() {
+		Client client = Mockito.mock(Client.class);
+
+		// case - cache not configured by default
+		{
+			ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor();
+			tested.init("Test mapper", client,
+					TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json"));
+			Assert.assertNull(tested.lookupCache);
+			Assert.assertNull(tested.getLookupCacheStats());
+			Assert.assertTrue(tested.cacheNegative);
+			tested.invalidateLookupCache();
+		}
+
+		// case - cache configured
+		{
+			ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor();
+			Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
+			settings.put(ESLookupValuePreprocessor.CFG_cache_max_size, 100);
+			settings.put(ESLookupValuePreprocessor.CFG_cache_ttl, "10m");
+			settings.put(ESLookupValuePreprocessor.CFG_cache_negative, false);
+			tested.init("Test mapper", client, settings);
+			Assert.assertNotNull(tested.lookupCache);
+			Assert.assertNotNull(tested.getLookupCacheStats());
+			Assert.assertFalse(tested.cacheNegative);
+		}
+	}
+
+	@Test
+	public void init_snapshot() {
+		Client client = Mockito.mock(Client.class);
+		ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor();
+		Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
+
+		// case - snapshot not configured by default
+		tested.init("Test mapper", client, settings);
+		Assert.assertNull(tested.getSnapshotFile());
+		Assert.assertNull(tested.getSnapshotRefresh());
+		Assert.assertNull(tested.getSnapshot());
+		try {
+			tested.refreshSnapshot();
+			Assert.fail("IllegalStateException must be thrown");
+		} catch (IllegalStateException e) {
+			// OK
+		} catch (Exception e) {
+			Assert.fail(e.getMessage());
+		}
+
+		// case - snapshot configured
+		settings.put(ESLookupValuePreprocessor.CFG_snapshot_file, "target/lookup.snapshot");
+		settings.put(ESLookupValuePreprocessor.CFG_snapshot_refresh, "1d");
+		tested.init("Test mapper", client, settings);
+		Assert.assertEquals(new File("target/lookup.snapshot"), tested.getSnapshotFile());
+		Assert.assertEquals(24 * 60 * 60 * 1000L, tested.getSnapshotRefresh().millis());
+
+		// case - failed snapshot creation is not retried by each lookup, but after close or delay only
+		new File("target/lookup.snapshot").delete();
+		Assert.assertNull(tested.getSnapshot());
+		Assert.assertNull(tested.getSnapshot());
+		Mockito.verify(client, Mockito.times(1)).prepareSearch("projects");
+		tested.close();
+		Assert.assertNull(tested.getSnapshot());
+		Mockito.verify(client, Mockito.times(2)).prepareSearch("projects");
+		tested.close();
+
+		// case - invalid refresh
+		settings.put(ESLookupValuePreprocessor.CFG_snapshot_refresh, "-10");
+		try {
+			tested.init("Test mapper", client, settings);
+			Assert.fail("SettingsException must be thrown");
+		} catch (SettingsException e) {
+			Assert.assertEquals("Negative 'settings/snapshot_refresh' configuration value for 'Test mapper' preprocessor",
+					e.getMessage());
+		}
+	}
+
+	@Test
+	public void preprocessData_snapshot() throws Exception {
+		File file = File.createTempFile("lookup", ".snapshot");
+		file.delete();
+		try {
+			Client client = prepareESClientForUnitTest();
+
+			ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor();
+			Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
+			settings.put(ESLookupValuePreprocessor.CFG_snapshot_file, file.getPath());
+			tested.init("Test mapper", client, settings);
+			prepareTestData(client, tested);
+
+			// case - snapshot created at first lookup
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "ORG");
+				PreprocessChainContextImpl chainContext = new PreprocessChainContextImpl();
+				tested.preprocessData(values, chainContext);
+				Assert.assertEquals("jbossorg", (String) XContentMapValues.extractValue("project.code", values));
+				Assert.assertEquals("jboss.org", (String) XContentMapValues.extractValue("project_name", values));
+				Assert.assertFalse(chainContext.isWarning());
+				Assert.assertTrue(file.exists());
+				Assert.assertNotNull(tested.getSnapshot());
+			}
+
+			// remove data from index, so we can check snapshot is used
+			client.admin().indices().prepareDelete(tested.indexName).execute().actionGet();
+
+			// case - lookups served from snapshot
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				List<String> codes = new ArrayList<String>();
+				codes.add("test.org");
+				codes.add("AAA");
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, codes);
+				PreprocessChainContextImpl chainContext = new PreprocessChainContextImpl();
+				tested.preprocessData(values, chainContext);
+				Assert.assertEquals("[jbossorg, defval]", XContentMapValues.extractValue("project.code", values).toString());
+				Assert.assertEquals(1, chainContext.getWarnings().size());
+				Assert.assertEquals("No result found during lookup for value 'AAA'.", chainContext.getWarnings().get(0)
+						.getWarningMessage());
+			}
+
+			// case - existing snapshot file used by new instance
+			{
+				ESLookupValuePreprocessor tested2 = new ESLookupValuePreprocessor();
+				tested2.init("Test mapper", client, settings);
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "ORGA");
+				tested2.preprocessData(values, null);
+				Assert.assertEquals("jbossorg", (String) XContentMapValues.extractValue("project.code", values));
+			}
+
+			// case - refresh fails if index is not available, previous snapshot is still used
+			try {
+				tested.refreshSnapshot();
+				Assert.fail("Exception must be thrown");
+			} catch (Exception e) {
+				// OK
+			}
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "ORG");
+				tested.preprocessData(values, null);
+				Assert.assertEquals("jbossorg", (String) XContentMapValues.extractValue("project.code", values));
+			}
+
+			// case - refresh on demand
+			prepareTestData(client, tested);
+			client.prepareDelete(tested.indexName, tested.indexType, "data1").setRefresh(true).execute().actionGet();
+			tested.refreshSnapshot();
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "ORG");
+				tested.preprocessData(values, null);
+				Assert.assertEquals("defval", (String) XContentMapValues.extractValue("project.code", values));
+			}
+
+			// case - snapshot released by close
+			tested.close();
+			Assert.assertNull(tested.snapshot);
+		} finally {
+			finalizeESClientForUnitTest();
+			file.delete();
+		}
+	}
+
+	@Test
+	public void preprocessData_cache() throws Exception {
+		try {
+			Client client = prepareESClientForUnitTest();
+
+			ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor();
+			Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
+			settings.put(ESLookupValuePreprocessor.CFG_cache_max_size, 100);
+			tested.init("Test mapper", client, settings);
+			prepareTestData(client, tested);
+
+			// case - first lookup goes to the index
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "ORG");
+				tested.preprocessData(values, null);
+				Assert.assertEquals("jbossorg", (String) XContentMapValues.extractValue("project.code", values));
+				Assert.assertEquals(0, tested.getLookupCacheStats().hitCount());
+				Assert.assertEquals(1, tested.getLookupCacheStats().missCount());
+			}
+
+			// remove data from index, so we can check cache is used
+			client.admin().indices().prepareDelete(tested.indexName).execute().actionGet();
+
+			// case - value from cache used for next document
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "ORG");
+				PreprocessChainContextImpl chainContext = new PreprocessChainContextImpl();
+				tested.preprocessData(values, chainContext);
+				Assert.assertEquals("jbossorg", (String) XContentMapValues.extractValue("project.code", values));
+				Assert.assertEquals("jboss.org", (String) XContentMapValues.extractValue("project_name", values));
+				Assert.assertFalse(chainContext.isWarning());
+				Assert.assertEquals(1, tested.getLookupCacheStats().hitCount());
+			}
+
+			// case - failed lookup is not cached
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "AAA");
+				tested.preprocessData(values, null);
+				Assert.assertEquals("defval", (String) XContentMapValues.extractValue("project.code", values));
+				Assert.assertEquals(1, tested.lookupCache.size());
+			}
+
+			// case - negative result is cached including warning, default value is evaluated for each document
+			prepareTestData(client, tested);
+			tested.resultMapping.get(0).put(ESLookupValuePreprocessor.CFG_value_default, "unknown {field}");
+			tested.init("Test mapper", client, settings);
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "AAA");
+				values.put("field", "f1");
+				tested.preprocessData(values, null);
+				Assert.assertEquals("unknown f1", (String) XContentMapValues.extractValue("project.code", values));
+				Assert.assertEquals(1, tested.lookupCache.size());
+
+				values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "AAA");
+				values.put("field", "f2");
+				PreprocessChainContextImpl chainContext = new PreprocessChainContextImpl();
+				tested.preprocessData(values, chainContext);
+				Assert.assertEquals("unknown f2", (String) XContentMapValues.extractValue("project.code", values));
+				Assert.assertEquals(1, chainContext.getWarnings().size());
+				Assert.assertEquals(1, tested.getLookupCacheStats().hitCount());
+			}
+
+			// case - negative result is not cached if disabled
+			tested.invalidateLookupCache();
+			tested.cacheNegative = false;
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "AAA");
+				tested.preprocessData(values, null);
+				Assert.assertEquals(0, tested.lookupCache.size());
+			}
+		} finally {
+			finalizeESClientForUnitTest();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void preprocessBatch() throws Exception {
+		try {
+			Client client = prepareESClientForUnitTest();
+
+			final int[] counters = new int[2];
+			ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor() {
+				@Override
+				protected LookupResult searchValue(Object sourceValue, PreprocessChainContext chainContext) {
+					counters[0]++;
+					return super.searchValue(sourceValue, chainContext);
+				}
+
+				@Override
+				protected void searchValues(Collection<Object> sourceValues, Map<Object, LookupResult> results) {
+					counters[1]++;
+					super.searchValues(sourceValues, results);
+				}
+			};
+			tested.init("Test mapper", client,
+					TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json"));
+			prepareTestData(client, tested);
+
+			Assert.assertNull(tested.preprocessBatch(null, null));
+
+			List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+			String[] sourceValues = new String[] { "ORG", "ISPN", "AAA", "ORG" };
+			for (String sourceValue : sourceValues) {
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, sourceValue);
+				batch.add(values);
+			}
+			List<Object> obj = new ArrayList<Object>();
+			obj.add("ORGA");
+			obj.add("ES2");
+			Map<String, Object> values = new HashMap<String, Object>();
+			StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, obj);
+			batch.add(values);
+			List<PreprocessChainContextImpl> contexts = new ArrayList<PreprocessChainContextImpl>();
+			for (int i = 0; i < batch.size(); i++) {
+				contexts.add(new PreprocessChainContextImpl());
+			}
+
+			List<Map<String, Object>> ret = tested.preprocessBatch(batch, contexts);
+			Assert.assertEquals(batch.size(), ret.size());
+			Assert.assertEquals("jbossorg", (String) XContentMapValues.extractValue("project.code", ret.get(0)));
+			Assert.assertEquals("jboss.org", (String) XContentMapValues.extractValue("project_name", ret.get(0)));
+			Assert.assertFalse(contexts.get(0).isWarning());
+			Assert.assertEquals("infinispan", (String) XContentMapValues.extractValue("project.code", ret.get(1)));
+			Assert.assertEquals("defval", (String) XContentMapValues.extractValue("project.code", ret.get(2)));
+			Assert.assertEquals(1, contexts.get(2).getWarnings().size());
+			Assert.assertEquals("jbossorg", (String) XContentMapValues.extractValue("project.code", ret.get(3)));
+			List<Object> l = (List<Object>) XContentMapValues.extractValue("project.code", ret.get(4));
+			Assert.assertEquals(2, l.size());
+			Assert.assertTrue(l.contains("jbossorg"));
+			Assert.assertTrue(l.contains("elasticsearch"));
+			// missing result field warning for ES2
+			Assert.assertEquals(1, contexts.get(4).getWarnings().size());
+
+			// all values searched by one multi search request
+			Assert.assertEquals(0, counters[0]);
+			Assert.assertEquals(1, counters[1]);
+		} finally {
+			finalizeESClientForUnitTest();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void preprocessBatch_sharedResultNotChanged() throws Exception {
+		try {
+			Client client = prepareESClientForUnitTest();
+
+			ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor();
+			tested.init("Test mapper", client,
+					TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases-FullSource.json"));
+			prepareTestData(client, tested);
+
+			List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+			for (String sourceValue : new String[] { "ORG", "ORG", "ISPN" }) {
+				Map<String, Object> values = new HashMap<String, Object>();
+				values.put("sf", sourceValue);
+				batch.add(values);
+			}
+			tested.preprocessBatch(batch, null);
+
+			// case - change of looked up structure in one document doesn't affect other documents of batch
+			Map<String, Object> doc0 = (Map<String, Object>) batch.get(0).get("full_doc");
+			((List<Object>) doc0.get("jbossorg_jira_project")).add("NEW");
+			doc0.put("name", "changed");
+			Map<String, Object> doc1 = (Map<String, Object>) batch.get(1).get("full_doc");
+			Assert.assertEquals("jboss.org", doc1.get("name"));
+			Assert.assertEquals(4, ((List<Object>) doc1.get("jbossorg_jira_project")).size());
+			Assert.assertEquals(5, ((List<Object>) doc0.get("jbossorg_jira_project")).size());
+		} finally {
+			finalizeESClientForUnitTest();
+		}
+	}
+
 	private void prepareTestData(Client client, ESLookupValuePreprocessor tested) {
 		// fill testing data
 		client.admin().indices().prepareCreate(tested.indexName).execute().actionGet();
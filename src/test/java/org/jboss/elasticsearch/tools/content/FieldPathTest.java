@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link FieldPath}.
+ *
+ * @author agent (agent at local)
+ */
+public class FieldPathTest {
+
+	@Test
+	public void compile() {
+		try {
+			FieldPath.compile((String) null);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			FieldPath.compile("  ");
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		Assert.assertEquals("a.b", FieldPath.compile("a.b").getPath());
+		Assert.assertEquals(FieldPath.compile("a.b"), FieldPath.compile("a.b"));
+
+		Assert.assertNull(FieldPath.compile((List<String>) null));
+		List<String> paths = new ArrayList<String>();
+		paths.add("a");
+		paths.add("");
+		paths.add("b.c");
+		FieldPath[] compiled = FieldPath.compile(paths);
+		Assert.assertEquals(3, compiled.length);
+		Assert.assertEquals("a", compiled[0].getPath());
+		Assert.assertNull(compiled[1]);
+		Assert.assertEquals("b.c", compiled[2].getPath());
+	}
+
+	@Test
+	public void getValue() {
+		Map<String, Object> level2 = new HashMap<String, Object>();
+		level2.put("c", "value c");
+		level2.put("d.e", "value d.e");
+		Map<String, Object> level1 = new HashMap<String, Object>();
+		level1.put("b", level2);
+		List<Object> list = new ArrayList<Object>();
+		list.add(level2);
+		list.add("not map");
+		list.add(level2);
+		Map<String, Object> data = new HashMap<String, Object>();
+		data.put("a", level1);
+		data.put("simple", "value simple");
+		data.put("x.y", level2);
+		data.put("list", list);
+		data.put("", level2);
+
+		Assert.assertNull(FieldPath.compile("a").getValue(null));
+
+		// compare with XContentMapValues which defines get semantics
+		String[] paths = new String[] { "simple", "unknown", "a", "a.b", "a.b.c", "a.b.c.d", "a.unknown.c", "simple.c",
+				"x.y.c", "a.b.d.e", "list.c", "list.d.e", "list.unknown", "a..b", ".a.b", "a.b.", ".", "...", "c" };
+		for (String path : paths) {
+			Assert.assertEquals(path, XContentMapValues.extractValue(path, data), FieldPath.compile(path).getValue(data));
+		}
+	}
+
+	@Test
+	public void putValue_removeValue() {
+		Map<String, Object> data = new HashMap<String, Object>();
+		FieldPath.compile("a").putValue(null, "v");
+
+		FieldPath.compile("a").putValue(data, "value a");
+		Assert.assertEquals("value a", data.get("a"));
+		FieldPath.compile("b.c.d").putValue(data, "value d");
+		Assert.assertEquals("value d", XContentMapValues.extractValue("b.c.d", data));
+		FieldPath.compile("b.c.e.").putValue(data, "value e");
+		Assert.assertEquals("value e", XContentMapValues.extractValue("b.c.e", data));
+		try {
+			FieldPath.compile("a.b").putValue(data, "v");
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			Assert.assertEquals("Cant put value for field 'a.b' because some element in the path is not Map",
+					e.getMessage());
+		}
+
+		Assert.assertNull(FieldPath.compile("a").removeValue(null));
+		Assert.assertNull(FieldPath.compile("x.y").removeValue(data));
+		Assert.assertEquals("value d", FieldPath.compile("b.c.d").removeValue(data));
+		Assert.assertNull(XContentMapValues.extractValue("b.c.d", data));
+		Assert.assertEquals("value a", FieldPath.compile("a").removeValue(data));
+		Assert.assertFalse(data.containsKey("a"));
+		data.put("a", "value a");
+		try {
+			FieldPath.compile("a.b").removeValue(data);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			Assert.assertEquals("Cant remove value for field 'a.b' because some element in the path is not Map",
+					e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link FieldPathTrie}.
+ *
+ * @author agent (agent at local)
+ */
+public class FieldPathTrieTest {
+
+	@Test
+	public void compile() {
+		Assert.assertNull(FieldPathTrie.compile(null));
+		try {
+			FieldPathTrie.compile(Arrays.asList("a", null));
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			FieldPathTrie.compile(Arrays.asList("a", " "));
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+
+		List<String> paths = new ArrayList<String>(Arrays.asList("a.b", "a.c"));
+		FieldPathTrie trie = FieldPathTrie.compile(paths);
+		Assert.assertEquals(paths, trie.getPaths());
+	}
+
+	@Test
+	public void removeValues() {
+		FieldPathTrie trie = FieldPathTrie.compile(Arrays.asList("nonexisting", "simple", "a.b.c", "a.b.d", "a.e",
+				"a.nonexisting.x", "x..y", "removed.x", "removed", "removed.y", "."));
+
+		// case - no NPE
+		trie.removeValues(null);
+
+		Map<String, Object> data = createData();
+		trie.removeValues(data);
+		Assert.assertEquals("{keep=k, a={b={keep=k}, keep=k}, x={={}, keep=k}, fields={f1={raw=r, keep=k}, f2=v}}",
+				data.toString());
+
+		// case - same result as removing paths one by one
+		Map<String, Object> expected = createData();
+		for (String path : trie.getPaths()) {
+			FieldPath.compile(path).removeValue(expected);
+		}
+		Assert.assertEquals(expected, data);
+
+		// case - element in the path is not Map
+		try {
+			FieldPathTrie.compile(Arrays.asList("keep.x")).removeValues(createData());
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			Assert.assertEquals("Cant remove value for field 'keep.x' because some element in the path is not Map",
+					e.getMessage());
+		}
+	}
+
+	@Test
+	public void removeValues_wildcard() {
+		Map<String, Object> data = createData();
+		FieldPathTrie.compile(Arrays.asList("fields.*.raw", "*.keep")).removeValues(data);
+		Assert.assertEquals(
+				"{keep=k, simple=s, a={b={c=c, d=d, keep=k}, e=e}, x={={y=v}}, removed={x=x}, fields={f1={keep=k}, f2=v}}",
+				data.toString());
+
+		data = createData();
+		FieldPathTrie.compile(Arrays.asList("fields.*", "a.*.c")).removeValues(data);
+		Assert.assertEquals("{}", data.get("fields").toString());
+		Assert.assertEquals("{d=d, keep=k}", ((Map<?, ?>) data.get("a")).get("b").toString());
+
+		data = createData();
+		FieldPathTrie.compile(Arrays.asList("*")).removeValues(data);
+		Assert.assertTrue(data.isEmpty());
+	}
+
+	private static Map<String, Object> createData() {
+		Map<String, Object> data = new LinkedHashMap<String, Object>();
+		data.put("keep", "k");
+		data.put("simple", "s");
+		Map<String, Object> a = new LinkedHashMap<String, Object>();
+		Map<String, Object> b = new LinkedHashMap<String, Object>();
+		b.put("c", "c");
+		b.put("d", "d");
+		b.put("keep", "k");
+		a.put("b", b);
+		a.put("e", "e");
+		a.put("keep", "k");
+		data.put("a", a);
+		Map<String, Object> x = new LinkedHashMap<String, Object>();
+		Map<String, Object> empty = new LinkedHashMap<String, Object>();
+		empty.put("y", "v");
+		x.put("", empty);
+		x.put("keep", "k");
+		data.put("x", x);
+		Map<String, Object> removed = new LinkedHashMap<String, Object>();
+		removed.put("x", "x");
+		data.put("removed", removed);
+		Map<String, Object> fields = new LinkedHashMap<String, Object>();
+		Map<String, Object> f1 = new LinkedHashMap<String, Object>();
+		f1.put("raw", "r");
+		f1.put("keep", "k");
+		fields.put("f1", f1);
+		fields.put("f2", "v");
+		data.put("fields", fields);
+		return data;
+	}
+
+}
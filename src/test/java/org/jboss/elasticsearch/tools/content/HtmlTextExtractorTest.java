@@ -0,0 +1,90 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link HtmlTextExtractor}.
+ *
+ * @author agent (agent at local)
+ */
+public class HtmlTextExtractorTest {
+
+	@Test
+	public void extractText() {
+		Assert.assertNull(HtmlTextExtractor.extractText(null));
+		Assert.assertEquals("", HtmlTextExtractor.extractText(""));
+		Assert.assertEquals("aa bb cdgh < text in div & then invalid paragraph test pre &",
+				HtmlTextExtractor.extractText("<b>aa<b>bb<br>cdgh &lt;<div>text in div</div>\n &amp; then\n invalid <p> paragraph <pre>test\npre &amp;</pre>"));
+
+		// text split by tags not allowed by relaxed whitelist and comments is joined
+		Assert.assertEquals("abc d", HtmlTextExtractor.extractText("a<span>b</span><!-- comment -->c<p>d"));
+		// script and style content is skipped
+		Assert.assertEquals("a b", HtmlTextExtractor.extractText("a<script>var x = '<p>';</script><style>p {}</style><br>b"));
+		// end tag without start tag doesn't split text
+		Assert.assertEquals("ab c", HtmlTextExtractor.extractText("a</b>b</p>c"));
+		// text in table cells
+		Assert.assertEquals("h1 h2 c1 c2", HtmlTextExtractor.extractText(
+				"<table>\n <thead><tr><th>h1</th><th>h2</th></tr></thead>\n <tbody><tr><td>c1<td>c2</tr></tbody>\n</table>"));
+
+		// unsupported constructs
+		Assert.assertNull(HtmlTextExtractor.extractText("<table>text directly in table<tr><td>a</td></tr></table>"));
+		Assert.assertNull(HtmlTextExtractor.extractText("<table><div>a</div></table>"));
+		Assert.assertNull(HtmlTextExtractor.extractText("<textarea>a</textarea>"));
+	}
+
+	@Test
+	public void extractText_sameAsJsoup() {
+		String[] samples = new String[] { "  text  ", "a &nbsp; b&nbsp;&nbsp;c", "<p>a</p>\n\n<p>b &amp c &#x41;&#66;</p>",
+				"a < b > c", "<", "a<", "a</", "a</>b", "a</ b>c", "a<!-->b", "a<!--->b", "a<!-- unclosed", "a<!DOCTYPE html>b",
+				"a<?xml x?>b", "<div title=\"a > b\">c</div>", "<div title='x'>c<span title=\"<p>\">d</span></div>",
+				"<a href=x>link</a>text", "<img src=\"x\">after", "a<image>b", "a<br/>b", "a</br>b", "a<unknown/>b",
+				"<ul><li>one<li>two</ul>", "<dl><dt>t<dd>d</dl>", "<b>bold<i>both</b>italic</i>", "<p>a<div>b</div>c</p>d",
+				"<table><tr><td>a</td></tr></table>after", "<td>a</td>b", "<html><head></head><body>body</body></html>",
+				"a<script>unclosed", "a<SCRIPT type=x>b</SCRIPT >c", "<h1>H</h1><h2>I</h2>", "x  y", "a\tb\r\nc\fd",
+				"<pre>\n  pre  \n</pre>", "a<tag attr=\"unclosed>b", "<b>a</b>&lt;b&gt;", "&amp;amp; &unknown; &lt &gt",
+				"<table><caption>cap</caption><colgroup><col></colgroup><tr><td>a</table>" };
+		for (String sample : samples) {
+			assertSameAsJsoup(sample);
+		}
+	}
+
+	@Test
+	public void extractText_sameAsJsoup_random() {
+		String[] tokens = new String[] { "text", " ", "\n", "&amp;", "&lt;", "&nbsp;", " ", "x", "<b>", "</b>", "<i>",
+				"</i>", "<span>", "</span>", "<font color=red>", "</font>", "<p>", "</p>", "<div>", "</div>", "<br>", "<br/>",
+				"<img src=a>", "<a href=\"b\">", "</a>", "<ul>", "<li>", "</li>", "</ul>", "<!-- c -->", "<h3>", "</h3>",
+				"<pre>", "</pre>", "<code>", "</code>", "<section>", "</section>", "<script>s</script>", "<", ">",
+				"<table><tr><td>", "</td><td>", "</td></tr></table>", "<blockquote>", "</blockquote>", "<strong>",
+				"</strong>", "<em>", "</em>", "<small>", "</small>" };
+		Random random = new Random(7);
+		int supported = 0;
+		for (int i = 0; i < 3000; i++) {
+			StringBuilder sb = new StringBuilder();
+			int n = 1 + random.nextInt(30);
+			for (int k = 0; k < n; k++) {
+				sb.append(tokens[random.nextInt(tokens.length)]);
+			}
+			if (assertSameAsJsoup(sb.toString()))
+				supported++;
+		}
+		// random tokens often misnest formatting elements, which is not supported, most of inputs must be supported still
+		Assert.assertTrue("supported " + supported, supported > 1800);
+	}
+
+	private static boolean assertSameAsJsoup(String html) {
+		StripHtmlPreprocessor jsoup = new StripHtmlPreprocessor();
+		jsoup.streaming = false;
+		StripHtmlPreprocessor streaming = new StripHtmlPreprocessor();
+		Assert.assertEquals("Different text for HTML: " + html, jsoup.stripHtml(html), streaming.stripHtml(html));
+		return HtmlTextExtractor.extractText(html) != null;
+	}
+
+}
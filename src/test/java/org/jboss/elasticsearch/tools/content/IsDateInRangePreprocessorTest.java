@@ -11,6 +11,8 @@ import static org.jboss.elasticsearch.tools.content.IsDateInRangePreprocessor.CF
 import static org.jboss.elasticsearch.tools.content.IsDateInRangePreprocessor.CFG_RESULT_FIELD;
 import static org.jboss.elasticsearch.tools.content.IsDateInRangePreprocessor.CFG_RIGHT_DATE;
 
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -18,6 +20,7 @@ import java.util.Map;
 
 import junit.framework.Assert;
 
+import org.elasticsearch.common.joda.time.format.DateTimeFormatter;
 import org.elasticsearch.common.settings.SettingsException;
 import org.jboss.elasticsearch.tools.content.testtools.TestUtils;
 import org.junit.Test;
@@ -192,4 +195,115 @@ public class IsDateInRangePreprocessorTest {
 		}
 	}
 	
+	@Test
+	public void init_invalidDateFormat() {
+		IsDateInRangePreprocessor tested = new IsDateInRangePreprocessor();
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(CFG_CHECKED_DATE, "tested_date");
+		settings.put(CFG_RESULT_FIELD, "target");
+		settings.put(CFG_LEFT_DATE, "left_date");
+		settings.put(IsDateInRangePreprocessor.CFG_CHECKED_DATE_FORMAT, "yyyy-MM-dd bb");
+		try {
+			tested.init("Test mapper", null, settings);
+			Assert.fail("SettingsException must be thrown");
+		} catch (SettingsException e) {
+			Assert.assertTrue(e.getMessage().startsWith(
+					"Invalid 'settings/checked_date_format' configuration value for 'Test mapper' preprocessor: "));
+		}
+
+		// case - unsupported pattern letter
+		settings.put(IsDateInRangePreprocessor.CFG_CHECKED_DATE_FORMAT, "yyyy-MM-dd HH:mm z");
+		try {
+			tested.init("Test mapper", null, settings);
+			Assert.fail("SettingsException must be thrown");
+		} catch (SettingsException e) {
+			Assert.assertEquals("Invalid 'settings/checked_date_format' configuration value for 'Test mapper' preprocessor: "
+					+ "Pattern letter 'z' is not supported", e.getMessage());
+		}
+	}
+
+	@Test
+	public void createDateFormatter() {
+		// default format with ISO 8601 time zone
+		DateTimeFormatter f = IsDateInRangePreprocessor.createDateFormatter(CFG_DEFAULT_DATE_FORMAT);
+		Assert.assertEquals(1388534400000L, f.parseMillis("2014-01-01T00:00:00.000Z"));
+		Assert.assertEquals(1388534400000L, f.parseMillis("2014-01-01T01:00:00.000+0100"));
+		Assert.assertEquals(1388534400000L, f.parseMillis("2014-01-01T01:00:00.000+01:00"));
+		Assert.assertEquals(1388534400000L,
+				IsDateInRangePreprocessor.createDateFormatter("yyyy-MM-dd'T'HH:mm:ssXXX").parseMillis("2014-01-01T01:00:00+01:00"));
+
+		// quoted text is not translated
+		Assert.assertEquals(1388534400000L,
+				IsDateInRangePreprocessor.createDateFormatter("yyyy-MM-dd'X'HHX").parseMillis("2014-01-01X00Z"));
+
+		// day number of week
+		Assert.assertEquals(3,
+				IsDateInRangePreprocessor.createDateFormatter("u yyyy-MM-dd").parseDateTime("3 2014-01-01").getDayOfWeek());
+
+		// unsupported pattern letters
+		for (String format : new String[] { "yyyy-MM-dd HH:mm z", "yyyy-LL-dd", "yyyy-MM F", "yyyy-MM W", "yyyy-MM-dd e" }) {
+			try {
+				IsDateInRangePreprocessor.createDateFormatter(format);
+				Assert.fail("IllegalArgumentException must be thrown for " + format);
+			} catch (IllegalArgumentException e) {
+				// OK
+			}
+		}
+		// but they can be quoted
+		IsDateInRangePreprocessor.createDateFormatter("yyyy-MM-dd 'zone'");
+	}
+
+	@Test
+	public void parseDate() throws ParseException {
+		DateTimeFormatter f = IsDateInRangePreprocessor.createDateFormatter(CFG_DEFAULT_DATE_FORMAT);
+		Assert.assertEquals(1388534400000L, IsDateInRangePreprocessor.parseDate(f, "2014-01-01T00:00:00.000Z").getTime());
+
+		// rest of value after matching prefix is ignored as with SimpleDateFormat
+		Assert.assertEquals(1388534400000L, IsDateInRangePreprocessor.parseDate(f, "2014-01-01T00:00:00.000Zaaa")
+				.getTime());
+
+		// fields missing in format are taken from 1970-01-01 in default time zone
+		Assert.assertEquals(new SimpleDateFormat("yyyy-MM-dd").parse("2014-01-01"), IsDateInRangePreprocessor.parseDate(
+				IsDateInRangePreprocessor.createDateFormatter("yyyy-MM-dd"), "2014-01-01"));
+		Assert.assertEquals(new SimpleDateFormat("HH:mm").parse("10:20"), IsDateInRangePreprocessor.parseDate(
+				IsDateInRangePreprocessor.createDateFormatter("HH:mm"), "10:20"));
+
+		try {
+			IsDateInRangePreprocessor.parseDate(f, "2014-01-01");
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void preprocessData_defaultFormat() {
+		IsDateInRangePreprocessor tested = new IsDateInRangePreprocessor();
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(CFG_CHECKED_DATE, "tested_date");
+		settings.put(CFG_RESULT_FIELD, "result");
+		settings.put(CFG_LEFT_DATE, "start_date");
+		settings.put(CFG_RIGHT_DATE, "end_date");
+		tested.init("Test mapper", null, settings);
+
+		Map<String, Object> values = new HashMap<String, Object>();
+		values.put("start_date", "2014-01-01T00:00:00.000Z");
+		values.put("end_date", "2014-01-02T00:00:00.000+01:00");
+		values.put("tested_date", "2014-01-01T23:30:00.000Z");
+		tested.preprocessData(values, null);
+		Assert.assertEquals(Boolean.FALSE, values.get("result"));
+
+		values.put("tested_date", "2014-01-01T22:30:00.000Z");
+		tested.preprocessData(values, null);
+		Assert.assertEquals(Boolean.TRUE, values.get("result"));
+
+		// case - not parseable date produces warning
+		values.remove("result");
+		values.put("tested_date", "2014-01-01");
+		PreprocessChainContextImpl context = new PreprocessChainContextImpl();
+		tested.preprocessData(values, context);
+		Assert.assertNull(values.get("result"));
+		Assert.assertEquals(1, context.getWarnings().size());
+	}
+
 }
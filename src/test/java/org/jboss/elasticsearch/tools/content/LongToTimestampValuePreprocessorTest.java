@@ -107,10 +107,7 @@ public class LongToTimestampValuePreprocessorTest {
 	@Test
 	public void preprocessData_nobases() {
 
-		LongToTimestampValuePreprocessor tested = new LongToTimestampValuePreprocessor();
-		tested.name = "mypreproc";
-		tested.fieldSource = "source";
-		tested.fieldTarget = "target";
+		LongToTimestampValuePreprocessor tested = createTested("mypreproc", "source", "target", null);
 
 		// case - not NPE
 		tested.preprocessData(null, null);
@@ -180,7 +177,7 @@ public class LongToTimestampValuePreprocessorTest {
 
 		// case - Long, rewrite source
 		{
-			tested.fieldTarget = "source";
+			tested = createTested("mypreproc", "source", "source", null);
 			Map<String, Object> values = new HashMap<String, Object>();
 			values.put(tested.fieldSource, new Long(510));
 			tested.preprocessData(values, null);
@@ -191,11 +188,7 @@ public class LongToTimestampValuePreprocessorTest {
 	@Test
 	public void preprocessData_bases() {
 
-		LongToTimestampValuePreprocessor tested = new LongToTimestampValuePreprocessor();
-		tested.name = "Test";
-		tested.fieldSource = "source";
-		tested.fieldTarget = "target";
-		tested.sourceBases = Arrays.asList(new String[] { "author", "editor", "comments" });
+		LongToTimestampValuePreprocessor tested = createTested("Test", "source", "target", Arrays.asList(new String[] { "author", "editor", "comments" }));
 
 		// case - test it
 		{
@@ -236,4 +229,15 @@ public class LongToTimestampValuePreprocessorTest {
 		Assert.assertEquals(target, data.get("target"));
 	}
 
+	private static LongToTimestampValuePreprocessor createTested(String name, String fieldSource, String fieldTarget,
+			List<String> sourceBases) {
+		LongToTimestampValuePreprocessor tested = new LongToTimestampValuePreprocessor();
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(LongToTimestampValuePreprocessor.CFG_SOURCE_FIELD, fieldSource);
+		settings.put(LongToTimestampValuePreprocessor.CFG_TARGET_FIELD, fieldTarget);
+		settings.put(LongToTimestampValuePreprocessor.CFG_source_bases, sourceBases);
+		tested.init(name, null, settings);
+		return tested;
+	}
+
 }
@@ -0,0 +1,230 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elasticsearch.common.settings.SettingsException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ParallelPreprocessorChain}.
+ *
+ * @author agent (agent at local)
+ */
+public class ParallelPreprocessorChainTest {
+
+	/**
+	 * Preprocessor which is not thread safe - it fails if used by more threads at the same time.
+	 */
+	public static class NotThreadSafePreprocessor extends StructuredContentPreprocessorBase implements Closeable {
+
+		static final AtomicInteger instances = new AtomicInteger();
+		static final AtomicInteger closedInstances = new AtomicInteger();
+
+		private final AtomicInteger activeThreads = new AtomicInteger();
+
+		public NotThreadSafePreprocessor() {
+			instances.incrementAndGet();
+		}
+
+		@Override
+		public void init(Map<String, Object> settings) throws SettingsException {
+		}
+
+		@Override
+		public Map<String, Object> preprocessData(Map<String, Object> data, PreprocessChainContext chainContext) {
+			if (activeThreads.incrementAndGet() > 1)
+				throw new IllegalStateException("Used by more threads");
+			try {
+				Thread.yield();
+				data.put("nts", "processed");
+				return data;
+			} finally {
+				activeThreads.decrementAndGet();
+			}
+		}
+
+		@Override
+		public void close() {
+			closedInstances.incrementAndGet();
+		}
+	}
+
+	protected static List<Map<String, Object>> createBatch(int size) {
+		List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+		for (int i = 0; i < size; i++) {
+			batch.add(PreprocessorChainTest.createDocument(i % 10 == 0 ? new Integer(i) : "Status " + i));
+		}
+		return batch;
+	}
+
+	@Test
+	public void constructor() {
+		try {
+			new ParallelPreprocessorChain(null);
+			Assert.fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new ParallelPreprocessorChain(new PreprocessorChain(null), 0);
+			Assert.fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new ParallelPreprocessorChain(new PreprocessorChain(null), null, 2);
+			Assert.fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void preprocessBatch() throws InterruptedException {
+		ParallelPreprocessorChain tested = new ParallelPreprocessorChain(PreprocessorChainTest.createTestedChain(null), 4);
+		try {
+			Assert.assertNull(tested.preprocessBatch(null));
+			Assert.assertTrue(tested.preprocessBatch(new ArrayList<Map<String, Object>>()).isEmpty());
+
+			// case - small batch processed in one slice
+			List<Map<String, Object>> batch = createBatch(3);
+			List<Map<String, Object>> ret = tested.preprocessBatch(batch);
+			Assert.assertEquals(3, ret.size());
+			Assert.assertEquals(new Integer(0), ret.get(0).get("status"));
+			Assert.assertEquals("Stat", ret.get(1).get("status"));
+
+			// case - big batch with contexts, order preserved
+			batch = new LinkedList<Map<String, Object>>(createBatch(1000));
+			List<PreprocessChainContextImpl> contexts = new ArrayList<PreprocessChainContextImpl>();
+			for (int i = 0; i < batch.size(); i++) {
+				contexts.add(new PreprocessChainContextImpl());
+			}
+			ret = tested.preprocessBatch(batch, contexts);
+			Assert.assertEquals(1000, ret.size());
+			for (int i = 0; i < 1000; i++) {
+				Map<String, Object> doc = ret.get(i);
+				Assert.assertSame(batch.get(i), doc);
+				Assert.assertEquals("Joe Doe...", doc.get("short_name"));
+				if (i % 10 == 0) {
+					Assert.assertEquals(new Integer(i), doc.get("status"));
+					Assert.assertEquals(1, contexts.get(i).getWarnings().size());
+				} else {
+					Assert.assertEquals("Stat", doc.get("status"));
+					Assert.assertFalse(contexts.get(i).isWarning());
+				}
+			}
+		} finally {
+			tested.close();
+		}
+	}
+
+	@Test
+	public void preprocessBatch_notThreadSafePreprocessor() throws InterruptedException {
+		List<Map<String, Object>> configs = new ArrayList<Map<String, Object>>();
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put(StructuredContentPreprocessorFactory.CFG_NAME, "not thread safe");
+		config.put(StructuredContentPreprocessorFactory.CFG_CLASS, NotThreadSafePreprocessor.class.getName());
+		configs.add(config);
+
+		// case - chain created from configuration so preprocessor instance is created for each worker
+		PreprocessorChain chain = StructuredContentPreprocessorFactory.createPreprocessorChain(configs, null);
+		Assert.assertFalse(chain.isThreadSafe());
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			ParallelPreprocessorChain tested = new ParallelPreprocessorChain(chain, executor, 4);
+			int instancesBefore = NotThreadSafePreprocessor.instances.get();
+			for (int run = 0; run < 20; run++) {
+				for (Map<String, Object> doc : tested.preprocessBatch(createBatch(500))) {
+					Assert.assertEquals("processed", doc.get("nts"));
+				}
+			}
+			int created = NotThreadSafePreprocessor.instances.get() - instancesBefore;
+			Assert.assertTrue(created <= 4);
+			// case - close closes preprocessors created for workers but not the one of passed chain
+			int closedBefore = NotThreadSafePreprocessor.closedInstances.get();
+			tested.close();
+			Assert.assertFalse(executor.isShutdown());
+			Assert.assertEquals(created, NotThreadSafePreprocessor.closedInstances.get() - closedBefore);
+			chain.close();
+			Assert.assertEquals(created + 1, NotThreadSafePreprocessor.closedInstances.get() - closedBefore);
+
+			// case - chain created from instances so access to preprocessor is synchronized
+			List<StructuredContentPreprocessor> preprocs = new ArrayList<StructuredContentPreprocessor>();
+			preprocs.add(new NotThreadSafePreprocessor());
+			tested = new ParallelPreprocessorChain(new PreprocessorChain(preprocs), executor, 4);
+			for (int run = 0; run < 20; run++) {
+				for (Map<String, Object> doc : tested.preprocessBatch(createBatch(500))) {
+					Assert.assertEquals("processed", doc.get("nts"));
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void preprocessBatch_exception() throws InterruptedException {
+		List<StructuredContentPreprocessor> preprocs = new ArrayList<StructuredContentPreprocessor>();
+		RequiredValidatorPreprocessor validator = new RequiredValidatorPreprocessor();
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(RequiredValidatorPreprocessor.CFG_FIELD, "required");
+		validator.init("validator", null, settings);
+		preprocs.add(validator);
+		ParallelPreprocessorChain tested = new ParallelPreprocessorChain(new PreprocessorChain(preprocs), 4);
+		try {
+			List<Map<String, Object>> batch = createBatch(100);
+			for (Map<String, Object> doc : batch) {
+				doc.put("required", "value");
+			}
+			batch.get(90).remove("required");
+			tested.preprocessBatch(batch);
+			Assert.fail("InvalidDataException expected");
+		} catch (InvalidDataException e) {
+			// OK
+		} finally {
+			tested.close();
+		}
+	}
+
+	@Test
+	public void isThreadSafe() {
+		Assert.assertTrue(PreprocessorChain.isThreadSafe(new TrimStringValuePreprocessor()));
+		Assert.assertTrue(PreprocessorChain.isThreadSafe(new AddValuePreprocessor()));
+		Assert.assertFalse(PreprocessorChain.isThreadSafe(new NotThreadSafePreprocessor()));
+		PreprocessorChain chain = PreprocessorChainTest.createTestedChain(null);
+		Assert.assertTrue(chain.isThreadSafe());
+		Assert.assertSame(chain, chain.createWorkerCopy());
+	}
+
+	@Test
+	public void createWorkerCopy_synchronizedInit() {
+		StructuredContentPreprocessorMock preproc = new StructuredContentPreprocessorMock();
+		List<StructuredContentPreprocessor> list = new ArrayList<StructuredContentPreprocessor>();
+		list.add(preproc);
+		PreprocessorChain copy = new PreprocessorChain(list).createWorkerCopy();
+		StructuredContentPreprocessor wrapper = copy.getPreprocessors().get(0);
+		Assert.assertNotSame(preproc, wrapper);
+		Assert.assertTrue(PreprocessorChain.isThreadSafe(wrapper));
+
+		// case - init is delegated to wrapped preprocessor
+		Map<String, Object> settings = new HashMap<String, Object>();
+		wrapper.init("wrapped", null, settings);
+		Assert.assertEquals("wrapped", wrapper.getName());
+		Assert.assertSame(settings, preproc.settings);
+	}
+
+}
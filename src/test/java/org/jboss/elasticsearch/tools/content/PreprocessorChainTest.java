@@ -0,0 +1,424 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.client.Client;
+import org.jboss.elasticsearch.tools.content.testtools.TestUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit test for {@link PreprocessorChain}.
+ *
+ * @author agent (agent at local)
+ */
+public class PreprocessorChainTest {
+
+	@SuppressWarnings("unchecked")
+	protected static PreprocessorChain createTestedChain(Client client) {
+		List<Map<String, Object>> preprocessorConfig = (List<Map<String, Object>>) (TestUtils
+				.loadJSONFromClasspathFile("/PreprocessorChain.json")).get("preprocessors");
+		return StructuredContentPreprocessorFactory.createPreprocessorChain(preprocessorConfig, client);
+	}
+
+	protected static Map<String, Object> createDocument(Object status) {
+		Map<String, Object> data = new HashMap<String, Object>();
+		data.put("status", status);
+		return data;
+	}
+
+	@Test
+	public void constructor() {
+		PreprocessorChain tested = new PreprocessorChain(null);
+		Assert.assertEquals(0, tested.size());
+		Assert.assertNull(tested.getPreprocessorConfigs());
+
+		List<StructuredContentPreprocessor> preprocs = new ArrayList<StructuredContentPreprocessor>();
+		preprocs.add(new StructuredContentPreprocessorMock());
+		tested = new PreprocessorChain(preprocs);
+		Assert.assertEquals(1, tested.size());
+		Assert.assertEquals(preprocs, tested.getPreprocessors());
+
+		preprocs.add(null);
+		try {
+			new PreprocessorChain(preprocs);
+			Assert.fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void close() {
+		List<StructuredContentPreprocessor> preprocs = new ArrayList<StructuredContentPreprocessor>();
+		preprocs.add(new StructuredContentPreprocessorMock());
+		preprocs.add(new ParallelPreprocessorChainTest.NotThreadSafePreprocessor());
+		PreprocessorChain tested = new PreprocessorChain(preprocs);
+		int closedBefore = ParallelPreprocessorChainTest.NotThreadSafePreprocessor.closedInstances.get();
+		tested.close();
+		Assert.assertEquals(1, ParallelPreprocessorChainTest.NotThreadSafePreprocessor.closedInstances.get() - closedBefore);
+	}
+
+	@Test
+	public void createPreprocessorChain() {
+		Client clientMock = Mockito.mock(Client.class);
+		PreprocessorChain tested = createTestedChain(clientMock);
+		Assert.assertEquals(3, tested.size());
+		Assert.assertEquals("Value filler", tested.getPreprocessors().get(0).getName());
+		Assert.assertEquals("Name trimmer", tested.getPreprocessors().get(1).getName());
+		Assert.assertEquals("Status trimmer", tested.getPreprocessors().get(2).getName());
+		Assert.assertEquals(3, tested.getPreprocessorConfigs().size());
+		Assert.assertEquals(clientMock, tested.client);
+
+		tested = StructuredContentPreprocessorFactory.createPreprocessorChain(null, clientMock);
+		Assert.assertEquals(0, tested.size());
+	}
+
+	@Test
+	public void preprocessData() {
+		PreprocessorChain tested = createTestedChain(null);
+
+		Assert.assertNull(tested.preprocessData(null, null));
+
+		PreprocessChainContextImpl context = new PreprocessChainContextImpl();
+		Map<String, Object> data = createDocument("Opened");
+		Assert.assertSame(data, tested.preprocessData(data, context));
+		Assert.assertEquals("Joe Doe the Great", data.get("full_name"));
+		Assert.assertEquals("Joe Doe...", data.get("short_name"));
+		Assert.assertEquals("Open", data.get("status"));
+		Assert.assertFalse(context.isWarning());
+
+		// case - warnings written into context
+		data = createDocument(new Integer(10));
+		tested.preprocessData(data, context);
+		Assert.assertEquals(1, context.getWarnings().size());
+		Assert.assertEquals("Status trimmer", context.getWarnings().get(0).getPreprocessorName());
+	}
+
+	@Test
+	public void preprocessBatch() {
+		PreprocessorChain tested = createTestedChain(null);
+
+		Assert.assertNull(tested.preprocessBatch(null));
+		Assert.assertTrue(tested.preprocessBatch(new ArrayList<Map<String, Object>>()).isEmpty());
+
+		// case - no contexts
+		List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+		batch.add(createDocument("Opened"));
+		batch.add(createDocument(new Integer(10)));
+		batch.add(createDocument("Closed"));
+		List<Map<String, Object>> ret = tested.preprocessBatch(batch);
+		Assert.assertEquals(3, ret.size());
+		Assert.assertSame(batch.get(0), ret.get(0));
+		Assert.assertEquals("Open", ret.get(0).get("status"));
+		Assert.assertEquals(new Integer(10), ret.get(1).get("status"));
+		Assert.assertEquals("Clos", ret.get(2).get("status"));
+		Assert.assertEquals("Joe Doe...", ret.get(2).get("short_name"));
+
+		// case - contexts
+		batch.clear();
+		batch.add(createDocument("Opened"));
+		batch.add(createDocument(new Integer(10)));
+		List<PreprocessChainContextImpl> contexts = new ArrayList<PreprocessChainContextImpl>();
+		contexts.add(new PreprocessChainContextImpl());
+		contexts.add(new PreprocessChainContextImpl());
+		ret = tested.preprocessBatch(batch, contexts);
+		Assert.assertEquals(2, ret.size());
+		Assert.assertFalse(contexts.get(0).isWarning());
+		Assert.assertEquals(1, contexts.get(1).getWarnings().size());
+
+		// case - contexts size mismatch
+		contexts.remove(0);
+		try {
+			tested.preprocessBatch(batch, contexts);
+			Assert.fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void preprocessBatch_batchPreprocessor() {
+		final List<String> calls = new ArrayList<String>();
+		List<StructuredContentPreprocessor> preprocessors = new ArrayList<StructuredContentPreprocessor>();
+		preprocessors.add(new RecordingPreprocessor("p1", calls));
+		preprocessors.add(new RecordingBatchPreprocessor("p2", calls));
+		preprocessors.add(new RecordingPreprocessor("p3", calls));
+		PreprocessorChain tested = new PreprocessorChain(preprocessors);
+
+		List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+		batch.add(createDocument("1"));
+		batch.add(createDocument("2"));
+		List<PreprocessChainContextImpl> contexts = new ArrayList<PreprocessChainContextImpl>();
+		contexts.add(new PreprocessChainContextImpl());
+		contexts.add(new PreprocessChainContextImpl());
+
+		List<Map<String, Object>> ret = tested.preprocessBatch(batch, contexts);
+		Assert.assertEquals(batch, ret);
+
+		// batch preprocessor is called once all documents are processed by previous preprocessors
+		Assert.assertEquals("[p1:1, p1:2, p2:batch, p3:1, p3:2]", calls.toString());
+		Assert.assertEquals(3, contexts.get(0).getWarnings().size());
+
+		// case - batch preprocessor is last in the chain
+		calls.clear();
+		preprocessors.remove(2);
+		tested = new PreprocessorChain(preprocessors);
+		tested.preprocessBatch(batch);
+		Assert.assertEquals("[p1:1, p1:2, p2:batch]", calls.toString());
+	}
+
+	protected static class RecordingPreprocessor extends StructuredContentPreprocessorMock {
+
+		protected final List<String> calls;
+
+		protected RecordingPreprocessor(String name, List<String> calls) {
+			this.name = name;
+			this.calls = calls;
+		}
+
+		@Override
+		public Map<String, Object> preprocessData(Map<String, Object> data, PreprocessChainContext chainContext) {
+			calls.add(name + ":" + data.get("status"));
+			addDataWarning(chainContext, name);
+			return data;
+		}
+	}
+
+	protected static class RecordingBatchPreprocessor extends RecordingPreprocessor implements
+			StructuredContentBatchPreprocessor {
+
+		protected RecordingBatchPreprocessor(String name, List<String> calls) {
+			super(name, calls);
+		}
+
+		@Override
+		public List<Map<String, Object>> preprocessBatch(List<Map<String, Object>> documents,
+				List<? extends PreprocessChainContext> chainContexts) {
+			calls.add(name + ":batch");
+			if (chainContexts != null) {
+				for (PreprocessChainContext chainContext : chainContexts) {
+					addDataWarning(chainContext, name);
+				}
+			}
+			return documents;
+		}
+	}
+
+	@Test
+	public void withMetrics() {
+		List<String> calls = new ArrayList<String>();
+		List<StructuredContentPreprocessor> preprocs = new ArrayList<StructuredContentPreprocessor>();
+		preprocs.add(new RecordingPreprocessor("a", calls));
+		preprocs.add(new RecordingBatchPreprocessor("b", calls));
+		preprocs.add(new RecordingPreprocessor("c", calls) {
+			@Override
+			public Map<String, Object> preprocessData(Map<String, Object> data, PreprocessChainContext chainContext) {
+				if ("fail".equals(data.get("status")))
+					throw new IllegalStateException("failed");
+				return data;
+			}
+		});
+		PreprocessorChain chain = new PreprocessorChain(preprocs);
+		Assert.assertNull(chain.getMetrics());
+
+		try {
+			chain.withMetrics(null);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+
+		DefaultPreprocessorMetricsRegistry registry = new DefaultPreprocessorMetricsRegistry("test");
+		PreprocessorChain tested = chain.withMetrics(registry);
+		Assert.assertNotSame(chain, tested);
+		Assert.assertEquals(chain.getPreprocessors(), tested.getPreprocessors());
+		Assert.assertEquals(3, tested.getMetrics().size());
+		Assert.assertSame(registry.getMetrics("a"), tested.getMetrics().get(0));
+
+		// case - one document
+		PreprocessChainContextImpl context = new PreprocessChainContextImpl();
+		tested.preprocessData(createDocument("Opened"), context);
+		Assert.assertEquals(2, context.getWarnings().size());
+
+		// case - batch
+		List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+		List<PreprocessChainContextImpl> contexts = new ArrayList<PreprocessChainContextImpl>();
+		for (int i = 0; i < 3; i++) {
+			batch.add(createDocument("Opened"));
+			contexts.add(new PreprocessChainContextImpl());
+		}
+		tested.preprocessBatch(batch, contexts);
+		Assert.assertEquals(2, contexts.get(2).getWarnings().size());
+
+		// case - batch without contexts, warnings are counted too
+		tested.preprocessBatch(batch);
+
+		PreprocessorStatistics a = registry.getMetrics("a");
+		Assert.assertEquals(7, a.getInvocationCount());
+		Assert.assertEquals(7, a.getDocumentCount());
+		Assert.assertEquals(7, a.getWarningCount());
+		Assert.assertEquals(0, a.getErrorCount());
+
+		PreprocessorStatistics b = registry.getMetrics("b");
+		Assert.assertEquals(3, b.getInvocationCount());
+		Assert.assertEquals(7, b.getDocumentCount());
+		Assert.assertEquals(7, b.getWarningCount());
+
+		// case - one document without context
+		tested.preprocessData(createDocument("Opened"), null);
+		Assert.assertEquals(8, a.getWarningCount());
+		Assert.assertEquals(8, b.getWarningCount());
+
+		// case - error in preprocessor
+		try {
+			tested.preprocessData(createDocument("fail"), null);
+			Assert.fail("IllegalStateException must be thrown");
+		} catch (IllegalStateException e) {
+			// OK
+		}
+		PreprocessorStatistics c = registry.getMetrics("c");
+		Assert.assertEquals(9, c.getInvocationCount());
+		Assert.assertEquals(1, c.getErrorCount());
+		Assert.assertEquals(0, c.getWarningCount());
+
+		// case - worker copy keeps metrics
+		Assert.assertEquals(tested.getMetrics(), tested.createWorkerCopy().getMetrics());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void fuse() {
+		List<Map<String, Object>> preprocessorConfig = (List<Map<String, Object>>) (TestUtils
+				.loadJSONFromClasspathFile("/PreprocessorChain_fuse.json")).get("preprocessors");
+		PreprocessorChain tested = StructuredContentPreprocessorFactory.createPreprocessorChain(preprocessorConfig, null);
+
+		Assert.assertEquals(6, tested.size());
+		Assert.assertEquals(3, tested.steps.length);
+		Assert.assertTrue(tested.steps[0] instanceof PreprocessorChain.FusedPreprocessor);
+		Assert.assertEquals("strip comment+trim comment+remove comment fields", tested.steps[0].getName());
+		Assert.assertEquals(tested.getPreprocessors().subList(0, 3),
+				((PreprocessorChain.FusedPreprocessor) tested.steps[0]).getFusedPreprocessors());
+		Assert.assertSame(tested.getPreprocessors().get(3), ((PreprocessorChain.PreprocessorStep) tested.steps[1]).preprocessor);
+		Assert.assertEquals("trim reply+remove reply fields", tested.steps[2].getName());
+		Assert.assertFalse(PreprocessorChain.isFusable(tested.getPreprocessors().get(3)));
+		Assert.assertFalse(PreprocessorChain.isFusable(new RecordingPreprocessor("a", null)));
+
+		// instrumented chain is not fused
+		PreprocessorChain notFused = tested.withMetrics(new DefaultPreprocessorMetricsRegistry("test"));
+		Assert.assertEquals(6, notFused.steps.length);
+
+		// same results as if not fused
+		Map<String, Object> data = createFuseDocument();
+		PreprocessChainContextImpl context = new PreprocessChainContextImpl();
+		tested.preprocessData(data, context);
+		Map<String, Object> expected = createFuseDocument();
+		PreprocessChainContextImpl expectedContext = new PreprocessChainContextImpl();
+		notFused.preprocessData(expected, expectedContext);
+		Assert.assertEquals(expected, data);
+		Assert.assertEquals(expectedContext.getWarnings().size(), context.getWarnings().size());
+		Assert.assertEquals(3, context.getWarnings().size());
+
+		List<Map<String, Object>> comments = (List<Map<String, Object>>) data.get("comments");
+		Assert.assertEquals("Long co...", comments.get(0).get("text_short"));
+		Assert.assertNull(comments.get(0).get("text"));
+		Assert.assertNull(comments.get(0).get("secret"));
+		Map<String, Object> reply = ((List<Map<String, Object>>) data.get("replies")).get(0);
+		Assert.assertEquals("Re...", reply.get("text"));
+		Assert.assertNull(reply.get("secret"));
+		Assert.assertEquals("Ti...", data.get("title"));
+
+		// case - batch and worker copy
+		List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+		batch.add(createFuseDocument());
+		batch.add(createFuseDocument());
+		Assert.assertEquals(expected, tested.createWorkerCopy().preprocessBatch(batch).get(1));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void preprocessDataCopyOnWrite() {
+		List<Map<String, Object>> preprocessorConfig = (List<Map<String, Object>>) (TestUtils
+				.loadJSONFromClasspathFile("/PreprocessorChain_fuse.json")).get("preprocessors");
+		PreprocessorChain tested = StructuredContentPreprocessorFactory.createPreprocessorChain(preprocessorConfig, null);
+
+		Assert.assertNull(tested.preprocessDataCopyOnWrite(null, null));
+
+		Map<String, Object> expected = createFuseDocument();
+		tested.preprocessData(expected, null);
+
+		// case - source document is not changed, so more chains can run over it
+		Map<String, Object> source = createFuseDocument();
+		PreprocessChainContextImpl context = new PreprocessChainContextImpl();
+		Map<String, Object> ret = tested.preprocessDataCopyOnWrite(source, context);
+		Assert.assertTrue(ret instanceof CopyOnWriteMap);
+		Assert.assertEquals(expected, ret);
+		Assert.assertEquals(3, context.getWarnings().size());
+		Assert.assertEquals(createFuseDocument(), source);
+
+		Map<String, Object> ret2 = tested.preprocessDataCopyOnWrite(source, null);
+		Assert.assertEquals(expected, ret2);
+		Assert.assertEquals(createFuseDocument(), source);
+
+		// case - untouched parts of document are shared
+		Map<String, Object> untouched = new HashMap<String, Object>();
+		untouched.put("a", "b");
+		source.put("untouched", untouched);
+		ret = tested.preprocessDataCopyOnWrite(source, null);
+		Assert.assertFalse(((CopyOnWriteMap) ret.get("untouched")).isCopied());
+		Assert.assertFalse(((CopyOnWriteList) ret.get("comments")).isCopied());
+		Assert.assertTrue(((CopyOnWriteMap) ((List<Object>) ret.get("comments")).get(0)).isCopied());
+	}
+
+	protected static Map<String, Object> createFuseDocument() {
+		Map<String, Object> data = new HashMap<String, Object>();
+		data.put("title", "Title too long");
+		List<Object> comments = new ArrayList<Object>();
+		for (int i = 0; i < 3; i++) {
+			Map<String, Object> comment = new HashMap<String, Object>();
+			comment.put("text", " <b>Long comment</b> " + i);
+			comment.put("secret", "pwd");
+			comments.add(comment);
+		}
+		comments.add("invalid comment");
+		data.put("comments", comments);
+		List<Object> replies = new ArrayList<Object>();
+		Map<String, Object> reply = new HashMap<String, Object>();
+		reply.put("text", "Reply text");
+		reply.put("secret", "pwd");
+		replies.add(reply);
+		data.put("replies", replies);
+		return data;
+	}
+
+	@Test
+	public void preprocessingIterator() {
+		PreprocessorChain tested = createTestedChain(null);
+
+		List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+		batch.add(createDocument("Opened"));
+		batch.add(createDocument(new Integer(10)));
+
+		PreprocessChainContextImpl context = new PreprocessChainContextImpl();
+		Iterator<Map<String, Object>> it = tested.preprocessingIterator(batch.iterator(), context);
+		Assert.assertTrue(it.hasNext());
+		Assert.assertEquals("Open", it.next().get("status"));
+		// lazy processing
+		Assert.assertNull(batch.get(1).get("full_name"));
+		Assert.assertTrue(it.hasNext());
+		Assert.assertEquals("Joe Doe the Great", it.next().get("full_name"));
+		Assert.assertFalse(it.hasNext());
+		Assert.assertEquals(1, context.getWarnings().size());
+	}
+
+}
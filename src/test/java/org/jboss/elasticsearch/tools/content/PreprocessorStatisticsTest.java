@@ -0,0 +1,82 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link PreprocessorStatistics}.
+ *
+ * @author agent (agent at local)
+ */
+public class PreprocessorStatisticsTest {
+
+	@Test
+	public void bucketIndex() {
+		long[] values = new long[] { 0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456789, Long.MAX_VALUE };
+		int lastIndex = -1;
+		for (long value : values) {
+			int idx = PreprocessorStatistics.bucketIndex(value);
+			Assert.assertTrue(idx >= lastIndex);
+			lastIndex = idx;
+			long highest = PreprocessorStatistics.bucketHighestValue(idx);
+			Assert.assertTrue(value + " <= " + highest, value <= highest);
+			// relative error of bucket
+			Assert.assertTrue(highest - value <= value / 16);
+		}
+		Assert.assertEquals(15, PreprocessorStatistics.bucketIndex(15));
+		Assert.assertEquals(16, PreprocessorStatistics.bucketIndex(16));
+		Assert.assertEquals(PreprocessorStatistics.bucketIndex(32), PreprocessorStatistics.bucketIndex(33));
+		Assert.assertEquals(33, PreprocessorStatistics.bucketHighestValue(PreprocessorStatistics.bucketIndex(32)));
+	}
+
+	@Test
+	public void record() {
+		PreprocessorStatistics tested = new PreprocessorStatistics("test");
+		Assert.assertEquals("test", tested.getName());
+		Assert.assertEquals(0, tested.getMeanTimeMicros());
+		Assert.assertEquals(0, tested.get99thPercentileTimeMicros());
+
+		for (int i = 1; i <= 100; i++) {
+			tested.record(1, TimeUnit.MICROSECONDS.toNanos(i * 10), 0, false);
+		}
+		tested.record(10, TimeUnit.MILLISECONDS.toNanos(100), 3, true);
+
+		Assert.assertEquals(101, tested.getInvocationCount());
+		Assert.assertEquals(110, tested.getDocumentCount());
+		Assert.assertEquals(3, tested.getWarningCount());
+		Assert.assertEquals(1, tested.getErrorCount());
+		Assert.assertEquals(150500, tested.getTotalTimeMicros());
+		Assert.assertEquals(1490, tested.getMeanTimeMicros());
+		Assert.assertEquals(100000, tested.getMaxTimeMicros());
+		Assert.assertEquals(100000, tested.getPercentileTimeMicros(100));
+		assertAbout(510, tested.getMedianTimeMicros());
+		assertAbout(960, tested.get95thPercentileTimeMicros());
+		assertAbout(1000, tested.get99thPercentileTimeMicros());
+
+		try {
+			tested.getPercentileTimeMicros(101);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+
+		tested.reset();
+		Assert.assertEquals(0, tested.getInvocationCount());
+		Assert.assertEquals(0, tested.getDocumentCount());
+		Assert.assertEquals(0, tested.getMaxTimeMicros());
+		Assert.assertEquals(0, tested.getMedianTimeMicros());
+	}
+
+	private static void assertAbout(long expected, long actual) {
+		Assert.assertTrue("expected about " + expected + " but was " + actual,
+				actual >= expected && actual <= expected + expected / 16);
+	}
+
+}
@@ -5,10 +5,15 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.common.settings.SettingsException;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
 import org.jboss.elasticsearch.tools.content.RESTCallPreprocessor.HttpMethodType;
@@ -52,14 +57,17 @@ public class RESTCallPreprocessorTest {
     @Test
     public void prepareContent(){
         RESTCallPreprocessor tested = getTested();
-        tested.request_content_template = "{ \"test\" : \"$val$\", \"test2\":\"$val2.val$\"}";
+        Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/RESTCallPreprocessor_settings_correct_with_defaults.json");
+        settings.put(RESTCallPreprocessor.CFG_REQUEST_CONTENT, "{ \"test\" : \"$val$\", \"test2\":\"$val2.val$\"}");
 
         //always null for GET
-        tested.request_method = HttpMethodType.GET;
+        settings.put(RESTCallPreprocessor.CFG_REQUEST_METHOD, HttpMethodType.GET.name());
+        tested.init(settings);
         Assert.assertEquals(null, tested.prepareContent(null));
         
         
-        tested.request_method = HttpMethodType.POST;
+        settings.put(RESTCallPreprocessor.CFG_REQUEST_METHOD, HttpMethodType.POST.name());
+        tested.init(settings);
         Assert.assertEquals("{ \"test\" : \"\", \"test2\":\"\"}", tested.prepareContent(null));
         
         
@@ -74,7 +82,9 @@ public class RESTCallPreprocessorTest {
     @Test
     public void prepareUrl(){
         RESTCallPreprocessor tested = getTested();
-        tested.request_url = "http://test.org/api/method?param1={val}&param2={val2.val}";
+        Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/RESTCallPreprocessor_settings_correct_with_defaults.json");
+        settings.put(RESTCallPreprocessor.CFG_REQUEST_URL, "http://test.org/api/method?param1={val}&param2={val2.val}");
+        tested.init(settings);
         
         Assert.assertEquals("http://test.org/api/method?param1=&param2=", tested.prepareUrl(null));
         Map<String, Object> data = new HashMap<>();
@@ -84,11 +94,11 @@ public class RESTCallPreprocessorTest {
         Assert.assertEquals("http://test.org/api/method?param1=aha%26aha&param2=jo%26jo", tested.prepareUrl(data));
     }
     
-    @SuppressWarnings("unchecked")
     @Test
     public void processResponse_no_response_data() throws Exception{
         RESTCallPreprocessor tested = getTested();
-        tested.responseMapping = (List<Map<String, String>>) TestUtils.loadJSONFromClasspathFile("/RESTCallPreprocessor_settings_correct_with_defaults.json").get(RESTCallPreprocessor.CFG_RESPONSE_MAPPING);
+        tested.init(TestUtils.loadJSONFromClasspathFile("/RESTCallPreprocessor_settings_correct_with_defaults.json"));
+        tested.close();
         
         
         Map<String, Object> data = new HashMap<>();
@@ -102,11 +112,11 @@ public class RESTCallPreprocessorTest {
         Assert.assertEquals(null, XContentMapValues.extractValue("project.project_name", data));
     }
 
-    @SuppressWarnings("unchecked")
     @Test
     public void processResponse_with_response_data() throws Exception{
         RESTCallPreprocessor tested = getTested();
-        tested.responseMapping = (List<Map<String, String>>) TestUtils.loadJSONFromClasspathFile("/RESTCallPreprocessor_settings_correct_with_defaults.json").get(RESTCallPreprocessor.CFG_RESPONSE_MAPPING);
+        tested.init(TestUtils.loadJSONFromClasspathFile("/RESTCallPreprocessor_settings_correct_with_defaults.json"));
+        tested.close();
         
         
         Map<String, Object> data = new HashMap<>();
@@ -179,6 +189,252 @@ public class RESTCallPreprocessorTest {
         Assert.assertEquals(10000, tested.retry_delay);
     }
     
+    @Test
+    public void preprocessBatch_async() throws Throwable {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final AtomicInteger calls = new AtomicInteger();
+        RESTCallPreprocessor tested = new RESTCallPreprocessor() {
+            @Override
+            protected HttpResponseContent performHttpCall(String url, String content, Map<String, String> headers, HttpMethodType methodType) throws Exception {
+                int f = inFlight.incrementAndGet();
+                try {
+                    if (f > maxInFlight.get())
+                        maxInFlight.set(f);
+                    Thread.sleep(50);
+                    // first attempt for each document fails
+                    if (calls.incrementAndGet() <= 4)
+                        throw new HttpCallException(url, 500, "error");
+                    return new HttpResponseContent("application/json", ("{\"code\":\"" + url + "\"}").getBytes());
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+        };
+        tested.name = "testPreproc";
+        Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/RESTCallPreprocessor_settings_correct_with_defaults.json");
+        settings.put(RESTCallPreprocessor.CFG_REQUEST_ASYNC, true);
+        settings.put(RESTCallPreprocessor.CFG_REQUEST_MAX_PARALLEL, 4);
+        settings.put(RESTCallPreprocessor.CFG_RETRY_MAX_NUM_OF_ATTEMPTS, 2);
+        settings.put(RESTCallPreprocessor.CFG_RETRY_DELAY, 10);
+        tested.init(settings);
+        Assert.assertNotNull(tested.asyncExecutor);
+
+        try {
+            Assert.assertNull(tested.preprocessBatch(null, null));
+
+            List<Map<String, Object>> batch = new ArrayList<>();
+            List<PreprocessChainContextImpl> contexts = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                Map<String, Object> data = new HashMap<>();
+                data.put("id", "id" + i);
+                batch.add(data);
+                contexts.add(new PreprocessChainContextImpl());
+            }
+            List<Map<String, Object>> ret = tested.preprocessBatch(batch, contexts);
+
+            Assert.assertEquals(4, ret.size());
+            for (int i = 0; i < 4; i++) {
+                Assert.assertSame(batch.get(i), ret.get(i));
+                Assert.assertEquals("http://test.org/api/getData?param1=id" + i + "&param2=", XContentMapValues.extractValue("project_code", ret.get(i)));
+                Assert.assertEquals(1, contexts.get(i).getWarnings().size());
+            }
+            Assert.assertEquals(8, calls.get());
+            Assert.assertTrue(maxInFlight.get() > 1);
+        } finally {
+            tested.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void preprocessData_responseCache() throws Throwable {
+        final AtomicInteger calls = new AtomicInteger();
+        RESTCallPreprocessor tested = new RESTCallPreprocessor() {
+            @Override
+            protected HttpResponseContent performHttpCall(String url, String content, Map<String, String> headers, HttpMethodType methodType) throws Exception {
+                calls.incrementAndGet();
+                if (url.contains("missing"))
+                    throw new HttpCallException(url, 404, "");
+                if (url.contains("error"))
+                    throw new HttpCallException(url, 500, "");
+                return new HttpResponseContent("application/json", "{\"code\":\"125\", \"name\":\"myproj\"}".getBytes());
+            }
+        };
+        tested.name = "testPreproc";
+        Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/RESTCallPreprocessor_settings_correct_with_defaults.json");
+        settings.put(RESTCallPreprocessor.CFG_cache_max_size, 10);
+        settings.put(RESTCallPreprocessor.CFG_RETRY_MAX_NUM_OF_ATTEMPTS, 3);
+        settings.put(RESTCallPreprocessor.CFG_RETRY_DELAY, 1);
+        tested.init(settings);
+        Assert.assertNotNull(tested.getResponseCacheStats());
+        Assert.assertTrue(tested.cacheNegative);
+
+        try {
+            // case - same request performed only once
+            Map<String, Object> data1 = new HashMap<>();
+            data1.put("id", "a");
+            tested.preprocessData(data1, null);
+            Map<String, Object> data2 = new HashMap<>();
+            data2.put("id", "a");
+            tested.preprocessData(data2, null);
+            Assert.assertEquals(1, calls.get());
+            Assert.assertEquals("125", data2.get("project_code"));
+            Assert.assertEquals("myproj", XContentMapValues.extractValue("project.project_name", data2));
+            // values are not shared between documents
+            Assert.assertNotSame(data1.get("whole"), data2.get("whole"));
+            ((Map<String, Object>) data1.get("whole")).clear();
+            Assert.assertEquals("125", ((Map<String, Object>) data2.get("whole")).get("code"));
+            Assert.assertEquals(1, tested.getResponseCacheStats().hitCount());
+            Assert.assertEquals(1, tested.getResponseCacheStats().missCount());
+
+            // case - other request performed
+            Map<String, Object> data = new HashMap<>();
+            data.put("id", "b");
+            tested.preprocessData(data, null);
+            Assert.assertEquals(2, calls.get());
+
+            // case - 404 cached and not retried
+            calls.set(0);
+            PreprocessChainContextImpl context = new PreprocessChainContextImpl();
+            data = new HashMap<>();
+            data.put("id", "missing");
+            tested.preprocessData(data, context);
+            tested.preprocessData(data, context);
+            Assert.assertEquals(1, calls.get());
+            Assert.assertEquals(2, context.getWarnings().size());
+
+            // case - other errors not cached
+            calls.set(0);
+            data = new HashMap<>();
+            data.put("id", "error");
+            tested.preprocessData(data, null);
+            Assert.assertEquals(3, calls.get());
+
+            // case - 404 not cached if disabled
+            tested.cacheNegative = false;
+            tested.responseCache.invalidateAll();
+            calls.set(0);
+            data = new HashMap<>();
+            data.put("id", "missing");
+            tested.preprocessData(data, null);
+            Assert.assertEquals(3, calls.get());
+        } finally {
+            tested.close();
+        }
+    }
+
+    @Test
+    public void close() {
+        RESTCallPreprocessor tested = getTested();
+        Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/RESTCallPreprocessor_settings_correct_with_defaults.json");
+        settings.put(RESTCallPreprocessor.CFG_REQUEST_ASYNC, true);
+        tested.init(settings);
+        ScheduledExecutorService executor = tested.asyncExecutor;
+
+        // case - init shuts down executor of previous configuration
+        tested.init(settings);
+        Assert.assertTrue(executor.isShutdown());
+        Assert.assertNotSame(executor, tested.asyncExecutor);
+
+        executor = tested.asyncExecutor;
+        tested.close();
+        Assert.assertTrue(executor.isShutdown());
+        Assert.assertNull(tested.asyncExecutor);
+        Assert.assertNull(tested.httpclient);
+        // case - repeated close is OK
+        tested.close();
+    }
+
+    @Test
+    public void preprocessData_interrupted() {
+        final AtomicInteger calls = new AtomicInteger();
+        RESTCallPreprocessor tested = new RESTCallPreprocessor() {
+            @Override
+            protected HttpResponseContent performHttpCall(String url, String content, Map<String, String> headers, HttpMethodType methodType) throws Exception {
+                calls.incrementAndGet();
+                throw new HttpCallException(url, 500, "error");
+            }
+        };
+        tested.name = "testPreproc";
+        Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/RESTCallPreprocessor_settings_correct_with_defaults.json");
+        settings.put(RESTCallPreprocessor.CFG_RETRY_MAX_NUM_OF_ATTEMPTS, 3);
+        tested.init(settings);
+        try {
+            // case - no more retries, data returned with interrupt flag kept
+            Map<String, Object> data = new HashMap<String, Object>();
+            Thread.currentThread().interrupt();
+            Assert.assertSame(data, tested.preprocessData(data, null));
+            Assert.assertTrue(Thread.interrupted());
+            Assert.assertEquals(1, calls.get());
+        } finally {
+            tested.close();
+        }
+    }
+
+    @Test
+    public void preprocessBatch_async_interrupted() throws Throwable {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        RESTCallPreprocessor tested = new RESTCallPreprocessor() {
+            @Override
+            protected HttpResponseContent performHttpCall(String url, String content, Map<String, String> headers, HttpMethodType methodType) throws Exception {
+                inFlight.incrementAndGet();
+                try {
+                    calls.incrementAndGet();
+                    started.countDown();
+                    Thread.sleep(100);
+                    throw new HttpCallException(url, 500, "error");
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+        };
+        tested.name = "testPreproc";
+        Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/RESTCallPreprocessor_settings_correct_with_defaults.json");
+        settings.put(RESTCallPreprocessor.CFG_REQUEST_ASYNC, true);
+        settings.put(RESTCallPreprocessor.CFG_REQUEST_MAX_PARALLEL, 1);
+        settings.put(RESTCallPreprocessor.CFG_RETRY_MAX_NUM_OF_ATTEMPTS, 10);
+        settings.put(RESTCallPreprocessor.CFG_RETRY_DELAY, 10);
+        tested.init(settings);
+
+        final Thread caller = Thread.currentThread();
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    started.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                caller.interrupt();
+            }
+        }.start();
+
+        try {
+            List<Map<String, Object>> batch = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                Map<String, Object> data = new HashMap<>();
+                data.put("id", "id" + i);
+                batch.add(data);
+            }
+            try {
+                tested.preprocessBatch(batch, null);
+                Assert.fail("ElasticsearchException must be thrown");
+            } catch (ElasticsearchException e) {
+                Assert.assertTrue(Thread.interrupted());
+            }
+            // running request is finished and no other is performed after cancellation
+            Assert.assertEquals(0, inFlight.get());
+            int c = calls.get();
+            Thread.sleep(200);
+            Assert.assertEquals(c, calls.get());
+        } finally {
+            tested.close();
+        }
+    }
+
     protected static RESTCallPreprocessor getTested(){
         RESTCallPreprocessor tested = new RESTCallPreprocessor();
         tested.name="testPreproc";
@@ -6,10 +6,10 @@
 package org.jboss.elasticsearch.tools.content;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 import junit.framework.Assert;
 
@@ -222,17 +222,169 @@ public class RegExpCapturingGroupPreprocessorTest {
 			Assert.assertEquals("(.*)", tested.getPattern());
 			Assert.assertEquals(RESULT_MAPPING_VALID, tested.getResultMapping());
 			Assert.assertEquals(sb, tested.getSourceBases());
+			Assert.assertFalse(tested.isFind());
+			Assert.assertEquals(1, tested.compiledPatterns.length);
 		}
 	}
 
+	@Test
+	public void init_patterns() {
+		RegExpCapturingGroupPreprocessor tested = new RegExpCapturingGroupPreprocessor();
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(RegExpCapturingGroupPreprocessor.CFG_SOURCE_FIELD, "sf");
+		settings.put(RegExpCapturingGroupPreprocessor.CFG_FIND, true);
+
+		// case - all ok
+		settings.put(RegExpCapturingGroupPreprocessor.CFG_PATTERNS,
+				Arrays.asList(pattern("a(.*)", RESULT_MAPPING_VALID), pattern("(b)", RESULT_MAPPING_VALID)));
+		tested.init("Test mapper", null, settings);
+		Assert.assertTrue(tested.isFind());
+		Assert.assertEquals(2, tested.compiledPatterns.length);
+		Assert.assertEquals("a(.*)", tested.compiledPatterns[0].pattern.pattern());
+		Assert.assertEquals("a", tested.compiledPatterns[0].literalPrefix);
+		Assert.assertNull(tested.getPattern());
+
+		// case - errors
+		settings.put(RegExpCapturingGroupPreprocessor.CFG_PATTERNS, new ArrayList<Object>());
+		try {
+			tested.init("Test mapper", null, settings);
+			Assert.fail("SettingsException must be thrown");
+		} catch (SettingsException e) {
+			Assert.assertEquals("Missing or empty 'settings/patterns' configuration value for 'Test mapper' preprocessor",
+					e.getMessage());
+		}
+		settings.put(RegExpCapturingGroupPreprocessor.CFG_PATTERNS, Arrays.asList(pattern("a(.*)", RESULT_MAPPING_VALID),
+				"b"));
+		try {
+			tested.init("Test mapper", null, settings);
+			Assert.fail("SettingsException must be thrown");
+		} catch (SettingsException e) {
+			Assert.assertEquals("'settings/patterns[1]' configuration value for 'Test mapper' preprocessor is invalid",
+					e.getMessage());
+		}
+		settings.put(RegExpCapturingGroupPreprocessor.CFG_PATTERNS, Arrays.asList(pattern(" ", RESULT_MAPPING_VALID)));
+		try {
+			tested.init("Test mapper", null, settings);
+			Assert.fail("SettingsException must be thrown");
+		} catch (SettingsException e) {
+			Assert.assertEquals(
+					"Missing or empty 'settings/patterns[0]/pattern' configuration value for 'Test mapper' preprocessor",
+					e.getMessage());
+		}
+		settings.put(RegExpCapturingGroupPreprocessor.CFG_PATTERNS, Arrays.asList(pattern("(a", RESULT_MAPPING_VALID)));
+		try {
+			tested.init("Test mapper", null, settings);
+			Assert.fail("SettingsException must be thrown");
+		} catch (SettingsException e) {
+			Assert.assertTrue(e.getMessage().startsWith(
+					"'settings/patterns[0]/pattern' configuration value for 'Test mapper' preprocessor is invalid: "));
+		}
+		settings.put(RegExpCapturingGroupPreprocessor.CFG_PATTERNS, Arrays.asList(pattern("(a)", null)));
+		try {
+			tested.init("Test mapper", null, settings);
+			Assert.fail("SettingsException must be thrown");
+		} catch (SettingsException e) {
+			Assert.assertEquals(
+					"Missing or empty 'settings/patterns[0]/result_mapping' configuration object for 'Test mapper' preprocessor",
+					e.getMessage());
+		}
+	}
+
+	@Test
+	public void getLiteralPrefix() {
+		Assert.assertEquals("", RegExpCapturingGroupPreprocessor.getLiteralPrefix("(.*)"));
+		Assert.assertEquals("num ", RegExpCapturingGroupPreprocessor.getLiteralPrefix("num (\\d+)"));
+		Assert.assertEquals("ab", RegExpCapturingGroupPreprocessor.getLiteralPrefix("abc?d"));
+		Assert.assertEquals("ab", RegExpCapturingGroupPreprocessor.getLiteralPrefix("abc*d"));
+		Assert.assertEquals("ab", RegExpCapturingGroupPreprocessor.getLiteralPrefix("abc{0,1}d"));
+		Assert.assertEquals("abc", RegExpCapturingGroupPreprocessor.getLiteralPrefix("abc+d"));
+		Assert.assertEquals("", RegExpCapturingGroupPreprocessor.getLiteralPrefix("abc|d"));
+		Assert.assertEquals("a", RegExpCapturingGroupPreprocessor.getLiteralPrefix("a\\.b"));
+		Assert.assertEquals("", RegExpCapturingGroupPreprocessor.getLiteralPrefix("^abc"));
+	}
+
+	@Test
+	public void preprocessData_patterns() {
+		RegExpCapturingGroupPreprocessor tested = new RegExpCapturingGroupPreprocessor();
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(RegExpCapturingGroupPreprocessor.CFG_SOURCE_FIELD, "source");
+		Map<Object, String> rmVersion = new HashMap<Object, String>();
+		rmVersion.put(1, "version");
+		Map<Object, String> rmComponent = new HashMap<Object, String>();
+		rmComponent.put(1, "component");
+		rmComponent.put(2, "version");
+		settings.put(RegExpCapturingGroupPreprocessor.CFG_PATTERNS,
+				Arrays.asList(pattern("Version: (\\S+)", rmVersion), pattern("Component (\\S+) (\\S+)", rmComponent)));
+		tested.init("Test mapper", null, settings);
+
+		// case - matches mode, first matching pattern is used
+		{
+			Map<String, Object> values = new HashMap<String, Object>();
+			values.put("source", "Component core 1.2");
+			PreprocessChainContextImpl context = new PreprocessChainContextImpl();
+			tested.preprocessData(values, context);
+			Assert.assertEquals("core", values.get("component"));
+			Assert.assertEquals("1.2", values.get("version"));
+			Assert.assertFalse(context.isWarning());
+		}
+		{
+			Map<String, Object> values = new HashMap<String, Object>();
+			values.put("source", "Version: 2.0");
+			tested.preprocessData(values, null);
+			Assert.assertEquals("2.0", values.get("version"));
+			Assert.assertNull(values.get("component"));
+		}
+		{
+			Map<String, Object> values = new HashMap<String, Object>();
+			values.put("source", "Build log, Version: 2.0");
+			PreprocessChainContextImpl context = new PreprocessChainContextImpl();
+			tested.preprocessData(values, context);
+			Assert.assertNull(values.get("version"));
+			Assert.assertTrue(context.isWarning());
+		}
+
+		// case - find mode
+		settings.put(RegExpCapturingGroupPreprocessor.CFG_FIND, true);
+		tested.init("Test mapper", null, settings);
+		{
+			Map<String, Object> values = new HashMap<String, Object>();
+			values.put("source", "Build log, Version: 2.0 for Component core 1.2");
+			PreprocessChainContextImpl context = new PreprocessChainContextImpl();
+			tested.preprocessData(values, context);
+			Assert.assertEquals("2.0", values.get("version"));
+			Assert.assertNull(values.get("component"));
+			Assert.assertFalse(context.isWarning());
+		}
+		{
+			Map<String, Object> values = new HashMap<String, Object>();
+			values.put("source", "Build log for Component core 1.2");
+			tested.preprocessData(values, null);
+			Assert.assertEquals("core", values.get("component"));
+			Assert.assertEquals("1.2", values.get("version"));
+		}
+		{
+			Map<String, Object> values = new HashMap<String, Object>();
+			values.put("source", "Build log");
+			PreprocessChainContextImpl context = new PreprocessChainContextImpl();
+			tested.preprocessData(values, context);
+			Assert.assertTrue(context.isWarning());
+		}
+	}
+
+	private static Map<String, Object> pattern(String pattern, Map<Object, String> resultMapping) {
+		Map<String, Object> ret = new HashMap<String, Object>();
+		ret.put(RegExpCapturingGroupPreprocessor.CFG_PATTERN, pattern);
+		ret.put(RegExpCapturingGroupPreprocessor.CFG_RESULT_MAPPING, resultMapping);
+		return ret;
+	}
+
 	@Test
 	public void preprocessData_nobases() {
 
 		RegExpCapturingGroupPreprocessor tested = new RegExpCapturingGroupPreprocessor();
-		tested.name = "mypreproc";
-		tested.fieldSource = "source";
-		tested.resultMapping = RESULT_MAPPING_VALID;
-		tested.patternCompiled = Pattern.compile("num\\s(\\d+)\\sof\\s(.+)");
+		Map<String, Object> settings = pattern("num\\s(\\d+)\\sof\\s(.+)", RESULT_MAPPING_VALID);
+		settings.put(RegExpCapturingGroupPreprocessor.CFG_SOURCE_FIELD, "source");
+		tested.init("mypreproc", null, settings);
 
 		// case - not NPE
 		tested.preprocessData(null, null);
@@ -6,6 +6,7 @@
 package org.jboss.elasticsearch.tools.content;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -98,13 +99,8 @@ public class RemoveMultipleFieldsPreprocessorTest {
 	@SuppressWarnings("rawtypes")
 	@Test
 	public void preprocessData_nobases() {
-		RemoveMultipleFieldsPreprocessor tested = getTested();
-		tested.fields = new ArrayList<String>();
-		tested.fields.add("removeme_nonexisting");
-		tested.fields.add("removeme_simplevalue");
-		tested.fields.add("removeme_map");
-		tested.fields.add("removeme_list");
-		tested.fields.add("substructure.removeme");
+		RemoveMultipleFieldsPreprocessor tested = getTested(null, "removeme_nonexisting", "removeme_simplevalue",
+				"removeme_map", "removeme_list", "substructure.removeme");
 
 		Map<String, Object> data = new HashMap<String, Object>();
 		data.put("removeme_simplevalue", "Ahoj");
@@ -128,17 +124,11 @@ public class RemoveMultipleFieldsPreprocessorTest {
 	@SuppressWarnings({ "unused", "rawtypes" })
 	@Test
 	public void preprocessData_bases() {
-		RemoveMultipleFieldsPreprocessor tested = getTested();
-		tested.fields = new ArrayList<String>();
-		tested.fields.add("removeme_nonexisting");
-		tested.fields.add("removeme_simplevalue");
-		tested.fields.add("removeme_map");
-		tested.fields.add("removeme_list");
-		tested.fields.add("substructure.removeme");
-
-		tested.sourceBases = new ArrayList<String>();
-		tested.sourceBases.add("mybase");
-		tested.sourceBases.add("base2");
+		List<String> sourceBases = new ArrayList<String>();
+		sourceBases.add("mybase");
+		sourceBases.add("base2");
+		RemoveMultipleFieldsPreprocessor tested = getTested(sourceBases, "removeme_nonexisting", "removeme_simplevalue",
+				"removeme_map", "removeme_list", "substructure.removeme");
 
 		Map<String, Object> data = new HashMap<String, Object>();
 
@@ -168,10 +158,62 @@ public class RemoveMultipleFieldsPreprocessorTest {
 
 	}
 
+	@Test(expected = SettingsException.class)
+	public void init_empty_field_in_list() {
+		RemoveMultipleFieldsPreprocessor tested = getTested();
+		Map<String, Object> settings = new HashMap<String, Object>();
+		List<String> fields = new ArrayList<String>();
+		fields.add("sourcefield");
+		fields.add("");
+		settings.put(RemoveMultipleFieldsPreprocessor.CFG_FIELDS, fields);
+		tested.init("Test mapper", null, settings);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Test
+	public void preprocessData_wildcard() {
+		RemoveMultipleFieldsPreprocessor tested = getTested(null, "fields.*.raw", "fields.f1.secret");
+
+		Map<String, Object> data = new HashMap<String, Object>();
+		Map<String, Object> fields = new HashMap<String, Object>();
+		data.put("fields", fields);
+		Map<String, Object> f1 = new HashMap<String, Object>();
+		f1.put("raw", "raw value");
+		f1.put("secret", "pwd");
+		f1.put("keepme", "keep me");
+		fields.put("f1", f1);
+		Map<String, Object> f2 = new HashMap<String, Object>();
+		f2.put("raw", "raw value");
+		fields.put("f2", f2);
+		fields.put("f3", "simple value");
+
+		tested.preprocessData(data, null);
+
+		Assert.assertEquals(3, fields.size());
+		Assert.assertEquals(1, f1.size());
+		Assert.assertEquals("keep me", f1.get("keepme"));
+		Assert.assertEquals(0, f2.size());
+		Assert.assertEquals("simple value", fields.get("f3"));
+
+		// case - fields changed by init
+		tested = getTested(null, "fields.*.raw", "fields.f1.secret", "fields.f3");
+		tested.preprocessData(data, null);
+		Assert.assertEquals(2, ((Map) data.get("fields")).size());
+	}
+
 	private RemoveMultipleFieldsPreprocessor getTested() {
 		RemoveMultipleFieldsPreprocessor tested = new RemoveMultipleFieldsPreprocessor();
 		tested.logger = Mockito.mock(ESLogger.class);
 		return tested;
 	}
 
+	private RemoveMultipleFieldsPreprocessor getTested(List<String> sourceBases, String... fields) {
+		RemoveMultipleFieldsPreprocessor tested = getTested();
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(RemoveMultipleFieldsPreprocessor.CFG_FIELDS, new ArrayList<String>(Arrays.asList(fields)));
+		settings.put(RemoveMultipleFieldsPreprocessor.CFG_source_bases, sourceBases);
+		tested.init("Test mapper", null, settings);
+		return tested;
+	}
+
 }
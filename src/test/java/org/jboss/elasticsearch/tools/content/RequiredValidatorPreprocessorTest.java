@@ -82,7 +82,9 @@ public class RequiredValidatorPreprocessorTest {
 	@Test
 	public void preprocessData() {
 		RequiredValidatorPreprocessor tested = new RequiredValidatorPreprocessor();
-		tested.field = "my_field";
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(RequiredValidatorPreprocessor.CFG_FIELD, "my_field");
+		tested.init("mypreproc", null, settings);
 
 		// case - not NPE
 		tested.preprocessData(null, null);
@@ -5,6 +5,8 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -118,4 +120,48 @@ public class ScriptingPreprocessorTest {
 		Assert.assertEquals("con", data.get("c"));
 	}
 
+	@Test
+	public void preprocessData_moreThreads() throws Exception {
+		final ScriptingPreprocessor tested = new ScriptingPreprocessor();
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(ScriptingPreprocessor.CFG_SCRIPT_ENGINE_NAME_FIELD, "JavaScript");
+		settings.put(ScriptingPreprocessor.CFG_SCRIPT_FIELD, "data.put('v2', data.get('v') + '_' + data.get('v'));");
+		tested.init("my preprocc", null, settings);
+		Assert.assertNotNull(tested.sharedRunner.compiledScript);
+
+		final List<Map<String, Object>> results = Collections.synchronizedList(new ArrayList<Map<String, Object>>());
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int tn = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 50; i++) {
+						Map<String, Object> data = new HashMap<>();
+						data.put("v", tn + "-" + i);
+						tested.preprocessData(data, null);
+						results.add(data);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		Assert.assertEquals(200, results.size());
+		for (Map<String, Object> data : results) {
+			Assert.assertEquals(data.get("v") + "_" + data.get("v"), data.get("v2"));
+		}
+		// engines are reused
+		Assert.assertTrue(tested.idleRunners.size() <= threads.length);
+
+		// case - changed script is compiled again
+		settings.put(ScriptingPreprocessor.CFG_SCRIPT_FIELD, "data.put('c','con');");
+		tested.init("my preprocc", null, settings);
+		Map<String, Object> data = new HashMap<>();
+		tested.preprocessData(data, null);
+		Assert.assertEquals("con", data.get("c"));
+	}
+
 }
@@ -5,6 +5,7 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
@@ -97,6 +98,64 @@ public class SimpleValueMapMapperPreprocessorTest {
 		Assert.assertEquals("Default", tested.defaultValue);
 		Assert.assertNotNull(tested.valueMap);
 		Assert.assertEquals(1, tested.valueMap.size());
+		Assert.assertNull(tested.getValueDictionary());
+	}
+
+	@Test
+	public void init_valueMappingFile() throws Exception {
+		SimpleValueMapMapperPreprocessor tested = new SimpleValueMapMapperPreprocessor();
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(SimpleValueMapMapperPreprocessor.CFG_SOURCE_FIELD, "source");
+		settings.put(SimpleValueMapMapperPreprocessor.CFG_TARGET_FIELD, "target");
+
+		// case - file not found
+		settings.put(SimpleValueMapMapperPreprocessor.CFG_VALUE_MAPPING_FILE, "not-existing-dictionary.csv");
+		try {
+			tested.init("Test mapper", null, settings);
+			Assert.fail("SettingsException must be thrown");
+		} catch (SettingsException e) {
+			Assert.assertTrue(e.getMessage().startsWith(
+					"'settings/value_mapping_file' configuration value for 'Test mapper' preprocessor is invalid: "));
+		}
+
+		// case - file loaded and completed by mapping from settings
+		String file = new File(getClass().getResource("/StringDictionary_load.csv").toURI()).getPath();
+		settings.put(SimpleValueMapMapperPreprocessor.CFG_VALUE_MAPPING_FILE, file);
+		settings.put(SimpleValueMapMapperPreprocessor.CFG_VALUE_MAPPING_CASE_INSENSITIVE, true);
+		Map<String, String> mapping = new HashMap<String, String>();
+		mapping.put("emp2", "Manager");
+		mapping.put("other", "Other");
+		settings.put(SimpleValueMapMapperPreprocessor.CFG_VALUE_MAPPING, mapping);
+		tested.init("Test mapper", null, settings);
+		Assert.assertEquals(file, tested.getValueMappingFile());
+		Assert.assertEquals(6, tested.getValueDictionary().size());
+		Assert.assertTrue(tested.getValueDictionary().isCaseInsensitive());
+		Assert.assertFalse(tested.getValueDictionary().isTrim());
+
+		Map<String, Object> data = new HashMap<String, Object>();
+		data.put("source", "jdoe");
+		tested.preprocessData(data, null);
+		Assert.assertEquals("John Doe", data.get("target"));
+		data.put("source", "EMP2");
+		tested.preprocessData(data, null);
+		Assert.assertEquals("Manager", data.get("target"));
+		data.put("source", "Other");
+		tested.preprocessData(data, null);
+		Assert.assertEquals("Other", data.get("target"));
+		data.put("source", " other ");
+		data.remove("target");
+		tested.preprocessData(data, null);
+		Assert.assertNull(data.get("target"));
+
+		// case - trim only without file
+		settings.remove(SimpleValueMapMapperPreprocessor.CFG_VALUE_MAPPING_FILE);
+		settings.remove(SimpleValueMapMapperPreprocessor.CFG_VALUE_MAPPING_CASE_INSENSITIVE);
+		settings.put(SimpleValueMapMapperPreprocessor.CFG_VALUE_MAPPING_TRIM, true);
+		tested.init("Test mapper", null, settings);
+		Assert.assertNull(tested.getValueMappingFile());
+		Assert.assertEquals(2, tested.getValueDictionary().size());
+		tested.preprocessData(data, null);
+		Assert.assertEquals("Other", data.get("target"));
 	}
 
 	@SuppressWarnings("unchecked")
@@ -105,8 +164,8 @@ public class SimpleValueMapMapperPreprocessorTest {
 		Client client = Mockito.mock(Client.class);
 
 		SimpleValueMapMapperPreprocessor tested = new SimpleValueMapMapperPreprocessor();
-		tested
-				.init("Test mapper", client, TestUtils.loadJSONFromClasspathFile("/SimpleValueMapMapper_preprocessData.json"));
+		Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/SimpleValueMapMapper_preprocessData.json");
+		tested.init("Test mapper", client, settings);
 
 		// case - not NPE
 		tested.preprocessData(null, null);
@@ -131,7 +190,8 @@ public class SimpleValueMapMapperPreprocessorTest {
 		}
 
 		// case - correct mapping if input data are in map, dot notation for source field
-		tested.fieldSource = "source.level1";
+		settings.put(SimpleValueMapMapperPreprocessor.CFG_SOURCE_FIELD, "source.level1");
+		tested.init("Test mapper", client, settings);
 		{
 			Map<String, Object> values = new HashMap<String, Object>();
 			Map<String, Object> source = new HashMap<String, Object>();
@@ -147,8 +207,9 @@ public class SimpleValueMapMapperPreprocessorTest {
 		}
 
 		// case - default set to original marker
-		tested.fieldSource = "source";
-		tested.defaultValue = "{" + ValueUtils.PATTERN_KEY_ORIGINAL_VALUE + "}";
+		settings.put(SimpleValueMapMapperPreprocessor.CFG_SOURCE_FIELD, "source");
+		settings.put(SimpleValueMapMapperPreprocessor.CFG_VALUE_DEFAULT, "{" + ValueUtils.PATTERN_KEY_ORIGINAL_VALUE + "}");
+		tested.init("Test mapper", client, settings);
 		{
 			Map<String, Object> values = new HashMap<String, Object>();
 			values.put("source", "unknown");
@@ -157,8 +218,9 @@ public class SimpleValueMapMapperPreprocessorTest {
 		}
 
 		// case - more complicated pattern in default value
-		tested.fieldSource = "source";
-		tested.defaultValue = "I'm {name} and no map value is found for '{" + ValueUtils.PATTERN_KEY_ORIGINAL_VALUE + "}'";
+		settings.put(SimpleValueMapMapperPreprocessor.CFG_VALUE_DEFAULT, "I'm {name} and no map value is found for '{"
+				+ ValueUtils.PATTERN_KEY_ORIGINAL_VALUE + "}'");
+		tested.init("Test mapper", client, settings);
 		{
 			Map<String, Object> values = new HashMap<String, Object>();
 			values.put("source", "unknown");
@@ -168,7 +230,8 @@ public class SimpleValueMapMapperPreprocessorTest {
 		}
 
 		// case - default not set so nothing in target field
-		tested.defaultValue = null;
+		settings.remove(SimpleValueMapMapperPreprocessor.CFG_VALUE_DEFAULT);
+		tested.init("Test mapper", client, settings);
 		{
 			Map<String, Object> values = new HashMap<String, Object>();
 			values.put("source", "unknown");
@@ -177,7 +240,8 @@ public class SimpleValueMapMapperPreprocessorTest {
 		}
 
 		// case - bad value type in source field, so nothing in target, and WARN in log (not asserted)
-		tested.defaultValue = "default";
+		settings.put(SimpleValueMapMapperPreprocessor.CFG_VALUE_DEFAULT, "default");
+		tested.init("Test mapper", client, settings);
 		{
 			Map<String, Object> values = new HashMap<String, Object>();
 			values.put("source", new HashMap<String, Object>());
@@ -198,7 +262,8 @@ public class SimpleValueMapMapperPreprocessorTest {
 		}
 
 		// case - dot notation on target field, map exists on target first level
-		tested.fieldTarget = "target.value";
+		settings.put(SimpleValueMapMapperPreprocessor.CFG_TARGET_FIELD, "target.value");
+		tested.init("Test mapper", client, settings);
 		{
 			Map<String, Object> values = new HashMap<String, Object>();
 			Map<String, Object> target = new HashMap<String, Object>();
@@ -211,7 +276,8 @@ public class SimpleValueMapMapperPreprocessorTest {
 		}
 
 		// case - dot notation on target field, map do not exists on any target level
-		tested.fieldTarget = "target.value.level2.level3";
+		settings.put(SimpleValueMapMapperPreprocessor.CFG_TARGET_FIELD, "target.value.level2.level3");
+		tested.init("Test mapper", client, settings);
 		{
 			Map<String, Object> values = new HashMap<String, Object>();
 			values.put("source", "orig1");
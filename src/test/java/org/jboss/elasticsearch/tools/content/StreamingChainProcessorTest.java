@@ -0,0 +1,226 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.elasticsearch.tools.content.StreamingChainProcessor.Format;
+import org.jboss.elasticsearch.tools.content.StreamingChainProcessor.Result;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link StreamingChainProcessor}.
+ *
+ * @author agent (agent at local)
+ */
+public class StreamingChainProcessorTest {
+
+	@Test
+	public void constructor() {
+		PreprocessorChain chain = PreprocessorChainTest.createTestedChain(null);
+		try {
+			new StreamingChainProcessor(null, Format.NDJSON);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new StreamingChainProcessor(chain, null);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new StreamingChainProcessor(chain, Format.NDJSON, 0, 1, 1);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void process_ndjson() throws Exception {
+		StreamingChainProcessor tested = new StreamingChainProcessor(PreprocessorChainTest.createTestedChain(null),
+				Format.NDJSON, 1, 2, 1);
+
+		String input = "{\"id\":1,\"status\":\"Opened\"}\n\n{invalid\r\n{\"id\":2,\"status\":\"Closed\"}";
+		List<String> output = process(tested, input);
+		Assert.assertEquals(2, output.size());
+		Map<String, Object> doc = ValueUtils.parseJSON(output.get(0).getBytes("UTF-8"));
+		Assert.assertEquals(1, doc.get("id"));
+		Assert.assertEquals("Joe Doe the Great", doc.get("full_name"));
+		Assert.assertEquals("Open", doc.get("status"));
+		doc = ValueUtils.parseJSON(output.get(1).getBytes("UTF-8"));
+		Assert.assertEquals(2, doc.get("id"));
+
+		Result result = tested.process(new ByteArrayInputStream(input.getBytes("UTF-8")), new ByteArrayOutputStream());
+		Assert.assertEquals(2, result.getDocumentCount());
+		Assert.assertEquals(1, result.getInvalidCount());
+		Assert.assertEquals(0, result.getRemovedCount());
+	}
+
+	@Test
+	public void process_bulk() throws Exception {
+		StreamingChainProcessor tested = new StreamingChainProcessor(PreprocessorChainTest.createTestedChain(null),
+				Format.BULK, 2, 2, 1);
+
+		String input = "{\"index\":{\"_id\":\"1\"}}\n{\"status\":\"Opened\"}\n{\"delete\":{\"_id\":\"2\"}}\n"
+				+ "{\"update\":{\"_id\":\"3\"}}\n{\"doc\":{\"status\":\"Opened\"}}\n{\"create\":{\"_id\":\"4\"}}\n"
+				+ "{\"status\":\"Closed\"}\n{\"index\":{\"_id\":\"5\"}}\n{invalid}\n";
+		List<String> output = process(tested, input);
+		Assert.assertEquals(7, output.size());
+		Assert.assertEquals("{\"index\":{\"_id\":\"1\"}}", output.get(0));
+		Assert.assertEquals("Open", ValueUtils.parseJSON(output.get(1).getBytes("UTF-8")).get("status"));
+		Assert.assertEquals("{\"delete\":{\"_id\":\"2\"}}", output.get(2));
+		Assert.assertEquals("{\"update\":{\"_id\":\"3\"}}", output.get(3));
+		Assert.assertEquals("{\"doc\":{\"status\":\"Opened\"}}", output.get(4));
+		Assert.assertEquals("{\"create\":{\"_id\":\"4\"}}", output.get(5));
+		Assert.assertEquals("Clos", ValueUtils.parseJSON(output.get(6).getBytes("UTF-8")).get("status"));
+	}
+
+	@Test
+	public void process_bulk_invalidAction() throws Exception {
+		StreamingChainProcessor tested = new StreamingChainProcessor(PreprocessorChainTest.createTestedChain(null),
+				Format.BULK, 2, 2, 1);
+
+		String input = "{\"upsert\":{\"_id\":\"1\"}}\n{\"status\":\"Opened\"}\n{invalid\n\n{\"index\":{\"_id\":\"x\"}}\n"
+				+ "{\"index\":{\"_id\":\"2\"}}\n{\"status\":\"Closed\"}\n[]\n";
+		List<String> output = process(tested, input);
+		Assert.assertEquals(2, output.size());
+		Assert.assertEquals("{\"index\":{\"_id\":\"2\"}}", output.get(0));
+		Assert.assertEquals("Clos", ValueUtils.parseJSON(output.get(1).getBytes("UTF-8")).get("status"));
+
+		Result result = tested.process(new ByteArrayInputStream(input.getBytes("UTF-8")), new ByteArrayOutputStream());
+		Assert.assertEquals(1, result.getDocumentCount());
+		Assert.assertEquals(3, result.getInvalidCount());
+
+		Assert.assertEquals("index", StreamingChainProcessor.getBulkAction("{\"index\":{}}".getBytes("UTF-8")));
+		Assert.assertEquals("create", StreamingChainProcessor.getBulkAction("{\"create\":{}}".getBytes("UTF-8")));
+		Assert.assertEquals("update", StreamingChainProcessor.getBulkAction("{\"update\":{}}".getBytes("UTF-8")));
+		Assert.assertEquals("delete", StreamingChainProcessor.getBulkAction("{\"delete\":{}}".getBytes("UTF-8")));
+		Assert.assertNull(StreamingChainProcessor.getBulkAction("{\"upsert\":{}}".getBytes("UTF-8")));
+		Assert.assertNull(StreamingChainProcessor.getBulkAction("[]".getBytes("UTF-8")));
+	}
+
+	@Test
+	public void lineReader() throws Exception {
+		String input = "first\r\n\nlonger second line\nx\r\n\r\nlast";
+		StreamingChainProcessor.LineReader tested = new StreamingChainProcessor.LineReader(new ByteArrayInputStream(
+				input.getBytes("UTF-8")), 4);
+		Assert.assertEquals("first", new String(tested.readLine(), "UTF-8"));
+		Assert.assertEquals("", new String(tested.readLine(), "UTF-8"));
+		Assert.assertEquals("longer second line", new String(tested.readLine(), "UTF-8"));
+		Assert.assertEquals("x", new String(tested.readLine(), "UTF-8"));
+		Assert.assertEquals("", new String(tested.readLine(), "UTF-8"));
+		Assert.assertEquals("last", new String(tested.readLine(), "UTF-8"));
+		Assert.assertNull(tested.readLine());
+		Assert.assertNull(tested.readLine());
+
+		// case - line ending at the end of stream
+		tested = new StreamingChainProcessor.LineReader(new ByteArrayInputStream("abc\n".getBytes("UTF-8")));
+		Assert.assertEquals("abc", new String(tested.readLine(), "UTF-8"));
+		Assert.assertNull(tested.readLine());
+	}
+
+	@Test
+	public void process_file_order_removed() throws Exception {
+		List<StructuredContentPreprocessor> preprocs = new ArrayList<StructuredContentPreprocessor>();
+		preprocs.add(new StructuredContentPreprocessorMock() {
+			{
+				name = "filter";
+			}
+
+			@Override
+			public Map<String, Object> preprocessData(Map<String, Object> data, PreprocessChainContext chainContext) {
+				Integer id = (Integer) data.get("id");
+				if (id % 10 == 0)
+					return null;
+				if (id % 7 == 0)
+					addDataWarning(chainContext, "warning {}", id);
+				data.put("processed", true);
+				return data;
+			}
+		});
+		StreamingChainProcessor tested = new StreamingChainProcessor(new PreprocessorChain(preprocs), Format.NDJSON, 7,
+				3, 2);
+
+		File input = File.createTempFile("streaming", ".ndjson");
+		File output = File.createTempFile("streaming", ".ndjson");
+		try {
+			OutputStream out = new FileOutputStream(input);
+			for (int i = 1; i <= 500; i++) {
+				out.write(("{\"id\":" + i + "}\n").getBytes("UTF-8"));
+			}
+			out.close();
+
+			Result result = tested.process(input, output);
+			Assert.assertEquals(450, result.getDocumentCount());
+			Assert.assertEquals(50, result.getRemovedCount());
+			Assert.assertEquals(0, result.getInvalidCount());
+			Assert.assertEquals(64, result.getWarningCount());
+
+			List<String> lines = Files.readAllLines(output.toPath(), Charset.forName("UTF-8"));
+			Assert.assertEquals(450, lines.size());
+			int expectedId = 1;
+			for (String line : lines) {
+				if (expectedId % 10 == 0)
+					expectedId++;
+				Assert.assertEquals("{\"id\":" + expectedId + ",\"processed\":true}", line);
+				expectedId++;
+			}
+		} finally {
+			input.delete();
+			output.delete();
+		}
+	}
+
+	@Test
+	public void process_error() throws Exception {
+		List<StructuredContentPreprocessor> preprocs = new ArrayList<StructuredContentPreprocessor>();
+		preprocs.add(new StructuredContentPreprocessorMock() {
+			@Override
+			public Map<String, Object> preprocessData(Map<String, Object> data, PreprocessChainContext chainContext) {
+				throw new IllegalStateException("failed");
+			}
+		});
+		StreamingChainProcessor tested = new StreamingChainProcessor(new PreprocessorChain(preprocs), Format.NDJSON, 1,
+				1, 1);
+		StringBuilder input = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			input.append("{\"id\":1}\n");
+		}
+		try {
+			process(tested, input.toString());
+			Assert.fail("IllegalStateException must be thrown");
+		} catch (IllegalStateException e) {
+			Assert.assertEquals("failed", e.getMessage());
+		}
+	}
+
+	private static List<String> process(StreamingChainProcessor tested, String input) throws IOException,
+			InterruptedException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		tested.process(new ByteArrayInputStream(input.getBytes("UTF-8")), out);
+		List<String> ret = new ArrayList<String>();
+		for (String line : out.toString("UTF-8").split("\n")) {
+			if (!line.isEmpty())
+				ret.add(line);
+		}
+		return ret;
+	}
+
+}
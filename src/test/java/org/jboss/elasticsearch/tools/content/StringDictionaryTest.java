@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2017 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link StringDictionary}.
+ *
+ * @author agent (agent at local)
+ */
+public class StringDictionaryTest {
+
+	@Test
+	public void get() {
+		StringDictionary tested = new StringDictionary.Builder(false, false).put("a", "1").put("B", "2").put(null, "x")
+				.put("c", null).put("a", "3").build();
+		Assert.assertEquals(2, tested.size());
+		Assert.assertEquals("3", tested.get("a"));
+		Assert.assertEquals("2", tested.get("B"));
+		Assert.assertNull(tested.get("b"));
+		Assert.assertNull(tested.get(" B"));
+		Assert.assertNull(tested.get("c"));
+		Assert.assertNull(tested.get(null));
+
+		// case - empty dictionary
+		tested = new StringDictionary.Builder(false, false).build();
+		Assert.assertEquals(0, tested.size());
+		Assert.assertNull(tested.get("a"));
+		Assert.assertNull(tested.get(""));
+	}
+
+	@Test
+	public void get_caseInsensitiveAndTrim() {
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put(" Ab ", "1");
+		map.put("\u00C4\u00D6X", 2);
+		StringDictionary tested = new StringDictionary.Builder(true, true).putAll(map).build();
+		Assert.assertTrue(tested.isCaseInsensitive());
+		Assert.assertTrue(tested.isTrim());
+		Assert.assertEquals("1", tested.get("ab"));
+		Assert.assertEquals("1", tested.get("\tAB \n"));
+		Assert.assertEquals("2", tested.get("\u00E4\u00F6x "));
+		Assert.assertNull(tested.get("a b"));
+
+		tested = new StringDictionary.Builder(true, false).putAll(map).build();
+		Assert.assertNull(tested.get("ab"));
+		Assert.assertEquals("1", tested.get(" aB "));
+	}
+
+	@Test
+	public void get_many() {
+		Random random = new Random(3);
+		Map<String, String> expected = new HashMap<String, String>();
+		StringDictionary.Builder builder = new StringDictionary.Builder(false, false);
+		for (int i = 0; i < 50000; i++) {
+			String key = Long.toString(random.nextLong(), 36);
+			String value = "v" + (i % 100);
+			expected.put(key, value);
+			builder.put(key, value);
+		}
+		StringDictionary tested = builder.build();
+		Assert.assertEquals(expected.size(), tested.size());
+		for (Map.Entry<String, String> e : expected.entrySet()) {
+			Assert.assertEquals(e.getValue(), tested.get(e.getKey()));
+		}
+		for (int i = 0; i < 1000; i++) {
+			String key = "x" + random.nextInt();
+			Assert.assertNull(tested.get(key));
+		}
+	}
+
+	@Test
+	public void load_csv() throws Exception {
+		StringDictionary tested = new StringDictionary.Builder(false, true).load(file("/StringDictionary_load.csv"))
+				.build();
+		Assert.assertEquals(5, tested.size());
+		Assert.assertEquals("John Doe", tested.get("JDOE"));
+		Assert.assertEquals("Jane \"JS\" Smith", tested.get("smith, j"));
+		Assert.assertEquals("Padded", tested.get("padded"));
+		Assert.assertEquals("Employee", tested.get("emp2"));
+	}
+
+	@Test
+	public void load_json() throws Exception {
+		StringDictionary tested = new StringDictionary.Builder(false, false).load(file("/StringDictionary_load.json"))
+				.build();
+		Assert.assertEquals(3, tested.size());
+		Assert.assertEquals("John Doe", tested.get("JDOE"));
+		Assert.assertEquals("10", tested.get("num"));
+		Assert.assertNull(tested.get("nil"));
+	}
+
+	@Test(expected = IOException.class)
+	public void load_notExisting() throws Exception {
+		new StringDictionary.Builder(false, false).load(new File("not-existing-dictionary.csv"));
+	}
+
+	@Test
+	public void parseCSVLine() {
+		List<String> columns = new ArrayList<String>();
+		Assert.assertTrue(StringDictionary.Builder.parseCSVLine("a,b", columns));
+		Assert.assertEquals("[a, b]", columns.toString());
+		Assert.assertTrue(StringDictionary.Builder.parseCSVLine("a,", columns));
+		Assert.assertEquals("[a, ]", columns.toString());
+		Assert.assertTrue(StringDictionary.Builder.parseCSVLine("\"a,\"\"\",b,c", columns));
+		Assert.assertEquals("[a,\", b, c]", columns.toString());
+		Assert.assertFalse(StringDictionary.Builder.parseCSVLine("\"a,b", columns));
+		Assert.assertFalse(StringDictionary.Builder.parseCSVLine("\"a\"x,b", columns));
+	}
+
+	private File file(String resource) throws Exception {
+		return new File(getClass().getResource(resource).toURI());
+	}
+
+}
@@ -102,17 +102,107 @@ public class StripHtmlPreprocessorTest {
 			Assert.assertEquals("sf", tested.getFieldSource());
 			Assert.assertEquals("tf", tested.getFieldTarget());
 			Assert.assertEquals(sb, tested.getSourceBases());
+			Assert.assertTrue(tested.isStreaming());
+		}
+
+		// case - streaming disabled
+		{
+			Map<String, Object> settings = new HashMap<String, Object>();
+			settings.put(StripHtmlPreprocessor.CFG_SOURCE_FIELD, "sf");
+			settings.put(StripHtmlPreprocessor.CFG_TARGET_FIELD, "tf");
+			settings.put(StripHtmlPreprocessor.CFG_STREAMING, false);
+
+			tested.init("Test mapper", client, settings);
+			Assert.assertFalse(tested.isStreaming());
+			Assert.assertNull(tested.strippedCache);
+			Assert.assertNull(tested.getStrippedCacheStats());
+			Assert.assertEquals(StripHtmlPreprocessor.DEFAULT_CACHE_MIN_LENGTH, tested.getCacheMinLength());
+			tested.invalidateStrippedCache();
 		}
 
 	}
 
 	@Test
-	public void preprocessData_nobases() {
+	public void init_cache() {
+		StripHtmlPreprocessor tested = new StripHtmlPreprocessor();
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(StripHtmlPreprocessor.CFG_SOURCE_FIELD, "sf");
+		settings.put(StripHtmlPreprocessor.CFG_TARGET_FIELD, "tf");
+		settings.put(StripHtmlPreprocessor.CFG_cache_max_size, 100);
+		settings.put(StripHtmlPreprocessor.CFG_cache_min_length, 10);
+
+		tested.init("Test mapper", null, settings);
+		Assert.assertNotNull(tested.strippedCache);
+		Assert.assertNotNull(tested.getStrippedCacheStats());
+		Assert.assertEquals(10, tested.getCacheMinLength());
+
+		// case - invalid min length
+		settings.put(StripHtmlPreprocessor.CFG_cache_min_length, -1);
+		try {
+			tested.init("Test mapper", null, settings);
+			Assert.fail("SettingsException must be thrown");
+		} catch (SettingsException e) {
+			Assert.assertEquals("Negative 'settings/cache_min_length' configuration value for 'Test mapper' preprocessor",
+					e.getMessage());
+		}
+		settings.put(StripHtmlPreprocessor.CFG_cache_min_length, "x");
+		try {
+			tested.init("Test mapper", null, settings);
+			Assert.fail("SettingsException must be thrown");
+		} catch (SettingsException e) {
+			Assert.assertEquals("Non integer 'settings/cache_min_length' configuration value for 'Test mapper' preprocessor",
+					e.getMessage());
+		}
+	}
 
+	@Test
+	public void preprocessData_cache() {
 		StripHtmlPreprocessor tested = new StripHtmlPreprocessor();
-		tested.name = "Test";
-		tested.fieldSource = "source";
-		tested.fieldTarget = "target";
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(StripHtmlPreprocessor.CFG_SOURCE_FIELD, "source");
+		settings.put(StripHtmlPreprocessor.CFG_TARGET_FIELD, "target");
+		settings.put(StripHtmlPreprocessor.CFG_cache_max_size, 100);
+		settings.put(StripHtmlPreprocessor.CFG_cache_min_length, 10);
+		tested.init("Test mapper", null, settings);
+
+		String html = "<p>long <b>enough</b> to be cached</p>";
+		for (int i = 0; i < 3; i++) {
+			Map<String, Object> values = new HashMap<String, Object>();
+			values.put("source", html);
+			tested.preprocessData(values, null);
+			Assert.assertEquals("long enough to be cached", values.get("target"));
+		}
+		Assert.assertEquals(1, tested.getStrippedCacheStats().missCount());
+		Assert.assertEquals(2, tested.getStrippedCacheStats().hitCount());
+
+		// case - short value is not cached
+		Map<String, Object> values = new HashMap<String, Object>();
+		values.put("source", "<b>a</b>");
+		tested.preprocessData(values, null);
+		Assert.assertEquals("a", values.get("target"));
+		Assert.assertEquals(1, tested.strippedCache.size());
+
+		tested.invalidateStrippedCache();
+		Assert.assertEquals(0, tested.strippedCache.size());
+
+		// case - cache is bounded by length of values
+		Assert.assertEquals(1, StripHtmlPreprocessor.CACHE_WEIGHER.weigh(html, "long enough to be cached"));
+		Assert.assertEquals(3, StripHtmlPreprocessor.CACHE_WEIGHER.weigh(new String(new char[1024]), new String(new char[1024])));
+		StringBuilder longHtml = new StringBuilder();
+		for (int i = 0; i < 1000; i++)
+			longHtml.append("<p>paragraph ").append(i).append("</p>");
+		settings.put(StripHtmlPreprocessor.CFG_cache_max_size, 10);
+		tested.init("Test mapper", null, settings);
+		values.put("source", longHtml.toString());
+		tested.preprocessData(values, null);
+		Assert.assertTrue(((String) values.get("target")).startsWith("paragraph 0"));
+		Assert.assertEquals(0, tested.strippedCache.size());
+	}
+
+	@Test
+	public void preprocessData_nobases() {
+
+		StripHtmlPreprocessor tested = createTested("Test", "source", "target", null);
 
 		// case - not NPE
 		tested.preprocessData(null, null);
@@ -169,8 +259,7 @@ public class StripHtmlPreprocessorTest {
 
 		// case - process HTML - dot notation for source and target
 		{
-			tested.fieldSource = "values2.source";
-			tested.fieldTarget = "values2.target";
+			tested = createTested("Test", "values2.source", "values2.target", null);
 			Map<String, Object> values = new HashMap<String, Object>();
 			Map<String, Object> values2 = new HashMap<String, Object>();
 			values.put("values2", values2);
@@ -186,11 +275,7 @@ public class StripHtmlPreprocessorTest {
 	@Test
 	public void preprocessData_bases() {
 
-		StripHtmlPreprocessor tested = new StripHtmlPreprocessor();
-		tested.name = "Test";
-		tested.fieldSource = "source";
-		tested.fieldTarget = "target";
-		tested.sourceBases = Arrays.asList(new String[] { "author", "editor", "comments" });
+		StripHtmlPreprocessor tested = createTested("Test", "source", "target", Arrays.asList(new String[] { "author", "editor", "comments" }));
 
 		// case - test it
 		{
@@ -230,4 +315,16 @@ public class StripHtmlPreprocessorTest {
 		Assert.assertEquals(source, data.get("source"));
 		Assert.assertEquals(target, data.get("target"));
 	}
+
+	private static StripHtmlPreprocessor createTested(String name, String fieldSource, String fieldTarget,
+			List<String> sourceBases) {
+		StripHtmlPreprocessor tested = new StripHtmlPreprocessor();
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(StripHtmlPreprocessor.CFG_SOURCE_FIELD, fieldSource);
+		settings.put(StripHtmlPreprocessor.CFG_TARGET_FIELD, fieldTarget);
+		settings.put(StripHtmlPreprocessor.CFG_source_bases, sourceBases);
+		tested.init(name, null, settings);
+		return tested;
+	}
+
 }
@@ -313,6 +313,13 @@ public class StructureUtilsTest {
 		StructureUtils.putValueIntoMapOfMaps(map, "field.level1.level12", "value2");
 		Assert.assertEquals("value2", XContentMapValues.extractValue("field.level1.level12", map));
 
+		// case - dot notation with empty path elements same as String.split()
+		map.clear();
+		StructureUtils.putValueIntoMapOfMaps(map, "field..level1.", "value");
+		Assert.assertEquals("value", ((Map<?, ?>) ((Map<?, ?>) map.get("field")).get("")).get("level1"));
+		StructureUtils.putValueIntoMapOfMaps(map, "...", "value");
+		Assert.assertEquals(1, map.size());
+
 		// case - dot notation structure error leads to exception
 		try {
 			map.clear();
@@ -455,4 +462,125 @@ public class StructureUtilsTest {
 		Assert.assertTrue(copiedList.contains(listValueNo2));
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void getADeepStructureCopy_nullValuesSkipped() {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("a", null);
+		map.put("b", "bv");
+		List<Object> list = new LinkedList<Object>();
+		list.add(null);
+		list.add("lv");
+		map.put("list", list);
+
+		Map<String, Object> copy = (Map<String, Object>) StructureUtils.getADeepStructureCopy(map);
+		Assert.assertEquals(2, copy.size());
+		Assert.assertFalse(copy.containsKey("a"));
+		Assert.assertEquals("bv", copy.get("b"));
+		Assert.assertEquals(1, ((List<Object>) copy.get("list")).size());
+		Assert.assertEquals("lv", ((List<Object>) copy.get("list")).get(0));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void getACopyOnWriteStructure() {
+		Assert.assertNull(StructureUtils.getACopyOnWriteStructure(null));
+		String exampleValue = "example";
+		Assert.assertSame(exampleValue, StructureUtils.getACopyOnWriteStructure(exampleValue));
+
+		Map<String, Object> nested = new LinkedHashMap<String, Object>();
+		nested.put("n1", "nv1");
+		List<Object> list = new ArrayList<Object>();
+		list.add("lv1");
+		list.add(nested);
+		Map<String, Object> untouched = new LinkedHashMap<String, Object>();
+		untouched.put("u1", "uv1");
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("key1", "val1");
+		map.put("list", list);
+		map.put("untouched", untouched);
+		Map<String, Object> original = (Map<String, Object>) StructureUtils.getADeepStructureCopy(map);
+
+		CopyOnWriteMap copy = (CopyOnWriteMap) StructureUtils.getACopyOnWriteStructure(map);
+
+		// case - reading of immutable values doesn't copy anything
+		Assert.assertEquals("val1", copy.get("key1"));
+		Assert.assertEquals(3, copy.size());
+		Assert.assertTrue(copy.containsKey("list"));
+		Assert.assertFalse(copy.isCopied());
+
+		// case - changes in nested structures are not visible in source structure
+		List<Object> copiedList = (List<Object>) copy.get("list");
+		Assert.assertFalse(copy.isCopied());
+		Assert.assertNotSame(list, copiedList);
+		Assert.assertSame(copiedList, copy.get("list"));
+		((Map<String, Object>) copiedList.get(1)).put("n2", "nv2");
+		copiedList.add("lv2");
+		copy.put("key2", "val2");
+		copy.remove("key1");
+		Assert.assertTrue(copy.isCopied());
+		StructureUtils.putValueIntoMapOfMaps(copy, "untouched.u2", "uv2");
+
+		Assert.assertEquals(original, map);
+		Assert.assertEquals("nv2", ((Map<String, Object>) copiedList.get(1)).get("n2"));
+		Assert.assertEquals(3, copiedList.size());
+		Assert.assertEquals("val2", copy.get("key2"));
+		Assert.assertFalse(copy.containsKey("key1"));
+		Assert.assertEquals("uv2", XContentMapValues.extractValue("untouched.u2", copy));
+
+		// case - not copied nested structures are shared
+		CopyOnWriteMap copy2 = (CopyOnWriteMap) StructureUtils.getACopyOnWriteStructure(map);
+		CopyOnWriteMap copiedUntouched = (CopyOnWriteMap) copy2.get("untouched");
+		Assert.assertFalse(copiedUntouched.isCopied());
+		Assert.assertEquals(untouched, copiedUntouched);
+		Assert.assertFalse(copiedUntouched.isCopied());
+		Assert.assertEquals(map, copy2);
+
+		// case - only levels on the path of changed value are copied
+		Map<String, Object> level2 = new LinkedHashMap<String, Object>();
+		level2.put("l3", "v3");
+		Map<String, Object> level1 = new LinkedHashMap<String, Object>();
+		level1.put("l2", level2);
+		level1.put("other", new LinkedHashMap<String, Object>(untouched));
+		Map<String, Object> root = new LinkedHashMap<String, Object>();
+		root.put("l1", level1);
+		root.put("other", "ov");
+		CopyOnWriteMap rootCopy = (CopyOnWriteMap) StructureUtils.getACopyOnWriteStructure(root);
+		StructureUtils.putValueIntoMapOfMaps(rootCopy, "l1.l2.l3", "changed");
+		Assert.assertFalse(rootCopy.isCopied());
+		CopyOnWriteMap level1Copy = (CopyOnWriteMap) rootCopy.get("l1");
+		Assert.assertFalse(level1Copy.isCopied());
+		Assert.assertTrue(((CopyOnWriteMap) level1Copy.get("l2")).isCopied());
+		Assert.assertFalse(((CopyOnWriteMap) level1Copy.get("other")).isCopied());
+		Assert.assertEquals("changed", XContentMapValues.extractValue("l1.l2.l3", rootCopy));
+		Assert.assertEquals("v3", level2.get("l3"));
+		StructureUtils.removeValueFromMapOfMaps(rootCopy, "l1.other");
+		Assert.assertTrue(level1Copy.isCopied());
+		Assert.assertFalse(level1Copy.containsKey("other"));
+		Assert.assertTrue(level1.containsKey("other"));
+		Assert.assertEquals("changed", XContentMapValues.extractValue("l1.l2.l3", rootCopy));
+
+		// case - entry iteration doesn't copy, but changes through entries are visible
+		CopyOnWriteMap copy3 = (CopyOnWriteMap) StructureUtils.getACopyOnWriteStructure(map);
+		for (Map.Entry<String, Object> entry : copy3.entrySet()) {
+			if (entry.getValue() instanceof Map)
+				((Map<String, Object>) entry.getValue()).put("u3", "uv3");
+		}
+		Assert.assertFalse(copy3.isCopied());
+		for (Map.Entry<String, Object> entry : copy3.entrySet()) {
+			if ("key1".equals(entry.getKey()))
+				entry.setValue("newval1");
+		}
+		Assert.assertTrue(copy3.isCopied());
+		Assert.assertEquals("newval1", copy3.get("key1"));
+		Assert.assertEquals("uv3", XContentMapValues.extractValue("untouched.u3", copy3));
+		Assert.assertEquals(original, map);
+
+		// case - deep copy of copy-on-write structure is plain structure
+		Map<String, Object> deep = (Map<String, Object>) StructureUtils.getADeepStructureCopy(copy2);
+		Assert.assertEquals(LinkedHashMap.class, deep.getClass());
+		Assert.assertEquals(ArrayList.class, deep.get("list").getClass());
+		Assert.assertEquals(original, deep);
+	}
+
 }
@@ -12,6 +12,7 @@ import java.util.Map;
 
 import junit.framework.Assert;
 
+import org.elasticsearch.common.cache.Cache;
 import org.elasticsearch.common.settings.SettingsException;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -62,6 +63,34 @@ public class StructuredContentPreprocessorBaseTest {
 		Mockito.verifyNoMoreInteractions(contextMock);
 	}
 
+	@Test
+	public void addDataWarning_lazy() {
+		StructuredContentPreprocessorBase tested = new StructuredContentPreprocessorMock();
+		tested.name = "my preprocessor";
+
+		// case - no exception when context is empty
+		tested.addDataWarning(null, "msq {}", "a");
+
+		// case - message is formatted for common context
+		PreprocessChainContext contextMock = Mockito.mock(PreprocessChainContext.class);
+		tested.addDataWarning(contextMock, "my message {} {}", "a", 1);
+		Mockito.verify(contextMock).addDataWarning(tested.name, "my message a 1");
+		Mockito.verifyNoMoreInteractions(contextMock);
+
+		// case - template is passed to lazy context
+		LazyPreprocessChainContext lazyContextMock = Mockito.mock(LazyPreprocessChainContext.class);
+		tested.addDataWarning(lazyContextMock, "my message {} {}", "a", 1);
+		Mockito.verify(lazyContextMock).addDataWarning(tested.name, "my message {} {}", "a", 1);
+		Mockito.verifyNoMoreInteractions(lazyContextMock);
+
+		try {
+			tested.addDataWarning(contextMock, null, "a");
+			Assert.fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
 	@Test
 	public void validateConfigurationObjectNotEmpty() {
 		StructuredContentPreprocessorBase tested = new StructuredContentPreprocessorMock();
@@ -106,4 +135,76 @@ public class StructuredContentPreprocessorBaseTest {
 
 	}
 
+	@Test
+	public void createCacheFromSettings() throws InterruptedException {
+		StructuredContentPreprocessorBase tested = new StructuredContentPreprocessorMock();
+		tested.name = "my preprocessor";
+		Map<String, Object> settings = new HashMap<String, Object>();
+
+		// case - cache not configured
+		Assert.assertNull(tested.createCacheFromSettings(null));
+		Assert.assertNull(tested.createCacheFromSettings(settings));
+		settings.put(StructuredContentPreprocessorBase.CFG_cache_max_size, 0);
+		Assert.assertNull(tested.createCacheFromSettings(settings));
+
+		// case - invalid configuration
+		settings.put(StructuredContentPreprocessorBase.CFG_cache_max_size, "aa");
+		try {
+			tested.createCacheFromSettings(settings);
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			Assert.assertEquals("Non integer 'settings/cache_max_size' configuration value for 'my preprocessor' preprocessor",
+					e.getMessage());
+		}
+		settings.put(StructuredContentPreprocessorBase.CFG_cache_max_size, -1);
+		try {
+			tested.createCacheFromSettings(settings);
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			Assert.assertEquals("Negative 'settings/cache_max_size' configuration value for 'my preprocessor' preprocessor",
+					e.getMessage());
+		}
+		settings.put(StructuredContentPreprocessorBase.CFG_cache_max_size, 2);
+		settings.put(StructuredContentPreprocessorBase.CFG_cache_ttl, "aa");
+		try {
+			tested.createCacheFromSettings(settings);
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			Assert.assertEquals("Invalid 'settings/cache_ttl' configuration value for 'my preprocessor' preprocessor",
+					e.getMessage());
+		}
+		settings.put(StructuredContentPreprocessorBase.CFG_cache_ttl, -10);
+		try {
+			tested.createCacheFromSettings(settings);
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			Assert.assertEquals("Negative 'settings/cache_ttl' configuration value for 'my preprocessor' preprocessor",
+					e.getMessage());
+		}
+
+		// case - size limited cache without expiration
+		settings.remove(StructuredContentPreprocessorBase.CFG_cache_ttl);
+		{
+			Cache<String, String> cache = tested.createCacheFromSettings(settings);
+			cache.put("a", "va");
+			cache.put("b", "vb");
+			cache.put("c", "vc");
+			Assert.assertEquals(2, cache.size());
+			Assert.assertEquals("vc", cache.getIfPresent("c"));
+			Assert.assertNull(cache.getIfPresent("x"));
+			Assert.assertEquals(1, cache.stats().hitCount());
+			Assert.assertEquals(1, cache.stats().missCount());
+		}
+
+		// case - cache with expiration
+		settings.put(StructuredContentPreprocessorBase.CFG_cache_ttl, "50ms");
+		{
+			Cache<String, String> cache = tested.createCacheFromSettings(settings);
+			cache.put("a", "va");
+			Assert.assertEquals("va", cache.getIfPresent("a"));
+			Thread.sleep(100);
+			Assert.assertNull(cache.getIfPresent("a"));
+		}
+	}
+
 }
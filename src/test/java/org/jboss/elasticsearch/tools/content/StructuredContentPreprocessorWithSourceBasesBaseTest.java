@@ -58,6 +58,37 @@ public class StructuredContentPreprocessorWithSourceBasesBaseTest {
 				StructuredContentPreprocessorWithSourceBasesBase.getFullFieldName("base1.base2", "field"));
 	}
 
+	@Test
+	public void addFieldDataWarning() {
+		StructuredContentPreprocessorWithSourceBasesBase<Object> tested = new StructuredContentPreprocessorWithSourceBasesBase<Object>() {
+			@Override
+			protected void processOneSourceValue(Map<String, Object> data, Object context, String base,
+					PreprocessChainContext chainContext) {
+			}
+
+			@Override
+			protected Object createContext(Map<String, Object> data) {
+				return null;
+			}
+		};
+		tested.name = "mypreproc";
+
+		// case - no context is OK
+		tested.addFieldDataWarning(null, "field '{}'", "base", "field");
+
+		PreprocessChainContextImpl context = new PreprocessChainContextImpl();
+		tested.addFieldDataWarning(context, "field '{}'", null, "field");
+		tested.addFieldDataWarning(context, "field '{}'", "base1.base2", "field");
+		Assert.assertEquals("field 'field'", context.getWarnings().get(0).getWarningMessage());
+		Assert.assertEquals("field 'base1.base2.field'", context.getWarnings().get(1).getWarningMessage());
+		Assert.assertEquals("mypreproc", context.getWarnings().get(1).getPreprocessorName());
+
+		// case - full field name is formatted when message is read
+		BoundedPreprocessChainContext lazyContext = new BoundedPreprocessChainContext(1);
+		tested.addFieldDataWarning(lazyContext, "field '{}'", "base", "field");
+		Assert.assertEquals("field 'base.field'", lazyContext.getWarnings().get(0).getWarningMessage());
+	}
+
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@Test
 	public void preprocessData_noData() {
@@ -177,11 +177,7 @@ public class TrimStringValuePreprocessorTest {
 	@Test
 	public void preprocessData_nobases() {
 
-		TrimStringValuePreprocessor tested = new TrimStringValuePreprocessor();
-		tested.name = "mypreproc";
-		tested.fieldSource = "source";
-		tested.fieldTarget = "target";
-		tested.maxSize = 5;
+		TrimStringValuePreprocessor tested = createTested("mypreproc", "source", "target", 5, null);
 
 		// case - not NPE
 		tested.preprocessData(null, null);
@@ -271,9 +267,7 @@ public class TrimStringValuePreprocessorTest {
 
 		// case - dot notation
 		{
-			tested.fieldSource = "my_field.level1.level2";
-			tested.fieldTarget = "my_field.level21.level22";
-			tested.maxSize = 3;
+			tested = createTested("mypreproc", "my_field.level1.level2", "my_field.level21.level22", 3, null);
 			Map<String, Object> values = new HashMap<String, Object>();
 			StructureUtils.putValueIntoMapOfMaps(values, tested.fieldSource, "   Value   ");
 			tested.preprocessData(values, null);
@@ -284,12 +278,7 @@ public class TrimStringValuePreprocessorTest {
 	@Test
 	public void preprocessData_bases() {
 
-		TrimStringValuePreprocessor tested = new TrimStringValuePreprocessor();
-		tested.name = "Test";
-		tested.fieldSource = "source";
-		tested.fieldTarget = "target";
-		tested.maxSize = 3;
-		tested.sourceBases = Arrays.asList(new String[] { "author", "editor", "comments" });
+		TrimStringValuePreprocessor tested = createTested("Test", "source", "target", 3, Arrays.asList(new String[] { "author", "editor", "comments" }));
 
 		// case - test it
 		{
@@ -330,4 +319,16 @@ public class TrimStringValuePreprocessorTest {
 		Assert.assertEquals(target, data.get("target"));
 	}
 
+	private static TrimStringValuePreprocessor createTested(String name, String fieldSource, String fieldTarget, int maxSize,
+			List<String> sourceBases) {
+		TrimStringValuePreprocessor tested = new TrimStringValuePreprocessor();
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(TrimStringValuePreprocessor.CFG_SOURCE_FIELD, fieldSource);
+		settings.put(TrimStringValuePreprocessor.CFG_TARGET_FIELD, fieldTarget);
+		settings.put(TrimStringValuePreprocessor.CFG_MAX_SIZE, maxSize);
+		settings.put(TrimStringValuePreprocessor.CFG_source_bases, sourceBases);
+		tested.init(name, null, settings);
+		return tested;
+	}
+
 }
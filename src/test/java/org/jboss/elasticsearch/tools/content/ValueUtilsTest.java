@@ -5,13 +5,22 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
 
 import org.elasticsearch.common.joda.time.format.ISODateTimeFormat;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -162,4 +171,79 @@ public class ValueUtilsTest {
 		
 	}
 
+	@Test
+	public void formatISODateTime_long() {
+		Assert.assertEquals("1970-01-01T00:00:00.000Z", ValueUtils.formatISODateTime(0L));
+		Assert.assertEquals("1969-12-31T23:59:59.999Z", ValueUtils.formatISODateTime(-1L));
+		Assert.assertEquals("2012-08-14T12:00:00.000Z", ValueUtils.formatISODateTime(1344945600000L));
+		Assert.assertEquals("2000-02-29T23:59:59.001Z", ValueUtils.formatISODateTime(951868799001L));
+
+		// same results as SimpleDateFormat including dates before Gregorian calendar cutover and after year 9999
+		long[] millis = new long[] { -12219292800000L, -12219292800001L, -62135769600000L, 253402300799999L,
+				253402300800000L, -2208988800000L, 4102444800000L, 1456704000000L, 1456790399999L, Long.MAX_VALUE / 1000 };
+		for (long m : millis) {
+			Assert.assertEquals(formatBySimpleDateFormat(m), ValueUtils.formatISODateTime(m));
+		}
+		Random random = new Random(1);
+		for (int i = 0; i < 10000; i++) {
+			long m = (long) (random.nextDouble() * 300000000000000L) - 50000000000000L;
+			Assert.assertEquals(formatBySimpleDateFormat(m), ValueUtils.formatISODateTime(m));
+		}
+
+		// case - append into builder and batch
+		StringBuilder sb = new StringBuilder("ts=");
+		Assert.assertSame(sb, ValueUtils.appendISODateTime(sb, 1344945600000L));
+		Assert.assertEquals("ts=2012-08-14T12:00:00.000Z", sb.toString());
+		Assert.assertNull(ValueUtils.formatISODateTimes(null));
+		Assert.assertArrayEquals(new String[] { "1970-01-01T00:00:00.000Z", "2012-08-14T12:00:00.000Z" },
+				ValueUtils.formatISODateTimes(new long[] { 0L, 1344945600000L }));
+	}
+
+	private static String formatBySimpleDateFormat(long millis) {
+		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXX");
+		sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return sdf.format(new Date(millis));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void serializeDocument() throws Exception {
+		Map<String, Object> document = new LinkedHashMap<String, Object>();
+		document.put("string", "value \"quoted\"");
+		document.put("int", new Integer(10));
+		document.put("long", new Long(1488359730000L));
+		document.put("bool", Boolean.TRUE);
+		document.put("double", new Double(1.5));
+		document.put("null", null);
+		Map<String, Object> nested = new LinkedHashMap<String, Object>();
+		nested.put("name", "nested");
+		nested.put("list", new LinkedList<Object>(Arrays.asList("a", 2, nested.get("name"))));
+		document.put("nested", nested);
+		List<Object> list = new ArrayList<Object>();
+		list.add(new LinkedHashMap<String, Object>(nested));
+		list.add(Arrays.asList(1L, 2L));
+		document.put("list", list);
+		document.put("date", new Date(1488359730000L));
+
+		byte[] json = ValueUtils.serializeDocument(document, XContentType.JSON);
+		Assert.assertEquals("{\"string\":\"value \\\"quoted\\\"\",\"int\":10,\"long\":1488359730000,\"bool\":true,"
+				+ "\"double\":1.5,\"null\":null,\"nested\":{\"name\":\"nested\",\"list\":[\"a\",2,\"nested\"]},"
+				+ "\"list\":[{\"name\":\"nested\",\"list\":[\"a\",2,\"nested\"]},[1,2]],\"date\":\"2017-03-01T09:15:30.000Z\"}",
+				new String(json, "UTF-8"));
+
+		// same structure as standard serialization, also for SMILE
+		XContentBuilder builder = XContentFactory.jsonBuilder();
+		builder.map(document);
+		Assert.assertEquals(builder.string(), new String(json, "UTF-8"));
+		byte[] smile = ValueUtils.serializeDocument(document, XContentType.SMILE);
+		Map<String, Object> parsed = XContentFactory.xContent(XContentType.SMILE).createParser(smile).mapOrderedAndClose();
+		Assert.assertEquals(ValueUtils.parseJSON(json), parsed);
+		Assert.assertEquals("nested", ((Map<String, Object>) parsed.get("nested")).get("name"));
+
+		// buffer is reused
+		Assert.assertEquals("{}", new String(ValueUtils.serializeDocument(new HashMap<String, Object>(), XContentType.JSON),
+				"UTF-8"));
+		Assert.assertEquals("null", new String(ValueUtils.serializeDocument(null, XContentType.JSON), "UTF-8"));
+	}
+
 }
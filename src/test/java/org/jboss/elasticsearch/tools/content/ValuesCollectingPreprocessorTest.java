@@ -102,7 +102,8 @@ public class ValuesCollectingPreprocessorTest {
 	@Test
 	public void preprocessData() {
 		ValuesCollectingPreprocessor tested = new ValuesCollectingPreprocessor();
-		tested.init("Test mapper", null, TestUtils.loadJSONFromClasspathFile("/ValuesCollecting_preprocessData.json"));
+		Map<String, Object> config = TestUtils.loadJSONFromClasspathFile("/ValuesCollecting_preprocessData.json");
+		tested.init("Test mapper", null, config);
 
 		// case - not NPE
 		tested.preprocessData(null, null);
@@ -166,7 +167,8 @@ public class ValuesCollectingPreprocessorTest {
 			commentsList.add(newMapWithFiled("authors", al2));
 			al2.add(newMapWithFiled("id", "ca2"));
 
-			tested.fieldTarget = "target.level1";
+			config.put(ValuesCollectingPreprocessor.CFG_TARGET_FIELD, "target.level1");
+			tested.init("Test mapper", null, config);
 
 			tested.preprocessData(values, null);
 			List<Object> vals = (List<Object>) XContentMapValues.extractValue(tested.fieldTarget, values);